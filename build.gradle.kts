@@ -60,8 +60,8 @@ open class GradleFunctionalTest : Test() {
 val functionalTest by sourceSets.creating
 
 dependencies {
-    implementation("com.github.docker-java:docker-java-core:3.2.7")
-    implementation("com.github.docker-java:docker-java-transport-httpclient5:3.2.7")
+    implementation("com.github.docker-java:docker-java-core:3.2.13")
+    implementation("com.github.docker-java:docker-java-transport-httpclient5:3.2.13")
     implementation("com.github.node-gradle:gradle-node-plugin:3.1.0")
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.7.1")
     "functionalTestImplementation"("org.junit.jupiter:junit-jupiter-api:5.7.1")
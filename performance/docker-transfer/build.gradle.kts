@@ -0,0 +1,54 @@
+import java.nio.file.Files
+
+plugins {
+    java
+    id("au.com.helixta.adl")
+}
+
+//Benchmark for transferring ADL sources to and generated code from Docker, with and without compressed transfer.
+//Most useful against a remote Docker host, e.g. with DOCKER_HOST=tcp://build-docker:2376.
+//Run with Gradle Profiler using the scenarios in docker-transfer.scenarios.
+
+val compressedTransfer = providers.gradleProperty("compressedTransfer").forUseAtConfigurationTime().getOrElse("false").toBoolean()
+val compressionLevel = providers.gradleProperty("compressionLevel").forUseAtConfigurationTime().getOrElse("1").toInt()
+val moduleCount = providers.gradleProperty("moduleCount").forUseAtConfigurationTime().getOrElse("500").toInt()
+
+//Synthetic ADL sources are created once at configuration time so they are not part of the measured work
+val syntheticAdl = layout.projectDirectory.dir("synthetic-adl").asFile
+if (!syntheticAdl.resolve("count-$moduleCount").exists()) {
+    syntheticAdl.deleteRecursively()
+    for (i in 0 until moduleCount) {
+        val file = syntheticAdl.resolve("bench/pkg${i % 20}/module$i.adl")
+        file.parentFile.mkdirs()
+        Files.write(file.toPath(), listOf(
+            "module bench.pkg${i % 20}.module$i {",
+            "",
+            "struct Record$i {",
+            "    String name;",
+            "    Int32 value;",
+            "    Vector<String> tags;",
+            "};",
+            "",
+            "};"
+        ))
+    }
+    syntheticAdl.resolve("count-$moduleCount").createNewFile()
+}
+
+sourceSets.main {
+    extensions.getByName<SourceDirectorySet>("adl").srcDir(syntheticAdl)
+}
+
+adl {
+    version = "0.14"
+    platform = au.com.helixta.adl.gradle.containerexecutor.ExecutionPlatform.DOCKER
+    docker {
+        isCompressedTransfer = compressedTransfer
+        transferCompressionLevel = compressionLevel
+    }
+    generations {
+        java {
+            javaPackage = "bench.adl"
+        }
+    }
+}
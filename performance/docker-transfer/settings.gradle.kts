@@ -0,0 +1,4 @@
+rootProject.name = "adl-docker-transfer-benchmark"
+
+//Use the plugin from this source tree
+includeBuild("../..")
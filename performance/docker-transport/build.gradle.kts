@@ -0,0 +1,60 @@
+import java.nio.file.Files
+
+plugins {
+    id("au.com.helixta.adl") apply false
+}
+
+//Benchmark for concurrent copying of files into and out of Docker containers by many ADL tasks at once, with and without connections to the
+//Docker daemon shared across the build, and with different connection limits.
+//Run with Gradle Profiler using the scenarios in docker-transport.scenarios against a local Docker daemon.
+
+val reuseConnectionsSetting = providers.gradleProperty("reuseConnections").forUseAtConfigurationTime().getOrElse("true").toBoolean()
+val maxConnectionsSetting = providers.gradleProperty("maxConnections").forUseAtConfigurationTime().getOrElse("32").toInt()
+val moduleCount = providers.gradleProperty("moduleCount").forUseAtConfigurationTime().getOrElse("200").toInt()
+
+subprojects {
+    apply(plugin = "java")
+    apply(plugin = "au.com.helixta.adl")
+
+    //Synthetic ADL sources are created once at configuration time so they are not part of the measured work
+    val syntheticAdl = rootProject.layout.projectDirectory.dir("synthetic-adl/${project.name}").asFile
+    if (!syntheticAdl.resolve("count-$moduleCount").exists()) {
+        syntheticAdl.deleteRecursively()
+        for (i in 0 until moduleCount) {
+            val file = syntheticAdl.resolve("bench/${project.name}/pkg${i % 10}/module$i.adl")
+            file.parentFile.mkdirs()
+            Files.write(file.toPath(), listOf(
+                "module bench.${project.name}.pkg${i % 10}.module$i {",
+                "",
+                "struct Record$i {",
+                "    String name;",
+                "    Int32 value;",
+                "    Vector<String> tags;",
+                "};",
+                "",
+                "};"
+            ))
+        }
+        syntheticAdl.resolve("count-$moduleCount").createNewFile()
+    }
+
+    configure<SourceSetContainer> {
+        named("main") {
+            extensions.getByName<SourceDirectorySet>("adl").srcDir(syntheticAdl)
+        }
+    }
+
+    configure<au.com.helixta.adl.gradle.AdlExtension> {
+        version = "0.14"
+        platform = au.com.helixta.adl.gradle.containerexecutor.ExecutionPlatform.DOCKER
+        docker {
+            isReuseConnections = reuseConnectionsSetting
+            maxConnections = maxConnectionsSetting
+        }
+        generations {
+            java {
+                javaPackage = "bench.adl"
+            }
+        }
+    }
+}
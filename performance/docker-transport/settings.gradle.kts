@@ -0,0 +1,10 @@
+rootProject.name = "adl-docker-transport-benchmark"
+
+//Use the plugin from this source tree
+includeBuild("../..")
+
+//Each subproject generates its own ADL at the same time as the others with --parallel
+val projectCount = providers.gradleProperty("projectCount").forUseAtConfigurationTime().getOrElse("8").toInt()
+for (i in 0 until projectCount) {
+    include("adl$i")
+}
@@ -0,0 +1,78 @@
+plugins {
+    java
+    id("au.com.helixta.adl")
+}
+
+//Benchmark for ADL generation of large synthetic corpora, with native and Docker execution.
+//Run with Gradle Profiler using the scenarios in large-corpus.scenarios, then compare against a baseline with the compareBaseline task.
+
+val corpusSizes = mapOf("1k" to 1_000, "10k" to 10_000, "50k" to 50_000)
+val corpusSize = providers.gradleProperty("corpusSize").forUseAtConfigurationTime().getOrElse("1k")
+val moduleCount = corpusSizes[corpusSize] ?: throw GradleException("corpusSize must be one of ${corpusSizes.keys}: $corpusSize")
+val adlPlatform = providers.gradleProperty("adlPlatform").forUseAtConfigurationTime().getOrElse("native")
+val corpusSeed = providers.gradleProperty("corpusSeed").forUseAtConfigurationTime().getOrElse("1").toLong()
+
+//Library is a fifth the size of the sources, so search directories are large as well
+val corpus = SyntheticAdlCorpus(moduleCount, moduleCount / 5, corpusSeed)
+val corpusDirectory = layout.projectDirectory.dir("synthetic-adl/$corpusSize").asFile
+
+//Synthetic ADL is created once at configuration time so it is not part of the measured work
+SyntheticAdlCorpus.writeIfMissing(corpus, corpusDirectory)
+
+sourceSets.main {
+    extensions.getByName<SourceDirectorySet>("adl").srcDir(corpusDirectory.resolve("adl"))
+}
+
+dependencies {
+    adlSearchDirectories(files(corpusDirectory.resolve("lib/adl-library.jar")))
+}
+
+adl {
+    version = "0.14"
+    platform = when (adlPlatform) {
+        "native" -> au.com.helixta.adl.gradle.containerexecutor.ExecutionPlatform.NATIVE
+        "docker" -> au.com.helixta.adl.gradle.containerexecutor.ExecutionPlatform.DOCKER
+        else -> throw GradleException("adlPlatform must be native or docker: $adlPlatform")
+    }
+    generations {
+        java {
+            javaPackage = "bench.adl"
+        }
+    }
+}
+
+//Helper tasks run by scenarios before generateAdl to simulate source changes between builds
+val editModule by tasks.registering {
+    description = "Edits one ADL module in the middle of the corpus."
+    doLast {
+        //Each build gets a different revision so the change is never already generated
+        val revisionFile = corpusDirectory.resolve("edit-revision")
+        val revision = (if (revisionFile.exists()) revisionFile.readText().trim().toInt() else 0) + 1
+        corpus.editModule(corpusDirectory.resolve("adl"), corpus.middleModuleIndex, revision)
+        revisionFile.writeText(revision.toString())
+    }
+}
+
+val switchBranch by tasks.registering {
+    description = "Switches about 5% of ADL modules between two versions, as a branch switch would."
+    doLast {
+        val branchFile = corpusDirectory.resolve("branch")
+        val branch = if (branchFile.exists() && branchFile.readText().trim() == "1") 0 else 1
+        corpus.switchBranch(corpusDirectory.resolve("adl"), branch)
+        branchFile.writeText(branch.toString())
+    }
+}
+
+tasks.named("generateAdl") {
+    mustRunAfter(editModule, switchBranch)
+}
+tasks.named("generateAdlJava") {
+    mustRunAfter(editModule, switchBranch)
+}
+
+val compareBaseline by tasks.registering(CompareBenchmarkBaseline::class) {
+    description = "Compares Gradle Profiler results against a baseline and fails on regressions."
+    results.set(layout.projectDirectory.file(providers.gradleProperty("results").forUseAtConfigurationTime().getOrElse("profile-out/benchmark.csv")))
+    baseline.set(layout.projectDirectory.file(providers.gradleProperty("baseline").forUseAtConfigurationTime().getOrElse("baseline/benchmark.csv")))
+    threshold.set(providers.gradleProperty("regressionThreshold").forUseAtConfigurationTime().getOrElse("0.1").toDouble())
+}
@@ -0,0 +1,122 @@
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares Gradle Profiler benchmark results against a baseline and fails if the median time of any scenario regressed by more than a threshold.
+ * <p>
+ *
+ * Both files are the <code>benchmark.csv</code> written by <code>gradle-profiler --benchmark</code>.  Scenarios missing from the baseline are
+ * reported but not checked.
+ */
+public abstract class CompareBenchmarkBaseline extends DefaultTask
+{
+    /**
+     * @return the benchmark results to check.
+     */
+    @InputFile
+    public abstract RegularFileProperty getResults();
+
+    /**
+     * @return the baseline results to check against.
+     */
+    @InputFile
+    public abstract RegularFileProperty getBaseline();
+
+    /**
+     * @return the allowed increase in median time as a fraction, e.g. 0.1 for 10%.
+     */
+    @Input
+    public abstract Property<Double> getThreshold();
+
+    @TaskAction
+    public void compare()
+    throws IOException
+    {
+        Map<String, Double> results = readMedians(getResults().get().getAsFile());
+        Map<String, Double> baseline = readMedians(getBaseline().get().getAsFile());
+        double threshold = getThreshold().get();
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> result : results.entrySet())
+        {
+            Double baselineMedian = baseline.get(result.getKey());
+            if (baselineMedian == null)
+            {
+                getLogger().lifecycle(String.format("%-40s %10.0f ms  (no baseline)", result.getKey(), result.getValue()));
+                continue;
+            }
+
+            double change = (result.getValue() - baselineMedian) / baselineMedian;
+            boolean regressed = change > threshold;
+            getLogger().lifecycle(String.format("%-40s %10.0f ms  baseline %10.0f ms  %+6.1f%%%s", result.getKey(), result.getValue(), baselineMedian,
+                                                change * 100.0, regressed ? "  REGRESSION" : ""));
+            if (regressed)
+                regressions.add(result.getKey());
+        }
+
+        if (!regressions.isEmpty())
+            throw new GradleException("Benchmark scenarios slower than baseline by more than " + Math.round(threshold * 100.0) + "%: " + regressions);
+    }
+
+    /**
+     * Reads the median of the measured builds of each scenario from a Gradle Profiler CSV file.
+     */
+    static Map<String, Double> readMedians(File csvFile)
+    throws IOException
+    {
+        List<String> lines = Files.readAllLines(csvFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty())
+            throw new IOException("Empty benchmark file: " + csvFile);
+
+        //First row is 'scenario' followed by the name of each scenario
+        String[] scenarios = lines.get(0).split(",");
+        List<List<Double>> samples = new ArrayList<>();
+        for (int i = 1; i < scenarios.length; i++)
+        {
+            samples.add(new ArrayList<>());
+        }
+
+        for (String line : lines)
+        {
+            String[] columns = line.split(",");
+            if (!columns[0].startsWith("measured build"))
+                continue;
+
+            for (int i = 1; i < columns.length && i < scenarios.length; i++)
+            {
+                if (!columns[i].trim().isEmpty())
+                    samples.get(i - 1).add(Double.parseDouble(columns[i].trim()));
+            }
+        }
+
+        Map<String, Double> medians = new LinkedHashMap<>();
+        for (int i = 1; i < scenarios.length; i++)
+        {
+            List<Double> scenarioSamples = samples.get(i - 1);
+            if (scenarioSamples.isEmpty())
+                continue;
+
+            Collections.sort(scenarioSamples);
+            int middle = scenarioSamples.size() / 2;
+            double median = scenarioSamples.size() % 2 == 1 ? scenarioSamples.get(middle)
+                                                            : (scenarioSamples.get(middle - 1) + scenarioSamples.get(middle)) / 2.0;
+            medians.put(scenarios[i].trim(), median);
+        }
+        return medians;
+    }
+}
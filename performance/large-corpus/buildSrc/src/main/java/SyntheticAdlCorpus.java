@@ -0,0 +1,267 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a deterministic synthetic ADL corpus: source modules plus a JAR of library modules used as a search directory.
+ * <p>
+ *
+ * Import fan-out is modelled on real ADL codebases: most modules import a few modules from nearby packages, a small set of common 'hub' modules are
+ * imported by many modules, and some imports come from the library.  Modules only import modules with a lower index so there are no import cycles.
+ * The same size and seed always produces the same corpus so results from different runs are comparable.
+ */
+public class SyntheticAdlCorpus
+{
+    private static final int MODULES_PER_PACKAGE = 50;
+    private static final int MAX_IMPORTS = 12;
+
+    private final int moduleCount;
+    private final int libraryModuleCount;
+    private final int hubModuleCount;
+    private final long seed;
+
+    /**
+     * @param moduleCount number of source modules.
+     * @param libraryModuleCount number of modules in the library JAR.
+     * @param seed random seed.
+     */
+    public SyntheticAdlCorpus(int moduleCount, int libraryModuleCount, long seed)
+    {
+        if (moduleCount < 1)
+            throw new IllegalArgumentException("moduleCount must be positive: " + moduleCount);
+        if (libraryModuleCount < 1)
+            throw new IllegalArgumentException("libraryModuleCount must be positive: " + libraryModuleCount);
+
+        this.moduleCount = moduleCount;
+        this.libraryModuleCount = libraryModuleCount;
+        this.hubModuleCount = Math.max(1, moduleCount / 50);
+        this.seed = seed;
+    }
+
+    /**
+     * Writes all source modules into a directory.
+     */
+    public void writeSources(File sourceDirectory)
+    throws IOException
+    {
+        for (int i = 0; i < moduleCount; i++)
+        {
+            writeSourceModule(sourceDirectory, i, 0);
+        }
+    }
+
+    /**
+     * Writes all library modules into a JAR, with modules at the root of the JAR like a published ADL library.
+     */
+    public void writeLibraryJar(File jarFile)
+    throws IOException
+    {
+        Files.createDirectories(jarFile.getParentFile().toPath());
+        try (ZipOutputStream zipOut = new ZipOutputStream(Files.newOutputStream(jarFile.toPath())))
+        {
+            for (int i = 0; i < libraryModuleCount; i++)
+            {
+                zipOut.putNextEntry(new ZipEntry(modulePath("lib", i)));
+                writeUtf8(zipOut, libraryModuleSource(i));
+                zipOut.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Rewrites a single source module with a different field, as if a developer edited it.
+     *
+     * @param revision changes each time, so every edit is a real change.
+     */
+    public void editModule(File sourceDirectory, int moduleIndex, int revision)
+    throws IOException
+    {
+        writeSourceModule(sourceDirectory, moduleIndex, revision);
+    }
+
+    /**
+     * Switches the corpus between two 'branches' that differ in roughly 5% of modules spread throughout the corpus, as if switching git branches.
+     *
+     * @param branch 0 for the original corpus, or 1 for the other branch.
+     */
+    public void switchBranch(File sourceDirectory, int branch)
+    throws IOException
+    {
+        for (int i = 0; i < moduleCount; i += 20)
+        {
+            writeSourceModule(sourceDirectory, i, branch);
+        }
+    }
+
+    /**
+     * @return the index of the module in the middle of the corpus, which is neither a hub module nor a leaf.
+     */
+    public int getMiddleModuleIndex()
+    {
+        return moduleCount / 2;
+    }
+
+    private void writeSourceModule(File sourceDirectory, int index, int revision)
+    throws IOException
+    {
+        File file = new File(sourceDirectory, modulePath("bench", index));
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), sourceModuleSource(index, revision).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeUtf8(OutputStream out, String text)
+    throws IOException
+    {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String sourceModuleSource(int index, int revision)
+    {
+        //Random per module so that editing one module does not change any other
+        Random random = new Random(seed * 31 + index);
+        Set<String> imports = new LinkedHashSet<>();
+        int importCount = Math.min(MAX_IMPORTS, geometric(random, 3.0));
+        for (int i = 0; i < importCount; i++)
+        {
+            double kind = random.nextDouble();
+            if (kind < 0.15)
+                imports.add(typeName("lib", random.nextInt(libraryModuleCount)));
+            else if (index > hubModuleCount && kind < 0.40)
+                imports.add(typeName("bench", random.nextInt(hubModuleCount)));
+            else if (index > 0)
+            {
+                //Nearby modules, mostly in the same or previous package
+                int distance = 1 + random.nextInt(Math.min(index, MODULES_PER_PACKAGE * 2));
+                imports.add(typeName("bench", index - distance));
+            }
+        }
+
+        return moduleSource(moduleName("bench", index), "Record" + index, imports, revision);
+    }
+
+    private String libraryModuleSource(int index)
+    {
+        Random random = new Random(seed * 37 + index);
+        Set<String> imports = new LinkedHashSet<>();
+        int importCount = index == 0 ? 0 : Math.min(4, geometric(random, 1.5));
+        for (int i = 0; i < importCount; i++)
+        {
+            imports.add(typeName("lib", random.nextInt(index)));
+        }
+
+        return moduleSource(moduleName("lib", index), "Record" + index, imports, 0);
+    }
+
+    private static String moduleSource(String moduleName, String recordName, Set<String> imports, int revision)
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("module ").append(moduleName).append(" {\n\n");
+        for (String imported : imports)
+        {
+            buf.append("import ").append(imported).append(";\n");
+        }
+        buf.append("\n");
+
+        List<String> importedTypes = new ArrayList<>();
+        for (String imported : imports)
+        {
+            importedTypes.add(imported.substring(imported.lastIndexOf('.') + 1));
+        }
+
+        buf.append("/// Synthetic record ").append(recordName).append("\n");
+        buf.append("struct ").append(recordName).append(" {\n");
+        buf.append("    String name;\n");
+        buf.append("    Int64 version = ").append(revision).append(";\n");
+        buf.append("    Vector<String> tags;\n");
+        buf.append("    StringMap<Double> metrics;\n");
+        for (int i = 0; i < importedTypes.size(); i++)
+        {
+            buf.append("    ").append(i % 2 == 0 ? importedTypes.get(i) : "Nullable<" + importedTypes.get(i) + ">").append(" ref").append(i).append(";\n");
+        }
+        if (revision > 0)
+            buf.append("    Int32 revision").append(revision).append(";\n");
+        buf.append("};\n\n");
+
+        buf.append("union ").append(recordName).append("Choice {\n");
+        buf.append("    Void none;\n");
+        buf.append("    ").append(recordName).append(" single;\n");
+        buf.append("    Vector<").append(recordName).append("> many;\n");
+        buf.append("};\n\n");
+
+        buf.append("newtype ").append(recordName).append("Id = String;\n\n");
+        buf.append("};\n");
+        return buf.toString();
+    }
+
+    /**
+     * @return a random count with a geometric distribution, so most modules have few imports and a few have many.
+     */
+    private static int geometric(Random random, double mean)
+    {
+        double p = 1.0 / (mean + 1.0);
+        return (int)Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - p));
+    }
+
+    private static String moduleName(String prefix, int index)
+    {
+        return prefix + ".p" + (index / MODULES_PER_PACKAGE) + ".m" + index;
+    }
+
+    private static String typeName(String prefix, int index)
+    {
+        return moduleName(prefix, index) + ".Record" + index;
+    }
+
+    private static String modulePath(String prefix, int index)
+    {
+        return moduleName(prefix, index).replace('.', '/') + ".adl";
+    }
+
+    /**
+     * Writes a corpus to a directory if it has not already been written, so that generating it is not part of the measured build.
+     *
+     * @param corpusDirectory directory for the corpus, which will contain 'adl' source and 'lib' directories.
+     */
+    public static void writeIfMissing(SyntheticAdlCorpus corpus, File corpusDirectory)
+    {
+        File marker = new File(corpusDirectory, "corpus-" + corpus.moduleCount + "-" + corpus.libraryModuleCount + "-" + corpus.seed);
+        if (marker.exists())
+            return;
+
+        try
+        {
+            deleteRecursively(corpusDirectory);
+            corpus.writeSources(new File(corpusDirectory, "adl"));
+            corpus.writeLibraryJar(new File(corpusDirectory, "lib/adl-library.jar"));
+            Files.createFile(marker.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteRecursively(File file)
+    throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteRecursively(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
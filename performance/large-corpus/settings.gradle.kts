@@ -0,0 +1,4 @@
+rootProject.name = "adl-large-corpus-benchmark"
+
+//Use the plugin from this source tree
+includeBuild("../..")
@@ -0,0 +1,32 @@
+import java.nio.file.Files
+
+plugins {
+    java
+    id("au.com.helixta.adl") apply false
+}
+
+//Benchmark for the cost of the ADL plugin's resource exclusion filter during processResources.
+//Run with Gradle Profiler using the scenarios in resource-processing.scenarios, which compare builds with and without the plugin applied.
+
+val applyAdl = providers.gradleProperty("applyAdl").forUseAtConfigurationTime().getOrElse("true").toBoolean()
+val resourceCount = providers.gradleProperty("resourceCount").forUseAtConfigurationTime().getOrElse("20000").toInt()
+
+if (applyAdl) {
+    apply(plugin = "au.com.helixta.adl")
+}
+
+//Synthetic resources are created once at configuration time so they are not part of the measured work
+val syntheticResources = layout.projectDirectory.dir("synthetic-resources").asFile
+if (!syntheticResources.resolve("count-$resourceCount").exists()) {
+    syntheticResources.deleteRecursively()
+    for (i in 0 until resourceCount) {
+        val file = syntheticResources.resolve("pkg${i % 100}/resource$i.properties")
+        file.parentFile.mkdirs()
+        Files.write(file.toPath(), listOf("value=$i"))
+    }
+    syntheticResources.resolve("count-$resourceCount").createNewFile()
+}
+
+sourceSets.main {
+    resources.srcDir(syntheticResources)
+}
@@ -0,0 +1,4 @@
+rootProject.name = "adl-resource-processing-benchmark"
+
+//Use the plugin from this source tree
+includeBuild("../..")
@@ -0,0 +1,86 @@
+package au.com.helixta.adl.gradle.functest;
+
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.Resource;
+import io.github.classgraph.ScanResult;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Verifies that builds using ADL generation tasks can store and reuse the configuration cache, and that generation still works when the task graph is
+ * loaded from the cache.
+ */
+class ConfigurationCacheAdlGradleTest
+{
+    private static final String PROJECT_RESOURCE_PATH = "gradleConfigurationCacheTest/adlConfigurationCache/";
+
+    @TempDir
+    Path projectDir;
+
+    private void copyTestProject()
+    throws IOException
+    {
+        try (ScanResult scanResult = new ClassGraph().acceptPaths(PROJECT_RESOURCE_PATH).scan())
+        {
+            for (Resource resource : scanResult.getAllResources())
+            {
+                Path targetFile = projectDir.resolve(resource.getPath().substring(PROJECT_RESOURCE_PATH.length()));
+                Files.createDirectories(targetFile.getParent());
+                try (InputStream is = resource.open())
+                {
+                    Files.copy(is, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private BuildResult runBuild()
+    {
+        //Use native where possible since it does not need a Docker daemon
+        String platform = (OS.MAC.isCurrentOs() || OS.LINUX.isCurrentOs()) ? "NATIVE" : "DOCKER";
+
+        GradleRunner runner = GradleRunner.create()
+                                          .withProjectDir(projectDir.toFile())
+                                          .withArguments("--configuration-cache", "--stacktrace", "-Dadl.platform=" + platform, "clean", "runGradleTest")
+                                          .withPluginClasspath()
+                                          .forwardOutput();
+        String testKitDirectory = System.getProperty("test.testkit.directory");
+        if (testKitDirectory != null && !testKitDirectory.trim().isEmpty())
+            runner = runner.withTestKitDir(Paths.get(testKitDirectory.trim()).toFile());
+
+        return runner.build();
+    }
+
+    @Test
+    void configurationCacheIsReused()
+    throws IOException
+    {
+        copyTestProject();
+
+        BuildResult firstResult = runBuild();
+        assertThat(firstResult.getOutput()).contains("Configuration cache entry stored.");
+        assertThat(firstResult.task(":generateAdlJava").getOutcome()).isEqualTo(TaskOutcome.SUCCESS);
+
+        //Java compilation only needs Java generation
+        assertThat(firstResult.task(":generateAdlTypescript")).isNull();
+
+        //Second run must reuse the cached configuration and still be able to execute generation from it
+        BuildResult secondResult = runBuild();
+        assertThat(secondResult.getOutput()).contains("Reusing configuration cache.");
+        assertThat(secondResult.task(":generateAdlJava").getOutcome()).isEqualTo(TaskOutcome.SUCCESS);
+        assertThat(secondResult.task(":test").getOutcome()).isEqualTo(TaskOutcome.SUCCESS);
+    }
+}
@@ -0,0 +1,20 @@
+package au.com.helixta.adl.configcachetest;
+
+import adl.test.sub.Cat;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests that the generated ADL code exists when generated from a build using the configuration cache.
+ */
+class TestAdl
+{
+    @Test
+    void simpleAdlTest()
+    {
+        Cat cat = new Cat("Dinah-Kah", 10);
+        assertThat(cat.getName()).isEqualTo("Dinah-Kah");
+        assertThat(cat.getAge()).isEqualTo(10);
+    }
+}
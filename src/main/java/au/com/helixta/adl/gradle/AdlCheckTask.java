@@ -0,0 +1,119 @@
+package au.com.helixta.adl.gradle;
+
+import au.com.helixta.adl.gradle.config.GenerationsConfiguration;
+import au.com.helixta.adl.gradle.containerexecutor.ExecutionMetrics;
+import au.com.helixta.adl.gradle.generator.AdlGenerationException;
+import au.com.helixta.adl.gradle.generator.AdlGenerator;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that ADL sources compile with the ADL compiler's <code>verify</code> command, without generating any code.
+ * <p>
+ *
+ * Much cheaper than generating code for every configured generation type just to find out whether ADL compiles, since there is no output to write or,
+ * when running in Docker, copy back out of the container.  The task writes a small result file listing the checked sources so that it can be
+ * up-to-date and its result can be reused from the build cache.
+ */
+@CacheableTask
+public abstract class AdlCheckTask extends AdlGenerateTask
+{
+    /**
+     * @return the file that records the sources that were checked.
+     */
+    @OutputFile
+    public abstract RegularFileProperty getResultFile();
+
+    /**
+     * Checked sources are identified by their relative paths so results can be shared between checkouts in different directories.
+     */
+    @Override
+    @InputFiles
+    @SkipWhenEmpty
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileTree getSource()
+    {
+        return super.getSource();
+    }
+
+    @Override
+    @InputFiles
+    @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSearchDirectories();
+
+    /**
+     * Checking does not generate any code, so generations are neither inputs nor outputs.
+     */
+    @Override
+    @Internal
+    public GenerationsConfiguration getGenerations()
+    {
+        return super.getGenerations();
+    }
+
+    /**
+     * Sources are always checked, whether or not any generations are configured.  The task is skipped when there are no sources.
+     */
+    @Override
+    boolean hasWork()
+    {
+        return true;
+    }
+
+    /**
+     * Checks sources instead of generating code.
+     */
+    @Override
+    @TaskAction
+    public void generate()
+    throws IOException, AdlGenerationException
+    {
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        try (AdlGenerator generator = createGenerator(metrics))
+        {
+            generator.verify(this);
+        }
+        finally
+        {
+            metrics.report(getLogger(), getPath());
+        }
+
+        writeResultFile(getResultFile().get().getAsFile());
+    }
+
+    private void writeResultFile(File resultFile)
+    throws IOException
+    {
+        List<String> checkedSources = new ArrayList<>();
+        getSource().visit(details ->
+        {
+            if (!details.isDirectory())
+                checkedSources.add(details.getRelativePath().getPathString());
+        });
+        Collections.sort(checkedSources);
+
+        Files.createDirectories(resultFile.getParentFile().toPath());
+        Files.write(resultFile.toPath(), checkedSources, StandardCharsets.UTF_8);
+    }
+}
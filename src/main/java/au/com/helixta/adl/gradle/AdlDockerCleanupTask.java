@@ -0,0 +1,62 @@
+package au.com.helixta.adl.gradle;
+
+import au.com.helixta.adl.gradle.config.DockerConfiguration;
+import au.com.helixta.adl.gradle.containerexecutor.DockerClientFactory;
+import au.com.helixta.adl.gradle.containerexecutor.DockerReaper;
+import com.github.dockerjava.api.DockerClient;
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Removes ADL Docker containers left behind by killed builds and old locally built ADL tool images.  Unlike the automatic cleanup that runs when
+ * ADL is executed with Docker, this always runs immediately.
+ */
+public abstract class AdlDockerCleanupTask extends DefaultTask
+{
+    @Inject
+    protected abstract ObjectFactory getObjectFactory();
+
+    private DockerConfiguration docker = getObjectFactory().newInstance(DockerConfiguration.class);
+
+    public AdlDockerCleanupTask()
+    {
+        //Docker state is outside of Gradle's view so the task can never be up-to-date
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+    @TaskAction
+    public void cleanup()
+    throws IOException
+    {
+        DockerReaper reaper = new DockerReaper(docker.getOrphanedContainerAge(), docker.getRetainedImageVersions());
+        try (DockerClient dockerClient = new DockerClientFactory(docker).createDockerClient())
+        {
+            DockerReaper.Result result = reaper.reap(dockerClient, Collections.emptySet());
+            getLogger().lifecycle("Removed " + result.getRemovedContainers() + " orphaned ADL container(s) and " + result.getRemovedImages() +
+                                  " old ADL image(s).");
+        }
+    }
+
+    @Internal
+    public DockerConfiguration getDocker()
+    {
+        return docker;
+    }
+
+    public void setDocker(DockerConfiguration docker)
+    {
+        this.docker = docker;
+    }
+
+    public void docker(Action<? super DockerConfiguration> configuration)
+    {
+        configuration.execute(docker);
+    }
+}
@@ -14,6 +14,7 @@ import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.Optional;
 
 import java.io.File;
+import java.time.Duration;
 
 public interface AdlExtension
 {
@@ -107,6 +108,33 @@ public interface AdlExtension
      */
     public void setPlatform(ExecutionPlatform platform);
 
+    /**
+     * @return the maximum number of generations, such as Java and Typescript, that run at the same time when the ADL compiler is executed natively.
+     * If not set, defaults to the number of available processors.
+     */
+    @Internal
+    @Optional
+    public Integer getMaxParallelGenerations();
+
+    /**
+     * Sets the maximum number of generations that run at the same time when the ADL compiler is executed natively.  Set to 1 to run generations one
+     * after another.
+     */
+    public void setMaxParallelGenerations(Integer maxParallelGenerations);
+
+    /**
+     * @return the maximum amount of time a single execution of the ADL compiler may take, natively or in Docker, before it is stopped and the task
+     * fails.  If not set, there is no limit.
+     */
+    @Internal
+    @Optional
+    public Duration getExecutionTimeout();
+
+    /**
+     * Sets the maximum amount of time a single execution of the ADL compiler may take before it is stopped and the task fails.
+     */
+    public void setExecutionTimeout(Duration executionTimeout);
+
     /**
      * Deep-copy another configuration into this one.
      *
@@ -119,6 +147,8 @@ public interface AdlExtension
         setVerbose(other.isVerbose());
         setVersion(other.getVersion());
         setPlatform(other.getPlatform());
+        setMaxParallelGenerations(other.getMaxParallelGenerations());
+        setExecutionTimeout(other.getExecutionTimeout());
         getSearchDirectories().from(other.getSearchDirectories());
         getGenerations().copyFrom(other.getGenerations());
         getDocker().copyFrom(other.getDocker());
@@ -5,19 +5,30 @@ import au.com.helixta.adl.gradle.config.AdlDslMarker;
 import au.com.helixta.adl.gradle.config.DockerConfiguration;
 import au.com.helixta.adl.gradle.config.GenerationConfiguration;
 import au.com.helixta.adl.gradle.config.GenerationsConfiguration;
+import au.com.helixta.adl.gradle.config.TypescriptGenerationConfiguration;
 import au.com.helixta.adl.gradle.containerexecutor.ContainerTool;
 import au.com.helixta.adl.gradle.containerexecutor.DockerClientFactory;
+import au.com.helixta.adl.gradle.containerexecutor.DockerConcurrencyService;
+import au.com.helixta.adl.gradle.containerexecutor.DockerImageService;
+import au.com.helixta.adl.gradle.containerexecutor.DockerSessionService;
+import au.com.helixta.adl.gradle.containerexecutor.DockerTransportService;
+import au.com.helixta.adl.gradle.containerexecutor.ExecutionCancellationService;
+import au.com.helixta.adl.gradle.containerexecutor.ExecutionMetrics;
 import au.com.helixta.adl.gradle.containerexecutor.ExecutionPlatform;
+import au.com.helixta.adl.gradle.distribution.DistributionResolutionService;
 import au.com.helixta.adl.gradle.generator.AdlGenerationException;
 import au.com.helixta.adl.gradle.generator.AdlGenerator;
 import au.com.helixta.adl.gradle.generator.AdlToolGenerator;
 import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
 import au.com.helixta.adl.gradle.generator.ColoredAdlToolLogger;
+import au.com.helixta.adl.gradle.generator.ParallelGenerationExecutor;
 import org.gradle.api.Action;
 import org.gradle.api.file.ArchiveOperations;
 import org.gradle.api.file.FileSystemOperations;
 import org.gradle.api.logging.LogLevel;
 import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.SourceTask;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.initialization.GradleUserHomeDirProvider;
@@ -53,6 +64,43 @@ public abstract class AdlGenerateTask extends SourceTask implements AdlConfigura
     @Inject
     protected abstract TargetMachineFactory getTargetMachineFactory();
 
+    /**
+     * @return the build service used to download tool distributions.  Configured by the plugin for all ADL tasks.
+     */
+    @Internal
+    public abstract Property<DistributionResolutionService> getDistributionResolutionService();
+
+    /**
+     * @return the build service that limits how many Docker containers run at once across the build.  Configured by the plugin for all ADL tasks.
+     */
+    @Internal
+    public abstract Property<DockerConcurrencyService> getDockerConcurrencyService();
+
+    /**
+     * @return the build service providing shared Docker container sessions.  Configured by the plugin for all ADL tasks.
+     */
+    @Internal
+    public abstract Property<DockerSessionService> getDockerSessionService();
+
+    /**
+     * @return the build service that prepares Docker images once per build, possibly in the background.  Configured by the plugin for all ADL tasks.
+     */
+    @Internal
+    public abstract Property<DockerImageService> getDockerImageService();
+
+    /**
+     * @return the build service that shares pooled connections to Docker daemons.  Configured by the plugin for all ADL tasks.
+     */
+    @Internal
+    public abstract Property<DockerTransportService> getDockerTransportService();
+
+    /**
+     * @return the build service that stops tool executions that time out or are still running when the build is cancelled.  Configured by the plugin
+     * for all ADL tasks.
+     */
+    @Internal
+    public abstract Property<ExecutionCancellationService> getExecutionCancellationService();
+
     private GenerationsConfiguration generations = getObjectFactory().newInstance(GenerationsConfiguration.class);
     private DockerConfiguration docker = getObjectFactory().newInstance(DockerConfiguration.class);
 
@@ -60,13 +108,25 @@ public abstract class AdlGenerateTask extends SourceTask implements AdlConfigura
     {
         //TODO does a default pattern belong here or in the source set definition?
         include("**/*.adl");
+
+        onlyIf(task -> ((AdlGenerateTask)task).hasWork());
+    }
+
+    /**
+     * @return whether the task has anything to do.  The plugin registers a task per generation type, which has nothing to do if that type is not
+     *         configured.
+     */
+    boolean hasWork()
+    {
+        return !getGenerations().allGenerations().isEmpty();
     }
 
     @TaskAction
     public void generate()
     throws IOException, AdlGenerationException
     {
-        try (AdlGenerator generator = createGenerator())
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        try (AdlGenerator generator = createGenerator(metrics))
         {
             for (GenerationConfiguration gen : getGenerations().allGenerations())
             {
@@ -76,25 +136,53 @@ public abstract class AdlGenerateTask extends SourceTask implements AdlConfigura
             }
 
             generator.generate(this, getGenerations().allGenerations());
+            copySharedAdlRuntimes();
+        }
+        finally
+        {
+            metrics.report(getLogger(), getPath());
         }
     }
 
-    private AdlGenerator createGenerator()
+    /**
+     * Copies the shared ADL runtime into the output of Typescript generations that use it, since generated Typescript code imports the runtime from
+     * a directory relative to itself.
+     */
+    void copySharedAdlRuntimes()
+    {
+        for (TypescriptGenerationConfiguration generation : getGenerations().getTypescript())
+        {
+            if (generation.isGenerateAdlRuntime() && generation.isSharedAdlRuntime() && generation.getSharedAdlRuntimeDirectory().isPresent())
+            {
+                getFileSystemOperations().copy(spec ->
+                {
+                    spec.from(generation.getSharedAdlRuntimeDirectory());
+                    spec.into(generation.getOutputDirectory());
+                });
+            }
+        }
+    }
+
+    AdlGenerator createGenerator(ExecutionMetrics metrics)
     throws IOException
     {
         StyledTextOutput out = getStyledTextOutputFactory().create(AdlGenerateTask.class, LogLevel.INFO);
         StyledTextOutput err = getStyledTextOutputFactory().create(AdlGenerateTask.class, LogLevel.ERROR);
-        ColoredAdlToolLogger adlLogger = new ColoredAdlToolLogger(out, err, getProject().getLogger().isEnabled(LogLevel.INFO));
+        ColoredAdlToolLogger adlLogger = new ColoredAdlToolLogger(out, err, getLogger().isEnabled(LogLevel.INFO));
 
-        DockerClientFactory dockerFactory = new DockerClientFactory(docker);
+        DockerClientFactory dockerFactory = new DockerClientFactory(docker, getDockerTransportService().getOrNull());
 
-        ContainerTool.Environment environment = new ContainerTool.Environment(getExecOperations(), adlLogger, dockerFactory, getTargetMachineFactory(), getObjectFactory(), getArchiveOperations(), new ArchiveProcessor(getArchiveOperations()), getGradleUserHomeDirProvider(), getFileSystemOperations(), getProject(), getLogger());
+        ContainerTool.Environment environment = new ContainerTool.Environment(getExecOperations(), adlLogger, dockerFactory, getTargetMachineFactory(), getObjectFactory(), getArchiveOperations(), new ArchiveProcessor(getArchiveOperations()), getGradleUserHomeDirProvider(), getFileSystemOperations(), getDistributionResolutionService().get(), getDockerConcurrencyService().get(), getDockerSessionService().get(), getDockerImageService().get(), getExecutionCancellationService().get(), metrics, getLogger());
 
         ExecutionPlatform platform = getPlatform();
         if (platform == null)
             platform = ExecutionPlatform.AUTO;
 
-        return new AdlToolGenerator(environment, docker, platform);
+        Integer maxParallelGenerations = getMaxParallelGenerations();
+        if (maxParallelGenerations == null)
+            maxParallelGenerations = ParallelGenerationExecutor.defaultMaxParallelGenerations();
+
+        return new AdlToolGenerator(environment, docker, platform, maxParallelGenerations);
     }
 
     @Override
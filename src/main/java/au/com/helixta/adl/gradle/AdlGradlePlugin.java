@@ -1,24 +1,65 @@
 package au.com.helixta.adl.gradle;
 
 import au.com.helixta.adl.gradle.config.GenerationConfiguration;
+import au.com.helixta.adl.gradle.config.GenerationsConfiguration;
 import au.com.helixta.adl.gradle.config.JavaGenerationConfiguration;
+import au.com.helixta.adl.gradle.config.TypescriptGenerationConfiguration;
+import au.com.helixta.adl.gradle.containerexecutor.DockerConcurrencyService;
+import au.com.helixta.adl.gradle.containerexecutor.DockerImageService;
+import au.com.helixta.adl.gradle.containerexecutor.DockerSessionService;
+import au.com.helixta.adl.gradle.containerexecutor.DockerTransportService;
+import au.com.helixta.adl.gradle.containerexecutor.ExecutionCancellationService;
+import au.com.helixta.adl.gradle.distribution.DistributionResolutionService;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
+import org.gradle.api.attributes.Bundling;
+import org.gradle.api.attributes.Category;
+import org.gradle.api.attributes.LibraryElements;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.capabilities.Capability;
+import org.gradle.api.component.AdhocComponentWithVariants;
 import org.gradle.api.file.Directory;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.SourceDirectorySet;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.JavaBasePlugin;
+import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.compile.JavaCompile;
 
 import javax.inject.Inject;
-
-import static org.gradle.api.internal.lambdas.SerializableLambdas.spec;
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 public class AdlGradlePlugin implements Plugin<Project>
 {
+    /**
+     * Usage attribute value of the consumable configuration holding generated Typescript code.
+     */
+    public static final String ADL_TYPESCRIPT_USAGE = "adl-typescript";
+
+    /**
+     * Usage attribute value of the consumable configuration holding ADL sources for projects that import them.
+     */
+    public static final String ADL_SOURCES_USAGE = "adl-sources";
+
     private final ObjectFactory objectFactory;
 
     @Inject
@@ -34,6 +75,54 @@ public class AdlGradlePlugin implements Plugin<Project>
 
         AdlExtension extension = project.getExtensions().create("adl", AdlExtension.class);
 
+        //All ADL tasks, including ones registered manually, share build services across the build
+        Provider<DistributionResolutionService> distributionResolutionService = DistributionResolutionService.register(project.getGradle());
+        Provider<DockerConcurrencyService> dockerConcurrencyService = DockerConcurrencyService.register(project.getGradle());
+        Provider<DockerSessionService> dockerSessionService = DockerSessionService.register(project.getGradle());
+        Provider<DockerImageService> dockerImageService = DockerImageService.register(project.getGradle());
+        Provider<DockerTransportService> dockerTransportService = DockerTransportService.register(project.getGradle());
+        Provider<ExecutionCancellationService> executionCancellationService = ExecutionCancellationService.register(project.getGradle());
+        project.getTasks().withType(AdlGenerateTask.class).configureEach(adlTask ->
+        {
+            adlTask.getDistributionResolutionService().convention(distributionResolutionService);
+            adlTask.getDockerConcurrencyService().convention(dockerConcurrencyService);
+            adlTask.getDockerSessionService().convention(dockerSessionService);
+            adlTask.getDockerImageService().convention(dockerImageService);
+            adlTask.getDockerTransportService().convention(dockerTransportService);
+            adlTask.getExecutionCancellationService().convention(executionCancellationService);
+
+            //Lets Gradle know which tasks use the services, so it can honour their usage limits and keep them around as long as needed
+            adlTask.usesService(distributionResolutionService);
+            adlTask.usesService(dockerConcurrencyService);
+            adlTask.usesService(dockerSessionService);
+            adlTask.usesService(dockerImageService);
+            adlTask.usesService(dockerTransportService);
+            adlTask.usesService(executionCancellationService);
+        });
+
+        //Manual cleanup of Docker containers and images, using the same Docker settings as generation
+        project.getTasks().register("adlDockerCleanup", AdlDockerCleanupTask.class, cleanupTask ->
+        {
+            cleanupTask.setDescription("Removes orphaned ADL Docker containers and old ADL tool images.");
+            cleanupTask.getDocker().copyFrom(extension.getDocker());
+        });
+
+        //Shared ADL runtimes, generated once per project for the generations that use them instead of by each generation
+        Provider<Directory> sharedJavaRuntimeDirectory = project.getLayout().getBuildDirectory().dir("generated/sources/adl-runtime/java");
+        Provider<Directory> sharedTypescriptRuntimeDirectory = project.getLayout().getBuildDirectory().dir("generated/sources/adl-runtime/typescript");
+        TaskProvider<AdlRuntimeGenerateTask> javaRuntimeTask = project.getTasks().register("generateAdlJavaRuntime", AdlRuntimeGenerateTask.class, runtimeTask ->
+        {
+            runtimeTask.setDescription("Generates the shared ADL Java runtime.");
+            runtimeTask.copyFrom(extension);
+            runtimeTask.useSharedJavaRuntime(sharedJavaRuntimeDirectory);
+        });
+        TaskProvider<AdlRuntimeGenerateTask> typescriptRuntimeTask = project.getTasks().register("generateAdlTypescriptRuntime", AdlRuntimeGenerateTask.class, runtimeTask ->
+        {
+            runtimeTask.setDescription("Generates the shared ADL Typescript runtime.");
+            runtimeTask.copyFrom(extension);
+            runtimeTask.useSharedTypescriptRuntime(sharedTypescriptRuntimeDirectory);
+        });
+
         //Add configurations for search directories
         Configuration adlSearchDirectoriesConfig = project.getConfigurations().create("adlSearchDirectories", c -> {
             c.setCanBeResolved(true);
@@ -44,6 +133,18 @@ public class AdlGradlePlugin implements Plugin<Project>
             c.setCanBeConsumed(false);
         }).extendsFrom(adlSearchDirectoriesConfig);
 
+        //Add configurations for projects whose ADL is imported and whose generated code is used, see registerAdlImports()
+        Configuration adlImportsConfig = project.getConfigurations().create("adlImports", c -> {
+            c.setCanBeResolved(false);
+            c.setCanBeConsumed(false);
+        });
+        Configuration testAdlImportsConfig = project.getConfigurations().create("testAdlImports", c -> {
+            c.setCanBeResolved(false);
+            c.setCanBeConsumed(false);
+        }).extendsFrom(adlImportsConfig);
+        Configuration adlImportSourcesConfig = createAdlImportSourcesConfiguration(project, "adlImportSources", adlImportsConfig);
+        Configuration testAdlImportSourcesConfig = createAdlImportSourcesConfiguration(project, "testAdlImportSources", testAdlImportsConfig);
+
         //For every source set, add an 'adl' source directory
         //e.g. src/main -> src/main/adl
 
@@ -55,69 +156,464 @@ public class AdlGradlePlugin implements Plugin<Project>
 
             adlSource.srcDir("src/" + sourceSet.getName() + "/adl");
 
-            // Explicitly capture only a FileCollection in the lambda below for compatibility with configuration-cache.
+            // Only FileCollections are held by the exclusion spec for compatibility with configuration-cache.
             final FileCollection adlSourceFiles = adlSource;
-            sourceSet.getResources().getFilter().exclude(
-                    spec(element -> adlSourceFiles.contains(element.getFile()))
-            );
+            AdlResourceExclusionSpec adlResourceExclusionSpec = new AdlResourceExclusionSpec(adlSource.getSourceDirectories(), adlSourceFiles);
+            sourceSet.getResources().getFilter().exclude(adlResourceExclusionSpec);
+            project.getGradle().getTaskGraph().whenReady(graph -> adlResourceExclusionSpec.configurationComplete());
             sourceSet.getAllSource().source(adlSource);
 
+            //Special case configure test generate tasks with test search directories config,
+            //all others just get the standard search directories
+            Configuration searchDirectoryConfigForSourceSet;
+            Configuration importsConfigForSourceSet;
+            Configuration importSourcesConfigForSourceSet;
+            if ("test".equals(sourceSet.getName()))
+            {
+                searchDirectoryConfigForSourceSet = testAdlSearchDirectoriesConfig;
+                importsConfigForSourceSet = testAdlImportsConfig;
+                importSourcesConfigForSourceSet = testAdlImportSourcesConfig;
+            }
+            else
+            {
+                searchDirectoryConfigForSourceSet = adlSearchDirectoriesConfig;
+                importsConfigForSourceSet = adlImportsConfig;
+                importSourcesConfigForSourceSet = adlImportSourcesConfig;
+            }
+            registerAdlImports(project, sourceSet, importsConfigForSourceSet);
+
+            //Slight mis-use getTaskName() to get a decent configuration name for sources
+            //e.g. adlSourcesElements, adlSourcesTestElements
+            String adlSourcesConfigurationName = sourceSet.getTaskName("adlSources", "Elements");
+            Configuration adlSourcesElementsConfig = project.getConfigurations().create(adlSourcesConfigurationName, c -> {
+                c.setCanBeResolved(false);
+                c.setCanBeConsumed(true);
+            }).extendsFrom(searchDirectoryConfigForSourceSet);
+            adlSourcesElementsConfig.getDependencies().add(project.getDependencies().create(adlSource.getSourceDirectories()));
+
+            //Special case - make the testAdlSearchDirectories config extend the adlSourcesElements one so we get main source set ADL sources in the
+            //test search path
+            if ("main".equals(sourceSet.getName()))
+                testAdlSearchDirectoriesConfig.extendsFrom(adlSourcesElementsConfig);
+
+            //One task per generation type so each can run, be cached and be up-to-date independently
+            //e.g. generateAdlJava, generateTestAdlTypescript
+            //The aggregate task, e.g. generateAdl, runs all of them
             String taskName = sourceSet.getTaskName("generate", "Adl");
-            project.getTasks().register(taskName, AdlGenerateTask.class, adlTask ->
+            TaskProvider<Task> aggregateTask = project.getTasks().register(taskName, task ->
+            {
+                task.setDescription("Generates code from " + sourceSet.getName() + " ADL sources for all configured generation types.");
+            });
+            for (String generationType : GenerationsConfiguration.generationTypes())
             {
-                adlTask.copyFrom(extension);
-                adlTask.source(adlSourceFiles);
-
-                //Special case configure test generate task with test search directories config,
-                //all others just get the standard search directories
-                Configuration searchDirectoryConfigForTask;
-                if ("generateTestAdl".equals(adlTask.getName()))
-                    searchDirectoryConfigForTask = testAdlSearchDirectoriesConfig;
-                else
-                    searchDirectoryConfigForTask = adlSearchDirectoriesConfig;
-
-                adlTask.searchDirectory(searchDirectoryConfigForTask);
-
-                //Slight mis-use getTaskName() to get a decent configuration name for sources
-                //e.g. adlSourcesElements, adlSourcesTestElements
-                String adlSourcesConfigurationName = sourceSet.getTaskName("adlSources", "Elements");
-                Configuration adlSourcesElementsConfig = project.getConfigurations().create(adlSourcesConfigurationName, c -> {
-                    c.setCanBeResolved(false);
-                    c.setCanBeConsumed(true);
-                }).extendsFrom(searchDirectoryConfigForTask);
-                adlSourcesElementsConfig.getDependencies().add(project.getDependencies().create(adlSource.getSourceDirectories()));
-
-                //Special case - make the testAdlSearchDirectories config extend the adlSourcesElements one so we get main source set ADL sources in the
-                //test search path
-                if ("main".equals(sourceSet.getName()))
-                    testAdlSearchDirectoriesConfig.extendsFrom(adlSourcesElementsConfig);
-
-                //Auto-configure the output directories if not explicitly defined
-                for (GenerationConfiguration generation : adlTask.getGenerations().allGenerations())
+                String generationTaskName = generationTaskName(sourceSet, generationType);
+                project.getTasks().register(generationTaskName, AdlGenerateTask.class, adlTask ->
                 {
-                    if (!generation.getOutputDirectory().isPresent())
+                    adlTask.setDescription("Generates " + generationType + " code from " + sourceSet.getName() + " ADL sources.");
+                    adlTask.copyFrom(extension);
+                    adlTask.getGenerations().retainGenerationType(generationType);
+                    adlTask.source(adlSourceFiles);
+                    adlTask.searchDirectory(searchDirectoryConfigForSourceSet);
+                    adlTask.searchDirectory(importSourcesConfigForSourceSet);
+
+                    for (GenerationConfiguration generation : adlTask.getGenerations().allGenerations())
                     {
-                        //e.g. build/generated/sources/adl/java/main/
-                        Provider<Directory> outputDirectory = project.getLayout().getBuildDirectory().dir(
-                                                                "generated/sources/adl/" +
-                                                                generation.generationType() + "/" +
-                                                                sourceSet.getName());
-                        generation.getOutputDirectory().set(outputDirectory);
+                        configureGenerationOutput(project, sourceSet, adlTask, generation, sharedTypescriptRuntimeDirectory, typescriptRuntimeTask);
+
+                        //Add output of Java ADL generation to Java input source dirs
+                        //(special case to support Java plugin so user doesn't have to manually configure extra source dir for it)
+                        //Separately compiled generated code goes into its own jar instead
+                        if (generation instanceof JavaGenerationConfiguration && !((JavaGenerationConfiguration)generation).isSeparateCompilation())
+                            sourceSet.getJava().srcDir(generation.getOutputDirectory());
                     }
+                });
+                aggregateTask.configure(task -> task.dependsOn(generationTaskName));
+            }
+
+            //Checks that ADL compiles without generating code, as part of the standard check lifecycle
+            //e.g. checkAdl, checkTestAdl
+            TaskProvider<AdlCheckTask> checkTask = project.getTasks().register(sourceSet.getTaskName("check", "Adl"), AdlCheckTask.class, adlCheckTask ->
+            {
+                adlCheckTask.setDescription("Checks that " + sourceSet.getName() + " ADL sources compile.");
+                adlCheckTask.copyFrom(extension);
+                adlCheckTask.source(adlSourceFiles);
+                adlCheckTask.searchDirectory(searchDirectoryConfigForSourceSet);
+                adlCheckTask.searchDirectory(importSourcesConfigForSourceSet);
 
-                    //Add output of Java ADL generation to Java input source dirs
-                    //(special case to support Java plugin so user doesn't have to manually configure extra source dir for it)
-                    if (generation instanceof JavaGenerationConfiguration)
-                        sourceSet.getJava().srcDir(generation.getOutputDirectory());
+                //e.g. build/adl-check/main.txt
+                adlCheckTask.getResultFile().set(project.getLayout().getBuildDirectory().file("adl-check/" + sourceSet.getName() + ".txt"));
+            });
+            project.getTasks().named(JavaBasePlugin.CHECK_TASK_NAME, task -> task.dependsOn(checkTask));
+
+            //Long-running task that regenerates all generation types into the same outputs whenever ADL changes
+            //It shares its output directories with the generation tasks, so it always runs after them when both are requested
+            //e.g. adlWatch, testAdlWatch
+            project.getTasks().register(sourceSet.getTaskName(null, "adlWatch"), AdlWatchTask.class, watchTask ->
+            {
+                watchTask.setDescription("Watches " + sourceSet.getName() + " ADL sources and regenerates code when they change.");
+                watchTask.copyFrom(extension);
+                watchTask.source(adlSourceFiles);
+                watchTask.searchDirectory(searchDirectoryConfigForSourceSet);
+                watchTask.searchDirectory(importSourcesConfigForSourceSet);
+                watchTask.getWatchDirectories().from(adlSource.getSourceDirectories());
+                for (String generationType : GenerationsConfiguration.generationTypes())
+                {
+                    watchTask.mustRunAfter(generationTaskName(sourceSet, generationType));
+                }
+                for (GenerationConfiguration generation : watchTask.getGenerations().allGenerations())
+                {
+                    configureGenerationOutput(project, sourceSet, watchTask, generation, sharedTypescriptRuntimeDirectory, typescriptRuntimeTask);
                 }
             });
 
-            //Make the Java compile task depend on this if it has Java generators
+            //Make the Java compile task depend on Java generation only if there are Java generators compiled along with the source set
+            String javaGenerationTaskName = generationTaskName(sourceSet, "java");
             project.getTasks().named(sourceSet.getCompileJavaTaskName(), compileJavaTask ->
             {
-                if (extension.getGenerations() != null && !extension.getGenerations().getJava().isEmpty())
-                    compileJavaTask.dependsOn(taskName);
+                if (extension.getGenerations() != null &&
+                    extension.getGenerations().getJava().stream().anyMatch(generation -> !generation.isSeparateCompilation()))
+                {
+                    compileJavaTask.dependsOn(javaGenerationTaskName);
+                }
             });
+
+            //The shared Java runtime is compiled with the main source set, or separately along with generated code that is compiled separately,
+            //and other source sets such as test get it from there
+            FileCollection separateJavaRuntimeSources = project.files();
+            if (SourceSet.MAIN_SOURCE_SET_NAME.equals(sourceSet.getName()))
+            {
+                sourceSet.getJava().srcDir(sharedJavaRuntimeSources(project, extension, javaRuntimeTask, sharedJavaRuntimeDirectory, false));
+                separateJavaRuntimeSources = sharedJavaRuntimeSources(project, extension, javaRuntimeTask, sharedJavaRuntimeDirectory, true);
+            }
+
+            registerSeparateJavaCompilation(project, sourceSet, extension, javaGenerationTaskName, separateJavaRuntimeSources);
+
+            //Downstream projects can use generated code of the main source set instead of regenerating it themselves
+            if (SourceSet.MAIN_SOURCE_SET_NAME.equals(sourceSet.getName()))
+                registerGeneratedCodeVariants(project, sourceSet, extension, adlSourcesElementsConfig, importsConfigForSourceSet);
         });
     }
+
+    /**
+     * Defaults a generation's output directory if it was not explicitly defined, and points Typescript generations that use the shared ADL runtime at it.
+     */
+    private static void configureGenerationOutput(Project project, SourceSet sourceSet, AdlGenerateTask adlTask, GenerationConfiguration generation,
+                                                  Provider<Directory> sharedTypescriptRuntimeDirectory, TaskProvider<?> typescriptRuntimeTask)
+    {
+        if (!generation.getOutputDirectory().isPresent())
+        {
+            //e.g. build/generated/sources/adl/java/main/
+            Provider<Directory> outputDirectory = project.getLayout().getBuildDirectory().dir(
+                                                    "generated/sources/adl/" +
+                                                    generation.generationType() + "/" +
+                                                    sourceSet.getName());
+            generation.getOutputDirectory().set(outputDirectory);
+        }
+
+        //Typescript generations using the shared runtime get a copy of it
+        if (generation instanceof TypescriptGenerationConfiguration)
+        {
+            TypescriptGenerationConfiguration typescriptGeneration = (TypescriptGenerationConfiguration)generation;
+            if (typescriptGeneration.isGenerateAdlRuntime() && typescriptGeneration.isSharedAdlRuntime())
+            {
+                typescriptGeneration.getSharedAdlRuntimeDirectory().set(sharedTypescriptRuntimeDirectory);
+                adlTask.dependsOn(typescriptRuntimeTask);
+            }
+        }
+    }
+
+    /**
+     * Registers tasks that compile separately compiled generated Java code of a source set into its own classes directory and jar.  When any Java
+     * generation uses separate compilation, the classes are put on the source set's compile classpath and added to the source set's output.  Keeping
+     * generated code out of the source set's own compilation means it is only recompiled when it changes and does not take part in incremental
+     * compilation of hand-written code.
+     */
+    private static void registerSeparateJavaCompilation(Project project, SourceSet sourceSet, AdlExtension extension, String javaGenerationTaskName,
+                                                        FileCollection additionalSources)
+    {
+        //e.g. compileAdlJava, compileTestAdlJava
+        String compileTaskName = sourceSet.getCompileTaskName("adlJava");
+
+        //e.g. adlJavaJar, testAdlJavaJar
+        String jarTaskName = sourceSet.getTaskName(null, "adlJavaJar");
+
+        Provider<Directory> classesDirectory = separateJavaClassesDirectory(project, sourceSet);
+
+        //Classes are only used when separate compilation is used, and are resolved lazily since the extension is configured after the plugin is applied
+        FileCollection separatelyCompiledClasses = project.files((Callable<Object>)() ->
+        {
+            if (usesSeparateJavaCompilation(extension))
+                return project.files(classesDirectory).builtBy(compileTaskName);
+            else
+                return Collections.emptyList();
+        });
+
+        //Hand-written code compiles against the classes, but they are compile-only so they never show up as a file dependency that publishing
+        //would drop from POMs and module metadata
+        Dependency generatedClassesDependency = project.getDependencies().add(sourceSet.getCompileOnlyConfigurationName(), separatelyCompiledClasses);
+
+        //Part of the source set's output, so they are on its runtime classpath and visible to other source sets that use it
+        //The main jar leaves them out since they are published in their own variants, see registerGeneratedCodeVariants()
+        sourceSet.getOutput().dir(Collections.singletonMap("builtBy", separatelyCompiledClasses), classesDirectory);
+        project.getTasks().named(sourceSet.getClassesTaskName()).configure(classes -> classes.dependsOn(separatelyCompiledClasses));
+
+        TaskProvider<JavaCompile> compileTask = project.getTasks().register(compileTaskName, JavaCompile.class, compile ->
+        {
+            compile.setDescription("Compiles separately compiled ADL-generated Java code of " + sourceSet.getName() + ".");
+            compile.dependsOn(javaGenerationTaskName);
+            compile.setSource(project.files((Callable<Object>)() ->
+            {
+                AdlGenerateTask javaGenerationTask = project.getTasks().named(javaGenerationTaskName, AdlGenerateTask.class).get();
+                return javaGenerationTask.getGenerations().getJava().stream()
+                                         .filter(JavaGenerationConfiguration::isSeparateCompilation)
+                                         .map(JavaGenerationConfiguration::getOutputDirectory)
+                                         .collect(Collectors.toList());
+            }, additionalSources));
+
+            //Generated code compiles against the source set's dependencies, but not against its own classes
+            Configuration compileClasspath = project.getConfigurations().getByName(sourceSet.getCompileClasspathConfigurationName());
+            compile.setClasspath(compileClasspath.copyRecursive(dependency -> dependency != generatedClassesDependency));
+            compile.getOptions().setAnnotationProcessorPath(project.files());
+
+            compile.getDestinationDirectory().set(classesDirectory);
+        });
+
+        project.getTasks().register(jarTaskName, Jar.class, jar ->
+        {
+            jar.setDescription("Assembles a jar of separately compiled ADL-generated Java code of " + sourceSet.getName() + ".");
+            jar.from(compileTask);
+
+            //e.g. build/adl-libs/myproject-adl.jar, build/adl-libs/myproject-test-adl.jar
+            jar.getDestinationDirectory().set(project.getLayout().getBuildDirectory().dir("adl-libs"));
+            jar.getArchiveClassifier().set(SourceSet.MAIN_SOURCE_SET_NAME.equals(sourceSet.getName()) ? "adl" : sourceSet.getName() + "-adl");
+        });
+    }
+
+    /**
+     * @return the directory separately compiled generated Java code of a source set is compiled into, e.g. 'build/classes/adl/java/main'.
+     */
+    private static Provider<Directory> separateJavaClassesDirectory(Project project, SourceSet sourceSet)
+    {
+        return project.getLayout().getBuildDirectory().dir("classes/adl/java/" + sourceSet.getName());
+    }
+
+    /**
+     * @return whether any Java generation uses separate compilation.  Only valid once the extension has been configured.
+     */
+    private static boolean usesSeparateJavaCompilation(AdlExtension extension)
+    {
+        return extension.getGenerations() != null && extension.getGenerations().getJava().stream().anyMatch(JavaGenerationConfiguration::isSeparateCompilation);
+    }
+
+    /**
+     * @return the shared Java runtime source directory if any Java generation uses the shared runtime and its separate compilation setting matches,
+     *         otherwise nothing.  Evaluated lazily since the extension is configured after the plugin is applied.
+     */
+    private static FileCollection sharedJavaRuntimeSources(Project project, AdlExtension extension, TaskProvider<AdlRuntimeGenerateTask> javaRuntimeTask,
+                                                           Provider<Directory> sharedJavaRuntimeDirectory, boolean separateCompilation)
+    {
+        return project.files((Callable<Object>)() ->
+        {
+            if (extension.getGenerations() == null)
+                return Collections.emptyList();
+
+            JavaGenerationConfiguration generation = AdlRuntimeGenerateTask.firstSharedJavaRuntimeGeneration(extension.getGenerations().getJava());
+            if (generation == null || generation.isSeparateCompilation() != separateCompilation)
+                return Collections.emptyList();
+
+            return project.files(sharedJavaRuntimeDirectory).builtBy(javaRuntimeTask);
+        });
+    }
+
+    /**
+     * Creates a configuration that resolves the ADL sources of imported projects so they can be used as search directories.
+     */
+    private Configuration createAdlImportSourcesConfiguration(Project project, String name, Configuration adlImportsConfig)
+    {
+        return project.getConfigurations().create(name, c ->
+        {
+            c.setCanBeResolved(true);
+            c.setCanBeConsumed(false);
+            c.getAttributes().attribute(Usage.USAGE_ATTRIBUTE, objectFactory.named(Usage.class, ADL_SOURCES_USAGE));
+        }).extendsFrom(adlImportsConfig);
+    }
+
+    /**
+     * Projects added to an ADL imports configuration have their ADL sources added as search directories, and the Java code they have already
+     * generated and separately compiled added to the source set's dependencies, so the importing project only needs to generate code for its own ADL.
+     */
+    private static void registerAdlImports(Project project, SourceSet sourceSet, Configuration adlImportsConfig)
+    {
+        //Resolved lazily since the imported project's group is usually set after this plugin is applied
+        Configuration implementation = project.getConfigurations().getByName(sourceSet.getImplementationConfigurationName());
+        implementation.getDependencies().addAllLater(project.provider(() ->
+            adlImportsConfig.getDependencies().withType(ProjectDependency.class).stream().map(importedProject ->
+            {
+                ProjectDependency adlJavaDependency = importedProject.copy();
+                adlJavaDependency.capabilities(capabilities -> capabilities.requireCapability(importedProject.getGroup() + ":" + importedProject.getName() + "-adl-java"));
+                return (Dependency)adlJavaDependency;
+            }).collect(Collectors.toList())));
+    }
+
+    /**
+     * Registers consumable configurations that publish generated code so that projects importing this project's ADL can use it instead of generating
+     * and compiling it again.
+     * <p>
+     *
+     * Compiled generated Java, from separate compilation, is published with the standard Java library attributes and a '&lt;group&gt;:&lt;name&gt;-adl-java'
+     * capability so it never competes with the project's own Java variants.  When separate compilation is used, these classes are left out of the
+     * main jar, and the project's own Java variants depend on the generated Java variants instead, so consumers never get the classes twice.
+     * Generated Typescript is published as a directory with the {@value #ADL_TYPESCRIPT_USAGE} usage, and ADL sources, along with the ADL of
+     * imported projects, with the {@value #ADL_SOURCES_USAGE} usage.
+     */
+    private void registerGeneratedCodeVariants(Project project, SourceSet sourceSet, AdlExtension extension, Configuration adlSourcesElementsConfig,
+                                               Configuration adlImportsConfig)
+    {
+        String jarTaskName = sourceSet.getTaskName(null, "adlJavaJar");
+        ProjectCapability adlJavaCapability = new ProjectCapability(project, "-adl-java");
+        for (String usage : Arrays.asList(Usage.JAVA_API, Usage.JAVA_RUNTIME))
+        {
+            //e.g. adlJavaApiElements, adlJavaRuntimeElements
+            String configurationName = sourceSet.getTaskName("adlJava", Usage.JAVA_API.equals(usage) ? "ApiElements" : "RuntimeElements");
+            Configuration adlJavaElementsConfig = project.getConfigurations().create(configurationName, c ->
+            {
+                c.setCanBeResolved(false);
+                c.setCanBeConsumed(true);
+                c.setDescription("Separately compiled ADL-generated Java code of " + sourceSet.getName() + ".");
+                c.getAttributes().attribute(Usage.USAGE_ATTRIBUTE, objectFactory.named(Usage.class, usage));
+                c.getAttributes().attribute(Category.CATEGORY_ATTRIBUTE, objectFactory.named(Category.class, Category.LIBRARY));
+                c.getAttributes().attribute(LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE, objectFactory.named(LibraryElements.class, LibraryElements.JAR));
+                c.getAttributes().attribute(Bundling.BUNDLING_ATTRIBUTE, objectFactory.named(Bundling.class, Bundling.EXTERNAL));
+                c.getOutgoing().capability(adlJavaCapability);
+                c.getOutgoing().artifact(project.getTasks().named(jarTaskName));
+            });
+
+            //Published along with the rest of the Java component, but only when there is separately compiled code to publish
+            String mavenScope = Usage.JAVA_API.equals(usage) ? "compile" : "runtime";
+            project.getComponents().withType(AdhocComponentWithVariants.class).matching(component -> "java".equals(component.getName())).all(javaComponent ->
+                javaComponent.addVariantsFromConfiguration(adlJavaElementsConfig, variant ->
+                {
+                    if (usesSeparateJavaCompilation(extension))
+                        variant.mapToMavenScope(mavenScope);
+                    else
+                        variant.skip();
+                }));
+        }
+
+        //The project's own Java variants get the generated classes from the generated Java variants, the same way test fixtures depend on their project
+        project.getConfigurations().matching(c -> JavaPlugin.API_ELEMENTS_CONFIGURATION_NAME.equals(c.getName()) ||
+                                                  JavaPlugin.RUNTIME_ELEMENTS_CONFIGURATION_NAME.equals(c.getName())).all(elements ->
+            elements.getDependencies().addAllLater(project.provider(() ->
+            {
+                if (!usesSeparateJavaCompilation(extension))
+                    return Collections.<Dependency>emptyList();
+
+                ProjectDependency adlJavaDependency = (ProjectDependency)project.getDependencies().create(project);
+                adlJavaDependency.capabilities(capabilities -> capabilities.requireCapability(adlJavaCapability.getGroup() + ":" + adlJavaCapability.getName()));
+                return Collections.<Dependency>singletonList(adlJavaDependency);
+            })));
+
+        //So the main jar leaves out the generated classes
+        project.getTasks().withType(Jar.class).configureEach(jar ->
+        {
+            if (sourceSet.getJarTaskName().equals(jar.getName()))
+                jar.exclude(new UnderDirectorySpec(separateJavaClassesDirectory(project, sourceSet).get().getAsFile()));
+        });
+
+        //ADL sources for projects that import this project's ADL, see registerAdlImports()
+        project.getConfigurations().create("adlImportElements", c ->
+        {
+            c.setCanBeResolved(false);
+            c.setCanBeConsumed(true);
+            c.setDescription("ADL sources of " + sourceSet.getName() + " and of the projects it imports ADL from.");
+            c.getAttributes().attribute(Usage.USAGE_ATTRIBUTE, objectFactory.named(Usage.class, ADL_SOURCES_USAGE));
+        }).extendsFrom(adlSourcesElementsConfig, adlImportsConfig);
+
+        //e.g. adlTypescriptElements
+        String typescriptGenerationTaskName = generationTaskName(sourceSet, "typescript");
+        project.getConfigurations().create(sourceSet.getTaskName("adlTypescript", "Elements"), c ->
+        {
+            c.setCanBeResolved(false);
+            c.setCanBeConsumed(true);
+            c.setDescription("ADL-generated Typescript code of " + sourceSet.getName() + ".");
+            c.getAttributes().attribute(Usage.USAGE_ATTRIBUTE, objectFactory.named(Usage.class, ADL_TYPESCRIPT_USAGE));
+
+            //Only resolved when consumed, by which time the extension has been configured
+            Provider<Directory> typescriptOutputDirectory = project.getTasks().named(typescriptGenerationTaskName, AdlGenerateTask.class).flatMap(task ->
+            {
+                List<TypescriptGenerationConfiguration> typescriptGenerations = task.getGenerations().getTypescript();
+                if (typescriptGenerations.isEmpty())
+                    throw new InvalidUserDataException("No ADL Typescript generation is configured for " + sourceSet.getName() + " in " + project + ".");
+
+                return typescriptGenerations.get(0).getOutputDirectory();
+            });
+            c.getOutgoing().artifact(typescriptOutputDirectory, artifact ->
+            {
+                artifact.setType(ArtifactTypeDefinition.DIRECTORY_TYPE);
+                artifact.builtBy(typescriptGenerationTaskName);
+            });
+        });
+    }
+
+    /**
+     * @return the name of the task that generates code of a single generation type for a source set, e.g. 'generateAdlJava' or
+     *         'generateTestAdlTypescript'.
+     */
+    static String generationTaskName(SourceSet sourceSet, String generationType)
+    {
+        return sourceSet.getTaskName("generate", "Adl" + Character.toUpperCase(generationType.charAt(0)) + generationType.substring(1));
+    }
+
+    /**
+     * Matches files underneath a directory.
+     */
+    private static class UnderDirectorySpec implements Spec<FileTreeElement>, Serializable
+    {
+        private final File directory;
+
+        public UnderDirectorySpec(File directory)
+        {
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean isSatisfiedBy(FileTreeElement element)
+        {
+            return element.getFile().toPath().startsWith(directory.toPath());
+        }
+    }
+
+    /**
+     * A capability named after the project with a suffix.  The project's group and version are read when the capability is used rather than when the
+     * plugin is applied, since they are usually set later in the build script.
+     */
+    private static class ProjectCapability implements Capability
+    {
+        private final Project project;
+        private final String nameSuffix;
+
+        public ProjectCapability(Project project, String nameSuffix)
+        {
+            this.project = project;
+            this.nameSuffix = nameSuffix;
+        }
+
+        @Override
+        public String getGroup()
+        {
+            return project.getGroup().toString();
+        }
+
+        @Override
+        public String getName()
+        {
+            return project.getName() + nameSuffix;
+        }
+
+        @Override
+        public String getVersion()
+        {
+            return project.getVersion().toString();
+        }
+    }
 }
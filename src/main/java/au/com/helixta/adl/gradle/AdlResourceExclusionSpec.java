@@ -0,0 +1,125 @@
+package au.com.helixta.adl.gradle;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.specs.Spec;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Matches resource elements that are ADL source files so they can be excluded from a source set's resources.
+ * <p>
+ *
+ * Resources outside the ADL source directories are rejected with a path prefix check.  Once the build is configured, the source directories and files
+ * are only resolved once and reused for every resource.
+ */
+class AdlResourceExclusionSpec implements Spec<FileTreeElement>, Serializable
+{
+    private final FileCollection adlSourceDirectories;
+    private final FileCollection adlSourceFiles;
+
+    /**
+     * Whether source directories might still change.  Transient, so a spec loaded from the configuration cache is already configured.
+     */
+    private transient volatile boolean configuring = true;
+
+    private transient volatile ResolvedSourceFiles resolvedSourceFiles;
+
+    /**
+     * Creates an exclusion spec.
+     *
+     * @param adlSourceDirectories the root source directories of the ADL source set.
+     * @param adlSourceFiles the ADL source files, which should all be underneath one of the source directories.
+     */
+    public AdlResourceExclusionSpec(FileCollection adlSourceDirectories, FileCollection adlSourceFiles)
+    {
+        this.adlSourceDirectories = Objects.requireNonNull(adlSourceDirectories);
+        this.adlSourceFiles = Objects.requireNonNull(adlSourceFiles);
+    }
+
+    /**
+     * Called once the build is configured and the source directories can no longer change.  Until then, source directories are resolved each time
+     * the spec is used.
+     */
+    public void configurationComplete()
+    {
+        //Anything resolved before this point might be out of date
+        resolvedSourceFiles = null;
+        configuring = false;
+    }
+
+    @Override
+    public boolean isSatisfiedBy(FileTreeElement element)
+    {
+        //Source sets only contain files, never directories
+        if (element.isDirectory())
+            return false;
+
+        File file = element.getFile();
+        ResolvedSourceFiles resolved = resolve();
+        if (!resolved.isUnderSourceDirectory(file.toPath()))
+            return false;
+
+        return resolved.getSourceFiles().contains(file);
+    }
+
+    private ResolvedSourceFiles resolve()
+    {
+        ResolvedSourceFiles result = resolvedSourceFiles;
+        if (result != null && !configuring)
+            return result;
+
+        List<Path> sourceDirectories = new ArrayList<>();
+        for (File sourceDirectory : adlSourceDirectories.getFiles())
+        {
+            sourceDirectories.add(sourceDirectory.getAbsoluteFile().toPath().normalize());
+        }
+
+        //Source files only need to be scanned again if the directories changed
+        if (result == null || !result.sourceDirectories.equals(sourceDirectories))
+        {
+            result = new ResolvedSourceFiles(sourceDirectories);
+            resolvedSourceFiles = result;
+        }
+        return result;
+    }
+
+    /**
+     * Source directories and the source files in them.  Source files are only scanned the first time a resource is found under one of the directories.
+     */
+    private class ResolvedSourceFiles
+    {
+        private final List<Path> sourceDirectories;
+        private Set<File> sourceFiles;
+
+        public ResolvedSourceFiles(List<Path> sourceDirectories)
+        {
+            this.sourceDirectories = sourceDirectories;
+        }
+
+        public boolean isUnderSourceDirectory(Path path)
+        {
+            for (Path sourceDirectory : sourceDirectories)
+            {
+                if (path.startsWith(sourceDirectory))
+                    return true;
+            }
+            return false;
+        }
+
+        public synchronized Set<File> getSourceFiles()
+        {
+            if (sourceFiles == null)
+                sourceFiles = new HashSet<>(adlSourceFiles.getFiles());
+
+            return sourceFiles;
+        }
+    }
+}
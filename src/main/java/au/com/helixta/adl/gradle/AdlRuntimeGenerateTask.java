@@ -0,0 +1,110 @@
+package au.com.helixta.adl.gradle;
+
+import au.com.helixta.adl.gradle.config.JavaGenerationConfiguration;
+import au.com.helixta.adl.gradle.config.TypescriptGenerationConfiguration;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Internal;
+
+import java.util.List;
+
+/**
+ * Generates the ADL runtime once for all generations of a project that use the shared runtime, instead of each generation emitting its own copy.
+ * <p>
+ *
+ * The runtime only depends on the ADL version and runtime settings such as the runtime package, so the task does not read ADL sources and its output
+ * can be reused from the build cache by every project that uses the same settings.
+ */
+@CacheableTask
+public abstract class AdlRuntimeGenerateTask extends AdlGenerateTask
+{
+    /**
+     * The runtime does not depend on any ADL source files, so they are not inputs.
+     */
+    @Override
+    @Internal
+    public FileTree getSource()
+    {
+        return super.getSource();
+    }
+
+    /**
+     * Replaces the task's generations with a single generation of the shared Java runtime, using the runtime settings of the first Java generation
+     * that uses the shared runtime.  Does nothing else if no Java generation uses it.
+     *
+     * @param outputDirectory the directory the runtime is generated into.
+     */
+    void useSharedJavaRuntime(Provider<Directory> outputDirectory)
+    {
+        JavaGenerationConfiguration sharedRuntimeGeneration = firstSharedJavaRuntimeGeneration(getGenerations().getJava());
+        clearGenerations();
+        if (sharedRuntimeGeneration == null)
+            return;
+
+        getGenerations().java(runtime ->
+        {
+            runtime.setGenerateAdlRuntime(true);
+            runtime.setJavaPackage(sharedRuntimeGeneration.getJavaPackage());
+            runtime.setAdlRuntimePackage(sharedRuntimeGeneration.getAdlRuntimePackage());
+            runtime.setSuppressWarningsAnnotation(sharedRuntimeGeneration.getSuppressWarningsAnnotation());
+            runtime.setHeaderComment(sharedRuntimeGeneration.getHeaderComment());
+            runtime.getOutputDirectory().set(outputDirectory);
+        });
+    }
+
+    /**
+     * Replaces the task's generations with a single generation of the shared Typescript runtime, using the runtime settings of the first Typescript
+     * generation that uses the shared runtime.  Does nothing else if no Typescript generation uses it.
+     *
+     * @param outputDirectory the directory the runtime module directory is generated into.
+     */
+    void useSharedTypescriptRuntime(Provider<Directory> outputDirectory)
+    {
+        TypescriptGenerationConfiguration sharedRuntimeGeneration = firstSharedTypescriptRuntimeGeneration(getGenerations().getTypescript());
+        clearGenerations();
+        if (sharedRuntimeGeneration == null)
+            return;
+
+        getGenerations().typescript(runtime ->
+        {
+            runtime.setGenerateAdlRuntime(true);
+            runtime.setRuntimeModuleName(sharedRuntimeGeneration.getRuntimeModuleName());
+            runtime.getOutputDirectory().set(outputDirectory);
+        });
+    }
+
+    private void clearGenerations()
+    {
+        //Search directories copied from the extension are not needed either, and would only make the task less cacheable
+        getSearchDirectories().setFrom();
+
+        getGenerations().getJava().clear();
+        getGenerations().getTypescript().clear();
+        getGenerations().getJavascript().clear();
+    }
+
+    /**
+     * @return the first Java generation that generates the ADL runtime and uses the shared runtime, or null if there is none.
+     */
+    static JavaGenerationConfiguration firstSharedJavaRuntimeGeneration(List<JavaGenerationConfiguration> generations)
+    {
+        for (JavaGenerationConfiguration generation : generations)
+        {
+            if (generation.isGenerateAdlRuntime() && generation.isSharedAdlRuntime())
+                return generation;
+        }
+        return null;
+    }
+
+    private static TypescriptGenerationConfiguration firstSharedTypescriptRuntimeGeneration(List<TypescriptGenerationConfiguration> generations)
+    {
+        for (TypescriptGenerationConfiguration generation : generations)
+        {
+            if (generation.isGenerateAdlRuntime() && generation.isSharedAdlRuntime())
+                return generation;
+        }
+        return null;
+    }
+}
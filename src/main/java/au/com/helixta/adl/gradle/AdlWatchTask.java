@@ -0,0 +1,330 @@
+package au.com.helixta.adl.gradle;
+
+import au.com.helixta.adl.gradle.config.AdlConfiguration;
+import au.com.helixta.adl.gradle.config.GenerationConfiguration;
+import au.com.helixta.adl.gradle.config.ManifestGenerationSupport;
+import au.com.helixta.adl.gradle.containerexecutor.ExecutionMetrics;
+import au.com.helixta.adl.gradle.containerexecutor.FileTreeSnapshot;
+import au.com.helixta.adl.gradle.generator.AdlGenerationException;
+import au.com.helixta.adl.gradle.generator.AdlGenerator;
+import au.com.helixta.adl.gradle.generator.AdlModuleIndex;
+import au.com.helixta.adl.gradle.generator.AdlSourceWatcher;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches ADL sources and search directories and regenerates code whenever they change, until the build is cancelled.
+ * <p>
+ *
+ * Everything is generated once when the task starts.  After that, each batch of changes only regenerates the changed modules and the modules that
+ * import them, writing over their previous output in place.  The same generator is used for every cycle, so Docker executions reuse a single
+ * long-running container and native executions reuse the already resolved ADL distribution.  The time from the first change of each batch until its
+ * output is written is logged.
+ * <p>
+ *
+ * The task writes into the same output directories as the source set's generation tasks, such as <code>generateAdlJava</code>, and is ordered to
+ * run after them when both are in the same build.  Because the outputs overlap, a generation task run after watching regenerates its output instead
+ * of being up-to-date or loaded from the build cache.
+ */
+public abstract class AdlWatchTask extends AdlGenerateTask
+{
+    private Duration debounce = Duration.ofMillis(200);
+
+    public AdlWatchTask()
+    {
+        //Runs until cancelled, so there is no point checking whether it is up-to-date
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+    /**
+     * @return source directories to watch in addition to the ones detected from the task's source files, such as source directories that are still
+     *         empty.
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getWatchDirectories();
+
+    /**
+     * @return how long to wait after a change for further changes before regenerating.
+     */
+    @Internal
+    public Duration getDebounce()
+    {
+        return debounce;
+    }
+
+    /**
+     * Sets how long to wait after a change for further changes before regenerating, so a burst of changes such as a branch switch only regenerates
+     * once.  Defaults to 200ms.
+     */
+    public void setDebounce(Duration debounce)
+    {
+        this.debounce = Objects.requireNonNull(debounce);
+    }
+
+    @Override
+    @TaskAction
+    public void generate()
+    throws IOException, AdlGenerationException
+    {
+        //Keep one container running for all cycles instead of starting one for every generation
+        getDocker().setSharedContainerSession(true);
+
+        Set<File> sourceDirectories = new LinkedHashSet<>(getWatchDirectories().getFiles());
+        sourceDirectories.addAll(FileTreeSnapshot.of(getSource()).getRoots());
+        List<File> searchDirectories = new ArrayList<>(getSearchDirectories().getFiles());
+        List<File> watchedDirectories = new ArrayList<>(sourceDirectories);
+        watchedDirectories.addAll(searchDirectories);
+
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        try (AdlGenerator generator = createGenerator(metrics);
+             AdlSourceWatcher watcher = new AdlSourceWatcher(watchedDirectories))
+        {
+            AdlModuleIndex moduleIndex = new AdlModuleIndex();
+            indexModules(moduleIndex, watchedDirectories);
+
+            long startTime = System.nanoTime();
+            try
+            {
+                generateAll(generator, false);
+                getLogger().lifecycle("Generated " + moduleIndex.size() + " ADL module(s) in " + elapsedMillis(startTime) + " ms.");
+            }
+            catch (AdlGenerationException e)
+            {
+                //Keep watching, the next change might fix it
+                getLogger().error("ADL generation failed: " + e.getMessage(), e);
+            }
+            getLogger().lifecycle("Watching " + watcher.getWatchedDirectoryCount() + " director(ies) for ADL changes.");
+
+            while (true)
+            {
+                AdlSourceWatcher.Changes changes = watcher.awaitChanges(getDebounce());
+                try
+                {
+                    regenerate(generator, changes, moduleIndex, new ArrayList<>(sourceDirectories), watchedDirectories);
+                }
+                catch (AdlGenerationException | IOException e)
+                {
+                    //Keep watching, the next change might fix it
+                    getLogger().error("ADL generation failed: " + e.getMessage(), e);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            getLogger().lifecycle("Stopped watching ADL sources.");
+        }
+        finally
+        {
+            metrics.report(getLogger(), getPath());
+        }
+    }
+
+    private static void indexModules(AdlModuleIndex moduleIndex, List<File> directories)
+    throws IOException
+    {
+        for (File directory : directories)
+        {
+            moduleIndex.addDirectory(directory);
+        }
+    }
+
+    /**
+     * Regenerates code for a batch of changes.
+     *
+     * @param generator the generator, reused between cycles.
+     * @param changes the changes to regenerate for.
+     * @param moduleIndex the index of all modules, which is updated with the changes.
+     * @param sourceDirectories the directories holding the task's sources.
+     * @param watchedDirectories source directories followed by search directories, in search order.
+     */
+    private void regenerate(AdlGenerator generator, AdlSourceWatcher.Changes changes, AdlModuleIndex moduleIndex, List<File> sourceDirectories,
+                            List<File> watchedDirectories)
+    throws IOException, AdlGenerationException
+    {
+        Set<String> changedModules = new LinkedHashSet<>();
+        boolean sourceDeleted = false;
+        for (Path changedPath : changes.getChangedPaths())
+        {
+            File changedFile = changedPath.toFile();
+            if (Files.isRegularFile(changedPath))
+            {
+                String relativePath = relativePath(changedFile, watchedDirectories);
+                if (relativePath != null && relativePath.endsWith(".adl"))
+                {
+                    moduleIndex.addFile(changedFile, relativePath);
+                    changedModules.add(AdlModuleIndex.moduleName(relativePath));
+                }
+            }
+            else if (!Files.exists(changedPath))
+            {
+                Set<String> removedModules = moduleIndex.removeFilesUnder(changedFile);
+                changedModules.addAll(removedModules);
+                if (!removedModules.isEmpty() && relativePath(changedFile, sourceDirectories) != null)
+                    sourceDeleted = true;
+            }
+        }
+
+        long generationStartTime = System.nanoTime();
+        String summary;
+        if (changes.isOverflow() || sourceDeleted)
+        {
+            //Generated files of deleted modules are not known, so start from scratch
+            //and if events were lost the index can't be trusted either
+            moduleIndex.clear();
+            indexModules(moduleIndex, watchedDirectories);
+            generateAll(generator, true);
+            summary = "Regenerated all " + moduleIndex.size() + " ADL module(s)";
+        }
+        else if (changedModules.isEmpty())
+            return;
+        else if (requiresFullRegeneration())
+        {
+            //Manifests and resolvers would only list the regenerated modules
+            generateAll(generator, false);
+            summary = "Regenerated all " + moduleIndex.size() + " ADL module(s)";
+        }
+        else
+        {
+            Set<File> affectedSources = new LinkedHashSet<>();
+            FileTree source = getSource();
+            for (String affectedModule : moduleIndex.importers(changedModules))
+            {
+                File moduleFile = moduleIndex.fileForModule(affectedModule);
+                if (moduleFile != null && source.contains(moduleFile))
+                    affectedSources.add(moduleFile);
+            }
+            if (affectedSources.isEmpty())
+            {
+                getLogger().lifecycle("ADL changes do not affect any source modules.");
+                return;
+            }
+
+            generator.generate(new AffectedSourcesConfiguration(affectedSources, sourceDirectories), getGenerations().allGenerations());
+            copySharedAdlRuntimes();
+            summary = "Regenerated " + affectedSources.size() + " of " + moduleIndex.size() + " ADL module(s)";
+        }
+
+        getLogger().lifecycle(summary + " " + elapsedMillis(changes.getFirstChangeTime()) + " ms after change (generation took " +
+                              elapsedMillis(generationStartTime) + " ms).");
+    }
+
+    /**
+     * Generates code for all sources.
+     *
+     * @param generator the generator to use.
+     * @param clearOutputs if true, output directories are deleted first so that outputs of deleted modules are removed.
+     */
+    private void generateAll(AdlGenerator generator, boolean clearOutputs)
+    throws AdlGenerationException
+    {
+        if (clearOutputs)
+        {
+            for (GenerationConfiguration generation : getGenerations().allGenerations())
+            {
+                getFileSystemOperations().delete(spec -> spec.delete(generation.getOutputDirectory()));
+            }
+        }
+
+        generator.generate(this, getGenerations().allGenerations());
+        copySharedAdlRuntimes();
+    }
+
+    /**
+     * @return true if any generation produces output that covers all modules at once, such as manifests, Typescript resolvers and the shared
+     *         runtime copied alongside them, so that regenerating only affected modules would leave it incomplete.
+     */
+    private boolean requiresFullRegeneration()
+    {
+        boolean hasManifests = getGenerations().allGenerations().stream()
+                                               .anyMatch(generation -> generation instanceof ManifestGenerationSupport &&
+                                                                       ((ManifestGenerationSupport)generation).getManifest().isPresent());
+        boolean hasResolversOrSharedRuntimes = getGenerations().getTypescript().stream()
+                                                               .anyMatch(generation -> generation.isGenerateResolver() ||
+                                                                                       (generation.isGenerateAdlRuntime() && generation.isSharedAdlRuntime()));
+        return hasManifests || hasResolversOrSharedRuntimes;
+    }
+
+    /**
+     * @return the path of a file relative to the first directory that contains it, using '/' as a separator, or null if none of the directories
+     *         contain it.
+     */
+    private static String relativePath(File file, List<File> directories)
+    {
+        Path path = file.toPath();
+        for (File directory : directories)
+        {
+            Path directoryPath = directory.toPath();
+            if (path.startsWith(directoryPath) && !path.equals(directoryPath))
+                return directoryPath.relativize(path).toString().replace(File.separatorChar, '/');
+        }
+        return null;
+    }
+
+    private static long elapsedMillis(long startNanoTime)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanoTime);
+    }
+
+    /**
+     * The task's configuration restricted to the sources affected by a change.  Source directories are added to the search directories so that
+     * affected sources can still import the modules that did not change.
+     */
+    private class AffectedSourcesConfiguration implements AdlConfiguration
+    {
+        private final Set<File> affectedSources;
+        private final List<File> sourceDirectories;
+
+        public AffectedSourcesConfiguration(Set<File> affectedSources, List<File> sourceDirectories)
+        {
+            this.affectedSources = Objects.requireNonNull(affectedSources);
+            this.sourceDirectories = Objects.requireNonNull(sourceDirectories);
+        }
+
+        @Override
+        public FileTree getSource()
+        {
+            return AdlWatchTask.this.getSource().matching(filter -> filter.include(element -> element.isDirectory() ||
+                                                                                              affectedSources.contains(element.getFile())));
+        }
+
+        @Override
+        public FileCollection getSearchDirectories()
+        {
+            return getObjectFactory().fileCollection().from(sourceDirectories, AdlWatchTask.this.getSearchDirectories());
+        }
+
+        @Override
+        public boolean isVerbose()
+        {
+            return AdlWatchTask.this.isVerbose();
+        }
+
+        @Override
+        public String getVersion()
+        {
+            return AdlWatchTask.this.getVersion();
+        }
+
+        @Override
+        public Duration getExecutionTimeout()
+        {
+            return AdlWatchTask.this.getExecutionTimeout();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package au.com.helixta.adl.gradle.config;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileTree;
 
+import java.time.Duration;
+
 public interface AdlConfiguration
 {
     public FileTree getSource();
@@ -13,4 +15,9 @@ public interface AdlConfiguration
      * @return the version of ADL to use.
      */
     public String getVersion();
+
+    /**
+     * @return the maximum amount of time a single execution of the ADL compiler may take before it is stopped, or null for no limit.
+     */
+    public Duration getExecutionTimeout();
 }
@@ -11,12 +11,24 @@ import java.io.File;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.time.Duration;
+import java.util.Objects;
+import java.util.zip.Deflater;
 
 /**
  * Docker configuration that is used when ADL is executed using Docker containers.
  */
 public abstract class DockerConfiguration
 {
+    /**
+     * Default maximum number of connections to the Docker daemon, enough for parallel builds with many concurrent container executions.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+    /**
+     * Default timeout for establishing a connection to the Docker daemon.
+     */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30L);
+
     private URI host;
     private Boolean tlsVerify;
     private final DirectoryProperty certPath = getObjectFactory().directoryProperty();
@@ -30,6 +42,19 @@ public abstract class DockerConfiguration
     private Duration imagePullTimeout;
     private Duration imageBuildTimeout;
     private Duration containerExecutionTimeout;
+    private Integer maxConcurrentContainers;
+    private boolean sharedContainerSession;
+    private int maxCachedImages;
+    private final DirectoryProperty imageCacheSeedDirectory = getObjectFactory().directoryProperty();
+    private boolean compressedTransfer;
+    private int transferCompressionLevel = Deflater.BEST_SPEED;
+    private Duration orphanedContainerAge = Duration.ofHours(1L);
+    private int retainedImageVersions = 3;
+    private Duration automaticCleanupInterval = Duration.ofDays(1L);
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private Duration responseTimeout;
+    private boolean reuseConnections = true;
 
     @Inject
     protected abstract ObjectFactory getObjectFactory();
@@ -239,7 +264,8 @@ public abstract class DockerConfiguration
     }
 
     /**
-     * @return the maximum amount of time an ADL generation execution can take before failing.
+     * @return the maximum amount of time an ADL generation execution can take in a Docker container before the container is killed and the execution
+     * fails.  Takes precedence over the execution timeout of the ADL configuration when set.
      */
     @Internal
     public Duration getContainerExecutionTimeout()
@@ -248,13 +274,267 @@ public abstract class DockerConfiguration
     }
 
     /**
-     * Sets the maximum amount of time an ADL generation execution can take before failing.
+     * Sets the maximum amount of time an ADL generation execution can take in a Docker container before the container is killed and the execution
+     * fails.
      */
     public void setContainerExecutionTimeout(Duration containerExecutionTimeout)
     {
         this.containerExecutionTimeout = containerExecutionTimeout;
     }
 
+    /**
+     * @return the maximum number of ADL Docker containers that may run at the same time across the whole build.  If null, defaults to the number of CPUs
+     *         available to the Docker daemon.
+     */
+    @Internal
+    public Integer getMaxConcurrentContainers()
+    {
+        return maxConcurrentContainers;
+    }
+
+    /**
+     * Sets the maximum number of ADL Docker containers that may run at the same time across the whole build.  Set to null to use the number of CPUs
+     * available to the Docker daemon.
+     */
+    public void setMaxConcurrentContainers(Integer maxConcurrentContainers)
+    {
+        if (maxConcurrentContainers != null && maxConcurrentContainers < 1)
+            throw new IllegalArgumentException("maxConcurrentContainers must be at least 1: " + maxConcurrentContainers);
+
+        this.maxConcurrentContainers = maxConcurrentContainers;
+    }
+
+    /**
+     * @return whether ADL executions from all tasks in the build that use the same Docker image share a single long-running container.
+     */
+    @Internal
+    public boolean isSharedContainerSession()
+    {
+        return sharedContainerSession;
+    }
+
+    /**
+     * Sets whether ADL executions from all tasks in the build that use the same Docker image share a single long-running container.  When enabled, the
+     * image is checked and the container created only once per build, and identical search directories are only uploaded once.  Disabled by default.
+     */
+    public void setSharedContainerSession(boolean sharedContainerSession)
+    {
+        this.sharedContainerSession = sharedContainerSession;
+    }
+
+    /**
+     * @return the maximum number of locally built Docker images kept as tarballs in the image cache under the Gradle user home.  Zero if the cache is
+     *         disabled.
+     */
+    @Internal
+    public int getMaxCachedImages()
+    {
+        return maxCachedImages;
+    }
+
+    /**
+     * Sets the maximum number of locally built Docker images kept as tarballs in the image cache under the Gradle user home.  When an image is missing
+     * from Docker, it is loaded from the cache if possible instead of being rebuilt.  The least recently used images are removed when the cache is full.
+     * Zero, the default, disables saving images to the cache.
+     */
+    public void setMaxCachedImages(int maxCachedImages)
+    {
+        if (maxCachedImages < 0)
+            throw new IllegalArgumentException("maxCachedImages cannot be negative: " + maxCachedImages);
+
+        this.maxCachedImages = maxCachedImages;
+    }
+
+    /**
+     * @return a directory of previously cached Docker image tarballs, such as one shared between CI machines, used when an image is not in the local cache.
+     */
+    @Internal
+    public DirectoryProperty getImageCacheSeedDirectory()
+    {
+        return imageCacheSeedDirectory;
+    }
+
+    /**
+     * Sets a directory of previously cached Docker image tarballs, such as one shared between CI machines, used when an image is not in the local cache.
+     */
+    public void setImageCacheSeedDirectory(File imageCacheSeedDirectory)
+    {
+        this.imageCacheSeedDirectory.fileValue(imageCacheSeedDirectory);
+    }
+
+    /**
+     * @return whether files copied to and from Docker containers are gzip-compressed.
+     */
+    @Internal
+    public boolean isCompressedTransfer()
+    {
+        return compressedTransfer;
+    }
+
+    /**
+     * Sets whether files copied to and from Docker containers are gzip-compressed.  Useful when the Docker host is remote and the network is slower than
+     * compressing and decompressing.  Disabled by default.
+     */
+    public void setCompressedTransfer(boolean compressedTransfer)
+    {
+        this.compressedTransfer = compressedTransfer;
+    }
+
+    /**
+     * @return the gzip compression level, from 1 (fastest) to 9 (smallest), used when compressed transfer is enabled.
+     */
+    @Internal
+    public int getTransferCompressionLevel()
+    {
+        return transferCompressionLevel;
+    }
+
+    /**
+     * Sets the gzip compression level, from 1 (fastest) to 9 (smallest), used when compressed transfer is enabled.  Defaults to 1.
+     */
+    public void setTransferCompressionLevel(int transferCompressionLevel)
+    {
+        if (transferCompressionLevel < Deflater.BEST_SPEED || transferCompressionLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("transferCompressionLevel must be between " + Deflater.BEST_SPEED + " and " + Deflater.BEST_COMPRESSION + ": " + transferCompressionLevel);
+
+        this.transferCompressionLevel = transferCompressionLevel;
+    }
+
+    /**
+     * @return how old an ADL Docker container that is no longer running must be before cleanup removes it.
+     */
+    @Internal
+    public Duration getOrphanedContainerAge()
+    {
+        return orphanedContainerAge;
+    }
+
+    /**
+     * Sets how old an ADL Docker container that is no longer running must be before cleanup removes it.  Such containers are normally left behind when a
+     * Gradle daemon is killed during an execution.  Defaults to 1 hour.
+     */
+    public void setOrphanedContainerAge(Duration orphanedContainerAge)
+    {
+        this.orphanedContainerAge = Objects.requireNonNull(orphanedContainerAge);
+    }
+
+    /**
+     * @return the number of most recent locally built ADL tool images that cleanup keeps for each image repository.
+     */
+    @Internal
+    public int getRetainedImageVersions()
+    {
+        return retainedImageVersions;
+    }
+
+    /**
+     * Sets the number of most recent locally built ADL tool images that cleanup keeps for each image repository.  Images used by the current build are
+     * always kept.  Defaults to 3.
+     */
+    public void setRetainedImageVersions(int retainedImageVersions)
+    {
+        if (retainedImageVersions < 0)
+            throw new IllegalArgumentException("retainedImageVersions cannot be negative: " + retainedImageVersions);
+
+        this.retainedImageVersions = retainedImageVersions;
+    }
+
+    /**
+     * @return the minimum time between automatic cleanups of orphaned ADL Docker containers and old images, or null if automatic cleanup is disabled.
+     */
+    @Internal
+    public Duration getAutomaticCleanupInterval()
+    {
+        return automaticCleanupInterval;
+    }
+
+    /**
+     * Sets the minimum time between automatic cleanups of orphaned ADL Docker containers and old images.  Automatic cleanup runs in the background
+     * when ADL is executed with Docker, at most once per interval for each Gradle user home.  Set to null to disable automatic cleanup; the
+     * {@code adlDockerCleanup} task can still be run manually.  Defaults to 1 day.
+     */
+    public void setAutomaticCleanupInterval(Duration automaticCleanupInterval)
+    {
+        this.automaticCleanupInterval = automaticCleanupInterval;
+    }
+
+    /**
+     * @return the maximum number of HTTP connections open to the Docker daemon at once.
+     */
+    @Internal
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of HTTP connections open to the Docker daemon at once.  When connections are reused, this limit applies to the whole
+     * build, otherwise to each ADL execution.  Requests wait for a free connection when the limit is reached, and attaching to a running container
+     * holds a connection until it finishes, so this should be well above {@link #getMaxConcurrentContainers() maxConcurrentContainers}.  Defaults to 32.
+     */
+    public void setMaxConnections(int maxConnections)
+    {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be at least 1: " + maxConnections);
+
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return the timeout for establishing a connection to the Docker daemon.
+     */
+    @Internal
+    public Duration getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the timeout for establishing a connection to the Docker daemon.  Defaults to 30 seconds.
+     */
+    public void setConnectTimeout(Duration connectTimeout)
+    {
+        this.connectTimeout = Objects.requireNonNull(connectTimeout);
+    }
+
+    /**
+     * @return the maximum time to wait for data from the Docker daemon on an open connection, or null if there is no limit.
+     */
+    @Internal
+    public Duration getResponseTimeout()
+    {
+        return responseTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for data from the Docker daemon on an open connection.  Waiting for a container to finish counts as waiting for
+     * data, so this must be longer than the longest ADL execution.  Set to null, the default, for no limit and use
+     * {@link #setContainerExecutionTimeout(Duration) containerExecutionTimeout} to limit executions instead.
+     */
+    public void setResponseTimeout(Duration responseTimeout)
+    {
+        this.responseTimeout = responseTimeout;
+    }
+
+    /**
+     * @return whether HTTP connections to the Docker daemon are pooled and shared by all ADL executions in the build.
+     */
+    @Internal
+    public boolean isReuseConnections()
+    {
+        return reuseConnections;
+    }
+
+    /**
+     * Sets whether HTTP connections to the Docker daemon are pooled and shared by all ADL executions in the build.  Reusing connections avoids
+     * setting up a new connection, including the TLS handshake for remote Docker hosts, for every execution.  When disabled, every execution opens
+     * its own connections and closes them when it finishes.  Enabled by default.
+     */
+    public void setReuseConnections(boolean reuseConnections)
+    {
+        this.reuseConnections = reuseConnections;
+    }
+
     /**
      * Deep-copy another configuration into this one.
      *
@@ -273,5 +553,18 @@ public abstract class DockerConfiguration
         setImagePullTimeout(other.getImagePullTimeout());
         setImageBuildTimeout(other.getImageBuildTimeout());
         setContainerExecutionTimeout(other.getContainerExecutionTimeout());
+        setMaxConcurrentContainers(other.getMaxConcurrentContainers());
+        setSharedContainerSession(other.isSharedContainerSession());
+        setMaxCachedImages(other.getMaxCachedImages());
+        getImageCacheSeedDirectory().set(other.getImageCacheSeedDirectory());
+        setCompressedTransfer(other.isCompressedTransfer());
+        setTransferCompressionLevel(other.getTransferCompressionLevel());
+        setOrphanedContainerAge(other.getOrphanedContainerAge());
+        setRetainedImageVersions(other.getRetainedImageVersions());
+        setAutomaticCleanupInterval(other.getAutomaticCleanupInterval());
+        setMaxConnections(other.getMaxConnections());
+        setConnectTimeout(other.getConnectTimeout());
+        setResponseTimeout(other.getResponseTimeout());
+        setReuseConnections(other.isReuseConnections());
     }
 }
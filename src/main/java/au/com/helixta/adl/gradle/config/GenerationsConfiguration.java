@@ -7,6 +7,7 @@ import org.gradle.api.tasks.Nested;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -40,6 +41,14 @@ public abstract class GenerationsConfiguration implements ExtensionAware
         return javascript;
     }
 
+    /**
+     * @return the names of all generation types, as returned from {@link GenerationConfiguration#generationType()}.
+     */
+    public static List<String> generationTypes()
+    {
+        return Arrays.asList("java", "typescript", "javascript");
+    }
+
     public List<? extends GenerationConfiguration> allGenerations()
     {
         List<GenerationConfiguration> all = new ArrayList<>(java.size() + typescript.size());
@@ -70,6 +79,21 @@ public abstract class GenerationsConfiguration implements ExtensionAware
         javascript.add(t);
     }
 
+    /**
+     * Removes all generations except those of a single type.
+     *
+     * @param generationType the generation type to keep, as returned from {@link GenerationConfiguration#generationType()}.
+     *
+     * @return this configuration.
+     */
+    public GenerationsConfiguration retainGenerationType(String generationType)
+    {
+        java.removeIf(g -> !g.generationType().equals(generationType));
+        typescript.removeIf(g -> !g.generationType().equals(generationType));
+        javascript.removeIf(g -> !g.generationType().equals(generationType));
+        return this;
+    }
+
     public GenerationsConfiguration copyFrom(GenerationsConfiguration other)
     {
         for (JavaGenerationConfiguration otherConfig : other.getJava())
@@ -2,6 +2,7 @@ package au.com.helixta.adl.gradle.config;
 
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
 
@@ -18,6 +19,8 @@ public abstract class JavaGenerationConfiguration extends GenerationConfiguratio
     private boolean generateTransitive;
     private String suppressWarningsAnnotation;
     private String headerComment;
+    private boolean separateCompilation;
+    private boolean sharedAdlRuntime;
 
     private final RegularFileProperty manifest = getObjectFactory().fileProperty();
 
@@ -147,6 +150,44 @@ public abstract class JavaGenerationConfiguration extends GenerationConfiguratio
         this.headerComment = headerComment;
     }
 
+    /**
+     * @return whether the ADL runtime, when generated, comes from the project's shared runtime generation task instead of being generated into this
+     *         generation's output directory.
+     */
+    @Input
+    public boolean isSharedAdlRuntime()
+    {
+        return sharedAdlRuntime;
+    }
+
+    /**
+     * Sets whether the ADL runtime, when generated, comes from the project's shared runtime generation task instead of being generated into this
+     * generation's output directory.  The shared runtime is generated once and compiled with the main source set, so source sets and generations
+     * don't each generate and compile their own copy.  Only has an effect when the ADL runtime is generated.  Disabled by default.
+     */
+    public void setSharedAdlRuntime(boolean sharedAdlRuntime)
+    {
+        this.sharedAdlRuntime = sharedAdlRuntime;
+    }
+
+    /**
+     * @return whether generated code is compiled by its own task into a jar on the source set's classpath instead of with the source set's own Java code.
+     */
+    @Internal
+    public boolean isSeparateCompilation()
+    {
+        return separateCompilation;
+    }
+
+    /**
+     * Sets whether generated code is compiled by its own task into a jar on the source set's classpath instead of with the source set's own Java code.
+     * Generated code is then only recompiled when it changes, and not when hand-written code changes.  Disabled by default.
+     */
+    public void setSeparateCompilation(boolean separateCompilation)
+    {
+        this.separateCompilation = separateCompilation;
+    }
+
     /**
      * Deep-copy another configuration into this one.
      *
@@ -164,6 +205,8 @@ public abstract class JavaGenerationConfiguration extends GenerationConfiguratio
         setSuppressWarningsAnnotation(other.getSuppressWarningsAnnotation());
         setManifest(other.getManifest().getAsFile().getOrNull());
         setHeaderComment(other.getHeaderComment());
+        setSeparateCompilation(other.isSeparateCompilation());
+        setSharedAdlRuntime(other.isSharedAdlRuntime());
         return this;
     }
 }
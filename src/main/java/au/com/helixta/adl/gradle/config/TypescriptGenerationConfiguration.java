@@ -1,9 +1,13 @@
 package au.com.helixta.adl.gradle.config;
 
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 
 import java.io.File;
 
@@ -17,6 +21,8 @@ public abstract class TypescriptGenerationConfiguration extends GenerationConfig
     private boolean generateResolver;
     private boolean generateAst = true;
     private String runtimeModuleName = "runtime";
+    private boolean sharedAdlRuntime;
+    private final DirectoryProperty sharedAdlRuntimeDirectory = getObjectFactory().directoryProperty();
 
     private final RegularFileProperty manifest = getObjectFactory().fileProperty();
 
@@ -111,6 +117,38 @@ public abstract class TypescriptGenerationConfiguration extends GenerationConfig
         this.runtimeModuleName = runtimeModuleName;
     }
 
+    /**
+     * @return whether the ADL runtime, when generated, is copied from the project's shared runtime generation task instead of being generated by this
+     *         generation.
+     */
+    @Input
+    public boolean isSharedAdlRuntime()
+    {
+        return sharedAdlRuntime;
+    }
+
+    /**
+     * Sets whether the ADL runtime, when generated, is copied from the project's shared runtime generation task instead of being generated by this
+     * generation.  The shared runtime is generated once per project and is cacheable.  Only has an effect when the ADL runtime is generated.
+     * Disabled by default.
+     */
+    public void setSharedAdlRuntime(boolean sharedAdlRuntime)
+    {
+        this.sharedAdlRuntime = sharedAdlRuntime;
+    }
+
+    /**
+     * @return the directory holding the shared ADL runtime that is copied into the output directory when the shared runtime is used.  Configured by
+     *         the plugin.
+     */
+    @InputDirectory
+    @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public DirectoryProperty getSharedAdlRuntimeDirectory()
+    {
+        return sharedAdlRuntimeDirectory;
+    }
+
     @Override
     @OutputFile
     @Optional
@@ -143,6 +181,8 @@ public abstract class TypescriptGenerationConfiguration extends GenerationConfig
         setGenerateAst(other.isGenerateAst());
         setRuntimeModuleName(other.getRuntimeModuleName());
         setManifest(other.getManifest().getAsFile().getOrNull());
+        setSharedAdlRuntime(other.isSharedAdlRuntime());
+        getSharedAdlRuntimeDirectory().set(other.getSharedAdlRuntimeDirectory());
         return this;
     }
 }
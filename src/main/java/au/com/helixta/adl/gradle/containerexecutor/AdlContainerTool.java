@@ -9,19 +9,28 @@ import au.com.helixta.adl.gradle.config.TypescriptGenerationConfiguration;
 import au.com.helixta.adl.gradle.distribution.AdlDistributionService;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConfiguration>
 {
+    private final Environment environment;
+
     public AdlContainerTool(Environment environment)
     {
         super(adlStaticToolConfiguration(environment), environment);
+        this.environment = environment;
     }
 
     private static StaticToolConfiguration adlStaticToolConfiguration(Environment environment)
     {
         AdlDistributionService distributionService = new AdlDistributionService(environment.getHomeDirProvider(), environment.getFileSystemOperations(),
-                                                                                environment.getArchiveOperations(), environment.getProject());
+                                                                                environment.getArchiveOperations(), environment.getDistributionResolutionService());
 
         return new StaticToolConfiguration(distributionService, new SimpleExecutableResolver("bin/adlc"), "adlc", "/opt/adl", "/data",
                                            DockerImageDefinitionTransformer.NO_MODIFICATION, "adl/adlc", "adl-gradle", UnaryOperator.identity());
@@ -39,43 +48,138 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
         return config.getDocker();
     }
 
+    @Override
+    protected Duration readExecutionTimeout(AdlFullConfiguration config)
+    {
+        return config.getAdl().getExecutionTimeout();
+    }
+
     @Override
     protected PreparedCommandLine createCommandLine(AdlFullConfiguration config)
+    {
+        List<File> searchDirectories = new ArrayList<>(config.getAdl().getSearchDirectories().getFiles());
+        return adlcCommandLine(config, searchDirectories);
+    }
+
+    /**
+     * Docker executions only need the search path modules the sources depend on, so the search path is pruned before it is transferred into the
+     * container.
+     */
+    @Override
+    protected PreparedCommandLine createDockerCommandLine(AdlFullConfiguration config)
+    {
+        List<File> searchDirectories = config.getPrunedSearchPath().searchDirectories(() -> prunedSearchDirectories(config.getAdl()));
+        return adlcCommandLine(config, searchDirectories);
+    }
+
+    private PreparedCommandLine adlcCommandLine(AdlFullConfiguration config, List<File> searchDirectories)
     {
         PreparedCommandLine commandLine = new PreparedCommandLine();
-        adlcCommand(config.getAdl(), config.getGeneration(), commandLine);
+        adlcCommand(config.getAdl(), searchDirectories, config.getGeneration(), commandLine);
+        if (isBatchable(config.getGeneration()))
+            commandLine.batchable();
         return commandLine;
     }
 
-    private void adlcCommand(AdlConfiguration adlConfiguration, GenerationConfiguration generation, PreparedCommandLine commandLine)
+    /**
+     * Determines whether sources for a generation can be split across multiple adlc runs when there are too many to pass on a single command line.
+     * Manifests, resolvers and included runtimes are written once per run and would only cover the last batch's sources, so generations that produce
+     * any of these are never batched.
+     *
+     * @param generation the generation configuration, or null for verification.
+     *
+     * @return true if each adlc run's output is independent of the other runs.
+     */
+    static boolean isBatchable(GenerationConfiguration generation)
     {
-        if (generation instanceof JavaGenerationConfiguration)
-            adlcJavaCommand(adlConfiguration, (JavaGenerationConfiguration)generation, commandLine);
+        if (generation == null)
+            return true;
+        else if (generation instanceof JavaGenerationConfiguration)
+        {
+            JavaGenerationConfiguration javaGeneration = (JavaGenerationConfiguration)generation;
+            return !javaGeneration.getManifest().isPresent() &&
+                   !(javaGeneration.isGenerateAdlRuntime() && !javaGeneration.isSharedAdlRuntime());
+        }
         else if (generation instanceof TypescriptGenerationConfiguration)
-            adlcTypescriptCommand(adlConfiguration, (TypescriptGenerationConfiguration)generation, commandLine);
+        {
+            TypescriptGenerationConfiguration typescriptGeneration = (TypescriptGenerationConfiguration)generation;
+            return !typescriptGeneration.getManifest().isPresent() &&
+                   !typescriptGeneration.isGenerateResolver() &&
+                   !(typescriptGeneration.isGenerateAdlRuntime() && !typescriptGeneration.isSharedAdlRuntime());
+        }
+        else if (generation instanceof JavascriptGenerationConfiguration)
+            return !((JavascriptGenerationConfiguration)generation).getManifest().isPresent();
+        else
+            return false;
+    }
+
+    private void adlcCommand(AdlConfiguration adlConfiguration, List<File> searchDirectories, GenerationConfiguration generation, PreparedCommandLine commandLine)
+    {
+        if (generation == null)
+            adlcVerifyCommand(adlConfiguration, searchDirectories, commandLine);
+        else if (generation instanceof JavaGenerationConfiguration)
+            adlcJavaCommand(adlConfiguration, searchDirectories, (JavaGenerationConfiguration)generation, commandLine);
+        else if (generation instanceof TypescriptGenerationConfiguration)
+            adlcTypescriptCommand(adlConfiguration, searchDirectories, (TypescriptGenerationConfiguration)generation, commandLine);
         else if (generation instanceof JavascriptGenerationConfiguration)
-            adlcJavascriptCommand(adlConfiguration, (JavascriptGenerationConfiguration)generation, commandLine);
+            adlcJavascriptCommand(adlConfiguration, searchDirectories, (JavascriptGenerationConfiguration)generation, commandLine);
         else //Should not happen as we're covering all known subtypes
             throw new Error("Unknown generation type: " + generation.getClass().getName());
     }
 
+    /**
+     * Reduces the search path to the modules the sources depend on, so that only those need to be made available to the compiler.
+     *
+     * @param adlConfiguration the top-level ADL configuration.
+     *
+     * @return a single synthetic search directory, no search directories if sources don't use any, or the original search directories if
+     *         the search path could not be read.
+     */
+    private List<File> prunedSearchDirectories(AdlConfiguration adlConfiguration)
+    {
+        List<File> searchDirectories = new ArrayList<>(adlConfiguration.getSearchDirectories().getFiles());
+        if (searchDirectories.isEmpty())
+            return searchDirectories;
+
+        File cacheDirectory = new File(environment.getHomeDirProvider().getGradleUserHomeDirectory(), "adl-pruned-search-path");
+        AdlSearchPathPruner pruner = new AdlSearchPathPruner(cacheDirectory, AdlSearchPathPruner.DEFAULT_MAX_CACHED_SEARCH_DIRECTORIES,
+                                                             archiveExtractionCache());
+        try
+        {
+            AdlSearchPathPruner.Result result = pruner.prune(adlConfiguration.getSource(), searchDirectories);
+            environment.getExecutionMetrics().addCount(ExecutionMetrics.PRUNED_MODULE_COUNT, result.getPrunedModuleCount());
+            environment.getExecutionMetrics().addCount(ExecutionMetrics.PRUNED_BYTE_COUNT, result.getPrunedByteCount());
+            environment.getGradleLogger().info("Pruned " + result.getPrunedModuleCount() + " of " + result.getTotalModuleCount() +
+                                               " ADL search path module(s), " + result.getPrunedByteCount() + " of " + result.getTotalByteCount() +
+                                               " bytes");
+            return result.getSearchDirectories();
+        }
+        catch (IOException e)
+        {
+            //Pruning is only an optimization, the compiler can still use the whole search path
+            environment.getGradleLogger().warn("Could not prune ADL search path, using all search directories: " + e.getMessage(), e);
+            return searchDirectories;
+        }
+    }
+
     /**
      * Generate the adlc command line arguments to generate Java files for the specified Java generation configuration.
      *
      * @param adlConfiguration the top-level ADL configuration.
+     * @param searchDirectories the search directories to pass to the compiler.
      * @param generation the Java generation configuration to generate files for.
      * @param commandLine the command line to add arguments to.
      *
      * @see <a href="https://github.com/timbod7/adl/blob/master/docs/backend-java.md">ADL Java Backend</a>
      */
-    private void adlcJavaCommand(AdlConfiguration adlConfiguration, JavaGenerationConfiguration generation, PreparedCommandLine commandLine)
+    private void adlcJavaCommand(AdlConfiguration adlConfiguration, List<File> searchDirectories, JavaGenerationConfiguration generation, PreparedCommandLine commandLine)
     {
         commandLine.argument("java");
         commandLine.argument(generation.getOutputDirectory().get(), "adloutput", PreparedCommandLine.FileTransferMode.OUTPUT, containerPath -> "--outputdir=" + containerPath);
 
         String searchDirBaseName = "adlsearchdir";
         int searchDirCounter = 1;
-        for (File searchDir : adlConfiguration.getSearchDirectories())
+        for (File searchDir : searchDirectories)
         {
             String searchDirLabel = searchDirBaseName + searchDirCounter;
             commandLine.argument(searchDir, searchDirLabel, PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY, containerPath -> "--searchdir=" + containerPath);
@@ -88,7 +192,8 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
         if (adlConfiguration.isVerbose())
             commandLine.argument("--verbose");
 
-        if (generation.isGenerateAdlRuntime())
+        //A shared runtime is generated by its own task
+        if (generation.isGenerateAdlRuntime() && !generation.isSharedAdlRuntime())
             commandLine.argument("--include-rt");
         if (generation.getAdlRuntimePackage() != null && !generation.getAdlRuntimePackage().isEmpty())
             commandLine.argument("--rtpackage=" + generation.getAdlRuntimePackage());
@@ -112,19 +217,20 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
      * Generate the adlc command line arguments to generate Typescript files for the specified Typescript generation configuration.
      *
      * @param adlConfiguration the top-level ADL configuration.
+     * @param searchDirectories the search directories to pass to the compiler.
      * @param generation the Typescript generation configuration to generate files for.
      * @param commandLine the command line to add arguments to.
      *
      * @see <a href="https://github.com/timbod7/adl/blob/master/docs/backend-java.md">ADL Java Backend</a>
      */
-    private void adlcTypescriptCommand(AdlConfiguration adlConfiguration, TypescriptGenerationConfiguration generation, PreparedCommandLine commandLine)
+    private void adlcTypescriptCommand(AdlConfiguration adlConfiguration, List<File> searchDirectories, TypescriptGenerationConfiguration generation, PreparedCommandLine commandLine)
     {
         commandLine.argument("typescript");
         commandLine.argument(generation.getOutputDirectory().get(), "adloutput", PreparedCommandLine.FileTransferMode.OUTPUT, containerPath -> "--outputdir=" + containerPath);
 
         String searchDirBaseName = "adlsearchdir";
         int searchDirCounter = 1;
-        for (File searchDir : adlConfiguration.getSearchDirectories())
+        for (File searchDir : searchDirectories)
         {
             String searchDirLabel = searchDirBaseName + searchDirCounter;
             commandLine.argument(searchDir, searchDirLabel, PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY, containerPath -> "--searchdir=" + containerPath);
@@ -141,7 +247,8 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
         if (!generation.isGenerateAst())
             commandLine.argument("--exclude-ast");
 
-        if (generation.isGenerateAdlRuntime())
+        //A shared runtime is generated by its own task and copied in afterwards
+        if (generation.isGenerateAdlRuntime() && !generation.isSharedAdlRuntime())
             commandLine.argument("--include-rt");
         if (generation.getRuntimeModuleName() != null)
             commandLine.argument("--runtime-dir=" + generation.getRuntimeModuleName());
@@ -158,19 +265,20 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
      * Generate the adlc command line arguments to generate Typescript files for the specified Typescript generation configuration.
      *
      * @param adlConfiguration the top-level ADL configuration.
+     * @param searchDirectories the search directories to pass to the compiler.
      * @param generation the Javascript generation configuration to generate files for.
      * @param commandLine the command line to add arguments to.
      *
      * @see <a href="https://github.com/timbod7/adl/blob/master/docs/backend-java.md">ADL Java Backend</a>
      */
-    private void adlcJavascriptCommand(AdlConfiguration adlConfiguration, JavascriptGenerationConfiguration generation, PreparedCommandLine commandLine)
+    private void adlcJavascriptCommand(AdlConfiguration adlConfiguration, List<File> searchDirectories, JavascriptGenerationConfiguration generation, PreparedCommandLine commandLine)
     {
         commandLine.argument("javascript");
         commandLine.argument(generation.getOutputDirectory().get(), "adloutput", PreparedCommandLine.FileTransferMode.OUTPUT, containerPath -> "--outputdir=" + containerPath);
 
         String searchDirBaseName = "adlsearchdir";
         int searchDirCounter = 1;
-        for (File searchDir : adlConfiguration.getSearchDirectories())
+        for (File searchDir : searchDirectories)
         {
             String searchDirLabel = searchDirBaseName + searchDirCounter;
             commandLine.argument(searchDir, searchDirLabel, PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY, containerPath -> "--searchdir=" + containerPath);
@@ -188,17 +296,86 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
         commandLine.argument(adlConfiguration.getSource(), "sources");
     }
 
+    /**
+     * Generate the adlc command line arguments to check ADL sources without generating any code.  There are no output files, so nothing needs to be
+     * copied back from Docker containers.
+     *
+     * @param adlConfiguration the top-level ADL configuration.
+     * @param searchDirectories the search directories to pass to the compiler.
+     * @param commandLine the command line to add arguments to.
+     */
+    private void adlcVerifyCommand(AdlConfiguration adlConfiguration, List<File> searchDirectories, PreparedCommandLine commandLine)
+    {
+        commandLine.argument("verify");
+
+        String searchDirBaseName = "adlsearchdir";
+        int searchDirCounter = 1;
+        for (File searchDir : searchDirectories)
+        {
+            String searchDirLabel = searchDirBaseName + searchDirCounter;
+            commandLine.argument(searchDir, searchDirLabel, PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY, containerPath -> "--searchdir=" + containerPath);
+            searchDirCounter++;
+        }
+
+        if (adlConfiguration.isVerbose())
+            commandLine.argument("--verbose");
+
+        commandLine.argument(adlConfiguration.getSource(), "sources");
+    }
+
+    /**
+     * Holds the pruned search path for a set of executions that share the same sources and search directories, such as all the generations of a single
+     * task execution, so that the search path is only pruned once for all of them.
+     */
+    public static class PrunedSearchPath
+    {
+        private List<File> searchDirectories;
+
+        /**
+         * Returns the pruned search path, pruning it on first use.
+         *
+         * @param pruner prunes the search path.
+         *
+         * @return the pruned search directories.
+         */
+        public synchronized List<File> searchDirectories(Supplier<List<File>> pruner)
+        {
+            if (searchDirectories == null)
+                searchDirectories = pruner.get();
+
+            return searchDirectories;
+        }
+    }
+
     public static class AdlFullConfiguration
     {
         private final AdlConfiguration adl;
         private final GenerationConfiguration generation;
         private final DockerConfiguration docker;
+        private final PrunedSearchPath prunedSearchPath;
 
         public AdlFullConfiguration(AdlConfiguration adl, GenerationConfiguration generation, DockerConfiguration docker)
+        {
+            this(adl, generation, docker, new PrunedSearchPath());
+        }
+
+        /**
+         * Creates a configuration that shares its pruned search path with other configurations using the same ADL configuration.
+         */
+        public AdlFullConfiguration(AdlConfiguration adl, GenerationConfiguration generation, DockerConfiguration docker, PrunedSearchPath prunedSearchPath)
         {
             this.adl = adl;
             this.generation = generation;
             this.docker = docker;
+            this.prunedSearchPath = Objects.requireNonNull(prunedSearchPath);
+        }
+
+        /**
+         * Creates a configuration that only checks ADL sources instead of generating code.
+         */
+        public static AdlFullConfiguration verify(AdlConfiguration adl, DockerConfiguration docker)
+        {
+            return new AdlFullConfiguration(adl, null, docker);
         }
 
         public AdlConfiguration getAdl()
@@ -206,6 +383,9 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
             return adl;
         }
 
+        /**
+         * @return the generation to run, or null if sources are only checked.
+         */
         public GenerationConfiguration getGeneration()
         {
             return generation;
@@ -215,5 +395,10 @@ public class AdlContainerTool extends ContainerTool<AdlContainerTool.AdlFullConf
         {
             return docker;
         }
+
+        public PrunedSearchPath getPrunedSearchPath()
+        {
+            return prunedSearchPath;
+        }
     }
 }
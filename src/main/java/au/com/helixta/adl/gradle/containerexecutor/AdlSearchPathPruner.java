@@ -0,0 +1,421 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import au.com.helixta.adl.gradle.generator.AdlModuleIndex;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reduces the ADL search path to the modules that sources actually depend on, copied into a single synthetic search directory.
+ * <p>
+ *
+ * Without pruning, every search directory is transferred in full for every execution even when sources only use a few modules from it.  The
+ * transitive closure of the modules referenced by the sources is resolved across the search path in search order, so the module that the compiler
+ * would pick is the one that is kept, along with its companion annotation files (e.g. <code>types.adl-java</code>).
+ * <p>
+ *
+ * Synthetic search directories are stored in a persistent cache directory keyed by the hash of their content, written to a temporary directory that is
+ * renamed into place with a completion marker, so concurrent tasks and builds never see a half-written directory.  The cache holds a limited number of
+ * synthetic search directories, and when the limit is exceeded the least recently used ones are removed.
+ */
+public class AdlSearchPathPruner
+{
+    private static final Logger log = Logging.getLogger(AdlSearchPathPruner.class);
+
+    private static final String ADL_FILE_EXTENSION = ".adl";
+
+    /**
+     * Name of the directory under each cache entry that holds the synthetic search directory.
+     */
+    private static final String CONTENT_DIRECTORY_NAME = "content";
+
+    /**
+     * Name of the marker file written to each cache entry once it has been fully written.
+     */
+    private static final String COMPLETION_MARKER_NAME = "pruned.marker";
+
+    /**
+     * Default maximum number of synthetic search directories kept in the cache.
+     */
+    public static final int DEFAULT_MAX_CACHED_SEARCH_DIRECTORIES = 100;
+
+    private final File cacheDirectory;
+    private final int maxCachedSearchDirectories;
+    private final ArchiveExtractionCache archiveExtractionCache;
+
+    /**
+     * Creates a search path pruner.
+     *
+     * @param cacheDirectory the base directory synthetic search directories are written under.
+     * @param maxCachedSearchDirectories the maximum number of synthetic search directories to keep in the cache.
+     * @param archiveExtractionCache used for reading search directories that are archives.
+     */
+    public AdlSearchPathPruner(File cacheDirectory, int maxCachedSearchDirectories, ArchiveExtractionCache archiveExtractionCache)
+    {
+        if (maxCachedSearchDirectories < 1)
+            throw new IllegalArgumentException("maxCachedSearchDirectories must be at least 1: " + maxCachedSearchDirectories);
+
+        this.cacheDirectory = Objects.requireNonNull(cacheDirectory);
+        this.maxCachedSearchDirectories = maxCachedSearchDirectories;
+        this.archiveExtractionCache = Objects.requireNonNull(archiveExtractionCache);
+    }
+
+    /**
+     * Resolves the search path modules needed by a set of sources and writes them to a synthetic search directory.
+     *
+     * @param sources the ADL source files.
+     * @param searchDirectories the search directories, in search order.  May be directories or archives.
+     *
+     * @return the pruned search path.
+     *
+     * @throws IOException if an I/O error occurs reading search directories or writing the synthetic search directory.
+     */
+    public Result prune(FileTree sources, Collection<File> searchDirectories)
+    throws IOException
+    {
+        AdlModuleIndex index = new AdlModuleIndex();
+        long totalByteCount = 0L;
+        for (File searchDirectory : searchDirectories)
+        {
+            File resolvedDirectory = archiveExtractionCache.extractedDirectory(searchDirectory);
+            if (resolvedDirectory == null)
+                resolvedDirectory = searchDirectory;
+
+            if (resolvedDirectory.isDirectory())
+            {
+                index.addDirectory(resolvedDirectory);
+                totalByteCount += FileUtils.sizeOfDirectory(resolvedDirectory);
+            }
+        }
+
+        //Sources are not indexed, since they are always passed to the compiler, but whatever they reference is
+        Set<String> referencedModules = new HashSet<>();
+        for (File sourceFile : sources.getFiles())
+        {
+            if (sourceFile.getName().endsWith(ADL_FILE_EXTENSION))
+                referencedModules.addAll(referencedModules(sourceFile));
+        }
+
+        //Companion files can reference more modules, so keep going until nothing new turns up
+        Set<String> neededModules = index.importedModules(referencedModules);
+        Set<String> companionsRead = new HashSet<>();
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (String moduleName : new ArrayList<>(neededModules))
+            {
+                File moduleFile = index.fileForModule(moduleName);
+                if (moduleFile == null || !companionsRead.add(moduleName))
+                    continue;
+
+                Set<String> companionReferences = new HashSet<>();
+                for (File companionFile : companionFiles(moduleFile))
+                {
+                    companionReferences.addAll(AdlModuleIndex.parseReferencedModules(readString(companionFile)));
+                }
+                if (!neededModules.containsAll(companionReferences))
+                {
+                    neededModules.addAll(index.importedModules(companionReferences));
+                    changed = true;
+                }
+            }
+        }
+
+        //Relative path in the synthetic search directory to the file it is copied from, sorted so the hash is stable
+        Map<String, File> shippedFiles = new TreeMap<>();
+        int shippedModuleCount = 0;
+        for (String moduleName : neededModules)
+        {
+            File moduleFile = index.fileForModule(moduleName);
+            if (moduleFile == null)
+                continue;
+
+            shippedModuleCount++;
+            String relativeBasePath = moduleName.replace('.', '/');
+            shippedFiles.put(relativeBasePath + ADL_FILE_EXTENSION, moduleFile);
+            for (File companionFile : companionFiles(moduleFile))
+            {
+                String suffix = companionFile.getName().substring(moduleFile.getName().length());
+                shippedFiles.put(relativeBasePath + ADL_FILE_EXTENSION + suffix, companionFile);
+            }
+        }
+
+        long shippedByteCount = 0L;
+        for (File shippedFile : shippedFiles.values())
+        {
+            shippedByteCount += shippedFile.length();
+        }
+
+        File searchDirectory = shippedFiles.isEmpty() ? null : writeSearchDirectory(shippedFiles);
+        return new Result(searchDirectory, index.size(), shippedModuleCount, totalByteCount, shippedByteCount);
+    }
+
+    /**
+     * Writes files to a synthetic search directory in the cache if one with the same content does not already exist.
+     *
+     * @param files relative paths and the files to copy to them.
+     *
+     * @return the synthetic search directory.
+     */
+    private File writeSearchDirectory(Map<String, File> files)
+    throws IOException
+    {
+        File entryDirectory = new File(cacheDirectory, contentHash(files));
+        File contentDirectory = new File(entryDirectory, CONTENT_DIRECTORY_NAME);
+
+        //Fast path - same modules already written previously, possibly by another build
+        File completionMarker = new File(entryDirectory, COMPLETION_MARKER_NAME);
+        if (completionMarker.isFile())
+        {
+            //Mark it as recently used
+            completionMarker.setLastModified(System.currentTimeMillis());
+            return contentDirectory;
+        }
+
+        //Something is there but it was never completed - can only happen if the filesystem does not support atomic moves, so clean it out and start again
+        if (entryDirectory.exists())
+            FileUtils.deleteDirectory(entryDirectory);
+
+        Files.createDirectories(cacheDirectory.toPath());
+        Path tempDir = Files.createTempDirectory(cacheDirectory.toPath(), "prune-");
+        try
+        {
+            Path tempContentDirectory = tempDir.resolve(CONTENT_DIRECTORY_NAME);
+            for (Map.Entry<String, File> file : files.entrySet())
+            {
+                Path target = tempContentDirectory.resolve(file.getKey());
+                Files.createDirectories(target.getParent());
+                Files.copy(file.getValue().toPath(), target);
+            }
+            Files.createFile(tempDir.resolve(COMPLETION_MARKER_NAME));
+
+            try
+            {
+                Files.move(tempDir, entryDirectory.toPath());
+            }
+            catch (FileAlreadyExistsException e)
+            {
+                //Another process beat us to it, which is fine, use theirs
+            }
+        }
+        finally
+        {
+            if (Files.exists(tempDir))
+                FileUtils.deleteDirectory(tempDir.toFile());
+        }
+
+        evictLeastRecentlyUsed();
+        return contentDirectory;
+    }
+
+    /**
+     * Removes the least recently used synthetic search directories if there are more than the cache may hold.  The modification time of each entry's
+     * completion marker records when it was last used.
+     */
+    private void evictLeastRecentlyUsed()
+    {
+        File[] entries = cacheDirectory.listFiles(f -> new File(f, COMPLETION_MARKER_NAME).isFile());
+        if (entries == null || entries.length <= maxCachedSearchDirectories)
+            return;
+
+        List<File> oldestFirst = Arrays.stream(entries)
+                                       .sorted(Comparator.comparingLong(entry -> new File(entry, COMPLETION_MARKER_NAME).lastModified()))
+                                       .collect(Collectors.toList());
+        for (File entry : oldestFirst.subList(0, oldestFirst.size() - maxCachedSearchDirectories))
+        {
+            log.info("Evicting pruned ADL search directory " + entry + " from cache");
+            try
+            {
+                FileUtils.deleteDirectory(entry);
+            }
+            catch (IOException e)
+            {
+                log.info("Could not delete " + entry + ", it may be in use: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the companion annotation files of an ADL file, such as <code>types.adl-java</code> for <code>types.adl</code>.
+     */
+    private static List<File> companionFiles(File adlFile)
+    throws IOException
+    {
+        String companionPrefix = adlFile.getName() + "-";
+        try (Stream<Path> siblings = Files.list(adlFile.getParentFile().toPath()))
+        {
+            return siblings.filter(path -> path.getFileName().toString().startsWith(companionPrefix))
+                           .filter(Files::isRegularFile)
+                           .map(Path::toFile)
+                           .sorted()
+                           .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the modules referenced by an ADL file and its companion files.
+     */
+    private static Set<String> referencedModules(File adlFile)
+    throws IOException
+    {
+        Set<String> references = AdlModuleIndex.parseReferencedModules(readString(adlFile));
+        for (File companionFile : companionFiles(adlFile))
+        {
+            references.addAll(AdlModuleIndex.parseReferencedModules(readString(companionFile)));
+        }
+        return references;
+    }
+
+    private static String readString(File file)
+    throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hashes relative paths and file content together, so the same set of modules always maps to the same synthetic search directory.
+     */
+    private static String contentHash(Map<String, File> files)
+    throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //SHA-256 is always supported by the JDK
+            throw new Error(e);
+        }
+
+        for (Map.Entry<String, File> file : files.entrySet())
+        {
+            digest.update(file.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+            byte[] content = Files.readAllBytes(file.getValue().toPath());
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(content.length).array());
+            digest.update(content);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The outcome of pruning a search path.
+     */
+    public static class Result
+    {
+        private final File searchDirectory;
+        private final int totalModuleCount;
+        private final int shippedModuleCount;
+        private final long totalByteCount;
+        private final long shippedByteCount;
+
+        public Result(File searchDirectory, int totalModuleCount, int shippedModuleCount, long totalByteCount, long shippedByteCount)
+        {
+            this.searchDirectory = searchDirectory;
+            this.totalModuleCount = totalModuleCount;
+            this.shippedModuleCount = shippedModuleCount;
+            this.totalByteCount = totalByteCount;
+            this.shippedByteCount = shippedByteCount;
+        }
+
+        /**
+         * @return the synthetic search directory, or null if sources do not need any search path modules.
+         */
+        public File getSearchDirectory()
+        {
+            return searchDirectory;
+        }
+
+        /**
+         * @return the synthetic search directory as a search path, empty if sources do not need any search path modules.
+         */
+        public List<File> getSearchDirectories()
+        {
+            if (searchDirectory == null)
+                return Collections.emptyList();
+
+            return Collections.singletonList(searchDirectory);
+        }
+
+        /**
+         * @return the number of distinct modules across the whole search path.
+         */
+        public int getTotalModuleCount()
+        {
+            return totalModuleCount;
+        }
+
+        /**
+         * @return the number of modules in the synthetic search directory.
+         */
+        public int getShippedModuleCount()
+        {
+            return shippedModuleCount;
+        }
+
+        /**
+         * @return the number of search path modules left out.
+         */
+        public int getPrunedModuleCount()
+        {
+            return totalModuleCount - shippedModuleCount;
+        }
+
+        /**
+         * @return the total size in bytes of all files across the whole search path.
+         */
+        public long getTotalByteCount()
+        {
+            return totalByteCount;
+        }
+
+        /**
+         * @return the total size in bytes of the files in the synthetic search directory.
+         */
+        public long getShippedByteCount()
+        {
+            return shippedByteCount;
+        }
+
+        /**
+         * @return the number of search path bytes left out.
+         */
+        public long getPrunedByteCount()
+        {
+            return totalByteCount - shippedByteCount;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts archives used as directories (such as search directory JARs) into a persistent cache directory keyed by the hash of the archive's content.
+ * <p>
+ *
+ * Each archive is extracted at most once, into a temporary directory that is renamed into place with a completion marker, so concurrent tasks and builds
+ * never see a half-extracted archive.  Entries are only used once they have a completion marker.  Extracted archives are shared between all tasks and builds using the same cache directory.
+ * <p>
+ *
+ * The cache holds a limited number of extracted archives.  When the limit is exceeded after extracting a new archive, the least recently used ones are
+ * removed.
+ */
+public class ArchiveExtractionCache
+{
+    private static final Logger log = Logging.getLogger(ArchiveExtractionCache.class);
+
+    /**
+     * Default maximum number of extracted archives kept in the cache.
+     */
+    public static final int DEFAULT_MAX_CACHED_ARCHIVES = 100;
+
+    /**
+     * Name of the directory under each cache entry that holds the extracted archive content.
+     */
+    private static final String CONTENT_DIRECTORY_NAME = "content";
+
+    /**
+     * Name of the marker file written to each cache entry once extraction has fully completed.
+     */
+    private static final String COMPLETION_MARKER_NAME = "extracted.marker";
+
+    /**
+     * How long a cache entry can be left without a completion marker before it is considered abandoned rather than still being completed by
+     * another process.
+     */
+    private static final Duration ABANDONED_ENTRY_AGE = Duration.ofMinutes(10L);
+
+    /**
+     * Content hashes of archives already seen in this JVM, so unchanged archives don't need to be re-read for every execution.
+     */
+    private static final Map<ArchiveKey, String> archiveHashes = new ConcurrentHashMap<>();
+
+    private final File cacheDirectory;
+    private final int maxCachedArchives;
+    private final ArchiveProcessor archiveProcessor;
+
+    /**
+     * Creates an archive extraction cache that holds up to {@value #DEFAULT_MAX_CACHED_ARCHIVES} extracted archives.
+     *
+     * @param cacheDirectory the base directory archives are extracted under.
+     * @param archiveProcessor used for reading archives.
+     */
+    public ArchiveExtractionCache(File cacheDirectory, ArchiveProcessor archiveProcessor)
+    {
+        this(cacheDirectory, DEFAULT_MAX_CACHED_ARCHIVES, archiveProcessor);
+    }
+
+    /**
+     * Creates an archive extraction cache.
+     *
+     * @param cacheDirectory the base directory archives are extracted under.
+     * @param maxCachedArchives the maximum number of extracted archives to keep in the cache.
+     * @param archiveProcessor used for reading archives.
+     */
+    public ArchiveExtractionCache(File cacheDirectory, int maxCachedArchives, ArchiveProcessor archiveProcessor)
+    {
+        if (maxCachedArchives < 1)
+            throw new IllegalArgumentException("maxCachedArchives must be at least 1: " + maxCachedArchives);
+
+        this.cacheDirectory = Objects.requireNonNull(cacheDirectory);
+        this.maxCachedArchives = maxCachedArchives;
+        this.archiveProcessor = Objects.requireNonNull(archiveProcessor);
+    }
+
+    /**
+     * Resolves the extracted root directory of an archive, extracting it into the cache if this has not been done already.
+     *
+     * @param archive the archive file.
+     *
+     * @return the directory holding the extracted contents of the archive, or null if the file is not a supported archive.
+     *
+     * @throws IOException if an I/O error occurs reading or extracting the archive.
+     */
+    public File extractedDirectory(File archive)
+    throws IOException
+    {
+        FileTree archiveFileTree = archiveProcessor.archiveToFileTree(archive);
+        if (archiveFileTree == null)
+            return null;
+
+        File entryDirectory = new File(cacheDirectory, archiveHash(archive));
+
+        //Fast path - already extracted previously, possibly by another build
+        File completionMarker = new File(entryDirectory, COMPLETION_MARKER_NAME);
+        if (completionMarker.isFile())
+        {
+            //Mark it as recently used
+            completionMarker.setLastModified(System.currentTimeMillis());
+            return new File(entryDirectory, CONTENT_DIRECTORY_NAME);
+        }
+
+        //Something is there but it has not been completed - another process might still be moving it into place if the filesystem does not support
+        //atomic moves, or be evicting it, so only clean it out once it has clearly been abandoned
+        if (entryDirectory.exists() && System.currentTimeMillis() - entryDirectory.lastModified() > ABANDONED_ENTRY_AGE.toMillis())
+        {
+            try
+            {
+                FileUtils.deleteDirectory(entryDirectory);
+            }
+            catch (IOException e)
+            {
+                log.info("Could not delete abandoned extracted archive " + entryDirectory + ": " + e.getMessage());
+            }
+        }
+
+        //Extract to a temporary directory so other processes won't pick up a half-extracted archive concurrently
+        //and rename it to the proper name when done
+        Files.createDirectories(cacheDirectory.toPath());
+        Path extractTempDir = Files.createTempDirectory(cacheDirectory.toPath(), "extract-");
+        File contentDirectory = new File(entryDirectory, CONTENT_DIRECTORY_NAME);
+        boolean keepExtractTempDir = false;
+        try
+        {
+            File tempContentDirectory = extractTempDir.resolve(CONTENT_DIRECTORY_NAME).toFile();
+            Files.createDirectories(tempContentDirectory.toPath());
+            archiveFileTree.visit(fileVisitDetails -> fileVisitDetails.copyTo(fileVisitDetails.getRelativePath().getFile(tempContentDirectory)));
+            Files.createFile(extractTempDir.resolve(COMPLETION_MARKER_NAME));
+
+            try
+            {
+                Files.move(extractTempDir, entryDirectory.toPath());
+            }
+            catch (FileAlreadyExistsException | DirectoryNotEmptyException e)
+            {
+                //Another process beat us to it, which is fine, use theirs once it has been completed
+                //If not, use our own extraction where it is - it has a completion marker so it gets evicted like any other entry
+                if (!completionMarker.isFile())
+                {
+                    contentDirectory = tempContentDirectory;
+                    keepExtractTempDir = true;
+                }
+            }
+        }
+        finally
+        {
+            if (!keepExtractTempDir && Files.exists(extractTempDir))
+                FileUtils.deleteDirectory(extractTempDir.toFile());
+        }
+
+        evictLeastRecentlyUsed();
+        return contentDirectory;
+    }
+
+    /**
+     * Removes the least recently used extracted archives if there are more than the cache may hold.  The modification time of each entry's completion
+     * marker records when it was last used.
+     */
+    private void evictLeastRecentlyUsed()
+    {
+        File[] entries = cacheDirectory.listFiles(f -> new File(f, COMPLETION_MARKER_NAME).isFile());
+        if (entries == null || entries.length <= maxCachedArchives)
+            return;
+
+        List<File> oldestFirst = Arrays.stream(entries)
+                                       .sorted(Comparator.comparingLong(entry -> new File(entry, COMPLETION_MARKER_NAME).lastModified()))
+                                       .collect(Collectors.toList());
+        for (File entry : oldestFirst.subList(0, oldestFirst.size() - maxCachedArchives))
+        {
+            log.info("Evicting extracted archive " + entry + " from cache");
+            try
+            {
+                //Marker goes first so no one starts using an entry that is being removed
+                Files.deleteIfExists(new File(entry, COMPLETION_MARKER_NAME).toPath());
+                FileUtils.deleteDirectory(entry);
+            }
+            catch (IOException e)
+            {
+                log.info("Could not delete " + entry + ", it may be in use: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Computes the content hash for an archive, reusing a previously computed hash if the archive has not been modified.
+     */
+    private static String archiveHash(File archive)
+    throws IOException
+    {
+        ArchiveKey key = new ArchiveKey(archive);
+        String hash = archiveHashes.get(key);
+        if (hash == null)
+        {
+            hash = sha256(archive);
+            archiveHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private static String sha256(File file)
+    throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //SHA-256 is always supported by the JDK
+            throw new Error(e);
+        }
+
+        try (InputStream is = new DigestInputStream(Files.newInputStream(file.toPath()), digest))
+        {
+            byte[] buf = new byte[8192];
+            while (is.read(buf) >= 0)
+            {
+                //Just reading to update digest
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Identifies a particular revision of an archive file by path, size and last modification time.
+     */
+    private static class ArchiveKey
+    {
+        private final File file;
+        private final long size;
+        private final long lastModified;
+
+        public ArchiveKey(File file)
+        {
+            this.file = file.getAbsoluteFile();
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof ArchiveKey)) return false;
+            ArchiveKey that = (ArchiveKey) o;
+            return size == that.size && lastModified == that.lastModified && file.equals(that.file);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(file, size, lastModified);
+        }
+    }
+}
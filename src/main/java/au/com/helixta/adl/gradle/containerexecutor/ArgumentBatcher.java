@@ -0,0 +1,127 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Decides how the arguments generated from a prepared command line are passed to a process when there are a large number of them.
+ * <p>
+ *
+ * Arguments expanded from file trees are 'batchable'.  When there are more batchable arguments than the command line's
+ * {@linkplain PreparedCommandLine#getBatchThreshold() batch threshold} and the command line is {@linkplain PreparedCommandLine#isBatchable() batchable},
+ * they are split into batches that are run as multiple invocations of the tool.  Otherwise they are all passed on a single command line.
+ */
+class ArgumentBatcher
+{
+    private final PreparedCommandLine commandLine;
+    private final List<MappedArgument> mappedArguments;
+    private final int batchableCount;
+
+    /**
+     * Creates a batcher.
+     *
+     * @param commandLine the command line that the arguments were generated from.
+     * @param mappedArguments the string arguments generated from each argument of the command line, in order.
+     */
+    public ArgumentBatcher(PreparedCommandLine commandLine, List<MappedArgument> mappedArguments)
+    {
+        this.commandLine = Objects.requireNonNull(commandLine);
+        this.mappedArguments = new ArrayList<>(mappedArguments);
+        this.batchableCount = mappedArguments.stream().filter(MappedArgument::isBatchable).mapToInt(a -> a.getValues().size()).sum();
+    }
+
+    /**
+     * @return true if there are too many batchable arguments to pass them all directly on the command line and the tool can be run in batches.
+     */
+    public boolean isBatched()
+    {
+        return batchableCount > commandLine.getBatchThreshold() && commandLine.isBatchable();
+    }
+
+    /**
+     * Generates the command lines for running the tool.  There will be a single command line unless the arguments are batched, in which case batchable
+     * arguments are split into batches with one command line per batch.
+     *
+     * @return a list of command lines, one for each invocation of the tool.
+     */
+    public List<List<String>> commandLines()
+    {
+        if (!isBatched())
+            return Collections.singletonList(commandLineWithBatch(null));
+
+        List<String> batchables = batchableArguments();
+        int batchSize = Math.max(1, commandLine.getBatchThreshold());
+        List<List<String>> commandLines = new ArrayList<>();
+        for (int i = 0; i < batchables.size(); i += batchSize)
+        {
+            List<String> batch = batchables.subList(i, Math.min(i + batchSize, batchables.size()));
+            commandLines.add(commandLineWithBatch(batch));
+        }
+        return commandLines;
+    }
+
+    private List<String> batchableArguments()
+    {
+        List<String> batchables = new ArrayList<>(batchableCount);
+        for (MappedArgument mappedArgument : mappedArguments)
+        {
+            if (mappedArgument.isBatchable())
+                batchables.addAll(mappedArgument.getValues());
+        }
+        return batchables;
+    }
+
+    /**
+     * Builds a command line from all non-batchable arguments, and either the original batchable arguments or a batch of them placed at the position of the
+     * first batchable argument.
+     *
+     * @param batch the batch of arguments to use, or null to use all the original batchable arguments.
+     */
+    private List<String> commandLineWithBatch(List<String> batch)
+    {
+        List<String> commandLine = new ArrayList<>();
+        boolean batchAdded = false;
+        for (MappedArgument mappedArgument : mappedArguments)
+        {
+            if (!mappedArgument.isBatchable() || batch == null)
+                commandLine.addAll(mappedArgument.getValues());
+            else if (!batchAdded)
+            {
+                commandLine.addAll(batch);
+                batchAdded = true;
+            }
+        }
+        return commandLine;
+    }
+
+    /**
+     * The string arguments generated from a single prepared command line argument.
+     */
+    public static class MappedArgument
+    {
+        private final List<String> values;
+        private final boolean batchable;
+
+        /**
+         * @param values the string arguments.
+         * @param batchable whether these arguments may be split between batches.
+         */
+        public MappedArgument(List<String> values, boolean batchable)
+        {
+            this.values = new ArrayList<>(values);
+            this.batchable = batchable;
+        }
+
+        public List<String> getValues()
+        {
+            return values;
+        }
+
+        public boolean isBatchable()
+        {
+            return batchable;
+        }
+    }
+}
@@ -2,12 +2,12 @@ package au.com.helixta.adl.gradle.containerexecutor;
 
 import au.com.helixta.adl.gradle.config.DockerConfiguration;
 import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
+import au.com.helixta.adl.gradle.distribution.DistributionResolutionService;
 import au.com.helixta.adl.gradle.distribution.DistributionService;
 import au.com.helixta.adl.gradle.distribution.DistributionSpecifier;
 import au.com.helixta.adl.gradle.generator.AdlToolLogger;
 import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
 import com.github.dockerjava.api.DockerClient;
-import org.gradle.api.Project;
 import org.gradle.api.file.ArchiveOperations;
 import org.gradle.api.file.FileSystemOperations;
 import org.gradle.api.logging.Logger;
@@ -18,7 +18,10 @@ import org.gradle.nativeplatform.platform.NativePlatform;
 import org.gradle.nativeplatform.platform.internal.DefaultNativePlatform;
 import org.gradle.process.ExecOperations;
 
+import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.UnaryOperator;
@@ -49,12 +52,52 @@ public abstract class ContainerTool<C>
 
         NativeExecutor nativeExecutor = new NativeExecutor(staticToolConfiguration.distributionService, distributionSpecifier,
                                                            staticToolConfiguration.executableResolver, environment.execOperations,
-                                                           environment.archiveProcessor, environment.toolLogger,
-                                                           staticToolConfiguration.logToolName);
+                                                           archiveExtractionCache(), environment.toolLogger,
+                                                           staticToolConfiguration.logToolName, readExecutionTimeout(config),
+                                                           environment.executionCancellationService);
         PreparedCommandLine commandLine = createCommandLine(config);
         nativeExecutor.execute(commandLine);
     }
 
+    /**
+     * @return the persistent cache used for extracting archive search directories when running natively.
+     */
+    protected ArchiveExtractionCache archiveExtractionCache()
+    {
+        File cacheDirectory = new File(environment.homeDirProvider.getGradleUserHomeDirectory(), "adl-archive-cache");
+        return new ArchiveExtractionCache(cacheDirectory, environment.archiveProcessor);
+    }
+
+    /**
+     * @return the local cache of Docker image tarballs for a Docker configuration.
+     */
+    private DockerImageCache dockerImageCache(DockerConfiguration dockerConfiguration)
+    {
+        File cacheDirectory = new File(environment.homeDirProvider.getGradleUserHomeDirectory(), "adl-docker-image-cache");
+        File seedDirectory = dockerConfiguration.getImageCacheSeedDirectory().getAsFile().getOrNull();
+        return new DockerImageCache(cacheDirectory, dockerConfiguration.getMaxCachedImages(), seedDirectory);
+    }
+
+    private DockerExecutor createDockerExecutor(DockerClient dockerClient, String distributionVersion, DockerConfiguration dockerConfiguration,
+                                                Duration executionTimeout)
+    {
+        //The Docker-specific timeout takes precedence over the general one
+        if (dockerConfiguration.getContainerExecutionTimeout() != null)
+            executionTimeout = dockerConfiguration.getContainerExecutionTimeout();
+
+        return new DockerExecutor(dockerClient, staticToolConfiguration.distributionService, staticToolConfiguration.executableResolver,
+                                  staticToolConfiguration.dockerCommandLinePostProcessor,
+                                  staticToolConfiguration.dockerToolInstallBaseDirectory, staticToolConfiguration.dockerMappedBaseDirectory,
+                                  staticToolConfiguration.dockerImageDefinitionTransformer,
+                                  distributionVersion, staticToolConfiguration.baseDockerImageName,
+                                  staticToolConfiguration.baseDockerContainerName, dockerConfiguration, environment.toolLogger,
+                                  staticToolConfiguration.logToolName, environment.targetMachineFactory, environment.objectFactory,
+                                  environment.archiveProcessor, environment.dockerConcurrencyService,
+                                  environment.executionMetrics, environment.dockerSessionService, environment.dockerImageService,
+                                  dockerImageCache(dockerConfiguration), environment.dockerClientFactory,
+                                  environment.executionCancellationService, executionTimeout);
+    }
+
     public void executeDocker(C config)
     throws ContainerExecutionException, IOException, DistributionNotFoundException
     {
@@ -62,42 +105,113 @@ public abstract class ContainerTool<C>
 
         try (DockerClient dockerClient = environment.dockerClientFactory.createDockerClient())
         {
-            DockerExecutor dockerExecutor = new DockerExecutor(dockerClient, staticToolConfiguration.distributionService, staticToolConfiguration.executableResolver,
-                                                               staticToolConfiguration.dockerCommandLinePostProcessor,
-                                                               staticToolConfiguration.dockerToolInstallBaseDirectory, staticToolConfiguration.dockerMappedBaseDirectory,
-                                                               staticToolConfiguration.dockerImageDefinitionTransformer,
-                                                               readDistributionVersion(config), staticToolConfiguration.baseDockerImageName,
-                                                               staticToolConfiguration.baseDockerContainerName, readDockerConfiguration(config), environment.toolLogger,
-                                                               staticToolConfiguration.logToolName, environment.targetMachineFactory, environment.objectFactory,
-                                                               environment.archiveProcessor);
-            PreparedCommandLine commandLine = createCommandLine(config);
+            DockerExecutor dockerExecutor = createDockerExecutor(dockerClient, readDistributionVersion(config), readDockerConfiguration(config),
+                                                                 readExecutionTimeout(config));
+            PreparedCommandLine commandLine = createDockerCommandLine(config);
             dockerExecutor.execute(commandLine);
+            cleanUpDockerInBackground(readDockerConfiguration(config), dockerExecutor.getDockerImageName());
         }
     }
 
-    public void execute(C config, ExecutionPlatform platform)
-    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    /**
+     * Removes orphaned ADL containers and old ADL images in the background if automatic cleanup is enabled and it has not run recently.
+     *
+     * @param dockerConfiguration the Docker configuration.
+     * @param dockerImageName the image used by this execution, which is never removed.
+     */
+    private void cleanUpDockerInBackground(DockerConfiguration dockerConfiguration, String dockerImageName)
     {
-        if (platform == null)
-            platform = ExecutionPlatform.AUTO;
+        Duration cleanupInterval = dockerConfiguration.getAutomaticCleanupInterval();
+        if (cleanupInterval == null)
+            return;
+
+        //Each Docker host gets its own marker
+        String markerName = "cleanup-" + Integer.toHexString(String.valueOf(dockerConfiguration.getHost()).hashCode()) + ".timestamp";
+        File markerFile = new File(new File(environment.homeDirProvider.getGradleUserHomeDirectory(), "adl-docker-cleanup"), markerName);
 
-        if (platform == ExecutionPlatform.AUTO)
+        DockerReaper reaper = new DockerReaper(dockerConfiguration.getOrphanedContainerAge(), dockerConfiguration.getRetainedImageVersions());
+        environment.dockerImageService.cleanUpInBackground(() ->
         {
             try
             {
-                //Attempt to use native if it exists - check if there exists a resolvable distribution for the native platform
-                DistributionSpecifier distributionSpecifier = nativeDistributionSpecifier(readDistributionVersion(config));
-                staticToolConfiguration.distributionService.resolveDistribution(distributionSpecifier);
+                if (!DockerReaper.claimRun(markerFile, cleanupInterval))
+                    return;
 
-                //Successfully resolved, use native
-                platform = ExecutionPlatform.NATIVE;
+                try (DockerClient dockerClient = environment.dockerClientFactory.createDockerClient())
+                {
+                    DockerReaper.Result result = reaper.reap(dockerClient, Collections.singleton(dockerImageName));
+                    environment.gradleLogger.info("ADL Docker cleanup removed " + result.getRemovedContainers() + " container(s) and " +
+                                                  result.getRemovedImages() + " image(s).");
+                }
             }
-            catch (DistributionNotFoundException e)
+            catch (IOException | RuntimeException e)
             {
-                //Not found - fallback to docker
-                platform = ExecutionPlatform.DOCKER;
+                //Cleanup is best-effort, it will be tried again next interval
+                environment.gradleLogger.info("ADL Docker cleanup failed: " + e.getMessage(), e);
             }
+        });
+    }
+
+    /**
+     * Works out which platform the tool actually runs on.  Automatic selection uses native if there is a native distribution for the host, and Docker
+     * otherwise.
+     *
+     * @param platform the configured platform, which may be null for automatic selection.
+     * @param distributionVersion the version of the tool's distribution.
+     *
+     * @return the platform to run on, never {@link ExecutionPlatform#AUTO}.
+     *
+     * @throws IOException if an I/O error occurs looking for a native distribution.
+     */
+    private ExecutionPlatform resolvePlatform(ExecutionPlatform platform, String distributionVersion)
+    throws IOException
+    {
+        if (platform != null && platform != ExecutionPlatform.AUTO)
+            return platform;
+
+        try
+        {
+            //Attempt to use native if it exists - check if there exists a resolvable distribution for the native platform
+            DistributionSpecifier distributionSpecifier = nativeDistributionSpecifier(distributionVersion);
+            staticToolConfiguration.distributionService.resolveDistribution(distributionSpecifier);
+
+            //Successfully resolved, use native
+            return ExecutionPlatform.NATIVE;
         }
+        catch (DistributionNotFoundException e)
+        {
+            //Not found - fallback to docker
+            return ExecutionPlatform.DOCKER;
+        }
+    }
+
+    /**
+     * Works out which platform the tool runs on and, when running natively, installs the tool's distribution.  Used before starting several executions
+     * at the same time so they all find the platform already chosen and the distribution already installed.
+     *
+     * @param config the tool configuration.
+     * @param platform the configured platform, which may be null for automatic selection.
+     *
+     * @return the platform to run on, never {@link ExecutionPlatform#AUTO}.
+     *
+     * @throws IOException if an I/O error occurs installing the distribution.
+     * @throws DistributionNotFoundException if the tool runs natively and there is no distribution for the host.
+     */
+    public ExecutionPlatform resolveExecutionPlatform(C config, ExecutionPlatform platform)
+    throws IOException, DistributionNotFoundException
+    {
+        String distributionVersion = readDistributionVersion(config);
+        platform = resolvePlatform(platform, distributionVersion);
+        if (platform == ExecutionPlatform.NATIVE)
+            staticToolConfiguration.distributionService.resolveDistribution(nativeDistributionSpecifier(distributionVersion));
+
+        return platform;
+    }
+
+    public void execute(C config, ExecutionPlatform platform)
+    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        platform = resolvePlatform(platform, readDistributionVersion(config));
         environment.gradleLogger.info("Selected tool platform: " + platform);
 
         switch (platform)
@@ -114,9 +228,23 @@ public abstract class ContainerTool<C>
     }
 
     protected abstract PreparedCommandLine createCommandLine(C config);
+
+    /**
+     * Creates the command line for running the tool in Docker, where every file it uses has to be transferred into the container.  Defaults to the same
+     * command line used natively.
+     */
+    protected PreparedCommandLine createDockerCommandLine(C config)
+    {
+        return createCommandLine(config);
+    }
     protected abstract String readDistributionVersion(C config);
     protected abstract DockerConfiguration readDockerConfiguration(C config);
 
+    /**
+     * @return the maximum time a single execution of the tool may take, or null for no limit.
+     */
+    protected abstract Duration readExecutionTimeout(C config);
+
     public static class Environment
     {
         private final ExecOperations execOperations;
@@ -128,13 +256,20 @@ public abstract class ContainerTool<C>
         private final ArchiveProcessor archiveProcessor;
         private final GradleUserHomeDirProvider homeDirProvider;
         private final FileSystemOperations fileSystemOperations;
-        private final Project project;
+        private final DistributionResolutionService distributionResolutionService;
+        private final DockerConcurrencyService dockerConcurrencyService;
+        private final DockerSessionService dockerSessionService;
+        private final DockerImageService dockerImageService;
+        private final ExecutionCancellationService executionCancellationService;
+        private final ExecutionMetrics executionMetrics;
         private final Logger gradleLogger;
 
         public Environment(ExecOperations execOperations, AdlToolLogger toolLogger, DockerClientFactory dockerClientFactory, TargetMachineFactory targetMachineFactory,
                            ObjectFactory objectFactory, ArchiveOperations archiveOperations, ArchiveProcessor archiveProcessor,
-                           GradleUserHomeDirProvider homeDirProvider, FileSystemOperations fileSystemOperations, Project project,
-                           Logger gradleLogger)
+                           GradleUserHomeDirProvider homeDirProvider, FileSystemOperations fileSystemOperations,
+                           DistributionResolutionService distributionResolutionService, DockerConcurrencyService dockerConcurrencyService,
+                           DockerSessionService dockerSessionService, DockerImageService dockerImageService,
+                           ExecutionCancellationService executionCancellationService, ExecutionMetrics executionMetrics, Logger gradleLogger)
         {
             this.execOperations = Objects.requireNonNull(execOperations);
             this.toolLogger = Objects.requireNonNull(toolLogger);
@@ -145,10 +280,30 @@ public abstract class ContainerTool<C>
             this.archiveProcessor = Objects.requireNonNull(archiveProcessor);
             this.homeDirProvider = Objects.requireNonNull(homeDirProvider);
             this.fileSystemOperations = Objects.requireNonNull(fileSystemOperations);
-            this.project = Objects.requireNonNull(project);
+            this.distributionResolutionService = Objects.requireNonNull(distributionResolutionService);
+            this.dockerConcurrencyService = Objects.requireNonNull(dockerConcurrencyService);
+            this.dockerSessionService = Objects.requireNonNull(dockerSessionService);
+            this.dockerImageService = Objects.requireNonNull(dockerImageService);
+            this.executionCancellationService = Objects.requireNonNull(executionCancellationService);
+            this.executionMetrics = Objects.requireNonNull(executionMetrics);
             this.gradleLogger = Objects.requireNonNull(gradleLogger);
         }
 
+        /**
+         * Creates a copy of this environment that logs tool output to a different logger, such as a logger for one of several generations running at
+         * the same time.
+         *
+         * @param toolLogger the tool logger for the new environment.
+         *
+         * @return the new environment.
+         */
+        public Environment withToolLogger(AdlToolLogger toolLogger)
+        {
+            return new Environment(execOperations, toolLogger, dockerClientFactory, targetMachineFactory, objectFactory, archiveOperations, archiveProcessor,
+                                   homeDirProvider, fileSystemOperations, distributionResolutionService, dockerConcurrencyService, dockerSessionService,
+                                   dockerImageService, executionCancellationService, executionMetrics, gradleLogger);
+        }
+
         public ExecOperations getExecOperations()
         {
             return execOperations;
@@ -194,9 +349,34 @@ public abstract class ContainerTool<C>
             return fileSystemOperations;
         }
 
-        public Project getProject()
+        public DistributionResolutionService getDistributionResolutionService()
+        {
+            return distributionResolutionService;
+        }
+
+        public DockerConcurrencyService getDockerConcurrencyService()
+        {
+            return dockerConcurrencyService;
+        }
+
+        public DockerSessionService getDockerSessionService()
+        {
+            return dockerSessionService;
+        }
+
+        public DockerImageService getDockerImageService()
+        {
+            return dockerImageService;
+        }
+
+        public ExecutionCancellationService getExecutionCancellationService()
+        {
+            return executionCancellationService;
+        }
+
+        public ExecutionMetrics getExecutionMetrics()
         {
-            return project;
+            return executionMetrics;
         }
 
         public Logger getGradleLogger()
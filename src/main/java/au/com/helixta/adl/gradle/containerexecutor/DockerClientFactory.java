@@ -14,15 +14,34 @@ import java.util.Objects;
 public class DockerClientFactory
 {
     private final DockerClientConfig config;
+    private final DockerTransportOptions transportOptions;
+    private final DockerTransportService transportService;
 
     public DockerClientFactory(DockerConfiguration dockerConfiguration)
     {
-        this(dockerClientConfig(dockerConfiguration));
+        this(dockerConfiguration, null);
+    }
+
+    /**
+     * @param dockerConfiguration Docker configuration.
+     * @param transportService if not null and connection reuse is enabled, Docker clients use the service's shared transport instead of each having
+     *                         their own.
+     */
+    public DockerClientFactory(DockerConfiguration dockerConfiguration, DockerTransportService transportService)
+    {
+        this(dockerClientConfig(dockerConfiguration), DockerTransportOptions.of(dockerConfiguration), transportService);
     }
 
     public DockerClientFactory(DockerClientConfig config)
+    {
+        this(config, DockerTransportOptions.defaults(), null);
+    }
+
+    public DockerClientFactory(DockerClientConfig config, DockerTransportOptions transportOptions, DockerTransportService transportService)
     {
         this.config = Objects.requireNonNull(config);
+        this.transportOptions = Objects.requireNonNull(transportOptions);
+        this.transportService = transportService;
     }
 
     public DockerClient createDockerClient()
@@ -31,10 +50,11 @@ public class DockerClientFactory
         if (config.getDockerHost() != null && "unix".equals(config.getDockerHost().getScheme()) && Platform.isWindows())
             throw new RuntimeException("Docker on Windows platform has not been configured. The ADL code generator requires Docker for running on this platform. Install Docker and configure environment variables such as DOCKER_HOST appropriately.");
 
-        DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
-                                            .dockerHost(config.getDockerHost())
-                                            .sslConfig(config.getSSLConfig())
-                                            .build();
+        DockerHttpClient httpClient;
+        if (transportService != null && transportOptions.isReuseConnections())
+            httpClient = transportService.transport(config, transportOptions);
+        else
+            httpClient = createHttpClient(config, transportOptions);
 
         DockerClient docker = DockerClientImpl.getInstance(config, httpClient);
 
@@ -53,6 +73,27 @@ public class DockerClientFactory
         return docker;
     }
 
+    /**
+     * Creates a pooled HTTP transport for communicating with a Docker daemon.
+     *
+     * @param config Docker client configuration, for the host and TLS settings.
+     * @param options connection pool size and timeouts.
+     *
+     * @return the transport, which must be closed when no longer needed.
+     */
+    static DockerHttpClient createHttpClient(DockerClientConfig config, DockerTransportOptions options)
+    {
+        ApacheDockerHttpClient.Builder builder = new ApacheDockerHttpClient.Builder()
+                                                        .dockerHost(config.getDockerHost())
+                                                        .sslConfig(config.getSSLConfig())
+                                                        .maxConnections(options.getMaxConnections())
+                                                        .connectionTimeout(options.getConnectTimeout());
+        if (options.getResponseTimeout() != null)
+            builder.responseTimeout(options.getResponseTimeout());
+
+        return builder.build();
+    }
+
     /**
      * Creates DockerJava configuration from an ADL Gradle plugin Docker configuration object.
      *
@@ -0,0 +1,149 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Info;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Build service that limits the number of Docker containers executing at once across the whole build.
+ * <p>
+ *
+ * With parallel builds every ADL task could otherwise hit the Docker daemon at the same time, and dozens of simultaneous container create, copy and start
+ * calls slow everything down.  Tasks acquire a slot before running a container and release it when the container is removed.  Slots are handed out fairly,
+ * in the order they were requested.
+ * <p>
+ *
+ * The limit is decided the first time a slot is requested.  It is the configured maximum if one was set, otherwise the number of CPUs reported by the
+ * Docker daemon.
+ */
+public abstract class DockerConcurrencyService implements BuildService<BuildServiceParameters.None>
+{
+    private static final Logger log = Logging.getLogger(DockerConcurrencyService.class);
+
+    /**
+     * Name the service is registered under.
+     */
+    public static final String SERVICE_NAME = "adlDockerConcurrency";
+
+    private Semaphore slots;
+    private int maxConcurrentContainers;
+
+    /**
+     * Registers the Docker concurrency service for a build if it has not already been registered.
+     *
+     * @param gradle the build to register the service with.
+     *
+     * @return a provider of the shared service.
+     */
+    public static Provider<DockerConcurrencyService> register(Gradle gradle)
+    {
+        return gradle.getSharedServices().registerIfAbsent(SERVICE_NAME, DockerConcurrencyService.class, spec -> {});
+    }
+
+    /**
+     * Waits for a container execution slot to become available.
+     *
+     * @param docker Docker client, used for reading the daemon's CPU count if no limit is configured.
+     * @param configuredMaxConcurrentContainers the configured maximum number of concurrent containers, or null to derive it from the Docker daemon.
+     *
+     * @return the acquired slot, which must be closed to release it.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Slot acquire(DockerClient docker, Integer configuredMaxConcurrentContainers)
+    throws InterruptedException
+    {
+        Semaphore slots = slots(docker, configuredMaxConcurrentContainers);
+        long startTime = System.nanoTime();
+        slots.acquire();
+        return new Slot(slots, Duration.ofNanos(System.nanoTime() - startTime));
+    }
+
+    /**
+     * @return the maximum number of concurrent containers, or 0 if no slot has been requested yet.
+     */
+    public synchronized int getMaxConcurrentContainers()
+    {
+        return maxConcurrentContainers;
+    }
+
+    private synchronized Semaphore slots(DockerClient docker, Integer configuredMaxConcurrentContainers)
+    {
+        if (slots == null)
+        {
+            if (configuredMaxConcurrentContainers != null)
+                maxConcurrentContainers = configuredMaxConcurrentContainers;
+            else
+                maxConcurrentContainers = dockerCpuCount(docker);
+
+            log.info("Running at most " + maxConcurrentContainers + " ADL Docker container(s) concurrently");
+            slots = new Semaphore(maxConcurrentContainers, true);
+        }
+        else if (configuredMaxConcurrentContainers != null && configuredMaxConcurrentContainers != maxConcurrentContainers)
+            log.warn("Docker max concurrent containers configured as " + configuredMaxConcurrentContainers + " but a build-wide limit of " + maxConcurrentContainers + " is already in use");
+
+        return slots;
+    }
+
+    /**
+     * Reads the number of CPUs available to the Docker daemon, falling back to the number of local processors if it cannot be read.
+     */
+    private static int dockerCpuCount(DockerClient docker)
+    {
+        try
+        {
+            Info info = docker.infoCmd().exec();
+            if (info.getNCPU() != null && info.getNCPU() > 0)
+                return info.getNCPU();
+        }
+        catch (RuntimeException e)
+        {
+            //Docker-java wraps all errors in runtime exceptions
+            log.info("Could not read CPU count from Docker, using local processor count: " + e.getMessage(), e);
+        }
+
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * A container execution slot.  Must be closed when the container is finished with.
+     */
+    public static class Slot implements AutoCloseable
+    {
+        private final Semaphore slots;
+        private final Duration waitTime;
+        private boolean released;
+
+        private Slot(Semaphore slots, Duration waitTime)
+        {
+            this.slots = slots;
+            this.waitTime = waitTime;
+        }
+
+        /**
+         * @return how long was spent waiting for this slot to become available.
+         */
+        public Duration getWaitTime()
+        {
+            return waitTime;
+        }
+
+        @Override
+        public synchronized void close()
+        {
+            if (!released)
+            {
+                released = true;
+                slots.release();
+            }
+        }
+    }
+}
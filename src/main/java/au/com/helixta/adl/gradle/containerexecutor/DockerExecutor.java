@@ -14,7 +14,6 @@ import com.github.dockerjava.api.command.BuildImageResultCallback;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.command.PullImageResultCallback;
-import com.github.dockerjava.api.command.WaitContainerResultCallback;
 import com.github.dockerjava.api.exception.DockerException;
 import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.BuildResponseItem;
@@ -41,11 +40,19 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.UnaryOperator;
 
@@ -53,7 +60,7 @@ public class DockerExecutor implements ContainerExecutor
 {
     private static final Logger log = Logging.getLogger(DockerExecutor.class);
 
-    private static final String DOCKER_GENERATOR_LABEL = "au.com.helixta.adl.gradle.docker";
+    static final String DOCKER_GENERATOR_LABEL = "au.com.helixta.adl.gradle.docker";
     private static final String TOOL_DOCKER = "docker";
 
     private final DockerClient docker;
@@ -72,6 +79,14 @@ public class DockerExecutor implements ContainerExecutor
     private final TargetMachineFactory targetMachineFactory;
     private final ObjectFactory objectFactory;
     private final ArchiveProcessor archiveProcessor;
+    private final DockerConcurrencyService dockerConcurrencyService;
+    private final ExecutionMetrics executionMetrics;
+    private final DockerSessionService dockerSessionService;
+    private final DockerImageService dockerImageService;
+    private final DockerImageCache dockerImageCache;
+    private final DockerClientFactory dockerClientFactory;
+    private final ExecutionCancellationService executionCancellationService;
+    private final Duration executionTimeout;
 
     /**
      * Creates a Docker executor.
@@ -92,6 +107,14 @@ public class DockerExecutor implements ContainerExecutor
      * @param targetMachineFactory target machine factory.
      * @param objectFactory Gradle object factory.
      * @param archiveProcessor Gradle archive processor object.
+     * @param dockerConcurrencyService limits the number of containers running at once across the build.
+     * @param executionMetrics records timings and counts for the execution.
+     * @param dockerSessionService provides containers shared across the build when shared container sessions are enabled.
+     * @param dockerImageService makes sure the Docker image is only prepared once per build.
+     * @param dockerImageCache local cache of image tarballs that built images are saved to and loaded from.
+     * @param dockerClientFactory used by shared container sessions for cleaning up at the end of the build.
+     * @param executionCancellationService stops containers that time out or are still running when the build is cancelled.
+     * @param executionTimeout the maximum time a single tool execution may run for, or null for no limit.
      */
     public DockerExecutor(DockerClient docker, DistributionService distributionService, ExecutableResolver executableResolver,
                           UnaryOperator<List<String>> commandLinePostProcessor,
@@ -99,7 +122,11 @@ public class DockerExecutor implements ContainerExecutor
                           DockerImageDefinitionTransformer dockerImageDefinitionTransformer,
                           String distributionVersion, String baseDockerImageName, String baseDockerContainerName,
                           DockerConfiguration dockerConfiguration, AdlToolLogger adlLog, String logToolName,
-                          TargetMachineFactory targetMachineFactory, ObjectFactory objectFactory, ArchiveProcessor archiveProcessor)
+                          TargetMachineFactory targetMachineFactory, ObjectFactory objectFactory, ArchiveProcessor archiveProcessor,
+                          DockerConcurrencyService dockerConcurrencyService, ExecutionMetrics executionMetrics,
+                          DockerSessionService dockerSessionService, DockerImageService dockerImageService,
+                          DockerImageCache dockerImageCache, DockerClientFactory dockerClientFactory,
+                          ExecutionCancellationService executionCancellationService, Duration executionTimeout)
     {
         this.docker = Objects.requireNonNull(docker);
         this.distributionService = Objects.requireNonNull(distributionService);
@@ -117,6 +144,14 @@ public class DockerExecutor implements ContainerExecutor
         this.targetMachineFactory = Objects.requireNonNull(targetMachineFactory);
         this.objectFactory = Objects.requireNonNull(objectFactory);
         this.archiveProcessor = Objects.requireNonNull(archiveProcessor);
+        this.dockerConcurrencyService = Objects.requireNonNull(dockerConcurrencyService);
+        this.executionMetrics = Objects.requireNonNull(executionMetrics);
+        this.dockerSessionService = Objects.requireNonNull(dockerSessionService);
+        this.dockerImageService = Objects.requireNonNull(dockerImageService);
+        this.dockerImageCache = Objects.requireNonNull(dockerImageCache);
+        this.dockerClientFactory = Objects.requireNonNull(dockerClientFactory);
+        this.executionCancellationService = Objects.requireNonNull(executionCancellationService);
+        this.executionTimeout = executionTimeout;
     }
 
     protected String dockerImageName(String baseDockerImageName, String distributionVersion)
@@ -124,45 +159,340 @@ public class DockerExecutor implements ContainerExecutor
         return baseDockerImageName + ":" + distributionVersion;
     }
 
+    /**
+     * @return the name of the Docker image the tool runs in.
+     */
+    public String getDockerImageName()
+    {
+        return dockerImageName(baseDockerImageName, distributionVersion);
+    }
+
+    /**
+     * Makes sure the Docker image for the tool is available, pulling or building it if needed.  If the image is already being prepared by another
+     * execution, waits for that to finish instead.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws DistributionNotFoundException if the image needs to be built and the tool distribution could not be found.
+     * @throws ContainerExecutionException if an error occurs preparing the image.
+     */
+    public void prepareDockerImage()
+    throws IOException, DistributionNotFoundException, ContainerExecutionException
+    {
+        String dockerImageName = dockerImageName(baseDockerImageName, distributionVersion);
+
+        //Same image name on different Docker hosts needs preparing separately
+        String imageKey = dockerConfiguration.getHost() + " " + dockerImageName;
+
+        long startTime = System.nanoTime();
+        dockerImageService.prepare(imageKey, () ->
+        {
+            //Resolve Docker image and build it if it does not already exist
+            boolean imageAvailable = checkPullDockerImage(dockerImageName);
+            if (!imageAvailable)
+            {
+                log.info("Docker image '" + dockerImageName + "' not found in repository so it will be built.");
+                buildDockerImage(dockerImageName, distributionVersion);
+                saveDockerImageToCache(dockerImageName);
+            }
+        });
+        executionMetrics.addDuration(ExecutionMetrics.DOCKER_IMAGE_WAIT_TIME, Duration.ofNanos(System.nanoTime() - startTime));
+    }
+
     @Override
     public void execute(PreparedCommandLine commandLine)
     throws IOException, DistributionNotFoundException, ContainerExecutionException
     {
-        //Resolve Docker image and build it if it does not already exist
         String dockerImageName = dockerImageName(baseDockerImageName, distributionVersion);
-        boolean imageAvailable = checkPullDockerImage(dockerImageName);
-        if (!imageAvailable)
+
+        if (dockerConfiguration.isSharedContainerSession())
+        {
+            prepareDockerImage();
+            runToolInSession(commandLine, dockerImageName);
+        }
+        else
+            runTool(commandLine, dockerImageName);
+    }
+
+    /**
+     * Runs the tool with exec inside the build-wide session container for the image instead of creating a new container.
+     */
+    private void runToolInSession(PreparedCommandLine commandLine, String dockerImageName)
+    throws ContainerExecutionException, IOException
+    {
+        DockerSessionService.Session session = dockerSessionService.session(dockerConfiguration.getHost(), dockerImageName, baseDockerContainerName,
+                                                                            dockerConfiguration.getOrphanedContainerAge(), docker, dockerClientFactory);
+        String executionDirectory = session.newExecutionDirectory();
+        DockerFileMapper dockerFileMapper = new DockerFileMapper(commandLine, executionDirectory, docker, objectFactory, archiveProcessor, session,
+                                                                 transferCompressionLevel());
+
+        String toolExecutableFullPath = executableResolver.resolveExecutable(dockerToolInstallBaseDirectory, distributionSpecifierForDockerImage());
+        ExecutorService outputWriterExecutor = createOutputWriterExecutor();
+        try (DockerConcurrencyService.Slot slot = acquireContainerSlot())
+        {
+            dockerFileMapper.copyFilesFromHostToContainer(session.getContainerId());
+
+            for (List<String> mappedToolCommand : dockerFileMapper.getMappedCommandLinesWithProgram(toolExecutableFullPath))
+            {
+                List<String> toolCommand = commandLinePostProcessor.apply(mappedToolCommand);
+                execInContainer(session.getContainerId(), toolCommand);
+            }
+
+            List<String> outputCompressionCommand = dockerFileMapper.getOutputCompressionCommand();
+            if (outputCompressionCommand != null)
+                execInContainer(session.getContainerId(), outputCompressionCommand);
+
+            recordOutputCounts(dockerFileMapper.copyFilesFromContainerToHost(session.getContainerId(), new TarExtractor(outputWriterExecutor)));
+        }
+        finally
+        {
+            outputWriterExecutor.shutdownNow();
+
+            //Shared inputs stay for other executions, but this execution's own files are no longer needed
+            try
+            {
+                execInContainer(session.getContainerId(), Arrays.asList("rm", "-rf", executionDirectory));
+            }
+            catch (ContainerExecutionException | DockerException e)
+            {
+                log.warn("Error cleaning up " + executionDirectory + " in Docker container " + session.getContainerId() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Runs a command inside an already running container and waits for it to complete, logging its output.
+     */
+    private void execInContainer(String containerId, List<String> command)
+    throws ContainerExecutionException
+    {
+        String execId = docker.execCreateCmd(containerId)
+                              .withCmd(command.toArray(new String[0]))
+                              .withAttachStdout(true).withAttachStderr(true)
+                              .exec()
+                              .getId();
+
+        ConsoleRecorder consoleRecords = new ConsoleRecorder();
+        ResultCallbackTemplate<ResultCallback<Frame>, Frame> execCallback = docker.execStartCmd(execId)
+                                                                                  .exec(new ResultCallbackTemplate<ResultCallback<Frame>, Frame>()
+                                                                                  {
+                                                                                      @Override
+                                                                                      public void onNext(Frame object)
+                                                                                      {
+                                                                                          consoleRecords.add(object.getStreamType(), object.getPayload());
+                                                                                      }
+                                                                                  });
+        //Docker can't kill a single exec, so stopping only stops waiting for it - the session container is removed at the end of the build anyway
+        try (ExecutionCancellationService.Execution execution = executionCancellationService.start(logToolName + " in Docker container " + containerId,
+                                                                                                    executionTimeout, () -> closeCallback(execCallback)))
+        {
+            execCallback.awaitCompletion();
+            throwIfStopped(execution);
+        }
+        catch (InterruptedException e)
         {
-            log.info("Docker image '" + dockerImageName + "' not found in repository so it will be built.");
-            buildDockerImage(dockerImageName, distributionVersion);
+            throw new ContainerExecutionException("Interrupted waiting for " + logToolName + " to complete.", e);
         }
 
-        runTool(commandLine, dockerImageName);
+        Long result = docker.inspectExecCmd(execId).exec().getExitCodeLong();
+        boolean hasErrors = (result == null || result != 0L);
+        logConsoleRecords(consoleRecords, hasErrors);
+
+        if (hasErrors)
+            throw new ContainerExecutionException(logToolName + " error (" + result + ")");
+    }
+
+    private static void closeCallback(ResultCallbackTemplate<?, ?> callback)
+    {
+        try
+        {
+            callback.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Fails if an execution was stopped because it timed out or the build was cancelled.
+     */
+    private void throwIfStopped(ExecutionCancellationService.Execution execution)
+    throws ContainerExecutionException
+    {
+        ExecutionCancellationService.StopReason stopReason = execution.getStopReason();
+        if (stopReason == ExecutionCancellationService.StopReason.TIMED_OUT)
+            throw new ContainerExecutionException(logToolName + " timed out after " + executionTimeout);
+        else if (stopReason == ExecutionCancellationService.StopReason.CANCELLED)
+            throw new ContainerExecutionException(logToolName + " was cancelled");
     }
 
+    /**
+     * Runs the tool in a new container, pipelining the work around the tool run itself: input archives are built while the image is prepared, inputs are
+     * uploaded while attaching to the container and output files are written to the host while the output stream is still being read.
+     */
     private void runTool(PreparedCommandLine commandLine, String dockerImageName)
+    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        ExecutorService pipelineExecutor = Executors.newCachedThreadPool(r ->
+        {
+            Thread thread = new Thread(r, "ADL Docker pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService outputWriterExecutor = createOutputWriterExecutor();
+        TarExtractor outputExtractor = new TarExtractor(outputWriterExecutor);
+        try
+        {
+            //Map files and build input archives while the image is being checked, pulled or built
+            CompletableFuture<DockerFileMapper> dockerFileMapperFuture = CompletableFuture.supplyAsync(
+                    () -> new DockerFileMapper(commandLine, dockerMappedFileBaseDirectory, docker, objectFactory, archiveProcessor, null, transferCompressionLevel()),
+                    pipelineExecutor);
+            CompletableFuture<DockerFileMapper.InputArchives> inputArchivesFuture = dockerFileMapperFuture.thenApplyAsync(mapper ->
+            {
+                try
+                {
+                    return mapper.createInputArchives();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }, pipelineExecutor);
+
+            prepareDockerImage();
+
+            DockerFileMapper dockerFileMapper = await(dockerFileMapperFuture);
+            DockerFileMapper.InputArchives inputArchives = await(inputArchivesFuture);
+
+            //Generate the command line string including mapped file names
+            //Normally a single command line, but very large argument lists might be batched, in which case all batches run in the one container
+            String toolExecutableFullPath = executableResolver.resolveExecutable(dockerToolInstallBaseDirectory, distributionSpecifierForDockerImage());
+            List<List<String>> toolCommands = new ArrayList<>();
+            for (List<String> mappedToolCommand : dockerFileMapper.getMappedCommandLinesWithProgram(toolExecutableFullPath))
+            {
+                toolCommands.add(commandLinePostProcessor.apply(mappedToolCommand));
+            }
+
+            //Wait for a build-wide slot so parallel tasks don't overload the Docker daemon
+            try (DockerConcurrencyService.Slot slot = acquireContainerSlot())
+            {
+                runToolContainer(dockerFileMapper, inputArchives, dockerFileMapper.containerCommand(toolCommands), dockerImageName, pipelineExecutor,
+                                 outputExtractor);
+            }
+        }
+        finally
+        {
+            pipelineExecutor.shutdownNow();
+            outputWriterExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a bounded pool for writing output files to the host so that a large output directory doesn't create a thread per file.
+     */
+    private static ExecutorService createOutputWriterExecutor()
+    {
+        return Executors.newFixedThreadPool(TarExtractor.DEFAULT_WRITER_THREADS, r ->
+        {
+            Thread thread = new Thread(r, "ADL output writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void recordOutputCounts(TarExtractor.Result outputCounts)
+    {
+        executionMetrics.addCount(ExecutionMetrics.OUTPUT_FILE_COUNT, outputCounts.getFileCount());
+        executionMetrics.addCount(ExecutionMetrics.OUTPUT_BYTE_COUNT, outputCounts.getByteCount());
+    }
+
+    /**
+     * Waits for a pipelined step to complete, rethrowing any failure from it.
+     */
+    private static <T> T await(CompletableFuture<T> future)
     throws ContainerExecutionException, IOException
     {
-        DockerFileMapper dockerFileMapper = new DockerFileMapper(commandLine, dockerMappedFileBaseDirectory, docker, objectFactory, archiveProcessor);
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            future.cancel(true);
+            throw new ContainerExecutionException("Interrupted waiting for Docker execution.", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException)cause).getCause();
+            else if (cause instanceof IOException)
+                throw (IOException)cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            else if (cause instanceof Error)
+                throw (Error)cause;
+            else
+                throw new ContainerExecutionException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return the gzip compression level for transferring files to and from containers, or null if transfers are not compressed.
+     */
+    private Integer transferCompressionLevel()
+    {
+        if (dockerConfiguration.isCompressedTransfer())
+            return dockerConfiguration.getTransferCompressionLevel();
+        else
+            return null;
+    }
 
-        //Generate the command line string including mapped file names
-        String toolExecutableFullPath = executableResolver.resolveExecutable(dockerToolInstallBaseDirectory, distributionSpecifierForDockerImage());
-        List<String> toolCommand = dockerFileMapper.getMappedCommandLineWithProgram(toolExecutableFullPath);
-        toolCommand = commandLinePostProcessor.apply(toolCommand);
+    private DockerConcurrencyService.Slot acquireContainerSlot()
+    throws ContainerExecutionException
+    {
+        try
+        {
+            DockerConcurrencyService.Slot slot = dockerConcurrencyService.acquire(docker, dockerConfiguration.getMaxConcurrentContainers());
+            executionMetrics.addDuration(ExecutionMetrics.DOCKER_SLOT_WAIT_TIME, slot.getWaitTime());
+            if (!slot.getWaitTime().isZero())
+                log.info("Waited " + slot.getWaitTime().toMillis() + "ms for a Docker container slot");
+            return slot;
+        }
+        catch (InterruptedException e)
+        {
+            throw new ContainerExecutionException("Interrupted waiting for a Docker container slot.", e);
+        }
+    }
 
+    private void runToolContainer(DockerFileMapper dockerFileMapper, DockerFileMapper.InputArchives inputArchives, List<String> containerCommand,
+                                  String dockerImageName, ExecutorService pipelineExecutor, TarExtractor outputExtractor)
+    throws ContainerExecutionException, IOException
+    {
         //Generate the container from the Docker image
         String containerName = generateDockerContainerName();
         CreateContainerResponse c = docker.createContainerCmd(dockerImageName)
                                           .withHostConfig(HostConfig.newHostConfig().withAutoRemove(false))
                                           .withName(containerName)
-                                          .withCmd(toolCommand)
+                                          .withLabels(Collections.singletonMap(DOCKER_GENERATOR_LABEL, "execution"))
+                                          .withCmd(containerCommand)
                                           .exec();
         String containerId = c.getId();
 
         try
         {
-            //Copy input and input/output files from host to container
-            dockerFileMapper.copyFilesFromHostToContainer(containerId);
+            //Copy input and input/output files from host to container while attaching
+            CompletableFuture<Void> upload = CompletableFuture.runAsync(() ->
+            {
+                try
+                {
+                    dockerFileMapper.copyFilesFromHostToContainer(containerId, inputArchives);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }, pipelineExecutor);
 
             //Reading console output from the process
             //Don't log directly from the callback because it's on another thread and Gradle has a threadlocal to group task-specific logs
@@ -187,57 +517,46 @@ public class DockerExecutor implements ContainerExecutor
             }
             catch (InterruptedException e)
             {
+                upload.cancel(true);
                 throw new ContainerExecutionException("Interrupted waiting for console output.", e);
             }
 
-            //Start container
-            docker.startContainerCmd(containerId).exec();
+            //Inputs must all be there before the tool starts
+            await(upload);
 
-            WaitContainerResultCallback resultCallback = docker.waitContainerCmd(containerId).start();
+            //Start container, killing it if it runs for too long or the build is cancelled
             Integer result;
-            if (dockerConfiguration.getContainerExecutionTimeout() == null)
-                result = resultCallback.awaitStatusCode();
-            else
-                result = resultCallback.awaitStatusCode(dockerConfiguration.getContainerExecutionTimeout().toMillis(), TimeUnit.MILLISECONDS);
-
-            boolean hasErrors = (result == null || result != 0);
-
-            //Stream console records to logger now
-            for (ConsoleRecord adlConsoleRecord : adlConsoleRecords.getRecords())
+            try (ExecutionCancellationService.Execution execution = executionCancellationService.start(logToolName + " in Docker container " + containerName,
+                                                                                                        executionTimeout,
+                                                                                                        () -> docker.killContainerCmd(containerId).exec()))
             {
-                for (String adlConsoleRecordLine : adlConsoleRecord.getMessageLines())
+                docker.startContainerCmd(containerId).exec();
+                result = docker.waitContainerCmd(containerId).start().awaitStatusCode();
+
+                if (execution.getStopReason() != null)
                 {
-                    switch (adlConsoleRecord.getType())
-                    {
-                        case STDOUT:
-                            //adlc puts error messages to stdout, so in case of error send them all to error
-                            if (hasErrors)
-                                adlLog.error(logToolName, adlConsoleRecordLine);
-                            else
-                                adlLog.info(logToolName, adlConsoleRecordLine);
-                            break;
-                        case STDERR:
-                            adlLog.error(logToolName, adlConsoleRecordLine);
-                            break;
-                        //Ignore other types, stdout/stderr is only two we are interested in
-                    }
+                    logConsoleRecords(adlConsoleRecords, true);
+                    throwIfStopped(execution);
                 }
             }
 
+            boolean hasErrors = (result == null || result != 0);
+
+            //Stream console records to logger now
+            logConsoleRecords(adlConsoleRecords, hasErrors);
+
             if (hasErrors)
                 throw new ContainerExecutionException(logToolName + " error (" + result + ")");
 
-            //Copy generated files back out of container
-            dockerFileMapper.copyFilesFromContainerToHost(containerId);
-
-            //TODO return / log counts
+            //Copy generated files back out of container, writing files to the host while the rest of the output is still being read
+            recordOutputCounts(dockerFileMapper.copyFilesFromContainerToHost(containerId, outputExtractor));
         }
         finally
         {
             try
             {
-                //Remove the container now we are done with it
-                docker.removeContainerCmd(containerId).withRemoveVolumes(true).exec();
+                //Remove the container now we are done with it, forcing in case it is still running because waiting for it was interrupted
+                docker.removeContainerCmd(containerId).withForce(true).withRemoveVolumes(true).exec();
             }
             catch (DockerException e)
             {
@@ -248,6 +567,30 @@ public class DockerExecutor implements ContainerExecutor
         }
     }
 
+    private void logConsoleRecords(ConsoleRecorder adlConsoleRecords, boolean hasErrors)
+    {
+        for (ConsoleRecord adlConsoleRecord : adlConsoleRecords.getRecords())
+        {
+            for (String adlConsoleRecordLine : adlConsoleRecord.getMessageLines())
+            {
+                switch (adlConsoleRecord.getType())
+                {
+                    case STDOUT:
+                        //adlc puts error messages to stdout, so in case of error send them all to error
+                        if (hasErrors)
+                            adlLog.error(logToolName, adlConsoleRecordLine);
+                        else
+                            adlLog.info(logToolName, adlConsoleRecordLine);
+                        break;
+                    case STDERR:
+                        adlLog.error(logToolName, adlConsoleRecordLine);
+                        break;
+                    //Ignore other types, stdout/stderr is only two we are interested in
+                }
+            }
+        }
+    }
+
     /**
      * Generate a unique container name per invocation so that multiple instances can overlap.
      *
@@ -422,11 +765,32 @@ public class DockerExecutor implements ContainerExecutor
         }
 
         if (existingImage == null)
+        {
+            //The cache only holds locally built images, so only use it when those can be reused
+            if (dockerImageBuildMode == ImageBuildMode.USE_EXISTING && dockerImageCache.load(docker, imageName))
+                return true;
+
             return pullDockerImage(imageName);
+        }
         else
             return true;
     }
 
+    /**
+     * Saves a freshly built image to the local image cache.  Failures are logged but do not fail the build since the image is already available.
+     */
+    private void saveDockerImageToCache(String imageName)
+    {
+        try
+        {
+            dockerImageCache.save(docker, imageName);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.warn("Failed to save Docker image " + imageName + " to image cache: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Determines whether a Docker image was generated on this system by looking at its labels.  Will return false for images that were downloaded from remote repositories.
      *
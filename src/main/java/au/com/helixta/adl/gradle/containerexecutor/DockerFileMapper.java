@@ -3,13 +3,17 @@ package au.com.helixta.adl.gradle.containerexecutor;
 import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
 import com.github.dockerjava.api.DockerClient;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.gradle.api.file.Directory;
 import org.gradle.api.file.FileTree;
 import org.gradle.api.file.RelativePath;
 import org.gradle.api.model.ObjectFactory;
@@ -20,9 +24,9 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
@@ -32,6 +36,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 public class DockerFileMapper
 {
@@ -39,7 +44,10 @@ public class DockerFileMapper
     private final DockerClient docker;
     private final ArchiveProcessor archiveProcessor;
 
-    private final List<String> mappedCommandLine;
+    /**
+     * Command lines for each invocation of the tool.  There is only more than one if a large number of arguments are batched.
+     */
+    private final List<List<String>> mappedCommandLines;
 
     /**
      * Container file arguments mapped to their docker container file/directory paths.
@@ -51,111 +59,371 @@ public class DockerFileMapper
      */
     private final Map<? extends PreparedCommandLine.ContainerFileTree, String> containerFileTreeMappings;
 
+    /**
+     * Snapshots of container file tree arguments, taken once and shared between command line generation and TAR building.
+     */
+    private final Map<? extends PreparedCommandLine.ContainerFileTree, FileTreeSnapshot> containerFileTreeSnapshots;
+
+    /**
+     * Inputs that may be shared with other executions in the same container, or null if nothing is shared.
+     */
+    private final SharedInputs sharedInputs;
+
+    /**
+     * Snapshots of input directories that are uploaded through {@link #sharedInputs}, keyed by argument.
+     */
+    private final Map<? extends PreparedCommandLine.ContainerFile, FileTreeSnapshot> sharedInputSnapshots;
+
+    /**
+     * Gzip compression level used for transferring files to and from the container, or null to transfer uncompressed.
+     */
+    private final Integer transferCompressionLevel;
+
     public DockerFileMapper(PreparedCommandLine commandLine, String dockerMappedFileBaseDirectory,
                             DockerClient docker, ObjectFactory objectFactory, ArchiveProcessor archiveProcessor)
+    {
+        this(commandLine, dockerMappedFileBaseDirectory, docker, objectFactory, archiveProcessor, null);
+    }
+
+    public DockerFileMapper(PreparedCommandLine commandLine, String dockerMappedFileBaseDirectory,
+                            DockerClient docker, ObjectFactory objectFactory, ArchiveProcessor archiveProcessor, SharedInputs sharedInputs)
+    {
+        this(commandLine, dockerMappedFileBaseDirectory, docker, objectFactory, archiveProcessor, sharedInputs, null);
+    }
+
+    /**
+     * Creates a file mapper.
+     *
+     * @param commandLine the command line whose files are mapped.
+     * @param dockerMappedFileBaseDirectory base directory in the container that files for this execution are mapped under.
+     * @param docker Docker client.
+     * @param objectFactory Gradle object factory.
+     * @param archiveProcessor for reading archives used as directories.
+     * @param sharedInputs if not null, input directories are mapped by content into this shared area of the container instead and only uploaded if
+     *                     no other execution has uploaded the same content.
+     * @param transferCompressionLevel if not null, files are gzip-compressed with this level when transferred to and from the container.  Compressed
+     *                                 output transfer requires the command that runs in the container to be wrapped with
+     *                                 {@link #withOutputCompression(List)} or followed by {@link #getOutputCompressionCommand()}.
+     */
+    public DockerFileMapper(PreparedCommandLine commandLine, String dockerMappedFileBaseDirectory,
+                            DockerClient docker, ObjectFactory objectFactory, ArchiveProcessor archiveProcessor, SharedInputs sharedInputs,
+                            Integer transferCompressionLevel)
     {
         this.docker = Objects.requireNonNull(docker);
         this.objectFactory = Objects.requireNonNull(objectFactory);
         this.archiveProcessor = Objects.requireNonNull(archiveProcessor);
+        this.sharedInputs = sharedInputs;
+        this.transferCompressionLevel = transferCompressionLevel;
 
         //Map host files into the container - maps host files to equivalent file paths inside the docker container
         Map<PreparedCommandLine.ContainerFile, String> containerFileMappings = new HashMap<>();
+        Map<PreparedCommandLine.ContainerFile, FileTreeSnapshot> sharedInputSnapshots = new HashMap<>();
         for (PreparedCommandLine.ContainerFile argument : commandLine.getContainerFileArguments())
         {
-            String mappedFile = FilenameUtils.separatorsToUnix(FilenameUtils.concat(dockerMappedFileBaseDirectory, argument.getLabel()));
+            String mappedFile;
+            if (sharedInputs != null && argument.getFileMode() == PreparedCommandLine.FileTransferMode.INPUT && argument.getFileType() == PreparedCommandLine.FileType.DIRECTORY)
+            {
+                //Identical input directories from any execution map to the same place in the shared area
+                FileTreeSnapshot snapshot = FileTreeSnapshot.of(inputDirectoryTree(argument.getHostFile()));
+                mappedFile = FilenameUtils.separatorsToUnix(FilenameUtils.concat(sharedInputs.getBaseDirectory(), contentKey(argument.getHostFile(), snapshot)));
+                sharedInputSnapshots.put(argument, snapshot);
+            }
+            else
+                mappedFile = FilenameUtils.separatorsToUnix(FilenameUtils.concat(dockerMappedFileBaseDirectory, argument.getLabel()));
+
             containerFileMappings.put(argument, mappedFile);
         }
         this.containerFileMappings = Collections.unmodifiableMap(containerFileMappings);
+        this.sharedInputSnapshots = Collections.unmodifiableMap(sharedInputSnapshots);
 
         //And same for mapped file trees
         Map<PreparedCommandLine.ContainerFileTree, String> containerFileTreeMappings = new HashMap<>();
+        Map<PreparedCommandLine.ContainerFileTree, FileTreeSnapshot> containerFileTreeSnapshots = new HashMap<>();
         for (PreparedCommandLine.ContainerFileTree argument : commandLine.getContainerFileTreeArguments())
         {
             //Even though a tree might have multiple roots, when we copy to container the tree has a single base directory so a single root in the container
             String mappedTreeBaseDirectory = FilenameUtils.separatorsToUnix(FilenameUtils.concat(dockerMappedFileBaseDirectory, argument.getLabel()));
             containerFileTreeMappings.put(argument, mappedTreeBaseDirectory);
+
+            //Walk the tree only once, the snapshot is used for both the command line and building the TAR
+            containerFileTreeSnapshots.put(argument, FileTreeSnapshot.of(argument.getHostFileTree()));
         }
         this.containerFileTreeMappings = Collections.unmodifiableMap(containerFileTreeMappings);
+        this.containerFileTreeSnapshots = Collections.unmodifiableMap(containerFileTreeSnapshots);
 
         //Generate the command line string including mapped file names
-        List<String> mappedCommandLine = new ArrayList<>();
+        List<ArgumentBatcher.MappedArgument> mappedArguments = new ArrayList<>();
         for (PreparedCommandLine.Argument argument : commandLine.getArguments())
         {
             if (argument instanceof PreparedCommandLine.StringArgument)
-                mappedCommandLine.add(((PreparedCommandLine.StringArgument)argument).getArgument());
+                mappedArguments.add(new ArgumentBatcher.MappedArgument(Collections.singletonList(((PreparedCommandLine.StringArgument)argument).getArgument()), false));
             else if (argument instanceof PreparedCommandLine.ContainerFile)
             {
                 PreparedCommandLine.ContainerFile fileArgument = (PreparedCommandLine.ContainerFile)argument;
                 String mappedFile = Objects.requireNonNull(containerFileMappings.get(fileArgument), "Docker file should have been mapped");
                 String argumentString = fileArgument.getCommandLineGenerator().generate(mappedFile);
-                mappedCommandLine.add(argumentString);
+                mappedArguments.add(new ArgumentBatcher.MappedArgument(Collections.singletonList(argumentString), false));
             }
             else if (argument instanceof PreparedCommandLine.ContainerFileTree)
             {
                 PreparedCommandLine.ContainerFileTree treeArgument = (PreparedCommandLine.ContainerFileTree)argument;
                 String mappedTreeBaseDirectory = containerFileTreeMappings.get(treeArgument);
-                List<String> baseArgs = treeArgument.getCommandLineGenerator().generateFromTree(treeArgument.getHostFileTree(), Collections.singletonList(mappedTreeBaseDirectory));
-                mappedCommandLine.addAll(baseArgs);
-                treeArgument.getHostFileTree().visit(fileVisitDetails ->
+                List<String> treeArgs = new ArrayList<>(treeArgument.getCommandLineGenerator().generateFromTree(treeArgument.getHostFileTree(), Collections.singletonList(mappedTreeBaseDirectory)));
+                for (FileTreeSnapshot.Element element : containerFileTreeSnapshots.get(treeArgument).getElements())
                 {
-                    String containerPath = FilenameUtils.separatorsToUnix(FilenameUtils.concat(mappedTreeBaseDirectory, fileVisitDetails.getRelativePath().getPathString()));
-                    List<String> curArgs = treeArgument.getCommandLineGenerator().generateFromTreeElement(treeArgument.getHostFileTree(), fileVisitDetails, containerPath);
-                    mappedCommandLine.addAll(curArgs);
-                });
+                    String containerPath = FilenameUtils.separatorsToUnix(FilenameUtils.concat(mappedTreeBaseDirectory, element.getRelativePath().getPathString()));
+                    List<String> curArgs = treeArgument.getCommandLineGenerator().generateFromTreeElement(treeArgument.getHostFileTree(), element, containerPath);
+                    treeArgs.addAll(curArgs);
+                }
+
+                //Only arguments expanded from file trees can be batched
+                mappedArguments.add(new ArgumentBatcher.MappedArgument(treeArgs, true));
             }
             else
                 throw new Error("Unknown argument type: " + argument.getClass().getName());
         }
-        this.mappedCommandLine = Collections.unmodifiableList(mappedCommandLine);
+
+        //Very large numbers of arguments might be batched into multiple runs
+        ArgumentBatcher batcher = new ArgumentBatcher(commandLine, mappedArguments);
+        List<List<String>> mappedCommandLines = new ArrayList<>();
+        for (List<String> mappedCommandLine : batcher.commandLines())
+        {
+            mappedCommandLines.add(Collections.unmodifiableList(mappedCommandLine));
+        }
+        this.mappedCommandLines = Collections.unmodifiableList(mappedCommandLines);
     }
 
+    /**
+     * @return the mapped command line.
+     *
+     * @throws IllegalStateException if arguments were batched into multiple command lines.
+     *
+     * @see #getMappedCommandLines()
+     */
     public List<String> getMappedCommandLine()
     {
-        return mappedCommandLine;
+        if (mappedCommandLines.size() != 1)
+            throw new IllegalStateException("Command line was split into " + mappedCommandLines.size() + " batches.");
+
+        return mappedCommandLines.get(0);
     }
 
     public List<String> getMappedCommandLineWithProgram(String program)
+    {
+        return withProgram(program, getMappedCommandLine());
+    }
+
+    /**
+     * @return the mapped command lines, one for each invocation of the tool.  There is only more than one if there are too many arguments for a single
+     *         invocation and the command line is batchable.
+     */
+    public List<List<String>> getMappedCommandLines()
+    {
+        return mappedCommandLines;
+    }
+
+    /**
+     * @return the mapped command lines with the program prepended to each one.
+     *
+     * @see #getMappedCommandLines()
+     */
+    public List<List<String>> getMappedCommandLinesWithProgram(String program)
+    {
+        List<List<String>> fullCommandLines = new ArrayList<>(mappedCommandLines.size());
+        for (List<String> mappedCommandLine : mappedCommandLines)
+        {
+            fullCommandLines.add(withProgram(program, mappedCommandLine));
+        }
+        return fullCommandLines;
+    }
+
+    private static List<String> withProgram(String program, List<String> mappedCommandLine)
     {
         List<String> fullCommandLine = new ArrayList<>(mappedCommandLine.size() + 1);
         fullCommandLine.add(program);
-        fullCommandLine.addAll(getMappedCommandLine());
+        fullCommandLine.addAll(mappedCommandLine);
         return fullCommandLine;
     }
 
+    /**
+     * Wraps a command that runs in a container so that, if the tool succeeds, its output directories are compressed in the container before being
+     * copied out.  Returns the command unchanged if compressed transfer is not used.
+     *
+     * @param command the command to wrap.
+     *
+     * @return the wrapped command.
+     */
+    public List<String> withOutputCompression(List<String> command)
+    {
+        String compressionScript = outputCompressionScript();
+        if (compressionScript == null)
+            return command;
+
+        //Run the original command through "$@" so its arguments don't need quoting, keeping its exit code if it fails
+        List<String> wrappedCommand = new ArrayList<>(command.size() + 4);
+        wrappedCommand.addAll(Arrays.asList("sh", "-c", "\"$@\" || exit $?; " + compressionScript, "sh"));
+        wrappedCommand.addAll(command);
+        return wrappedCommand;
+    }
+
+    /**
+     * Creates the command a new container runs for all of an execution's command lines.  When arguments were batched into several command lines, they
+     * are run one after the other in the same container, stopping at the first failure, so that inputs are only uploaded once.  Output directories are
+     * compressed at the end if compressed transfer is used.
+     *
+     * @param commands the commands to run, usually the mapped command lines with the program.
+     *
+     * @return the command for the container.
+     */
+    public List<String> containerCommand(List<List<String>> commands)
+    {
+        if (commands.size() == 1)
+            return withOutputCompression(commands.get(0));
+
+        List<String> script = new ArrayList<>(commands.size() + 1);
+        for (List<String> command : commands)
+        {
+            script.add(command.stream().map(DockerFileMapper::shellQuote).collect(Collectors.joining(" ")) + " || exit $?");
+        }
+
+        String compressionScript = outputCompressionScript();
+        if (compressionScript != null)
+            script.add(compressionScript);
+
+        return Arrays.asList("sh", "-c", String.join("; ", script));
+    }
+
+    /**
+     * @return a command that compresses output directories in the container before they are copied out, for running in an already running container
+     *         after the tool finishes.  Null if compressed transfer is not used.
+     */
+    public List<String> getOutputCompressionCommand()
+    {
+        String compressionScript = outputCompressionScript();
+        if (compressionScript == null)
+            return null;
+
+        return Arrays.asList("sh", "-c", compressionScript);
+    }
+
+    /**
+     * Generates a shell script that writes each output directory into a gzip-compressed TAR next to it.
+     *
+     * @return the script, or null if compressed transfer is not used or there are no output directories.
+     */
+    private String outputCompressionScript()
+    {
+        if (transferCompressionLevel == null)
+            return null;
+
+        List<String> commands = new ArrayList<>();
+        for (Map.Entry<? extends PreparedCommandLine.ContainerFile, String> mappingEntry : containerFileMappings.entrySet())
+        {
+            if (isOutputDirectory(mappingEntry.getKey()))
+            {
+                String containerDirectory = mappingEntry.getValue();
+                commands.add("tar -C " + shellQuote(containerDirectory) + " -cf - . | gzip -" + transferCompressionLevel + " > " +
+                             shellQuote(compressedOutputPath(containerDirectory)) + " || exit 1");
+            }
+        }
+
+        if (commands.isEmpty())
+            return null;
+
+        return String.join("; ", commands);
+    }
+
+    private static boolean isOutputDirectory(PreparedCommandLine.ContainerFile file)
+    {
+        return (file.getFileMode() == PreparedCommandLine.FileTransferMode.OUTPUT || file.getFileMode() == PreparedCommandLine.FileTransferMode.INPUT_OUTPUT) &&
+               file.getFileType() == PreparedCommandLine.FileType.DIRECTORY;
+    }
+
+    /**
+     * @return the path of the compressed TAR an output directory is written to in the container, next to the directory itself.
+     */
+    private static String compressedOutputPath(String containerDirectory)
+    {
+        return containerDirectory + ".tgz";
+    }
+
+    private static String shellQuote(String s)
+    {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Reads an input directory, which might be an archive file instead of directory - we want to support this.
+     */
+    private FileTree inputDirectoryTree(File directoryOrArchive)
+    {
+        FileTree dirTree = archiveProcessor.archiveToFileTree(directoryOrArchive);
+
+        if (dirTree == null)
+            dirTree = objectFactory.fileTree().from(directoryOrArchive);
+
+        return dirTree;
+    }
+
+    /**
+     * Generates a key that identifies the content of an input directory, built from its host location and the paths, sizes and modification times of
+     * everything in it.
+     */
+    private static String contentKey(File hostFile, FileTreeSnapshot snapshot)
+    {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(hostFile.getAbsolutePath(), StandardCharsets.UTF_8);
+        for (FileTreeSnapshot.Element element : snapshot.getElements())
+        {
+            hasher.putString(element.getRelativePath().getPathString(), StandardCharsets.UTF_8)
+                  .putBoolean(element.isDirectory())
+                  .putLong(element.getSize())
+                  .putLong(element.getLastModified());
+        }
+        return hasher.hash().toString();
+    }
+
     public void copyFilesFromHostToContainer(String dockerContainerId)
     throws IOException
     {
+        copyFilesFromHostToContainer(dockerContainerId, createInputArchives());
+    }
+
+    /**
+     * Builds the TAR archives of everything that needs to be copied into the container.  Does not need a container, so this can be done ahead of time
+     * while the container is still being prepared.  Shared inputs are not included since they are only built if no other execution has uploaded them.
+     *
+     * @return the input archives, which can be copied into any number of containers.
+     *
+     * @throws IOException if an error occurs reading input files.
+     */
+    public InputArchives createInputArchives()
+    throws IOException
+    {
+        List<SourceTarArchive> archives = new ArrayList<>();
+
         //Iterate through all the files
         for (Map.Entry<? extends PreparedCommandLine.ContainerFile, String> mappingEntry : containerFileMappings.entrySet())
         {
             //Only copy file contents for files that are input or input/output
             if (mappingEntry.getKey().getFileMode() == PreparedCommandLine.FileTransferMode.INPUT || mappingEntry.getKey().getFileMode() == PreparedCommandLine.FileTransferMode.INPUT_OUTPUT)
             {
-                if (mappingEntry.getKey().getFileType() == PreparedCommandLine.FileType.DIRECTORY)
+                if (sharedInputSnapshots.containsKey(mappingEntry.getKey()))
+                {
+                    //Uploaded separately through the shared inputs
+                }
+                else if (mappingEntry.getKey().getFileType() == PreparedCommandLine.FileType.DIRECTORY)
                 {
                     String containerDirectory = mappingEntry.getValue();
-
-                    //Might be an archive file instead of directory - we want to support this
-                    File directoryOrArchive = mappingEntry.getKey().getHostFile();
-                    FileTree dirTree = archiveProcessor.archiveToFileTree(directoryOrArchive);
-
-                    if (dirTree == null)
-                        dirTree = objectFactory.fileTree().from(directoryOrArchive);
-
-                    try (SourceTarArchive containerDirectoryTar = createTarFromFileTree(dirTree, containerDirectory))
-                    {
-                        copySourceFilesFromTarToDockerContainer(containerDirectoryTar, dockerContainerId);
-                    }
+                    FileTree dirTree = inputDirectoryTree(mappingEntry.getKey().getHostFile());
+                    archives.add(createTarFromFileTree(FileTreeSnapshot.of(dirTree), containerDirectory));
                 }
                 else if (mappingEntry.getKey().getFileType() == PreparedCommandLine.FileType.SINGLE_FILE)
                 {
                     //Single file
                     File singleFile = mappingEntry.getKey().getHostFile();
                     String containerFileName = mappingEntry.getValue();
-                    try (SourceTarArchive singleFileTar = createTarFromSingleFile(singleFile, containerFileName))
-                    {
-                        copySourceFilesFromTarToDockerContainer(singleFileTar, dockerContainerId);
-                    }
+                    archives.add(createTarFromSingleFile(singleFile, containerFileName));
                 }
                 else
                     throw new Error("Unknown file type: " + mappingEntry.getKey().getFileType());
@@ -171,10 +439,7 @@ public class DockerFileMapper
                     containerFileOrDirectory = FilenameUtils.getFullPathNoEndSeparator(containerFileOrDirectory);
                 }
 
-                try (SourceTarArchive containerDirectoryTar = createEmptyDirectoryTar(containerFileOrDirectory))
-                {
-                    copySourceFilesFromTarToDockerContainer(containerDirectoryTar, dockerContainerId);
-                }
+                archives.add(createEmptyDirectoryTar(containerFileOrDirectory));
             }
         }
 
@@ -183,19 +448,64 @@ public class DockerFileMapper
         {
             //All file trees are input only
             String containerDirectory = mappingEntry.getValue();
-            FileTree dirTree = mappingEntry.getKey().getHostFileTree();
+            FileTreeSnapshot dirTreeSnapshot = containerFileTreeSnapshots.get(mappingEntry.getKey());
+            archives.add(createTarFromFileTree(dirTreeSnapshot, containerDirectory));
+        }
 
-            try (SourceTarArchive containerDirectoryTar = createTarFromFileTree(dirTree, containerDirectory))
+        return new InputArchives(archives);
+    }
+
+    /**
+     * Copies input files into a container from previously built archives.
+     *
+     * @param dockerContainerId the container to copy files into.
+     * @param inputArchives archives built with {@link #createInputArchives()}.
+     *
+     * @throws IOException if an error occurs.
+     */
+    public void copyFilesFromHostToContainer(String dockerContainerId, InputArchives inputArchives)
+    throws IOException
+    {
+        for (Map.Entry<? extends PreparedCommandLine.ContainerFile, FileTreeSnapshot> sharedInputEntry : sharedInputSnapshots.entrySet())
+        {
+            //Only upload if no other execution has uploaded the same content already
+            String containerDirectory = containerFileMappings.get(sharedInputEntry.getKey());
+            FileTreeSnapshot sharedInputSnapshot = sharedInputEntry.getValue();
+            sharedInputs.upload(containerDirectory, () ->
             {
-                copySourceFilesFromTarToDockerContainer(containerDirectoryTar, dockerContainerId);
-            }
+                try (SourceTarArchive containerDirectoryTar = createTarFromFileTree(sharedInputSnapshot, containerDirectory))
+                {
+                    copySourceFilesFromTarToDockerContainer(containerDirectoryTar, dockerContainerId);
+                }
+            });
+        }
+
+        for (SourceTarArchive archive : inputArchives.archives)
+        {
+            copySourceFilesFromTarToDockerContainer(archive, dockerContainerId);
         }
     }
 
-    public void copyFilesFromContainerToHost(String dockerContainerId)
+    public TarExtractor.Result copyFilesFromContainerToHost(String dockerContainerId)
+    throws IOException
+    {
+        return copyFilesFromContainerToHost(dockerContainerId, new TarExtractor(Runnable::run));
+    }
+
+    /**
+     * Copies output files from a container to the host.
+     *
+     * @param dockerContainerId the container to copy files from.
+     * @param extractor extracts output directories from the TAR streams read from Docker.
+     *
+     * @return counts of the files copied.
+     *
+     * @throws IOException if an error occurs.
+     */
+    public TarExtractor.Result copyFilesFromContainerToHost(String dockerContainerId, TarExtractor extractor)
     throws IOException
     {
-        Map<PreparedCommandLine.ContainerFile, Integer> copyFileCounts = new HashMap<>();
+        TarExtractor.Result result = TarExtractor.Result.EMPTY;
 
         for (Map.Entry<? extends PreparedCommandLine.ContainerFile, String> mappingEntry : containerFileMappings.entrySet())
         {
@@ -205,85 +515,83 @@ public class DockerFileMapper
                 if (mappingEntry.getKey().getFileType() == PreparedCommandLine.FileType.DIRECTORY)
                 {
                     String containerDirectory = mappingEntry.getValue();
-
-                    Directory directory = objectFactory.directoryProperty().fileValue(mappingEntry.getKey().getHostFile()).get();
-                    int copyCount = copyFilesFromDockerContainer(containerDirectory, directory, dockerContainerId);
-                    copyFileCounts.put(mappingEntry.getKey(), copyCount);
+                    File directory = mappingEntry.getKey().getHostFile();
+                    if (transferCompressionLevel != null)
+                        result = result.plus(copyCompressedFilesFromDockerContainer(compressedOutputPath(containerDirectory), directory, dockerContainerId, extractor));
+                    else
+                        result = result.plus(copyFilesFromDockerContainer(containerDirectory, directory, dockerContainerId, extractor));
                 }
                 else if (mappingEntry.getKey().getFileType() == PreparedCommandLine.FileType.SINGLE_FILE)
                 {
                     String containerFile = mappingEntry.getValue();
-                    copySingleFileFromDockerContainer(containerFile, mappingEntry.getKey().getHostFile(), dockerContainerId);
-                    copyFileCounts.put(mappingEntry.getKey(), 1);
+                    long size = copySingleFileFromDockerContainer(containerFile, mappingEntry.getKey().getHostFile(), dockerContainerId);
+                    result = result.plus(new TarExtractor.Result(1L, size));
                 }
                 else
                     throw new Error("Unknown file type: " + mappingEntry.getKey().getFileType());
             }
         }
 
-        //TODO return counts?
+        return result;
     }
 
     /**
-     * Copies files under a directory from the container to the host without filtering.
+     * Copies files under a directory from the container to the host.
      *
      * @param containerDirectory the directory in the Docker container to copy.  All files under this directory are copied.
      * @param hostOutputDirectory the directory on the host to copy files to.
      * @param containerId the Docker container ID.
+     * @param extractor extracts the files from the TAR stream.
      *
-     * @return the number of files copied.  Does not include directories.
+     * @return counts of the files copied.
      *
      * @throws IOException if an error occurs.
      */
-    private int copyFilesFromDockerContainer(String containerDirectory, Directory hostOutputDirectory, String containerId)
+    private TarExtractor.Result copyFilesFromDockerContainer(String containerDirectory, File hostOutputDirectory, String containerId, TarExtractor extractor)
     throws IOException
     {
-        return copyFilesFromDockerContainer(containerDirectory, hostOutputDirectory, containerId, (dir, name) -> true);
+        try (InputStream is = docker.copyArchiveFromContainerCmd(containerId, containerDirectory).exec();
+             TarArchiveInputStream tis = new TarArchiveInputStream(is))
+        {
+            //Docker TAR archives have the last segment of the base directory in the TAR archive, so strip that out
+            return extractor.extract(tis, hostOutputDirectory, dockerTarPrefix(containerDirectory), (dir, name) -> true);
+        }
     }
 
     /**
-     * Copies files under a directory from the container to the host.
+     * Copies files from a gzip-compressed TAR of a directory that was created in the container to the host.
      *
-     * @param containerDirectory the directory in the Docker container to copy.  All files under this directory are copied, subject to filtering.
+     * @param containerCompressedFile the path of the compressed TAR in the container.
      * @param hostOutputDirectory the directory on the host to copy files to.
      * @param containerId the Docker container ID.
-     * @param filter a filter used to determine whether a file is copied to the host.
+     * @param extractor extracts the files from the TAR stream.
      *
-     * @return the number of files copied.  Does not include directories.
+     * @return counts of the files copied.
      *
      * @throws IOException if an error occurs.
      */
-    private int copyFilesFromDockerContainer(String containerDirectory, Directory hostOutputDirectory, String containerId, FilenameFilter filter)
+    private TarExtractor.Result copyCompressedFilesFromDockerContainer(String containerCompressedFile, File hostOutputDirectory, String containerId,
+                                                                       TarExtractor extractor)
     throws IOException
     {
-        int generatedFileCount = 0;
-
-        try (InputStream is = docker.copyArchiveFromContainerCmd(containerId, containerDirectory).exec();
-             TarArchiveInputStream tis = new TarArchiveInputStream(is))
+        //Docker wraps the compressed file in its own uncompressed TAR
+        try (InputStream is = docker.copyArchiveFromContainerCmd(containerId, containerCompressedFile).exec();
+             TarArchiveInputStream outerTis = new TarArchiveInputStream(is))
         {
-            TarArchiveEntry entry;
+            TarArchiveEntry outerEntry;
             do
             {
-                entry = tis.getNextTarEntry();
-                if (entry != null && !entry.isDirectory())
-                {
-                    //Docker TAR archives have the last segment of the base directory in the TAR archive, so strip that out
-                    String relativeName = relativizeTarPath(containerDirectory, entry.getName());
-
-                    //Copy the file data to the host filesystem
-                    File outputFile = hostOutputDirectory.file(relativeName).getAsFile();
-                    if (filter.accept(outputFile.getParentFile(), outputFile.getName()))
-                    {
-                        FileUtils.forceMkdirParent(outputFile);
-                        Files.copy(tis, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                        generatedFileCount++;
-                    }
-                }
+                outerEntry = outerTis.getNextTarEntry();
             }
-            while (entry != null);
-        }
+            while (outerEntry != null && outerEntry.isDirectory());
 
-        return generatedFileCount;
+            if (outerEntry == null)
+                throw new FileNotFoundException(containerCompressedFile + " not found in container " + containerId);
+
+            //Entries are relative to the directory, e.g. './mypackage/MyFile.java'
+            TarArchiveInputStream tis = new TarArchiveInputStream(new GzipCompressorInputStream(outerTis));
+            return extractor.extract(tis, hostOutputDirectory, "./", (dir, name) -> true);
+        }
     }
 
     /**
@@ -293,14 +601,14 @@ public class DockerFileMapper
      * @param hostFile the destination file on the host.
      * @param containerId the Docker container ID.
      *
-     * @return the number of files copied.  Does not include directories.
+     * @return the size of the copied file in bytes.
      *
      * @throws IOException if an error occurs.
      */
-    private void copySingleFileFromDockerContainer(String containerFile, File hostFile, String containerId)
+    private long copySingleFileFromDockerContainer(String containerFile, File hostFile, String containerId)
     throws IOException
     {
-        boolean copied = false;
+        long copiedSize = -1L;
         try (InputStream is = docker.copyArchiveFromContainerCmd(containerId, containerFile).exec();
              TarArchiveInputStream tis = new TarArchiveInputStream(is))
         {
@@ -312,41 +620,28 @@ public class DockerFileMapper
                 {
                     //Copy the file data to the host filesystem
                     FileUtils.forceMkdirParent(hostFile);
-                    Files.copy(tis, hostFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    copied = true;
+                    copiedSize = Files.copy(tis, hostFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
                 }
             }
             while (entry != null);
         }
 
-        if (!copied)
+        if (copiedSize < 0L)
             throw new FileNotFoundException(containerFile + " not found in container " + containerId);
+
+        return copiedSize;
     }
 
     /**
-     * Creates a relative path from a TAR entry.
+     * Docker puts the last segment of the copied directory at the start of every TAR entry name.
      *
-     * @param expectedBase the base directory to relativize against.
-     * @param entryName an absolute container path.
+     * @param containerDirectory the directory that was copied from the container.
      *
-     * @return a relativized name if possible, or the entry name if the entry does not have the expected base.
+     * @return the prefix to strip from TAR entry names, including the trailing slash.
      */
-    private String relativizeTarPath(String expectedBase, String entryName)
+    static String dockerTarPrefix(String containerDirectory)
     {
-        //Docker puts the last segment of the base in the TAR entry, so remove it
-        String lastBasePathSegment = RelativePath.parse(false, expectedBase).getLastName();
-
-        RelativePath entryPath = RelativePath.parse(true, entryName);
-
-        if (entryPath.getSegments()[0].equals(lastBasePathSegment))
-        {
-            RelativePath adjustedEntryPath = new RelativePath(true, Arrays.copyOfRange(entryPath.getSegments(), 1, entryPath.getSegments().length));
-            return adjustedEntryPath.getPathString();
-        }
-        else //No adjustment needed
-        {
-            return entryName;
-        }
+        return RelativePath.parse(false, containerDirectory).getLastName() + "/";
     }
 
     /**
@@ -356,13 +651,33 @@ public class DockerFileMapper
      * @param dockerContainerId the Docker container ID.
      */
     private void copySourceFilesFromTarToDockerContainer(SourceTarArchive sources, String dockerContainerId)
+    throws IOException
     {
+        //Docker accepts gzip-compressed archives as well
+        InputStream tarInputStream = sources.getInputStream();
+        if (transferCompressionLevel != null)
+            tarInputStream = new ByteArrayInputStream(gzip(tarInputStream, transferCompressionLevel));
+
         docker.copyArchiveToContainerCmd(dockerContainerId)
               .withRemotePath("/") //All paths in TAR are absolute for the container
-              .withTarInputStream(sources.getInputStream())
+              .withTarInputStream(tarInputStream)
               .exec();
     }
 
+    private static byte[] gzip(InputStream is, int compressionLevel)
+    throws IOException
+    {
+        GzipParameters parameters = new GzipParameters();
+        parameters.setCompressionLevel(compressionLevel);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GzipCompressorOutputStream gzOs = new GzipCompressorOutputStream(bos, parameters))
+        {
+            IOUtils.copy(is, gzOs);
+        }
+        return bos.toByteArray();
+    }
+
     /**
      * Creates an in-memory TAR archive with a single empty directory entry.
      *
@@ -391,7 +706,7 @@ public class DockerFileMapper
             tarOs.closeArchiveEntry();
         }
 
-        return new SourceTarArchive(new ByteArrayInputStream(tarBos.toByteArray()), slashEndedBasePath, new ArrayList<>());
+        return new SourceTarArchive(tarBos.toByteArray(), slashEndedBasePath, new ArrayList<>());
     }
 
     /**
@@ -421,20 +736,20 @@ public class DockerFileMapper
             tarOs.closeArchiveEntry();
         }
 
-        return new SourceTarArchive(new ByteArrayInputStream(tarBos.toByteArray()), FilenameUtils.getPath(fileNameInTar), ImmutableList.of(fileNameInTar));
+        return new SourceTarArchive(tarBos.toByteArray(), FilenameUtils.getPath(fileNameInTar), ImmutableList.of(fileNameInTar));
     }
 
     /**
-     * Creates an in-memory TAR archive from a file tree.
+     * Creates an in-memory TAR archive from a file tree snapshot.
      *
-     * @param sources a file tree whose files will be archived.
+     * @param sources a snapshot of the file tree whose files will be archived.
      * @param basePath the base directory to give all entries in the TAR archive.
      *
      * @return the created TAR archive.
      *
      * @throws IOException if an error occurs.
      */
-    private SourceTarArchive createTarFromFileTree(FileTree sources, String basePath)
+    private SourceTarArchive createTarFromFileTree(FileTreeSnapshot sources, String basePath)
     throws IOException
     {
         String slashEndedBasePath;
@@ -449,47 +764,82 @@ public class DockerFileMapper
         ByteArrayOutputStream tarBos = new ByteArrayOutputStream();
         try (TarArchiveOutputStream tarOs = new TarArchiveOutputStream(tarBos, "UTF-8"))
         {
-            sources.visit(fileVisitDetails ->
-                          {
-                              String tarEntryFilePath = slashEndedBasePath + fileVisitDetails.getRelativePath().getPathString();
-                              if (fileVisitDetails.isDirectory() && !tarEntryFilePath.endsWith("/")) //TAR library makes anything ending with '/' a directory
-                              {
-                                  tarEntryFilePath = tarEntryFilePath + "/";
-                              }
-
-                              TarArchiveEntry tarEntry = new TarArchiveEntry(tarEntryFilePath);
-
-                              tarEntry.setModTime(fileVisitDetails.getLastModified());
-                              if (!fileVisitDetails.isDirectory())
-                              {
-                                  tarEntry.setSize(fileVisitDetails.getSize());
-                              }
-
-                              try
-                              {
-                                  tarOs.putArchiveEntry(tarEntry);
-                                  if (!fileVisitDetails.isDirectory())
-                                  {
-                                      filesInContainer.add(tarEntryFilePath);
-                                      try (InputStream entryFileIs = fileVisitDetails.open())
-                                      {
-                                          IOUtils.copy(entryFileIs, tarOs);
-                                      }
-                                  }
-                                  tarOs.closeArchiveEntry();
-                              }
-                              catch (IOException e)
-                              {
-                                  throw new TarGenerationRuntimeException(e);
-                              }
-                          });
+            for (FileTreeSnapshot.Element element : sources.getElements())
+            {
+                String tarEntryFilePath = slashEndedBasePath + element.getRelativePath().getPathString();
+                if (element.isDirectory() && !tarEntryFilePath.endsWith("/")) //TAR library makes anything ending with '/' a directory
+                {
+                    tarEntryFilePath = tarEntryFilePath + "/";
+                }
+
+                TarArchiveEntry tarEntry = new TarArchiveEntry(tarEntryFilePath);
+
+                tarEntry.setModTime(element.getLastModified());
+                if (!element.isDirectory())
+                {
+                    tarEntry.setSize(element.getSize());
+                }
+
+                tarOs.putArchiveEntry(tarEntry);
+                if (!element.isDirectory())
+                {
+                    filesInContainer.add(tarEntryFilePath);
+                    try (InputStream entryFileIs = Files.newInputStream(element.getFile().toPath()))
+                    {
+                        IOUtils.copy(entryFileIs, tarOs);
+                    }
+                }
+                tarOs.closeArchiveEntry();
+            }
         }
-        catch (TarGenerationRuntimeException e)
+
+        return new SourceTarArchive(tarBos.toByteArray(), slashEndedBasePath, filesInContainer);
+    }
+
+    /**
+     * TAR archives of input files built ahead of copying them into containers.
+     */
+    public static class InputArchives
+    {
+        private final List<SourceTarArchive> archives;
+
+        private InputArchives(List<SourceTarArchive> archives)
         {
-            throw e.getCheckedException();
+            this.archives = Collections.unmodifiableList(new ArrayList<>(archives));
         }
+    }
+
+    /**
+     * Area of a container holding input directories that are shared between multiple executions in the same container.
+     */
+    public static interface SharedInputs
+    {
+        /**
+         * @return the base directory in the container that shared inputs are placed under.
+         */
+        public String getBaseDirectory();
 
-        return new SourceTarArchive(new ByteArrayInputStream(tarBos.toByteArray()), slashEndedBasePath, filesInContainer);
+        /**
+         * Uploads a shared input to the container unless it has already been uploaded.  If another execution is currently uploading the same path, waits
+         * for it to finish instead.
+         *
+         * @param containerPath the path of the input in the container.
+         * @param upload performs the upload.
+         *
+         * @throws IOException if an error occurs uploading.
+         */
+        public void upload(String containerPath, Upload upload)
+        throws IOException;
+    }
+
+    /**
+     * Uploads files into a container.
+     */
+    @FunctionalInterface
+    public static interface Upload
+    {
+        public void upload()
+        throws IOException;
     }
 
     /**
@@ -497,23 +847,24 @@ public class DockerFileMapper
      */
     private static class SourceTarArchive implements Closeable
     {
-        private final InputStream inputStream;
+        private final byte[] content;
         private final String baseDirectory;
         private final List<String> filePaths;
 
-        public SourceTarArchive(InputStream inputStream, String baseDirectory, List<String> filePaths)
+        public SourceTarArchive(byte[] content, String baseDirectory, List<String> filePaths)
         {
-            this.inputStream = inputStream;
+            this.content = content;
             this.baseDirectory = baseDirectory;
             this.filePaths = new ArrayList<>(filePaths);
         }
 
         /**
-         * @return the input stream of the TAR file.
+         * @return a new input stream of the TAR file.  The archive is held in memory so it can be read multiple times, e.g. once for each container when
+         *         a command line is batched.
          */
         public InputStream getInputStream()
         {
-            return inputStream;
+            return new ByteArrayInputStream(content);
         }
 
         /**
@@ -534,28 +885,8 @@ public class DockerFileMapper
 
         @Override
         public void close()
-        throws IOException
-        {
-            inputStream.close();
-        }
-    }
-
-    /**
-     * Occurs when an error occurs generating a TAR archive.
-     */
-    private static class TarGenerationRuntimeException extends RuntimeException
-    {
-        private final IOException checkedException;
-
-        public TarGenerationRuntimeException(IOException cause)
-        {
-            super(cause);
-            this.checkedException = Objects.requireNonNull(cause);
-        }
-
-        public IOException getCheckedException()
         {
-            return checkedException;
+            //Nothing to release, content is only held in memory
         }
     }
 }
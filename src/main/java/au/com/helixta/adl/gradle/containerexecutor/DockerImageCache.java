@@ -0,0 +1,192 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps exported Docker images as tarballs in a local cache directory so images that were expensive to build can be loaded back into Docker instead of
+ * being rebuilt, for example after the Docker daemon's images were pruned or on a fresh CI machine.
+ * <p>
+ *
+ * The cache holds a limited number of images, one tarball per image name and version.  When the limit is exceeded the least recently used tarballs are
+ * removed.  An optional seed directory, such as a directory shared between CI machines, is checked for tarballs missing from the cache.
+ */
+public class DockerImageCache
+{
+    private static final Logger log = Logging.getLogger(DockerImageCache.class);
+
+    private static final String TARBALL_EXTENSION = ".tar";
+
+    private final File cacheDirectory;
+    private final int maxCachedImages;
+    private final File seedDirectory;
+
+    /**
+     * Creates a Docker image cache.
+     *
+     * @param cacheDirectory the directory image tarballs are stored in.
+     * @param maxCachedImages the maximum number of image tarballs to keep in the cache.  If zero, images are not saved to the cache.
+     * @param seedDirectory a directory of previously exported image tarballs that is checked if an image is not in the cache, or null if there is none.
+     */
+    public DockerImageCache(File cacheDirectory, int maxCachedImages, File seedDirectory)
+    {
+        if (maxCachedImages < 0)
+            throw new IllegalArgumentException("maxCachedImages cannot be negative: " + maxCachedImages);
+
+        this.cacheDirectory = Objects.requireNonNull(cacheDirectory);
+        this.maxCachedImages = maxCachedImages;
+        this.seedDirectory = seedDirectory;
+    }
+
+    /**
+     * @return the file name of the tarball for an image, e.g. 'adl_adlc_1.1.3.tar' for image 'adl/adlc:1.1.3'.
+     */
+    static String tarballName(String imageName)
+    {
+        return imageName.replaceAll("[^A-Za-z0-9._-]", "_") + TARBALL_EXTENSION;
+    }
+
+    /**
+     * Loads an image into Docker from the cache or seed directory if a tarball for it exists.
+     *
+     * @param docker the Docker client.
+     * @param imageName the name of the image, including its version tag.
+     *
+     * @return true if the image was loaded, false if it was not cached or could not be loaded.
+     */
+    public boolean load(DockerClient docker, String imageName)
+    {
+        File tarball = findTarball(imageName);
+        if (tarball == null)
+            return false;
+
+        log.info("Loading Docker image " + imageName + " from " + tarball);
+        try (InputStream is = Files.newInputStream(tarball.toPath()))
+        {
+            docker.loadImageCmd(is).exec();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            //Probably a corrupt tarball, remove it so it gets replaced with a fresh export later
+            log.warn("Failed to load Docker image " + imageName + " from " + tarball + ": " + e.getMessage(), e);
+            if (tarball.getParentFile().equals(cacheDirectory))
+                tarball.delete();
+            return false;
+        }
+
+        //Mark it as recently used
+        if (tarball.getParentFile().equals(cacheDirectory))
+            tarball.setLastModified(System.currentTimeMillis());
+
+        return true;
+    }
+
+    /**
+     * Exports an image from Docker into the cache, evicting least recently used images if the cache is full.  Does nothing if the cache size is zero.
+     *
+     * @param docker the Docker client.
+     * @param imageName the name of the image, including its version tag.
+     *
+     * @throws IOException if an error occurs writing the tarball.
+     */
+    public void save(DockerClient docker, String imageName)
+    throws IOException
+    {
+        if (maxCachedImages == 0)
+            return;
+
+        Files.createDirectories(cacheDirectory.toPath());
+        Path tarball = new File(cacheDirectory, tarballName(imageName)).toPath();
+
+        //Write to a temp file and move into place so other builds never load a partial tarball
+        Path tempTarball = Files.createTempFile(cacheDirectory.toPath(), tarball.getFileName().toString(), ".tmp");
+        try
+        {
+            log.info("Saving Docker image " + imageName + " to " + tarball);
+            try (InputStream is = docker.saveImageCmd(imageName).exec())
+            {
+                Files.copy(is, tempTarball, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempTarball, tarball, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally
+        {
+            Files.deleteIfExists(tempTarball);
+        }
+
+        evictLeastRecentlyUsed();
+    }
+
+    private File findTarball(String imageName)
+    {
+        String tarballName = tarballName(imageName);
+
+        File cachedTarball = new File(cacheDirectory, tarballName);
+        if (cachedTarball.isFile())
+            return cachedTarball;
+
+        if (seedDirectory == null)
+            return null;
+
+        File seedTarball = new File(seedDirectory, tarballName);
+        if (!seedTarball.isFile())
+            return null;
+
+        //Copy into the local cache so the shared directory is only read once per machine
+        if (maxCachedImages > 0)
+        {
+            try
+            {
+                Files.createDirectories(cacheDirectory.toPath());
+                Path tempTarball = Files.createTempFile(cacheDirectory.toPath(), tarballName, ".tmp");
+                try
+                {
+                    Files.copy(seedTarball.toPath(), tempTarball, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(tempTarball, cachedTarball.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                finally
+                {
+                    Files.deleteIfExists(tempTarball);
+                }
+                evictLeastRecentlyUsed();
+                return cachedTarball;
+            }
+            catch (IOException e)
+            {
+                log.info("Could not copy seed Docker image " + seedTarball + " into cache, loading it directly: " + e.getMessage(), e);
+            }
+        }
+
+        return seedTarball;
+    }
+
+    private void evictLeastRecentlyUsed()
+    {
+        File[] tarballs = cacheDirectory.listFiles(f -> f.isFile() && f.getName().endsWith(TARBALL_EXTENSION));
+        if (tarballs == null || tarballs.length <= maxCachedImages)
+            return;
+
+        List<File> oldestFirst = Arrays.stream(tarballs)
+                                       .sorted(Comparator.comparingLong(File::lastModified))
+                                       .collect(Collectors.toList());
+        for (File tarball : oldestFirst.subList(0, oldestFirst.size() - maxCachedImages))
+        {
+            log.info("Evicting Docker image tarball " + tarball + " from cache");
+            if (!tarball.delete())
+                log.info("Could not delete " + tarball + ", it may be in use");
+        }
+    }
+}
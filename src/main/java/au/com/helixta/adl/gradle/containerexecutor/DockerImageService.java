@@ -0,0 +1,167 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build service that makes sure each Docker image used for ADL execution is inspected, pulled or built only once per build.
+ * <p>
+ *
+ * When several tasks need the same image at the same time, the first prepares it and the others wait for it to complete instead of starting their own.
+ * If that preparation failed, each waiting task tries again itself so any error is reported against the task.
+ * <p>
+ *
+ * Automatic cleanup of old containers and images runs in the background.  The end of the build waits a limited time for cleanup to finish.
+ */
+public abstract class DockerImageService implements BuildService<BuildServiceParameters.None>, AutoCloseable
+{
+    private static final Logger log = Logging.getLogger(DockerImageService.class);
+
+    /**
+     * Name the service is registered under.
+     */
+    public static final String SERVICE_NAME = "adlDockerImages";
+
+    private final Map<String, CompletableFuture<Void>> preparedImages = new ConcurrentHashMap<>();
+
+    /**
+     * How long the end of the build waits for background cleanup to finish.
+     */
+    private static final Duration CLEANUP_COMPLETION_TIMEOUT = Duration.ofSeconds(30L);
+
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "ADL Docker cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Registers the Docker image service for a build if it has not already been registered.
+     *
+     * @param gradle the build to register the service with.
+     *
+     * @return a provider of the shared service.
+     */
+    public static Provider<DockerImageService> register(Gradle gradle)
+    {
+        return gradle.getSharedServices().registerIfAbsent(SERVICE_NAME, DockerImageService.class, spec -> {});
+    }
+
+    /**
+     * Prepares an image, or waits for an earlier or concurrent preparation of the same image to complete.
+     *
+     * @param imageKey identifies the image, including the Docker host it is prepared on.
+     * @param preparation checks, pulls or builds the image.
+     *
+     * @throws ContainerExecutionException if an error occurs preparing the image.
+     * @throws IOException if an I/O error occurs preparing the image.
+     * @throws DistributionNotFoundException if the tool distribution needed to build the image is not available.
+     */
+    public void prepare(String imageKey, ImagePreparation preparation)
+    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        CompletableFuture<Void> preparationResult = new CompletableFuture<>();
+        CompletableFuture<Void> existingPreparationResult = preparedImages.putIfAbsent(imageKey, preparationResult);
+
+        //Nobody else has started, so prepare it here
+        if (existingPreparationResult == null)
+        {
+            try
+            {
+                preparation.prepare();
+                preparationResult.complete(null);
+                return;
+            }
+            catch (ContainerExecutionException | IOException | DistributionNotFoundException | RuntimeException e)
+            {
+                //Allow later attempts
+                preparedImages.remove(imageKey, preparationResult);
+                preparationResult.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        //Otherwise wait for it
+        try
+        {
+            existingPreparationResult.get();
+        }
+        catch (InterruptedException e)
+        {
+            throw new ContainerExecutionException("Interrupted waiting for Docker image preparation.", e);
+        }
+        catch (ExecutionException e)
+        {
+            //Earlier attempt failed, try again from this thread so the error is reported here
+            log.info("Earlier preparation of Docker image " + imageKey + " failed, retrying: " + e.getCause().getMessage());
+            preparedImages.remove(imageKey, existingPreparationResult);
+            prepare(imageKey, preparation);
+        }
+    }
+
+    /**
+     * Runs cleanup of old Docker containers and images in the background.  Cleanup that has started is given time to finish when the build ends.
+     *
+     * @param cleanup the cleanup work.
+     */
+    public void cleanUpInBackground(Runnable cleanup)
+    {
+        cleanupExecutor.execute(() ->
+        {
+            try
+            {
+                cleanup.run();
+            }
+            catch (RuntimeException e)
+            {
+                log.info("Background Docker cleanup failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public void close()
+    {
+        //Cleanup removes containers and images one by one, so let what has started finish rather than leave it half done
+        cleanupExecutor.shutdown();
+        try
+        {
+            if (!cleanupExecutor.awaitTermination(CLEANUP_COMPLETION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+            {
+                log.info("Background Docker cleanup did not finish within " + CLEANUP_COMPLETION_TIMEOUT.getSeconds() + " seconds, abandoning it");
+                cleanupExecutor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            cleanupExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks, pulls or builds a Docker image.
+     */
+    @FunctionalInterface
+    public static interface ImagePreparation
+    {
+        public void prepare()
+        throws ContainerExecutionException, IOException, DistributionNotFoundException;
+    }
+}
@@ -0,0 +1,232 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Image;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Removes Docker containers and images left behind by the plugin, identified by the {@link DockerExecutor#DOCKER_GENERATOR_LABEL} label.
+ * <p>
+ *
+ * Containers are normally removed as soon as an execution completes, but a killed Gradle daemon can leave them behind.  Containers that are no longer
+ * running and were created longer ago than a threshold are removed along with their anonymous volumes.  Running containers are never touched, since they
+ * might belong to another build.
+ * <p>
+ *
+ * Locally built tool images accumulate as new tool versions are used.  For each image repository only a number of the most recently created versions are
+ * kept.  Images that are in use by a container cannot be removed and are skipped.
+ */
+public class DockerReaper
+{
+    private static final Logger log = Logging.getLogger(DockerReaper.class);
+
+    /**
+     * Container states that mean the container is not running and will not start again by itself.
+     */
+    private static final Set<String> NOT_RUNNING_CONTAINER_STATES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("created", "exited", "dead")));
+
+    private final Duration orphanedContainerAge;
+    private final int retainedImageVersions;
+
+    /**
+     * Creates a reaper.
+     *
+     * @param orphanedContainerAge containers that are not running are removed once they are older than this.
+     * @param retainedImageVersions the number of most recent images kept for each image repository.
+     */
+    public DockerReaper(Duration orphanedContainerAge, int retainedImageVersions)
+    {
+        if (retainedImageVersions < 0)
+            throw new IllegalArgumentException("retainedImageVersions cannot be negative: " + retainedImageVersions);
+
+        this.orphanedContainerAge = Objects.requireNonNull(orphanedContainerAge);
+        this.retainedImageVersions = retainedImageVersions;
+    }
+
+    /**
+     * Decides whether an automatic run is due, and if so records that one is happening now so other builds don't run it again within the interval.
+     *
+     * @param markerFile file whose modification time records when the reaper last ran.
+     * @param interval the minimum time between runs.
+     *
+     * @return true if the reaper should run now.
+     *
+     * @throws IOException if an error occurs reading or updating the marker file.
+     */
+    public static synchronized boolean claimRun(File markerFile, Duration interval)
+    throws IOException
+    {
+        long now = System.currentTimeMillis();
+        if (markerFile.isFile() && now - markerFile.lastModified() < interval.toMillis())
+            return false;
+
+        Files.createDirectories(markerFile.getParentFile().toPath());
+        if (!markerFile.exists())
+            Files.createFile(markerFile.toPath());
+        Files.setLastModifiedTime(markerFile.toPath(), FileTime.fromMillis(now));
+        return true;
+    }
+
+    /**
+     * Removes orphaned containers and old images.
+     *
+     * @param docker the Docker client.
+     * @param protectedImages names of images that must be kept regardless of age, such as images used by the current build.
+     *
+     * @return counts of what was removed.
+     */
+    public Result reap(DockerClient docker, Collection<String> protectedImages)
+    {
+        int removedContainers = removeOrphanedContainers(docker);
+        int removedImages = removeOldImages(docker, protectedImages);
+        return new Result(removedContainers, removedImages);
+    }
+
+    private int removeOrphanedContainers(DockerClient docker)
+    {
+        long createdBeforeSeconds = (System.currentTimeMillis() - orphanedContainerAge.toMillis()) / 1000L;
+
+        int removedCount = 0;
+        List<Container> containers = docker.listContainersCmd()
+                                           .withShowAll(true)
+                                           .withLabelFilter(Collections.singleton(DockerExecutor.DOCKER_GENERATOR_LABEL))
+                                           .exec();
+        for (Container container : containers)
+        {
+            if (!NOT_RUNNING_CONTAINER_STATES.contains(container.getState()))
+                continue;
+            if (container.getCreated() == null || container.getCreated() > createdBeforeSeconds)
+                continue;
+
+            try
+            {
+                docker.removeContainerCmd(container.getId()).withRemoveVolumes(true).exec();
+                log.info("Removed orphaned ADL Docker container " + container.getId());
+                removedCount++;
+            }
+            catch (DockerException e)
+            {
+                //Might have been removed by someone else in the meantime
+                log.info("Could not remove orphaned ADL Docker container " + container.getId() + ": " + e.getMessage());
+            }
+        }
+
+        return removedCount;
+    }
+
+    private int removeOldImages(DockerClient docker, Collection<String> protectedImages)
+    {
+        //Group image tags by repository, e.g. 'adl/adlc' for 'adl/adlc:0.14'
+        Map<String, List<ImageTag>> tagsByRepository = new TreeMap<>();
+        List<Image> images = docker.listImagesCmd().withLabelFilter(DockerExecutor.DOCKER_GENERATOR_LABEL).exec();
+        for (Image image : images)
+        {
+            if (image.getRepoTags() == null)
+                continue;
+
+            for (String repoTag : image.getRepoTags())
+            {
+                int tagSeparatorIndex = repoTag.lastIndexOf(':');
+                if (tagSeparatorIndex < 0 || repoTag.startsWith("<none>"))
+                    continue;
+
+                String repository = repoTag.substring(0, tagSeparatorIndex);
+                long created = (image.getCreated() == null ? 0L : image.getCreated());
+                tagsByRepository.computeIfAbsent(repository, r -> new ArrayList<>()).add(new ImageTag(repoTag, created));
+            }
+        }
+
+        int removedCount = 0;
+        for (List<ImageTag> tags : tagsByRepository.values())
+        {
+            tags.sort(Comparator.comparingLong(ImageTag::getCreated).reversed());
+            for (ImageTag tag : tags.subList(Math.min(retainedImageVersions, tags.size()), tags.size()))
+            {
+                if (protectedImages.contains(tag.getName()))
+                    continue;
+
+                try
+                {
+                    //Removing by tag only deletes the image once its last tag is gone
+                    docker.removeImageCmd(tag.getName()).exec();
+                    log.info("Removed old ADL Docker image " + tag.getName());
+                    removedCount++;
+                }
+                catch (DockerException e)
+                {
+                    //Usually because a container still uses it
+                    log.info("Could not remove old ADL Docker image " + tag.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        return removedCount;
+    }
+
+    private static class ImageTag
+    {
+        private final String name;
+        private final long created;
+
+        public ImageTag(String name, long created)
+        {
+            this.name = name;
+            this.created = created;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getCreated()
+        {
+            return created;
+        }
+    }
+
+    /**
+     * Counts of what was removed.
+     */
+    public static class Result
+    {
+        private final int removedContainers;
+        private final int removedImages;
+
+        public Result(int removedContainers, int removedImages)
+        {
+            this.removedContainers = removedContainers;
+            this.removedImages = removedImages;
+        }
+
+        public int getRemovedContainers()
+        {
+            return removedContainers;
+        }
+
+        public int getRemovedImages()
+        {
+            return removedImages;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.HostConfig;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Build service that keeps one long-running container per Docker image for the whole build, so that ADL executions from every project using the same
+ * image share a single container session.
+ * <p>
+ *
+ * Image inspection and container creation happen once per image instead of once per task, and input directories that are identical between tasks, such
+ * as shared search directories, are uploaded into the container only once.  Each execution still gets its own working directory in the container and copies
+ * its own outputs back, so every task keeps its own up-to-date checks and caching.  Containers are removed when the build finishes.
+ * <p>
+ *
+ * If the build never gets to remove its containers, such as when the Gradle daemon is killed, a session container exits by itself once no execution has
+ * used it for its idle lifetime, after which it is cleaned up like any other orphaned container.
+ */
+public abstract class DockerSessionService implements BuildService<BuildServiceParameters.None>, AutoCloseable
+{
+    private static final Logger log = Logging.getLogger(DockerSessionService.class);
+
+    /**
+     * Name the service is registered under.
+     */
+    public static final String SERVICE_NAME = "adlDockerSessions";
+
+    /**
+     * Directory in session containers that holds inputs shared between executions.
+     */
+    private static final String SHARED_INPUT_BASE_DIRECTORY = "/shared";
+
+    /**
+     * Directory in session containers under which each execution gets its own directory.
+     */
+    private static final String EXECUTION_BASE_DIRECTORY = "/executions";
+
+    private final Map<String, Session> sessions = new LinkedHashMap<>();
+
+    /**
+     * Registers the Docker session service for a build if it has not already been registered.
+     *
+     * @param gradle the build to register the service with.
+     *
+     * @return a provider of the shared service.
+     */
+    public static Provider<DockerSessionService> register(Gradle gradle)
+    {
+        return gradle.getSharedServices().registerIfAbsent(SERVICE_NAME, DockerSessionService.class, spec -> {});
+    }
+
+    /**
+     * Returns the session for a Docker image on a Docker host, starting its container if this is the first request for the image or if the previous
+     * container has exited after being idle.
+     *
+     * @param dockerHost the Docker host the container runs on.
+     * @param dockerImageName the Docker image the session's container runs.
+     * @param baseDockerContainerName prefix for the name of the session's container.
+     * @param idleLifetime the session's container exits by itself once no execution has used it for this long.
+     * @param docker Docker client used to start the container.
+     * @param dockerClientFactory used for creating a client to remove the container at the end of the build.
+     *
+     * @return the session.
+     */
+    public synchronized Session session(URI dockerHost, String dockerImageName, String baseDockerContainerName, Duration idleLifetime,
+                                        DockerClient docker, DockerClientFactory dockerClientFactory)
+    {
+        String sessionKey = dockerHost + " " + dockerImageName;
+        Session session = sessions.get(sessionKey);
+
+        //Only check on the container when it has been idle long enough that it might have exited, so busy sessions don't pay for an extra round trip
+        if (session != null && session.idleTime().compareTo(idleLifetime.dividedBy(2L)) > 0 && !isRunning(docker, session.getContainerId()))
+        {
+            log.info("Shared Docker session container " + session.getContainerId() + " for image " + dockerImageName + " exited after being idle, starting a new one");
+            removeContainer(session);
+            sessions.remove(sessionKey);
+            session = null;
+        }
+
+        if (session == null)
+        {
+            //Container just idles, tool executions are run inside it with exec
+            CreateContainerResponse c = docker.createContainerCmd(dockerImageName)
+                                              .withHostConfig(HostConfig.newHostConfig().withAutoRemove(false))
+                                              .withName(baseDockerContainerName + "-session-" + UUID.randomUUID())
+                                              .withLabels(Collections.singletonMap(DockerExecutor.DOCKER_GENERATOR_LABEL, "session"))
+                                              .withEntrypoint("sh", "-c", idleLoopScript(idleLifetime))
+                                              .exec();
+            docker.startContainerCmd(c.getId()).exec();
+            log.info("Started shared Docker session container " + c.getId() + " for image " + dockerImageName);
+
+            session = new Session(c.getId(), dockerClientFactory);
+            sessions.put(sessionKey, session);
+        }
+
+        session.markUsed();
+        return session;
+    }
+
+    /**
+     * Generates a shell script that keeps a container running until no execution has used it for an idle lifetime.  Creating and removing execution
+     * directories updates the modification time of their base directory, and an execution directory exists for as long as its execution runs.
+     *
+     * @param idleLifetime how long the container may be unused before it exits.
+     *
+     * @return the script.
+     */
+    static String idleLoopScript(Duration idleLifetime)
+    {
+        long idleSeconds = Math.max(1L, idleLifetime.getSeconds());
+        return "mkdir -p " + EXECUTION_BASE_DIRECTORY + "; " +
+               "while [ -n \"$(ls -A " + EXECUTION_BASE_DIRECTORY + ")\" ] || " +
+               "[ $(( $(date +%s) - $(stat -c %Y " + EXECUTION_BASE_DIRECTORY + ") )) -lt " + idleSeconds + " ]; " +
+               "do sleep " + Math.min(10L, idleSeconds) + "; done";
+    }
+
+    private static boolean isRunning(DockerClient docker, String containerId)
+    {
+        try
+        {
+            Boolean running = docker.inspectContainerCmd(containerId).exec().getState().getRunning();
+            return Boolean.TRUE.equals(running);
+        }
+        catch (NotFoundException e)
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        for (Session session : sessions.values())
+        {
+            removeContainer(session);
+        }
+        sessions.clear();
+    }
+
+    private static void removeContainer(Session session)
+    {
+        try (DockerClient docker = session.dockerClientFactory.createDockerClient())
+        {
+            docker.removeContainerCmd(session.getContainerId()).withForce(true).withRemoveVolumes(true).exec();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            //Don't fail the build because of cleanup
+            log.warn("Error removing shared Docker session container " + session.getContainerId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A long-running container shared between executions.
+     */
+    public static class Session implements DockerFileMapper.SharedInputs
+    {
+        private final String containerId;
+        private final DockerClientFactory dockerClientFactory;
+        private final Map<String, FutureTask<Void>> sharedUploads = new ConcurrentHashMap<>();
+        private volatile long lastUsedTime = System.nanoTime();
+
+        private Session(String containerId, DockerClientFactory dockerClientFactory)
+        {
+            this.containerId = Objects.requireNonNull(containerId);
+            this.dockerClientFactory = Objects.requireNonNull(dockerClientFactory);
+        }
+
+        /**
+         * @return the ID of the session's container.
+         */
+        public String getContainerId()
+        {
+            return containerId;
+        }
+
+        private void markUsed()
+        {
+            lastUsedTime = System.nanoTime();
+        }
+
+        /**
+         * @return how long it has been since the session was last handed out for an execution.
+         */
+        private Duration idleTime()
+        {
+            return Duration.ofNanos(System.nanoTime() - lastUsedTime);
+        }
+
+        /**
+         * @return a new unique directory in the container for a single execution's files.
+         */
+        public String newExecutionDirectory()
+        {
+            return EXECUTION_BASE_DIRECTORY + "/" + UUID.randomUUID();
+        }
+
+        @Override
+        public String getBaseDirectory()
+        {
+            return SHARED_INPUT_BASE_DIRECTORY;
+        }
+
+        @Override
+        public void upload(String containerPath, DockerFileMapper.Upload upload)
+        throws IOException
+        {
+            FutureTask<Void> uploadTask = new FutureTask<>(() ->
+            {
+                upload.upload();
+                return null;
+            });
+            FutureTask<Void> existingUploadTask = sharedUploads.putIfAbsent(containerPath, uploadTask);
+
+            //First one to request this upload does it, everyone else waits for it to finish
+            if (existingUploadTask == null)
+            {
+                uploadTask.run();
+                existingUploadTask = uploadTask;
+            }
+
+            try
+            {
+                existingUploadTask.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for shared upload of " + containerPath);
+            }
+            catch (ExecutionException e)
+            {
+                //Allow a later execution to try again
+                sharedUploads.remove(containerPath, existingUploadTask);
+
+                if (e.getCause() instanceof IOException)
+                    throw (IOException)e.getCause();
+                else if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException)e.getCause();
+                else
+                    throw new IOException("Error uploading " + containerPath + ": " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import au.com.helixta.adl.gradle.config.DockerConfiguration;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Settings for the HTTP transport used to communicate with the Docker daemon.
+ */
+public class DockerTransportOptions
+{
+    private final int maxConnections;
+    private final Duration connectTimeout;
+    private final Duration responseTimeout;
+    private final boolean reuseConnections;
+
+    /**
+     * @param maxConnections the maximum number of connections to the Docker daemon.
+     * @param connectTimeout timeout for establishing a connection.
+     * @param responseTimeout timeout waiting for data from the daemon, or null for no timeout.
+     * @param reuseConnections whether connections are shared by all Docker clients in the build.
+     */
+    public DockerTransportOptions(int maxConnections, Duration connectTimeout, Duration responseTimeout, boolean reuseConnections)
+    {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be at least 1: " + maxConnections);
+
+        this.maxConnections = maxConnections;
+        this.connectTimeout = Objects.requireNonNull(connectTimeout);
+        this.responseTimeout = responseTimeout;
+        this.reuseConnections = reuseConnections;
+    }
+
+    /**
+     * Reads transport options from an ADL Gradle plugin Docker configuration object.
+     */
+    public static DockerTransportOptions of(DockerConfiguration config)
+    {
+        return new DockerTransportOptions(config.getMaxConnections(), config.getConnectTimeout(), config.getResponseTimeout(), config.isReuseConnections());
+    }
+
+    /**
+     * @return transport options using the same defaults as {@link DockerConfiguration}.
+     */
+    public static DockerTransportOptions defaults()
+    {
+        return new DockerTransportOptions(DockerConfiguration.DEFAULT_MAX_CONNECTIONS, DockerConfiguration.DEFAULT_CONNECT_TIMEOUT, null, true);
+    }
+
+    /**
+     * @return the maximum number of connections to the Docker daemon.
+     */
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    /**
+     * @return timeout for establishing a connection.
+     */
+    public Duration getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    /**
+     * @return timeout waiting for data from the daemon, or null for no timeout.
+     */
+    public Duration getResponseTimeout()
+    {
+        return responseTimeout;
+    }
+
+    /**
+     * @return whether connections are shared by all Docker clients in the build.
+     */
+    public boolean isReuseConnections()
+    {
+        return reuseConnections;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof DockerTransportOptions)) return false;
+        DockerTransportOptions that = (DockerTransportOptions) o;
+        return getMaxConnections() == that.getMaxConnections() &&
+               isReuseConnections() == that.isReuseConnections() &&
+               getConnectTimeout().equals(that.getConnectTimeout()) &&
+               Objects.equals(getResponseTimeout(), that.getResponseTimeout());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(maxConnections, connectTimeout, responseTimeout, reuseConnections);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "maxConnections=" + maxConnections + ", connectTimeout=" + connectTimeout + ", responseTimeout=" + responseTimeout +
+               ", reuseConnections=" + reuseConnections;
+    }
+}
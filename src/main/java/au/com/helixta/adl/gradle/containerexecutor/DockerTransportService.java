@@ -0,0 +1,158 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.transport.DockerHttpClient;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Build service that shares pooled HTTP transports to Docker daemons between all Docker clients in the build.
+ * <p>
+ *
+ * Without it, every ADL execution creates its own Docker client with its own connection pool, so connections, including TLS handshakes for remote
+ * Docker hosts, are set up again for every execution and are never reused between tasks.  Transports are keyed by Docker host, TLS configuration and
+ * transport options, and are closed at the end of the build.
+ */
+public abstract class DockerTransportService implements BuildService<BuildServiceParameters.None>, AutoCloseable
+{
+    private static final Logger log = Logging.getLogger(DockerTransportService.class);
+
+    /**
+     * Name the service is registered under.
+     */
+    public static final String SERVICE_NAME = "adlDockerTransport";
+
+    private final Map<TransportKey, DockerHttpClient> transports = new LinkedHashMap<>();
+    private boolean closed;
+
+    /**
+     * Registers the Docker transport service for a build if it has not already been registered.
+     *
+     * @param gradle the build to register the service with.
+     *
+     * @return a provider of the shared service.
+     */
+    public static Provider<DockerTransportService> register(Gradle gradle)
+    {
+        return gradle.getSharedServices().registerIfAbsent(SERVICE_NAME, DockerTransportService.class, spec -> {});
+    }
+
+    /**
+     * Returns the shared transport for a Docker configuration, creating it if needed.
+     *
+     * @param config Docker client configuration, for the host and TLS settings.
+     * @param options transport options.
+     *
+     * @return an HTTP client for the Docker daemon.  Closing it does not close the shared transport, so it may be closed by each Docker client that
+     *         uses it.
+     */
+    public synchronized DockerHttpClient transport(DockerClientConfig config, DockerTransportOptions options)
+    {
+        //Other build services may still need Docker while they are being closed at the end of the build, give them their own transport
+        if (closed)
+            return DockerClientFactory.createHttpClient(config, options);
+
+        DockerHttpClient transport = transports.computeIfAbsent(new TransportKey(config.getDockerHost(), config.getSSLConfig(), options), key ->
+        {
+            log.info("Creating shared Docker transport for " + key.dockerHost + " (" + options + ")");
+            return DockerClientFactory.createHttpClient(config, options);
+        });
+        return new SharedDockerHttpClient(transport);
+    }
+
+    /**
+     * @return the number of shared transports that have been created.
+     */
+    public synchronized int getTransportCount()
+    {
+        return transports.size();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+        for (DockerHttpClient transport : transports.values())
+        {
+            try
+            {
+                transport.close();
+            }
+            catch (IOException e)
+            {
+                //Don't fail the build because of cleanup
+                log.warn("Error closing Docker transport: " + e.getMessage(), e);
+            }
+        }
+        transports.clear();
+    }
+
+    /**
+     * Identifies a transport by everything that affects its connections.
+     */
+    private static class TransportKey
+    {
+        private final URI dockerHost;
+        private final Object sslConfig;
+        private final DockerTransportOptions options;
+
+        public TransportKey(URI dockerHost, Object sslConfig, DockerTransportOptions options)
+        {
+            this.dockerHost = dockerHost;
+            this.sslConfig = sslConfig;
+            this.options = Objects.requireNonNull(options);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof TransportKey)) return false;
+            TransportKey that = (TransportKey) o;
+            return Objects.equals(dockerHost, that.dockerHost) &&
+                   Objects.equals(sslConfig, that.sslConfig) &&
+                   options.equals(that.options);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(dockerHost, sslConfig, options);
+        }
+    }
+
+    /**
+     * Uses a shared transport without closing it when the Docker client that uses it is closed.
+     */
+    private static class SharedDockerHttpClient implements DockerHttpClient
+    {
+        private final DockerHttpClient transport;
+
+        public SharedDockerHttpClient(DockerHttpClient transport)
+        {
+            this.transport = Objects.requireNonNull(transport);
+        }
+
+        @Override
+        public Response execute(Request request)
+        {
+            return transport.execute(request);
+        }
+
+        @Override
+        public void close()
+        {
+            //Shared transport is closed by the service at the end of the build
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.initialization.BuildCancellationToken;
+
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build service that keeps track of running tool executions, native processes and Docker containers, so they can be stopped when they time out or when
+ * the build is cancelled.
+ * <p>
+ *
+ * Executors register each execution with a canceller that stops it, such as killing a container.  The canceller is run if the execution's timeout
+ * elapses, as soon as the build is cancelled, for example with Ctrl-C, when the service is closed at the end of the build while the execution is still
+ * running, or when the JVM is shutting down.  Executors then check the registration to report why the execution stopped.
+ */
+public abstract class ExecutionCancellationService implements BuildService<BuildServiceParameters.None>, AutoCloseable
+{
+    private static final Logger log = Logging.getLogger(ExecutionCancellationService.class);
+
+    /**
+     * Name the service is registered under.
+     */
+    public static final String SERVICE_NAME = "adlExecutionCancellation";
+
+    private final Set<Execution> runningExecutions = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "ADL execution timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Thread shutdownHook = new Thread(() -> cancelAll(StopReason.CANCELLED), "ADL execution cancellation");
+
+    private final BuildCancellationToken buildCancellationToken;
+    private final Runnable buildCancellationCallback = () -> cancelAll(StopReason.CANCELLED);
+
+    @Inject
+    public ExecutionCancellationService(BuildCancellationToken buildCancellationToken)
+    {
+        this.buildCancellationToken = Objects.requireNonNull(buildCancellationToken);
+        buildCancellationToken.addCallback(buildCancellationCallback);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Registers the execution cancellation service for a build if it has not already been registered.
+     *
+     * @param gradle the build to register the service with.
+     *
+     * @return a provider of the shared service.
+     */
+    public static Provider<ExecutionCancellationService> register(Gradle gradle)
+    {
+        return gradle.getSharedServices().registerIfAbsent(SERVICE_NAME, ExecutionCancellationService.class, spec -> {});
+    }
+
+    /**
+     * Registers a running execution.  The returned execution must be closed when the execution completes.
+     *
+     * @param description describes the execution for logging, e.g. the tool name and container ID.
+     * @param timeout the maximum time the execution may run for, or null for no limit.
+     * @param canceller stops the execution.  Might be run from another thread, and should return quickly.
+     *
+     * @return the registered execution.
+     */
+    public Execution start(String description, Duration timeout, Runnable canceller)
+    {
+        Execution execution = new Execution(description, canceller);
+        runningExecutions.add(execution);
+
+        //Build might have been cancelled before this execution was registered
+        if (buildCancellationToken.isCancellationRequested())
+        {
+            execution.stop(StopReason.CANCELLED);
+            return execution;
+        }
+
+        if (timeout != null)
+            execution.timeoutTask = timeoutScheduler.schedule(() -> execution.stop(StopReason.TIMED_OUT), timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        return execution;
+    }
+
+    private void cancelAll(StopReason reason)
+    {
+        //Copy since stopping an execution can complete it and remove it from the set
+        List<Execution> executions = new ArrayList<>(runningExecutions);
+        for (Execution execution : executions)
+        {
+            execution.stop(reason);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        buildCancellationToken.removeCallback(buildCancellationCallback);
+
+        //Anything still running at the end of the build was abandoned, so stop it
+        cancelAll(StopReason.CANCELLED);
+        timeoutScheduler.shutdownNow();
+
+        try
+        {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException e)
+        {
+            //Already shutting down, the hook will run anyway
+        }
+    }
+
+    /**
+     * Why an execution was stopped.
+     */
+    public static enum StopReason
+    {
+        /**
+         * The execution took longer than its timeout.
+         */
+        TIMED_OUT,
+
+        /**
+         * The build was cancelled or finished while the execution was still running.
+         */
+        CANCELLED
+    }
+
+    /**
+     * A running execution.
+     */
+    public class Execution implements AutoCloseable
+    {
+        private final String description;
+        private final Runnable canceller;
+        private StopReason stopReason;
+        private boolean completed;
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        private Execution(String description, Runnable canceller)
+        {
+            this.description = Objects.requireNonNull(description);
+            this.canceller = Objects.requireNonNull(canceller);
+        }
+
+        /**
+         * Synchronized with {@link #close()} so the canceller never runs after the execution has completed.
+         */
+        private synchronized void stop(StopReason reason)
+        {
+            //Only stop once
+            if (completed || stopReason != null)
+                return;
+
+            stopReason = reason;
+            log.warn("Stopping " + description + ": " + (reason == StopReason.TIMED_OUT ? "timed out" : "cancelled"));
+            try
+            {
+                canceller.run();
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("Error stopping " + description + ": " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * @return the reason the execution was stopped, or null if it was not stopped.
+         */
+        public synchronized StopReason getStopReason()
+        {
+            return stopReason;
+        }
+
+        /**
+         * Marks the execution as complete so it will no longer be stopped.
+         */
+        @Override
+        public synchronized void close()
+        {
+            completed = true;
+            runningExecutions.remove(this);
+            ScheduledFuture<?> timeoutTask = this.timeoutTask;
+            if (timeoutTask != null)
+                timeoutTask.cancel(false);
+        }
+    }
+}
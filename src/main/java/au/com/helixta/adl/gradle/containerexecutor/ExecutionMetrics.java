@@ -0,0 +1,104 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.gradle.api.logging.Logger;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects timings and counts from tool executions for a single task so they can be reported when the task finishes.
+ * <p>
+ *
+ * Safe to use from multiple threads.
+ */
+public class ExecutionMetrics
+{
+    /**
+     * Time spent waiting for a build-wide Docker container slot.
+     */
+    public static final String DOCKER_SLOT_WAIT_TIME = "dockerSlotWaitTime";
+
+    /**
+     * Time spent preparing the Docker image, or waiting for background preparation of it to finish.
+     */
+    public static final String DOCKER_IMAGE_WAIT_TIME = "dockerImageWaitTime";
+
+    /**
+     * Number of output files copied from containers to the host.
+     */
+    public static final String OUTPUT_FILE_COUNT = "outputFileCount";
+
+    /**
+     * Total size in bytes of output files copied from containers to the host.
+     */
+    public static final String OUTPUT_BYTE_COUNT = "outputByteCount";
+
+    /**
+     * Number of search path modules left out of executions because sources do not depend on them.
+     */
+    public static final String PRUNED_MODULE_COUNT = "prunedModuleCount";
+
+    /**
+     * Total size in bytes of search path files left out of executions because sources do not depend on them.
+     */
+    public static final String PRUNED_BYTE_COUNT = "prunedByteCount";
+
+    private final Map<String, Duration> durations = new TreeMap<>();
+    private final Map<String, Long> counts = new TreeMap<>();
+
+    /**
+     * Adds time to a duration metric.
+     *
+     * @param name the name of the metric.
+     * @param duration the amount of time to add.
+     */
+    public synchronized void addDuration(String name, Duration duration)
+    {
+        durations.merge(name, duration, Duration::plus);
+    }
+
+    /**
+     * Adds to a count metric.
+     *
+     * @param name the name of the metric.
+     * @param amount the amount to add.
+     */
+    public synchronized void addCount(String name, long amount)
+    {
+        counts.merge(name, amount, Long::sum);
+    }
+
+    /**
+     * @return the total recorded for a duration metric, zero if nothing was recorded.
+     */
+    public synchronized Duration getDuration(String name)
+    {
+        return durations.getOrDefault(name, Duration.ZERO);
+    }
+
+    /**
+     * @return the total recorded for a count metric, zero if nothing was recorded.
+     */
+    public synchronized long getCount(String name)
+    {
+        return counts.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Logs all recorded metrics at info level.
+     *
+     * @param logger the logger to write to.
+     * @param taskPath identifies the task the metrics are for.
+     */
+    public synchronized void report(Logger logger, String taskPath)
+    {
+        if (durations.isEmpty() && counts.isEmpty())
+            return;
+
+        StringBuilder buf = new StringBuilder("ADL execution metrics for " + taskPath + ":");
+        durations.forEach((name, duration) -> buf.append(' ').append(name).append('=').append(duration.toMillis()).append("ms"));
+        counts.forEach((name, count) -> buf.append(' ').append(name).append('=').append(count));
+        logger.info(buf.toString());
+    }
+}
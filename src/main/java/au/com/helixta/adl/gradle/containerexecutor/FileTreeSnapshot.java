@@ -0,0 +1,209 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RelativePath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of a file tree, taken by walking the tree a single time.  Holds the relative paths, sizes and modification times of every element as well as the
+ * root directories detected in the tree, so that command line generation, TAR building and root detection can all share one walk of the file system.
+ */
+public class FileTreeSnapshot
+{
+    private final FileTree fileTree;
+    private final List<Element> elements;
+    private final List<File> roots;
+
+    private FileTreeSnapshot(FileTree fileTree, List<Element> elements, List<File> roots)
+    {
+        this.fileTree = fileTree;
+        this.elements = Collections.unmodifiableList(new ArrayList<>(elements));
+        this.roots = Collections.unmodifiableList(new ArrayList<>(roots));
+    }
+
+    /**
+     * Takes a snapshot of a file tree, walking it once.
+     *
+     * @param fileTree the file tree to snapshot.
+     *
+     * @return the snapshot.
+     */
+    public static FileTreeSnapshot of(FileTree fileTree)
+    {
+        List<Element> elements = new ArrayList<>();
+        Set<File> roots = new LinkedHashSet<>();
+        File directoryTreeRoot = FileTrees.directoryTreeRoot(fileTree);
+        if (directoryTreeRoot != null)
+            roots.add(directoryTreeRoot);
+
+        fileTree.visit(fileVisitDetails ->
+        {
+            File file = fileVisitDetails.getFile();
+            elements.add(new Element(file, fileVisitDetails.getRelativePath(), fileVisitDetails.isDirectory(),
+                                     fileVisitDetails.isDirectory() ? 0L : fileVisitDetails.getSize(),
+                                     fileVisitDetails.getLastModified(), fileVisitDetails.getMode()));
+
+            if (directoryTreeRoot == null)
+            {
+                File root = FileTrees.elementRoot(file, fileVisitDetails.getRelativePath());
+                if (root != null)
+                    roots.add(root);
+            }
+        });
+
+        return new FileTreeSnapshot(fileTree, elements, new ArrayList<>(roots));
+    }
+
+    /**
+     * @return the file tree the snapshot was taken from.
+     */
+    public FileTree getFileTree()
+    {
+        return fileTree;
+    }
+
+    /**
+     * @return all elements in the tree, files and directories, in visiting order.
+     */
+    public List<Element> getElements()
+    {
+        return elements;
+    }
+
+    /**
+     * @return the root directories detected in the file tree.  Typically only one directory, but may be multiple if there are multiple trees joined together,
+     *         or none if the tree is empty.
+     */
+    public List<File> getRoots()
+    {
+        return roots;
+    }
+
+    /**
+     * A single file or directory captured in a snapshot.
+     */
+    public static class Element implements FileTreeElement
+    {
+        private final File file;
+        private final RelativePath relativePath;
+        private final boolean directory;
+        private final long size;
+        private final long lastModified;
+        private final int mode;
+
+        public Element(File file, RelativePath relativePath, boolean directory, long size, long lastModified, int mode)
+        {
+            this.file = Objects.requireNonNull(file);
+            this.relativePath = Objects.requireNonNull(relativePath);
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mode = mode;
+        }
+
+        @Override
+        public File getFile()
+        {
+            return file;
+        }
+
+        @Override
+        public boolean isDirectory()
+        {
+            return directory;
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        @Override
+        public long getSize()
+        {
+            return size;
+        }
+
+        @Override
+        public InputStream open()
+        {
+            try
+            {
+                return Files.newInputStream(file.toPath());
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void copyTo(OutputStream output)
+        {
+            try
+            {
+                Files.copy(file.toPath(), output);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean copyTo(File target)
+        {
+            try
+            {
+                if (directory)
+                    FileUtils.forceMkdir(target);
+                else
+                    FileUtils.copyFile(file, target);
+                return true;
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String getName()
+        {
+            return relativePath.getLastName();
+        }
+
+        @Override
+        public String getPath()
+        {
+            return relativePath.getPathString();
+        }
+
+        @Override
+        public RelativePath getRelativePath()
+        {
+            return relativePath;
+        }
+
+        @Override
+        public int getMode()
+        {
+            return mode;
+        }
+    }
+}
@@ -2,14 +2,13 @@ package au.com.helixta.adl.gradle.containerexecutor;
 
 import org.gradle.api.file.DirectoryTree;
 import org.gradle.api.file.FileTree;
+import org.gradle.api.file.RelativePath;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Utility methods for dealing with file trees.
@@ -17,28 +16,51 @@ import java.util.Set;
 final class FileTrees
 {
     public static List<File> fileTreeRoots(FileTree hostFileTree)
+    {
+        File directoryTreeRoot = directoryTreeRoot(hostFileTree);
+        if (directoryTreeRoot != null)
+            return Collections.singletonList(directoryTreeRoot);
+
+        return FileTreeSnapshot.of(hostFileTree).getRoots();
+    }
+
+    /**
+     * If a file tree is a simple directory tree, reads its root directory without needing to walk it.
+     *
+     * @param hostFileTree the file tree.
+     *
+     * @return the root directory of the tree, or null if the tree is not a simple directory tree and roots need to be detected from its elements.
+     */
+    static File directoryTreeRoot(FileTree hostFileTree)
     {
         //Configurable file trees will implement DirectoryTree
         if (hostFileTree instanceof DirectoryTree)
-            return Collections.singletonList(((DirectoryTree)hostFileTree).getDir());
+            return ((DirectoryTree)hostFileTree).getDir();
+        else
+            return null;
+    }
 
-        Set<File> fileTreeRoots = new LinkedHashSet<>(); //All the roots detected in the file tree
-        hostFileTree.visit(fileVisitDetails ->
+    /**
+     * Detects the root directory of a single element of a file tree by stripping its relative path from its file.
+     *
+     * @param file the file of the element on the host.
+     * @param relativePath the path of the element relative to its root.
+     *
+     * @return the root directory, or null if a root could not be detected.
+     */
+    static File elementRoot(File file, RelativePath relativePath)
+    {
+        File curBase = file.getAbsoluteFile();
+        String[] segments = relativePath.getSegments();
+        for (int i = segments.length - 1; i >= 0; i--)
         {
-            File curBase = fileVisitDetails.getFile().getAbsoluteFile();
-            String[] segments = fileVisitDetails.getRelativePath().getSegments();
-            for (int i = segments.length - 1; i >= 0; i--)
-            {
-                if (segments[i].equals(curBase.getName()))
-                    curBase = curBase.getParentFile();
-                else
-                    return; //Could not detect base, just bail out
-            }
-
-            fileTreeRoots.add(curBase);
-        });
-
-        return new ArrayList<>(fileTreeRoots);
+            if (curBase != null && segments[i].equals(curBase.getName()))
+                curBase = curBase.getParentFile();
+            else
+                return null; //Could not detect base, just bail out
+        }
+
+        return curBase;
     }
 
     /**
@@ -55,11 +77,27 @@ final class FileTrees
     throws NoRootException, MultipleRootsException
     {
         //Configurable file trees will implement DirectoryTree
-        if (hostFileTree instanceof DirectoryTree)
-            return ((DirectoryTree)hostFileTree).getDir();
+        File directoryTreeRoot = directoryTreeRoot(hostFileTree);
+        if (directoryTreeRoot != null)
+            return directoryTreeRoot;
 
         //Not a simple tree, try to detect all the roots by iterating entries and if there is a single one use it
-        List<File> fileTreeRoots = fileTreeRoots(hostFileTree);
+        return singleRoot(fileTreeRoots(hostFileTree));
+    }
+
+    /**
+     * Reads the single root directory from a set of detected roots, throwing an exception if there is not exactly one root.
+     *
+     * @param fileTreeRoots the roots detected in a file tree, such as from a {@link FileTreeSnapshot}.
+     *
+     * @return the single root directory.
+     *
+     * @throws NoRootException if there are no roots, possibly because the tree is empty.
+     * @throws MultipleRootsException if there are multiple roots.
+     */
+    public static File singleRoot(List<File> fileTreeRoots)
+    throws NoRootException, MultipleRootsException
+    {
         if (fileTreeRoots.size() == 1)
             return fileTreeRoots.get(0);
 
@@ -7,6 +7,7 @@ import au.com.helixta.adl.gradle.distribution.HxAdlDistributionService;
 import com.google.common.collect.ImmutableList;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,7 +21,7 @@ public class HxAdlContainerTool extends ContainerTool<HxAdlContainerTool.AdlFull
     private static StaticToolConfiguration adlStaticToolConfiguration(Environment environment)
     {
         HxAdlDistributionService distributionService = new HxAdlDistributionService(environment.getHomeDirProvider(), environment.getFileSystemOperations(),
-                                                                                    environment.getArchiveOperations(), environment.getProject());
+                                                                                    environment.getArchiveOperations(), environment.getDistributionResolutionService());
 
         return new StaticToolConfiguration(distributionService, new SimpleExecutableResolver("bin/hx-adl"), "hx-adl", "/opt/hx-adl", "/data",
                                            HxAdlContainerTool::configureDockerfile,
@@ -70,6 +71,12 @@ public class HxAdlContainerTool extends ContainerTool<HxAdlContainerTool.AdlFull
         return config.getDocker();
     }
 
+    @Override
+    protected Duration readExecutionTimeout(AdlFullConfiguration config)
+    {
+        return config.getAdl().getExecutionTimeout();
+    }
+
     @Override
     protected PreparedCommandLine createCommandLine(AdlFullConfiguration config)
     {
@@ -1,22 +1,23 @@
 package au.com.helixta.adl.gradle.containerexecutor;
 
-import au.com.helixta.adl.gradle.containerexecutor.FileTrees.NoRootException;
 import au.com.helixta.adl.gradle.containerexecutor.PreparedCommandLine.Argument;
 import au.com.helixta.adl.gradle.containerexecutor.PreparedCommandLine.FileType;
 import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
 import au.com.helixta.adl.gradle.distribution.DistributionService;
 import au.com.helixta.adl.gradle.distribution.DistributionSpecifier;
 import au.com.helixta.adl.gradle.generator.AdlToolLogger;
-import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
 import au.com.helixta.adl.gradle.generator.LineProcessingOutputStream;
+import org.apache.commons.io.IOUtils;
 import org.gradle.api.GradleException;
-import org.gradle.api.file.FileTree;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecResult;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -29,9 +30,11 @@ public class NativeExecutor implements ContainerExecutor
     private final DistributionSpecifier distributionSpecifier;
     private final ExecutableResolver executableResolver;
     private final ExecOperations execOperations;
-    private final ArchiveProcessor archiveProcessor;
+    private final ArchiveExtractionCache archiveExtractionCache;
     private final AdlToolLogger adlLog;
     private final String logToolName;
+    private final Duration executionTimeout;
+    private final ExecutionCancellationService executionCancellationService;
 
     /**
      * Creates a native executor.
@@ -40,21 +43,45 @@ public class NativeExecutor implements ContainerExecutor
      * @param distributionSpecifier specifier to specify version and architecture of the tool to run.
      * @param executableResolver resolves the executable to run in the distribution.
      * @param execOperations operations object for running processes.
-     * @param archiveProcessor used for turning archives into directories.
+     * @param archiveExtractionCache used for turning archives into directories.
      * @param adlLog logger.
      * @param logToolName name of the tool to use when logging.
      */
     public NativeExecutor(DistributionService distributionService, DistributionSpecifier distributionSpecifier,
                           ExecutableResolver executableResolver, ExecOperations execOperations,
-                          ArchiveProcessor archiveProcessor, AdlToolLogger adlLog, String logToolName)
+                          ArchiveExtractionCache archiveExtractionCache, AdlToolLogger adlLog, String logToolName)
+    {
+        this(distributionService, distributionSpecifier, executableResolver, execOperations, archiveExtractionCache, adlLog, logToolName, null, null);
+    }
+
+    /**
+     * Creates a native executor.
+     *
+     * @param distributionService distribution service used to download and install the tool.
+     * @param distributionSpecifier specifier to specify version and architecture of the tool to run.
+     * @param executableResolver resolves the executable to run in the distribution.
+     * @param execOperations operations object for running processes.
+     * @param archiveExtractionCache used for turning archives into directories.
+     * @param adlLog logger.
+     * @param logToolName name of the tool to use when logging.
+     * @param executionTimeout the maximum time a single tool process may run for, or null for no limit.
+     * @param executionCancellationService stops processes that time out or are still running when the build is cancelled.  May be null, in which case
+     *                                     processes are run with {@code execOperations} and always run to completion.
+     */
+    public NativeExecutor(DistributionService distributionService, DistributionSpecifier distributionSpecifier,
+                          ExecutableResolver executableResolver, ExecOperations execOperations,
+                          ArchiveExtractionCache archiveExtractionCache, AdlToolLogger adlLog, String logToolName,
+                          Duration executionTimeout, ExecutionCancellationService executionCancellationService)
     {
         this.distributionService = Objects.requireNonNull(distributionService);
         this.distributionSpecifier = Objects.requireNonNull(distributionSpecifier);
         this.executableResolver = Objects.requireNonNull(executableResolver);
         this.execOperations = Objects.requireNonNull(execOperations);
-        this.archiveProcessor = Objects.requireNonNull(archiveProcessor);
+        this.archiveExtractionCache = Objects.requireNonNull(archiveExtractionCache);
         this.adlLog = Objects.requireNonNull(adlLog);
         this.logToolName = Objects.requireNonNull(logToolName);
+        this.executionTimeout = executionTimeout;
+        this.executionCancellationService = executionCancellationService;
     }
 
     @Override
@@ -65,15 +92,94 @@ public class NativeExecutor implements ContainerExecutor
         File toolBaseDirectory = distributionService.resolveDistribution(distributionSpecifier);
         String executable = executableResolver.resolveExecutable(toolBaseDirectory.getAbsolutePath(), distributionSpecifier);
 
-        List<String> args = createNativeCommandLine(commandLine);
+        //Very large numbers of arguments might be batched into multiple runs
+        ArgumentBatcher batcher = new ArgumentBatcher(commandLine, createNativeArguments(commandLine));
+        for (List<String> args : batcher.commandLines())
+        {
+            runProcess(executable, args);
+        }
+    }
+
+    private void runProcess(String executable, List<String> args)
+    throws IOException, ContainerExecutionException
+    {
+        if (executionCancellationService == null)
+        {
+            runProcessToCompletion(executable, args);
+            return;
+        }
+
+        //Start the process directly rather than through exec operations so there is a process handle to destroy it with
+        //when it times out or the build is cancelled
+        List<String> command = new ArrayList<>(args.size() + 1);
+        command.add(executable);
+        command.addAll(args);
+        Process process = new ProcessBuilder(command).start();
+        ExecutionCancellationService.Execution execution = executionCancellationService.start(logToolName + " process", executionTimeout, process::destroyForcibly);
+
+        ToolOutput output = new ToolOutput();
+        try (LineProcessingOutputStream adlOut = output.createInfoStream();
+             LineProcessingOutputStream adlErr = output.createErrorStream())
+        {
+            //Tool is not given any input
+            process.getOutputStream().close();
 
-        List<String> infos = Collections.synchronizedList(new ArrayList<>());
-        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+            Thread outCopier = copyInBackground(process.getInputStream(), adlOut);
+            Thread errCopier = copyInBackground(process.getErrorStream(), adlErr);
+            int exitValue;
+            try
+            {
+                exitValue = process.waitFor();
+
+                //Streams end once the process has finished, so this just makes sure all output has been logged
+                outCopier.join();
+                errCopier.join();
+            }
+            catch (InterruptedException e)
+            {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new ContainerExecutionException(logToolName + " was interrupted", e);
+            }
 
-        try (LineProcessingOutputStream adlOut = new LineProcessingOutputStream(Charset.defaultCharset(),
-                                                                                line -> { adlLog.info(logToolName, line); infos.add(line); });
-             LineProcessingOutputStream adlErr = new LineProcessingOutputStream(Charset.defaultCharset(),
-                                                                                line -> { adlLog.error(logToolName, line); errors.add(line); }))
+            ExecutionCancellationService.StopReason stopReason = execution.getStopReason();
+            if (stopReason == ExecutionCancellationService.StopReason.TIMED_OUT)
+                throw new ContainerExecutionException(logToolName + " timed out after " + executionTimeout);
+            else if (stopReason == ExecutionCancellationService.StopReason.CANCELLED)
+                throw new ContainerExecutionException(logToolName + " was cancelled");
+            else if (exitValue != 0)
+                throw output.failed(new ContainerExecutionException("Process '" + executable + "' finished with non-zero exit value " + exitValue));
+        }
+        finally
+        {
+            execution.close();
+        }
+    }
+
+    private static Thread copyInBackground(InputStream in, OutputStream out)
+    {
+        Thread thread = new Thread(() ->
+        {
+            try
+            {
+                IOUtils.copy(in, out);
+            }
+            catch (IOException e)
+            {
+                //Stream is closed if the process is destroyed, nothing more to copy
+            }
+        }, "ADL process output");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void runProcessToCompletion(String executable, List<String> args)
+    throws IOException, ContainerExecutionException
+    {
+        ToolOutput output = new ToolOutput();
+        try (LineProcessingOutputStream adlOut = output.createInfoStream();
+             LineProcessingOutputStream adlErr = output.createErrorStream())
         {
             ExecResult result = execOperations.exec(e ->
                                 {
@@ -90,7 +196,37 @@ public class NativeExecutor implements ContainerExecutor
         catch (GradleException e) //Actually org.gradle.process.internal.ExecException but it's internal so we shouldn't use it
         {
             //Occurs when process execution fails
+            throw output.failed(new ContainerExecutionException(e));
+        }
+    }
+
+    /**
+     * Logs a tool's output and keeps it around in case it needs to be reported when the tool fails.
+     */
+    private class ToolOutput
+    {
+        private final List<String> infos = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        public LineProcessingOutputStream createInfoStream()
+        {
+            return new LineProcessingOutputStream(Charset.defaultCharset(), line -> { adlLog.info(logToolName, line); infos.add(line); });
+        }
 
+        public LineProcessingOutputStream createErrorStream()
+        {
+            return new LineProcessingOutputStream(Charset.defaultCharset(), line -> { adlLog.error(logToolName, line); errors.add(line); });
+        }
+
+        /**
+         * Reports the output of a failed tool execution.
+         *
+         * @param failure the execution failure.
+         *
+         * @return {@code failure}, for throwing.
+         */
+        public ContainerExecutionException failed(ContainerExecutionException failure)
+        {
             //Certain versions of adlc log everything to stdout - in the case of errors send this all to adlLog.error too
             //if infos weren't actually being logged
             //This is so the user doesn't just see an error that adlc failed without any reason/cause from the process
@@ -102,20 +238,20 @@ public class NativeExecutor implements ContainerExecutor
                 }
             }
 
-            //Execution failed
-            throw new ContainerExecutionException(e);
+            return failure;
         }
     }
 
-    private List<String> createNativeCommandLine(PreparedCommandLine commandLine)
+    private List<ArgumentBatcher.MappedArgument> createNativeArguments(PreparedCommandLine commandLine)
     throws IOException
     {
-        List<String> nativeCommandLine = new ArrayList<>();
+        List<ArgumentBatcher.MappedArgument> nativeArguments = new ArrayList<>();
         for (Argument argument : commandLine.getArguments())
         {
-            nativeCommandLine.addAll(argumentToStrings(argument));
+            //Only arguments expanded from file trees can be batched
+            nativeArguments.add(new ArgumentBatcher.MappedArgument(argumentToStrings(argument), argument instanceof PreparedCommandLine.ContainerFileTree));
         }
-        return nativeCommandLine;
+        return nativeArguments;
     }
 
     private List<String> argumentToStrings(PreparedCommandLine.Argument argument)
@@ -128,27 +264,18 @@ public class NativeExecutor implements ContainerExecutor
             PreparedCommandLine.ContainerFile containerFile = (PreparedCommandLine.ContainerFile)argument;
 
             //If we have a normal file but file type is directory, assume an archive and process it
-            //Gradle will expand to a local directory the first time it is traversed, and this is all managed
-            //by Gradle
+            //Archives are extracted once into a persistent cache shared between tasks and builds, so the root directory
+            //is known directly without walking the archive
             File hostDirectory;
             if (containerFile.getHostFile().isFile() && containerFile.getFileType() == FileType.DIRECTORY)
             {
-                FileTree archiveFileTree = archiveProcessor.archiveToFileTree(containerFile.getHostFile());
+                hostDirectory = archiveExtractionCache.extractedDirectory(containerFile.getHostFile());
 
-                //Need to visit every file in the archive tree to ensure it is extracted to output directory
-                archiveFileTree.visit(fileVisitDetails -> {});
-
-                //Pull out the expanded root dir of the archive
-                try
-                {
-                    hostDirectory = FileTrees.fileTreeRootDirectory(archiveFileTree);
-                }
-                catch (NoRootException e)
-                {
-                    //Might happen if the archive is empty, in which case just omit the argument
-                    //and bail out now
+                //Might happen if the archive is empty or not a supported archive, in which case just omit the argument
+                //and bail out now
+                String[] extractedFiles = (hostDirectory == null ? null : hostDirectory.list());
+                if (extractedFiles == null || extractedFiles.length == 0)
                     return Collections.emptyList();
-                }
             }
             else
                 hostDirectory = containerFile.getHostFile();
@@ -162,8 +289,14 @@ public class NativeExecutor implements ContainerExecutor
         {
             List<String> generatedArgs = new ArrayList<>(2);
             PreparedCommandLine.ContainerFileTree tree = (PreparedCommandLine.ContainerFileTree)argument;
-            generatedArgs.addAll(tree.getCommandLineGenerator().generateFromTree(tree.getHostFileTree(), FileTrees.fileTreeRoots(tree.getHostFileTree()).stream().map(File::getAbsolutePath).collect(Collectors.toList())));
-            tree.getHostFileTree().visit(fileVisitDetails -> generatedArgs.addAll(tree.getCommandLineGenerator().generateFromTreeElement(tree.getHostFileTree(), fileVisitDetails, fileVisitDetails.getFile().getAbsolutePath())));
+
+            //Single walk of the tree for both root detection and element arguments
+            FileTreeSnapshot snapshot = FileTreeSnapshot.of(tree.getHostFileTree());
+            generatedArgs.addAll(tree.getCommandLineGenerator().generateFromTree(tree.getHostFileTree(), snapshot.getRoots().stream().map(File::getAbsolutePath).collect(Collectors.toList())));
+            for (FileTreeSnapshot.Element element : snapshot.getElements())
+            {
+                generatedArgs.addAll(tree.getCommandLineGenerator().generateFromTreeElement(tree.getHostFileTree(), element, element.getFile().getAbsolutePath()));
+            }
             return generatedArgs;
         }
         else
@@ -18,8 +18,16 @@ import java.util.stream.Stream;
  */
 public class PreparedCommandLine
 {
+    /**
+     * Default maximum number of arguments expanded from file trees that are passed directly on the command line.
+     */
+    public static final int DEFAULT_BATCH_THRESHOLD = 2000;
+
     private final List<Argument> arguments = new ArrayList<>();
 
+    private int batchThreshold = DEFAULT_BATCH_THRESHOLD;
+    private boolean batchable;
+
     /**
      * Adds a string argument to the command line.
      *
@@ -159,6 +167,54 @@ public class PreparedCommandLine
         return this;
     }
 
+    /**
+     * Declares that the tool may be run several times with the file tree arguments split between the runs when there are more of them than the
+     * {@linkplain #batchThreshold(int) threshold}.  Only safe when each run's output is independent of the others, e.g. not when a run writes a single file
+     * describing everything it processed, since later runs would overwrite it.  Command lines are not batchable unless this is called.
+     *
+     * @return this command line.
+     */
+    public PreparedCommandLine batchable()
+    {
+        this.batchable = true;
+        return this;
+    }
+
+    /**
+     * @return whether file tree arguments may be split between multiple runs of the tool.
+     */
+    public boolean isBatchable()
+    {
+        return batchable;
+    }
+
+    /**
+     * Sets the maximum number of arguments expanded from file trees that are passed directly on the command line.  Beyond this, arguments are batched if
+     * the command line is batchable, otherwise they are all still passed on the command line.
+     *
+     * @param batchThreshold the maximum number of file tree arguments.
+     *
+     * @return this command line.
+     *
+     * @see #batchable()
+     */
+    public PreparedCommandLine batchThreshold(int batchThreshold)
+    {
+        if (batchThreshold < 1)
+            throw new IllegalArgumentException("Batch threshold must be at least 1: " + batchThreshold);
+
+        this.batchThreshold = batchThreshold;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of arguments expanded from file trees that are passed directly on the command line, and the size of each batch.
+     */
+    public int getBatchThreshold()
+    {
+        return batchThreshold;
+    }
+
     /**
      * @return a list of all arguments in the command line.
      */
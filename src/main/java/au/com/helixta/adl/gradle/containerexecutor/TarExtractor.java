@@ -0,0 +1,305 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Extracts files from TAR streams, such as those read from Docker containers, into directories on the host.
+ * <p>
+ *
+ * A TAR stream can only be read sequentially, but for outputs with many small files most of the time is spent creating directories and writing files.
+ * File content is read into pooled buffers on the calling thread and written by a writer executor while reading continues.  The number of buffers bounds
+ * how much content is held in memory waiting to be written.  Files larger than a buffer are written directly from the stream instead.  Each directory is
+ * only created once, no matter how many files are written to it.
+ * <p>
+ *
+ * An extractor can be used for multiple TAR streams, reusing its buffers and directories created so far.
+ */
+public class TarExtractor
+{
+    /**
+     * Default size of each buffer used for holding a file's content until it is written.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Default number of buffers, which is the maximum number of files waiting to be written at once.
+     */
+    public static final int DEFAULT_BUFFER_COUNT = 32;
+
+    /**
+     * Default number of threads for writing extracted files.
+     */
+    public static final int DEFAULT_WRITER_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private final Executor writerExecutor;
+    private final int bufferSize;
+
+    private final Semaphore availableBuffers;
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Directories known to exist.  Used as a set, but creation of each directory is done inside computeIfAbsent() so writers of other files in the same
+     * directory wait for it to be created.
+     */
+    private final Map<File, Boolean> createdDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an extractor with default buffer sizes.
+     *
+     * @param writerExecutor runs the writes of extracted files.
+     */
+    public TarExtractor(Executor writerExecutor)
+    {
+        this(writerExecutor, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * Creates an extractor.
+     *
+     * @param writerExecutor runs the writes of extracted files.
+     * @param bufferSize the size of each buffer.  Files larger than this are written directly from the stream on the calling thread.
+     * @param bufferCount the number of buffers, which is the maximum number of files waiting to be written at once.
+     */
+    public TarExtractor(Executor writerExecutor, int bufferSize, int bufferCount)
+    {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be at least 1: " + bufferSize);
+        if (bufferCount < 1)
+            throw new IllegalArgumentException("bufferCount must be at least 1: " + bufferCount);
+
+        this.writerExecutor = Objects.requireNonNull(writerExecutor);
+        this.bufferSize = bufferSize;
+        this.availableBuffers = new Semaphore(bufferCount);
+    }
+
+    /**
+     * Extracts all files from a TAR stream.  Directory entries are ignored, directories are created as needed for files.
+     *
+     * @param tis the TAR stream.
+     * @param outputDirectory the directory to extract files into.
+     * @param stripPrefix a prefix removed from the start of entry names that have it, e.g. a base directory Docker added to every entry.  Empty to keep
+     *                    names as-is.
+     * @param filter a filter used to determine whether a file is extracted.
+     *
+     * @return counts of what was extracted.
+     *
+     * @throws IOException if an error occurs reading the stream or writing files.
+     */
+    public Result extract(TarArchiveInputStream tis, File outputDirectory, String stripPrefix, FilenameFilter filter)
+    throws IOException
+    {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        long fileCount = 0L;
+        long byteCount = 0L;
+
+        try
+        {
+            TarArchiveEntry entry;
+            while ((entry = tis.getNextTarEntry()) != null)
+            {
+                if (entry.isDirectory())
+                    continue;
+
+                String relativeName = entry.getName();
+                if (!stripPrefix.isEmpty() && relativeName.startsWith(stripPrefix))
+                    relativeName = relativeName.substring(stripPrefix.length());
+
+                File outputFile = new File(outputDirectory, relativeName);
+                if (!filter.accept(outputFile.getParentFile(), outputFile.getName()))
+                    continue;
+
+                long size = entry.getSize();
+                fileCount++;
+                byteCount += size;
+
+                if (size > bufferSize)
+                {
+                    //Large files are streamed straight to disk rather than held in memory
+                    ensureDirectory(outputFile.getParentFile());
+                    Files.copy(tis, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                else
+                {
+                    //Read the file data now since the stream can only be read sequentially, and write it in the background
+                    byte[] buffer = acquireBuffer();
+                    int length = (int)size;
+                    try
+                    {
+                        IOUtils.readFully(tis, buffer, 0, length);
+                    }
+                    catch (IOException | RuntimeException e)
+                    {
+                        releaseBuffer(buffer);
+                        throw e;
+                    }
+                    writes.add(CompletableFuture.runAsync(() -> writeFile(outputFile, buffer, length), writerExecutor));
+                }
+            }
+        }
+        finally
+        {
+            //Always wait for writes, even on failure, so buffers and files are not in use by the time this returns
+            awaitWrites(writes);
+        }
+
+        return new Result(fileCount, byteCount);
+    }
+
+    private byte[] acquireBuffer()
+    throws InterruptedIOException
+    {
+        try
+        {
+            availableBuffers.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a buffer to extract files into");
+        }
+
+        //Allocated lazily so small outputs don't pay for the whole pool
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null)
+            buffer = new byte[bufferSize];
+
+        return buffer;
+    }
+
+    private void releaseBuffer(byte[] buffer)
+    {
+        freeBuffers.offer(buffer);
+        availableBuffers.release();
+    }
+
+    private void writeFile(File outputFile, byte[] buffer, int length)
+    {
+        try
+        {
+            ensureDirectory(outputFile.getParentFile());
+            try (OutputStream os = Files.newOutputStream(outputFile.toPath()))
+            {
+                os.write(buffer, 0, length);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        finally
+        {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private void ensureDirectory(File directory)
+    throws IOException
+    {
+        try
+        {
+            createdDirectories.computeIfAbsent(directory, d ->
+            {
+                try
+                {
+                    Files.createDirectories(d.toPath());
+                    return Boolean.TRUE;
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private static void awaitWrites(List<CompletableFuture<Void>> writes)
+    throws IOException
+    {
+        try
+        {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for extracted files to be written");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException)e.getCause()).getCause();
+            else
+                throw new IOException("Error writing extracted files: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Counts of files extracted.
+     */
+    public static class Result
+    {
+        /**
+         * A result with nothing extracted.
+         */
+        public static final Result EMPTY = new Result(0L, 0L);
+
+        private final long fileCount;
+        private final long byteCount;
+
+        public Result(long fileCount, long byteCount)
+        {
+            this.fileCount = fileCount;
+            this.byteCount = byteCount;
+        }
+
+        /**
+         * @return the number of files extracted.  Does not include directories.
+         */
+        public long getFileCount()
+        {
+            return fileCount;
+        }
+
+        /**
+         * @return the total size of all extracted files in bytes.
+         */
+        public long getByteCount()
+        {
+            return byteCount;
+        }
+
+        /**
+         * @return a result combining the counts of this and another result.
+         */
+        public Result plus(Result other)
+        {
+            return new Result(fileCount + other.fileCount, byteCount + other.byteCount);
+        }
+    }
+}
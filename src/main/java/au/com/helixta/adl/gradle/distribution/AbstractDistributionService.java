@@ -1,10 +1,6 @@
 package au.com.helixta.adl.gradle.distribution;
 
-import org.gradle.api.Project;
-import org.gradle.api.artifacts.Configuration;
-import org.gradle.api.artifacts.Dependency;
-import org.gradle.api.artifacts.ResolveException;
-import org.gradle.api.artifacts.repositories.IvyArtifactRepository;
+import org.apache.commons.io.FileUtils;
 import org.gradle.api.file.ArchiveOperations;
 import org.gradle.api.file.FileSystemOperations;
 import org.gradle.initialization.GradleUserHomeDirProvider;
@@ -15,16 +11,17 @@ import org.gradle.nativeplatform.platform.internal.OperatingSystemInternal;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.Set;
 
 public abstract class AbstractDistributionService implements DistributionService
 {
     private final File unpackedDistributionInstallationDirectory;
-    private final Project project;
+    private final DistributionResolutionService distributionResolutionService;
     private final FileSystemOperations fileSystemOperations;
     private final ArchiveOperations archiveOperations;
 
@@ -38,27 +35,19 @@ public abstract class AbstractDistributionService implements DistributionService
      */
     private final String distributionSimpleName;
 
-    /**
-     * Group ID used for distribution artifacts in the local repo.
-     */
-    private final String distributionGroupId;
-
     protected AbstractDistributionService(URI distributionBaseUrl,
                                           String distributionSimpleName,
-                                          String distributionGroupId,
                                           GradleUserHomeDirProvider homeDirProvider,
                                           FileSystemOperations fileSystemOperations,
                                           ArchiveOperations archiveOperations,
-                                          Project project)
+                                          DistributionResolutionService distributionResolutionService)
     {
         this.distributionBaseUrl = Objects.requireNonNull(distributionBaseUrl);
         this.distributionSimpleName = Objects.requireNonNull(distributionSimpleName);
-        this.distributionGroupId = Objects.requireNonNull(distributionGroupId);
         this.unpackedDistributionInstallationDirectory = new File(homeDirProvider.getGradleUserHomeDirectory(), distributionSimpleName);
         this.fileSystemOperations = fileSystemOperations;
         this.archiveOperations = archiveOperations;
-        this.project = project;
-
+        this.distributionResolutionService = Objects.requireNonNull(distributionResolutionService);
     }
 
     /**
@@ -105,42 +94,11 @@ public abstract class AbstractDistributionService implements DistributionService
         if (downloadParameters == null)
             throw new DistributionNotFoundException("No " + distributionSimpleName + " distribution available for OS: " + spec.getOs() + "/" + spec.getArchitecture());
 
-        //Add download repo if needed
-        //Set up a fake Ivy repository that can download from Github releases directly
-        //This repo only supports our specific dependency
-        project.getRepositories().ivy(r -> {
-            r.setName(distributionSimpleName + "-distribution");
-            r.setUrl(distributionBaseUrl);
-            r.patternLayout(p -> {
-                p.artifact("v[revision]/[artifact]-[revision]-[classifier].[ext]");
-            });
-            r.metadataSources(IvyArtifactRepository.MetadataSources::artifact); //No metadata files in Github
-            r.content(c -> {
-                c.includeGroup(distributionGroupId);
-            });
-        });
-
-        //Then use Gradle's dependency system to download it
-        //If it's already downloaded it will be cached locally and just give a reference to the file without additional download
-        Dependency distributionArchiveDependency = project.getDependencies().create(distributionGroupId + ":" + downloadParameters.getArtifactId() + ":" + spec.getVersion() + ":" + downloadParameters.getClassifier() + "@" + downloadParameters.getExtension());
-        Configuration distributionArchiveDependencyConfig = project.getConfigurations().detachedConfiguration(distributionArchiveDependency);
-        distributionArchiveDependencyConfig.setTransitive(false);
-
-        try
-        {
-            Set<File> distributionLocalArchives = distributionArchiveDependencyConfig.resolve();
-
-            //Should never return anything other than single file since that's how the dependency was defined
-            //Bail out if we get anything else that is unexpected
-            if (distributionLocalArchives.size() != 1)
-                throw new RuntimeException("Expected single dependency to download single file");
-
-            return distributionLocalArchives.iterator().next();
-        }
-        catch (ResolveException e)
-        {
-            throw new DistributionNotFoundException("Failed to resolve distribution " + distributionArchiveDependency, e);
-        }
+        //Download directly from the Github releases page through the build service, which keeps previously downloaded archives
+        //so they are only downloaded once
+        String archiveFileName = downloadParameters.getArtifactId() + "-" + spec.getVersion() + "-" + downloadParameters.getClassifier() + "." + downloadParameters.getExtension();
+        URI downloadUri = distributionBaseUrl.resolve("v" + spec.getVersion() + "/" + archiveFileName);
+        return distributionResolutionService.resolveArchive(downloadUri, distributionSimpleName + "/" + archiveFileName);
     }
 
     @Override
@@ -152,7 +110,13 @@ public abstract class AbstractDistributionService implements DistributionService
         if (distributionInstallationDir.exists())
             return distributionInstallationDir;
 
-        //If it doesn't exist, download and unpack
+        //If it doesn't exist, download and unpack - only once at a time per build, other executions needing it wait and use the result
+        return distributionResolutionService.resolveInstallation(distributionInstallationDir, () -> installDistribution(spec, distributionInstallationDir));
+    }
+
+    private void installDistribution(DistributionSpecifier spec, File distributionInstallationDir)
+    throws DistributionNotFoundException, IOException
+    {
         File distributionArchive = resolveDistributionArchive(spec);
 
         //Use a temporary directory so other processes won't pick up a half-installed distribution concurrently
@@ -160,10 +124,20 @@ public abstract class AbstractDistributionService implements DistributionService
         //Use nio instead of java.io.File because it has a createTempDirectory()
         Files.createDirectories(unpackedDistributionInstallationDirectory.toPath());
         Path unpackTempDir = Files.createTempDirectory(unpackedDistributionInstallationDirectory.toPath(), distributionSimpleName + "-install-");
-        unpackDistribution(distributionArchive, unpackTempDir.toFile());
-        Files.move(unpackTempDir, distributionInstallationDir.toPath());
-
-        return distributionInstallationDir;
+        try
+        {
+            unpackDistribution(distributionArchive, unpackTempDir.toFile());
+            Files.move(unpackTempDir, distributionInstallationDir.toPath());
+        }
+        catch (FileAlreadyExistsException | DirectoryNotEmptyException e)
+        {
+            //Another process installed it first - it only ever appears complete because it is renamed into place, so use theirs
+        }
+        finally
+        {
+            if (Files.exists(unpackTempDir))
+                FileUtils.deleteDirectory(unpackTempDir.toFile());
+        }
     }
 
     /**
@@ -0,0 +1,218 @@
+package au.com.helixta.adl.gradle.distribution;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Build service that downloads distribution archives into a download directory under the Gradle user home.
+ * <p>
+ *
+ * Downloading through a build service rather than through a project's dependency resolution means distributions can be resolved at execution time
+ * without access to the project, which keeps tasks that use distributions compatible with the configuration cache.  The trade-off is that downloads
+ * do not go through the project's repositories, so repository credentials and Gradle's dependency cache do not apply, though the JVM's proxy settings
+ * do.  Distributions have no published checksums, so downloads are only checked against the size reported by the server.  Downloads of the same archive from
+ * multiple tasks running in parallel are serialized so each archive is only downloaded once per build.  Archives that do not exist are remembered for the
+ * rest of the build, so platforms without a native distribution only pay for the failed lookup once.  Unpacking of distributions into their installation
+ * directories is serialized the same way.
+ */
+public abstract class DistributionResolutionService implements BuildService<DistributionResolutionService.Parameters>
+{
+    /**
+     * Name the service is registered under.
+     */
+    public static final String SERVICE_NAME = "adlDistributionResolution";
+
+    /**
+     * Maximum time to wait for a connection to the download server.
+     */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30L);
+
+    /**
+     * Maximum time to wait for data from the download server once connected.
+     */
+    private static final Duration READ_TIMEOUT = Duration.ofMinutes(1L);
+
+    /**
+     * Locks for each download target file so the same archive is not downloaded concurrently.
+     */
+    private final Map<File, Object> downloadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Locks for each distribution installation directory so the same distribution is not unpacked concurrently.
+     */
+    private final Map<File, Object> installationLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Download URIs that were found not to exist in this build.
+     */
+    private final Set<URI> notFoundUris = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registers the distribution resolution service for a build if it has not already been registered.
+     *
+     * @param gradle the build to register the service with.
+     *
+     * @return a provider of the shared service.
+     */
+    public static Provider<DistributionResolutionService> register(Gradle gradle)
+    {
+        return gradle.getSharedServices().registerIfAbsent(SERVICE_NAME, DistributionResolutionService.class, spec ->
+        {
+            spec.getParameters().getDownloadDirectory().set(new File(gradle.getGradleUserHomeDir(), "adl-distribution-downloads"));
+            spec.getParameters().getOffline().set(gradle.getStartParameter().isOffline());
+        });
+    }
+
+    /**
+     * Resolves a distribution archive, downloading it if it has not already been downloaded previously.
+     *
+     * @param downloadUri the URI to download the archive from.
+     * @param archivePath path of the archive, relative to the download directory, that it is saved as.
+     *
+     * @return the local archive file.
+     *
+     * @throws DistributionNotFoundException if the archive does not exist at the download URI, could not be downloaded, or the build is offline and the archive
+     *                                       was not previously downloaded.
+     */
+    public File resolveArchive(URI downloadUri, String archivePath)
+    throws DistributionNotFoundException
+    {
+        File archiveFile = new File(getParameters().getDownloadDirectory().get().getAsFile(), archivePath);
+
+        synchronized (downloadLocks.computeIfAbsent(archiveFile, f -> new Object()))
+        {
+            if (archiveFile.isFile())
+                return archiveFile;
+
+            if (notFoundUris.contains(downloadUri))
+                throw new DistributionNotFoundException("Distribution not found at " + downloadUri);
+
+            if (getParameters().getOffline().get())
+                throw new DistributionNotFoundException("Distribution " + downloadUri + " has not been downloaded and the build is offline");
+
+            try
+            {
+                download(downloadUri, archiveFile);
+            }
+            catch (FileNotFoundException e)
+            {
+                notFoundUris.add(downloadUri);
+                throw new DistributionNotFoundException("Distribution not found at " + downloadUri, e);
+            }
+            catch (IOException e)
+            {
+                throw new DistributionNotFoundException("Failed to download distribution " + downloadUri, e);
+            }
+
+            return archiveFile;
+        }
+    }
+
+    /**
+     * Resolves an unpacked distribution installation directory, installing it if it does not already exist.  Installations of the same directory are
+     * serialized across the build, so concurrent executions that need the same distribution wait for the first one to install it and then use that
+     * installation.
+     *
+     * @param installationDirectory the directory the distribution is installed into.
+     * @param installer downloads and unpacks the distribution into the installation directory.
+     *
+     * @return the installation directory.
+     *
+     * @throws DistributionNotFoundException if the distribution is not available.
+     * @throws IOException if an I/O error occurs installing the distribution.
+     */
+    public File resolveInstallation(File installationDirectory, DistributionInstaller installer)
+    throws DistributionNotFoundException, IOException
+    {
+        synchronized (installationLocks.computeIfAbsent(installationDirectory, f -> new Object()))
+        {
+            if (!installationDirectory.exists())
+                installer.install();
+
+            return installationDirectory;
+        }
+    }
+
+    /**
+     * Downloads a file into a temporary file that is moved into place when complete so other processes never see a partially downloaded archive.
+     */
+    private static void download(URI downloadUri, File targetFile)
+    throws IOException
+    {
+        Files.createDirectories(targetFile.getParentFile().toPath());
+        Path downloadTempFile = Files.createTempFile(targetFile.getParentFile().toPath(), targetFile.getName(), ".download");
+        try
+        {
+            URLConnection connection = downloadUri.toURL().openConnection();
+            connection.setConnectTimeout(Math.toIntExact(CONNECT_TIMEOUT.toMillis()));
+            connection.setReadTimeout(Math.toIntExact(READ_TIMEOUT.toMillis()));
+            if (connection instanceof HttpURLConnection)
+            {
+                int responseCode = ((HttpURLConnection)connection).getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND)
+                    throw new FileNotFoundException(downloadUri.toString());
+                else if (responseCode != HttpURLConnection.HTTP_OK)
+                    throw new IOException("Unexpected response " + responseCode + " downloading " + downloadUri);
+            }
+
+            try (InputStream is = connection.getInputStream())
+            {
+                Files.copy(is, downloadTempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            //No checksums are published for distributions, but at least make sure a dropped connection doesn't leave a truncated archive behind
+            long expectedSize = connection.getContentLengthLong();
+            long downloadedSize = Files.size(downloadTempFile);
+            if (expectedSize >= 0L && downloadedSize != expectedSize)
+                throw new IOException("Incomplete download of " + downloadUri + ": expected " + expectedSize + " bytes but received " + downloadedSize);
+
+            Files.move(downloadTempFile, targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally
+        {
+            Files.deleteIfExists(downloadTempFile);
+        }
+    }
+
+    /**
+     * Downloads and unpacks a distribution into its installation directory.
+     */
+    @FunctionalInterface
+    public static interface DistributionInstaller
+    {
+        public void install()
+        throws DistributionNotFoundException, IOException;
+    }
+
+    public static interface Parameters extends BuildServiceParameters
+    {
+        /**
+         * @return the directory distribution archives are downloaded into.
+         */
+        public DirectoryProperty getDownloadDirectory();
+
+        /**
+         * @return whether the build is running in offline mode, in which case only previously downloaded archives are available.
+         */
+        public Property<Boolean> getOffline();
+    }
+}
@@ -10,13 +10,13 @@ public interface DistributionService
 {
     /**
      * Resolves a distribution archive, downloading it from the distribution release page into the
-     * local repository if not already downloaded.
+     * local download directory if not already downloaded.
      * <p>
      *
      * This will attempt to resolve a distribution for the given spec.  This might not successfully find a distribution
      * for the given version, OS and platform, in which case a DistributionNotFoundException is thrown.  Otherwise,
-     * the distribution will be resolved by Gradle into the local repository, potentially downloading from a remote
-     * site or using an existing cached version of the archive in the local repository.  Distribution archives are
+     * the distribution will be resolved into the local download directory, potentially downloading from a remote
+     * site or using an existing previously downloaded version of the archive.  Distribution archives are
      * often ZIP or TAR files, but the format will be up to the implementation of the distribution service and what is
      * available.
      *
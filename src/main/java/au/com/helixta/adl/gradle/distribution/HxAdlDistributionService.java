@@ -1,6 +1,5 @@
 package au.com.helixta.adl.gradle.distribution;
 
-import org.gradle.api.Project;
 import org.gradle.api.file.ArchiveOperations;
 import org.gradle.api.file.FileSystemOperations;
 import org.gradle.initialization.GradleUserHomeDirProvider;
@@ -12,10 +11,10 @@ public class HxAdlDistributionService extends AbstractDistributionService
 {
     public HxAdlDistributionService(GradleUserHomeDirProvider homeDirProvider,
                                     FileSystemOperations fileSystemOperations,
-                                    ArchiveOperations archiveOperations, Project project)
+                                    ArchiveOperations archiveOperations, DistributionResolutionService distributionResolutionService)
     {
-        super(URI.create("https://github.com/helix-collective/helix-adl-tools/releases/download/"), "hxadl", "au.com.helix.adl.tools", homeDirProvider, fileSystemOperations,
-              archiveOperations, project);
+        super(URI.create("https://github.com/helix-collective/helix-adl-tools/releases/download/"), "hxadl", homeDirProvider, fileSystemOperations,
+              archiveOperations, distributionResolutionService);
     }
 
     @Override
@@ -12,4 +12,14 @@ public interface AdlGenerator extends Closeable
 {
     public void generate(AdlConfiguration configuration, Iterable<? extends GenerationConfiguration> generations)
     throws AdlGenerationException;
+
+    /**
+     * Checks that ADL sources compile without generating any code.
+     *
+     * @param configuration the ADL configuration with the sources to check.
+     *
+     * @throws AdlGenerationException if the sources have errors or the compiler could not be run.
+     */
+    public void verify(AdlConfiguration configuration)
+    throws AdlGenerationException;
 }
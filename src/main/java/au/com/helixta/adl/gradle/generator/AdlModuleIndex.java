@@ -0,0 +1,327 @@
+package au.com.helixta.adl.gradle.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of ADL modules and the modules they import, read directly from ADL files without running the ADL compiler.
+ * <p>
+ *
+ * A module's name comes from the path of its file relative to its source or search directory, e.g. <code>sys/types.adl</code> is the module
+ * <code>sys.types</code>.  When the same module is found more than once, the first file added wins, matching the order the compiler searches in.
+ */
+public class AdlModuleIndex
+{
+    private static final String ADL_FILE_EXTENSION = ".adl";
+
+    /**
+     * Matches <code>import a.b.Type;</code> and <code>import a.b.*;</code>, capturing the imported module name.
+     */
+    private static final Pattern IMPORT_PATTERN = Pattern.compile("^\\s*import\\s+([A-Za-z_][A-Za-z0-9_]*(?:\\.[A-Za-z_][A-Za-z0-9_]*)*)\\.(?:\\*|[A-Za-z_][A-Za-z0-9_]*)\\s*;",
+                                                                  Pattern.MULTILINE);
+
+    /**
+     * Matches fully qualified type references such as <code>sys.types.Maybe</code>, capturing the module name.
+     */
+    private static final Pattern QUALIFIED_REFERENCE_PATTERN = Pattern.compile("\\b([a-z_][A-Za-z0-9_]*(?:\\.[a-z_][A-Za-z0-9_]*)*)\\.[A-Z][A-Za-z0-9_]*\\b");
+
+    /**
+     * Matches line comments, including doc comments.
+     */
+    private static final Pattern COMMENT_PATTERN = Pattern.compile("//.*$", Pattern.MULTILINE);
+
+    private final Map<String, Module> modules = new LinkedHashMap<>();
+    private final Map<File, String> fileModules = new HashMap<>();
+
+    /**
+     * Adds or re-reads a single ADL file.
+     *
+     * @param file the ADL file.
+     * @param relativePath the path of the file relative to its source or search directory, using '/' as a separator.
+     *
+     * @throws IOException if an error occurs reading the file.
+     */
+    public void addFile(File file, String relativePath)
+    throws IOException
+    {
+        String moduleName = moduleName(relativePath);
+        Module existing = modules.get(moduleName);
+        if (existing != null && !existing.getFile().equals(file))
+            return;
+
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        modules.put(moduleName, new Module(moduleName, file, parseImports(content), parseReferencedModules(content)));
+        fileModules.put(file, moduleName);
+    }
+
+    /**
+     * Adds every ADL file under a directory.
+     *
+     * @param directory the source or search directory.  Does nothing if it does not exist.
+     *
+     * @throws IOException if an error occurs reading the directory.
+     */
+    public void addDirectory(File directory)
+    throws IOException
+    {
+        if (!directory.isDirectory())
+            return;
+
+        Path root = directory.toPath();
+        List<Path> adlFiles;
+        try (Stream<Path> paths = Files.walk(root))
+        {
+            adlFiles = paths.filter(path -> path.getFileName().toString().endsWith(ADL_FILE_EXTENSION))
+                            .filter(Files::isRegularFile)
+                            .sorted()
+                            .collect(Collectors.toList());
+        }
+
+        for (Path adlFile : adlFiles)
+        {
+            addFile(adlFile.toFile(), root.relativize(adlFile).toString().replace(File.separatorChar, '/'));
+        }
+    }
+
+    /**
+     * Removes a file from the index if it has been indexed.
+     *
+     * @param file the ADL file.
+     *
+     * @return the name of the removed module, or null if the file was not indexed.
+     */
+    public String removeFile(File file)
+    {
+        String moduleName = fileModules.remove(file);
+        if (moduleName != null)
+            modules.remove(moduleName);
+
+        return moduleName;
+    }
+
+    /**
+     * Removes every indexed file under a directory, such as when the directory is deleted.
+     *
+     * @param path the directory, or a single file.
+     *
+     * @return the names of the removed modules.
+     */
+    public Set<String> removeFilesUnder(File path)
+    {
+        Path directoryPath = path.toPath();
+        List<File> filesToRemove = fileModules.keySet().stream()
+                                              .filter(file -> file.toPath().startsWith(directoryPath))
+                                              .collect(Collectors.toList());
+
+        Set<String> removedModules = new LinkedHashSet<>();
+        for (File file : filesToRemove)
+        {
+            removedModules.add(removeFile(file));
+        }
+        return removedModules;
+    }
+
+    /**
+     * Removes everything from the index.
+     */
+    public void clear()
+    {
+        modules.clear();
+        fileModules.clear();
+    }
+
+    /**
+     * @return the name of the module read from a file, or null if the file is not indexed.
+     */
+    public String moduleForFile(File file)
+    {
+        return fileModules.get(file);
+    }
+
+    /**
+     * @return the file a module was read from, or null if the module is not indexed.
+     */
+    public File fileForModule(String moduleName)
+    {
+        Module module = modules.get(moduleName);
+        if (module == null)
+            return null;
+
+        return module.getFile();
+    }
+
+    /**
+     * @return the number of indexed modules.
+     */
+    public int size()
+    {
+        return modules.size();
+    }
+
+    /**
+     * Finds the modules that directly or indirectly import any of the given modules.
+     *
+     * @param moduleNames the names of the modules, which do not need to be indexed, such as when their files were deleted.
+     *
+     * @return the given modules and all indexed modules that import them directly or transitively.
+     */
+    public Set<String> importers(Collection<String> moduleNames)
+    {
+        //Reverse import graph, built on demand since the index changes between calls
+        Map<String, Set<String>> importedBy = new HashMap<>();
+        for (Module module : modules.values())
+        {
+            for (String importedModule : module.getImports())
+            {
+                importedBy.computeIfAbsent(importedModule, k -> new LinkedHashSet<>()).add(module.getName());
+            }
+        }
+
+        Set<String> result = new LinkedHashSet<>(moduleNames);
+        Deque<String> toVisit = new ArrayDeque<>(moduleNames);
+        while (!toVisit.isEmpty())
+        {
+            for (String importer : importedBy.getOrDefault(toVisit.pop(), Collections.emptySet()))
+            {
+                if (result.add(importer))
+                    toVisit.push(importer);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the modules that any of the given modules directly or indirectly depend on, through imports or fully qualified type references.
+     *
+     * @param moduleNames the names of the modules, which do not need to be indexed, such as the imports of source files that are not indexed.
+     *
+     * @return the given modules and all indexed modules they depend on directly or transitively.
+     */
+    public Set<String> importedModules(Collection<String> moduleNames)
+    {
+        Set<String> result = new LinkedHashSet<>(moduleNames);
+        Deque<String> toVisit = new ArrayDeque<>(moduleNames);
+        while (!toVisit.isEmpty())
+        {
+            Module module = modules.get(toVisit.pop());
+            if (module == null)
+                continue;
+
+            for (String referencedModule : module.getReferences())
+            {
+                if (result.add(referencedModule))
+                    toVisit.push(referencedModule);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Converts the path of an ADL file relative to its source or search directory to the module name.
+     *
+     * @param relativePath the relative path, using '/' as a separator, e.g. <code>sys/types.adl</code>.
+     *
+     * @return the module name, e.g. <code>sys.types</code>.
+     */
+    public static String moduleName(String relativePath)
+    {
+        String path = relativePath;
+        if (path.endsWith(ADL_FILE_EXTENSION))
+            path = path.substring(0, path.length() - ADL_FILE_EXTENSION.length());
+
+        return path.replace('/', '.');
+    }
+
+    /**
+     * Reads the names of the modules imported by ADL source code.
+     *
+     * @param adlSource ADL source code.
+     *
+     * @return the names of imported modules.
+     */
+    static Set<String> parseImports(CharSequence adlSource)
+    {
+        Set<String> imports = new LinkedHashSet<>();
+        Matcher matcher = IMPORT_PATTERN.matcher(adlSource);
+        while (matcher.find())
+        {
+            imports.add(matcher.group(1));
+        }
+        return imports;
+    }
+
+    /**
+     * Reads the names of all modules ADL source code may depend on, both imported modules and the modules of fully qualified type references.
+     * May include names that are not modules, since type references are matched without parsing, so callers should only use names they can resolve.
+     *
+     * @param adlSource ADL source code.
+     *
+     * @return the names of referenced modules.
+     */
+    public static Set<String> parseReferencedModules(CharSequence adlSource)
+    {
+        Set<String> references = parseImports(adlSource);
+        Matcher matcher = QUALIFIED_REFERENCE_PATTERN.matcher(COMMENT_PATTERN.matcher(adlSource).replaceAll(""));
+        while (matcher.find())
+        {
+            references.add(matcher.group(1));
+        }
+        return references;
+    }
+
+    private static class Module
+    {
+        private final String name;
+        private final File file;
+        private final Set<String> imports;
+        private final Set<String> references;
+
+        public Module(String name, File file, Set<String> imports, Set<String> references)
+        {
+            this.name = Objects.requireNonNull(name);
+            this.file = Objects.requireNonNull(file);
+            this.imports = Collections.unmodifiableSet(new LinkedHashSet<>(imports));
+            this.references = Collections.unmodifiableSet(new LinkedHashSet<>(references));
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public Set<String> getImports()
+        {
+            return imports;
+        }
+
+        public Set<String> getReferences()
+        {
+            return references;
+        }
+    }
+}
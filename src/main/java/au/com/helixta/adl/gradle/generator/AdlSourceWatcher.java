@@ -0,0 +1,198 @@
+package au.com.helixta.adl.gradle.generator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches directories of ADL files, including all their subdirectories, for changes using the JDK's file system watch service.
+ * <p>
+ *
+ * Changes are reported in batches: a batch starts with the first change and collects further changes until none have happened for a debounce period,
+ * so that a burst of changes such as saving several files or switching branches results in a single batch.
+ */
+public class AdlSourceWatcher implements Closeable
+{
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    /**
+     * Creates a watcher and starts watching directories.
+     *
+     * @param directories the directories to watch.  Directories that don't exist are ignored.
+     *
+     * @throws IOException if an error occurs registering directories with the watch service.
+     */
+    public AdlSourceWatcher(Collection<? extends File> directories)
+    throws IOException
+    {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (File directory : directories)
+        {
+            if (directory.isDirectory())
+                registerRecursively(directory.toPath(), null);
+        }
+    }
+
+    /**
+     * Registers a directory and all its subdirectories with the watch service.
+     *
+     * @param directory the directory to register.
+     * @param files if not null, files found in newly registered directories are added to this set.
+     */
+    private void registerRecursively(Path directory, Set<Path> files)
+    throws IOException
+    {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory))
+        {
+            paths = walk.collect(Collectors.toList());
+        }
+
+        for (Path path : paths)
+        {
+            if (Files.isDirectory(path))
+            {
+                WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                                             StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, path);
+            }
+            else if (files != null)
+                files.add(path);
+        }
+    }
+
+    /**
+     * @return the number of directories currently being watched.
+     */
+    public int getWatchedDirectoryCount()
+    {
+        return watchedDirectories.size();
+    }
+
+    /**
+     * Waits for changes and returns them once no further changes have happened for the debounce period.
+     *
+     * @param debounce how long to wait after each change for more changes before returning them.
+     *
+     * @return the changes.
+     *
+     * @throws IOException if an error occurs watching new directories.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Changes awaitChanges(Duration debounce)
+    throws IOException, InterruptedException
+    {
+        WatchKey key = watchService.take();
+        long firstChangeTime = System.nanoTime();
+
+        Set<Path> changedPaths = new LinkedHashSet<>();
+        boolean overflow = false;
+        while (key != null)
+        {
+            overflow |= processEvents(key, changedPaths);
+            key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        return new Changes(changedPaths, overflow, firstChangeTime);
+    }
+
+    /**
+     * Reads the events of a watch key into a set of changed paths, watching any newly created directories.
+     *
+     * @return true if events were lost, in which case the changed paths are incomplete.
+     */
+    private boolean processEvents(WatchKey key, Set<Path> changedPaths)
+    throws IOException
+    {
+        boolean overflow = false;
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                overflow = true;
+            else if (directory != null)
+            {
+                Path path = directory.resolve((Path)event.context());
+                changedPaths.add(path);
+
+                //Files can be created in a new directory before it is registered, so pick those up as well
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+                    registerRecursively(path, changedPaths);
+            }
+        }
+
+        //Key is no longer valid once its directory is deleted
+        if (!key.reset())
+            watchedDirectories.remove(key);
+
+        return overflow;
+    }
+
+    @Override
+    public void close()
+    throws IOException
+    {
+        watchService.close();
+    }
+
+    /**
+     * A batch of changes to watched directories.
+     */
+    public static class Changes
+    {
+        private final Set<Path> changedPaths;
+        private final boolean overflow;
+        private final long firstChangeTime;
+
+        public Changes(Set<Path> changedPaths, boolean overflow, long firstChangeTime)
+        {
+            this.changedPaths = Collections.unmodifiableSet(new LinkedHashSet<>(Objects.requireNonNull(changedPaths)));
+            this.overflow = overflow;
+            this.firstChangeTime = firstChangeTime;
+        }
+
+        /**
+         * @return files and directories that were created, modified or deleted.
+         */
+        public Set<Path> getChangedPaths()
+        {
+            return changedPaths;
+        }
+
+        /**
+         * @return true if the watch service lost events, so that changed paths are incomplete and everything should be treated as changed.
+         */
+        public boolean isOverflow()
+        {
+            return overflow;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} when the first change of the batch was seen.
+         */
+        public long getFirstChangeTime()
+        {
+            return firstChangeTime;
+        }
+    }
+}
@@ -10,30 +10,79 @@ import au.com.helixta.adl.gradle.containerexecutor.ExecutionPlatform;
 import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public class AdlToolGenerator implements AdlGenerator
 {
+    private final ContainerTool.Environment environment;
     private final AdlContainerTool adlTool;
     private final DockerConfiguration dockerConfiguration;
     private final ExecutionPlatform platform;
+    private final int maxParallelGenerations;
 
     public AdlToolGenerator(ContainerTool.Environment environment, DockerConfiguration dockerConfiguration, ExecutionPlatform platform)
     {
+        this(environment, dockerConfiguration, platform, 1);
+    }
+
+    /**
+     * Creates an ADL tool generator.
+     *
+     * @param environment the environment for running the tool.
+     * @param dockerConfiguration Docker configuration, used when the tool runs in Docker.
+     * @param platform the platform to run the tool on.
+     * @param maxParallelGenerations the maximum number of generations run at the same time when not using Docker.
+     */
+    public AdlToolGenerator(ContainerTool.Environment environment, DockerConfiguration dockerConfiguration, ExecutionPlatform platform,
+                            int maxParallelGenerations)
+    {
+        this.environment = Objects.requireNonNull(environment);
         this.adlTool = new AdlContainerTool(environment);
         this.dockerConfiguration = Objects.requireNonNull(dockerConfiguration);
         this.platform = Objects.requireNonNull(platform);
+        this.maxParallelGenerations = maxParallelGenerations;
     }
 
     @Override
     public void generate(AdlConfiguration configuration, Iterable<? extends GenerationConfiguration> generations)
     throws AdlGenerationException
     {
-        for (GenerationConfiguration generation : generations)
+        List<GenerationConfiguration> generationList = new ArrayList<>();
+        generations.forEach(generationList::add);
+
+        //All generations use the same sources and search path, so it only needs pruning once
+        AdlContainerTool.PrunedSearchPath prunedSearchPath = new AdlContainerTool.PrunedSearchPath();
+
+        //Choose the platform and install any native distribution once up front rather than have every generation race to do it
+        ExecutionPlatform resolvedPlatform = platform;
+        if (platform != ExecutionPlatform.DOCKER && maxParallelGenerations > 1 && generationList.size() > 1)
+        {
+            try
+            {
+                resolvedPlatform = adlTool.resolveExecutionPlatform(new AdlContainerTool.AdlFullConfiguration(configuration, generationList.get(0),
+                                                                                                            dockerConfiguration, prunedSearchPath),
+                                                                    platform);
+            }
+            catch (IOException | DistributionNotFoundException e)
+            {
+                throw new AdlGenerationException(e);
+            }
+
+            //Docker executions are already limited build-wide by container slots, so only native child processes are run in parallel here
+            if (resolvedPlatform == ExecutionPlatform.NATIVE)
+            {
+                generateInParallel(configuration, generationList, prunedSearchPath, resolvedPlatform);
+                return;
+            }
+        }
+
+        for (GenerationConfiguration generation : generationList)
         {
             try
             {
-                adlTool.execute(new AdlContainerTool.AdlFullConfiguration(configuration, generation, dockerConfiguration), platform);
+                adlTool.execute(new AdlContainerTool.AdlFullConfiguration(configuration, generation, dockerConfiguration, prunedSearchPath), resolvedPlatform);
             }
             catch (IOException | ContainerExecutionException | DistributionNotFoundException e)
             {
@@ -42,6 +91,37 @@ public class AdlToolGenerator implements AdlGenerator
         }
     }
 
+    @Override
+    public void verify(AdlConfiguration configuration)
+    throws AdlGenerationException
+    {
+        try
+        {
+            adlTool.execute(AdlContainerTool.AdlFullConfiguration.verify(configuration, dockerConfiguration), platform);
+        }
+        catch (IOException | ContainerExecutionException | DistributionNotFoundException e)
+        {
+            throw new AdlGenerationException(e);
+        }
+    }
+
+    private void generateInParallel(AdlConfiguration configuration, List<GenerationConfiguration> generations,
+                                    AdlContainerTool.PrunedSearchPath prunedSearchPath, ExecutionPlatform resolvedPlatform)
+    throws AdlGenerationException
+    {
+        List<ParallelGenerationExecutor.Generation> parallelGenerations = new ArrayList<>(generations.size());
+        for (GenerationConfiguration generation : generations)
+        {
+            //Each generation gets its own tool so its output is logged with its own prefix
+            AdlContainerTool.AdlFullConfiguration fullConfiguration = new AdlContainerTool.AdlFullConfiguration(configuration, generation, dockerConfiguration,
+                                                                                                                prunedSearchPath);
+            parallelGenerations.add(new ParallelGenerationExecutor.Generation(generation.generationType(), toolLogger ->
+                    new AdlContainerTool(environment.withToolLogger(toolLogger)).execute(fullConfiguration, resolvedPlatform)));
+        }
+
+        new ParallelGenerationExecutor(maxParallelGenerations, environment.getToolLogger()).execute(parallelGenerations);
+    }
+
     @Override
     public void close() throws IOException
     {
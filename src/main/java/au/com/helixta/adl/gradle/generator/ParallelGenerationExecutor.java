@@ -0,0 +1,253 @@
+package au.com.helixta.adl.gradle.generator;
+
+import au.com.helixta.adl.gradle.containerexecutor.ContainerExecutionException;
+import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs independent generations concurrently, for example the Java and Typescript generations of a single task when the tool runs natively.
+ * <p>
+ *
+ * At most a fixed number of generations run at once.  Each generation gets its own tool logger that prefixes log lines with the generation's label.
+ * Log lines are queued and written out from the thread that called {@link #execute(List)}, since Gradle groups task output using the calling thread.
+ * If any generation fails, generations that have not started yet are skipped and running ones are interrupted.
+ */
+public class ParallelGenerationExecutor
+{
+    /**
+     * How often the calling thread writes out queued log lines while waiting for generations to complete.
+     */
+    private static final long LOG_DRAIN_INTERVAL_MILLIS = 100L;
+
+    private final int maxParallelGenerations;
+    private final AdlToolLogger toolLogger;
+
+    /**
+     * Creates a parallel generation executor.
+     *
+     * @param maxParallelGenerations the maximum number of generations to run at once.
+     * @param toolLogger the logger that log lines from all generations are written to.
+     */
+    public ParallelGenerationExecutor(int maxParallelGenerations, AdlToolLogger toolLogger)
+    {
+        if (maxParallelGenerations < 1)
+            throw new IllegalArgumentException("maxParallelGenerations must be at least 1: " + maxParallelGenerations);
+
+        this.maxParallelGenerations = maxParallelGenerations;
+        this.toolLogger = Objects.requireNonNull(toolLogger);
+    }
+
+    /**
+     * @return the default maximum number of generations to run at once, which is the number of available processors.
+     */
+    public static int defaultMaxParallelGenerations()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs generations and waits for all of them to complete.
+     *
+     * @param generations the generations to run.
+     *
+     * @throws AdlGenerationException if any generation fails.  The first failure is thrown.
+     */
+    public void execute(List<? extends Generation> generations)
+    throws AdlGenerationException
+    {
+        BlockingQueue<Runnable> pendingLogs = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxParallelGenerations, Math.max(generations.size(), 1)), r ->
+        {
+            Thread thread = new Thread(r, "ADL generation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            List<Future<Void>> futures = new ArrayList<>(generations.size());
+            for (Generation generation : generations)
+            {
+                AdlToolLogger generationLogger = new QueuedAdlToolLogger(generation.getLabel(), toolLogger.isInfoEnabled(), pendingLogs);
+                futures.add(completionService.submit(() ->
+                {
+                    generation.getAction().run(generationLogger);
+                    return null;
+                }));
+            }
+
+            Throwable failure = null;
+            int remaining = futures.size();
+            try
+            {
+                while (remaining > 0)
+                {
+                    Future<Void> completed = completionService.poll(LOG_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    drainLogs(pendingLogs);
+                    if (completed == null)
+                        continue;
+
+                    remaining--;
+                    try
+                    {
+                        completed.get();
+                    }
+                    catch (CancellationException e)
+                    {
+                        //Cancelled because another generation failed
+                    }
+                    catch (ExecutionException e)
+                    {
+                        if (failure == null)
+                        {
+                            failure = e.getCause();
+
+                            //Fail fast - don't start any more and interrupt those that are running
+                            futures.forEach(f -> f.cancel(true));
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new AdlGenerationException("Interrupted waiting for generations to complete.", e);
+            }
+
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException)failure;
+            else if (failure instanceof Error)
+                throw (Error)failure;
+            else if (failure != null)
+                throw new AdlGenerationException(failure);
+        }
+        finally
+        {
+            executor.shutdownNow();
+            awaitRunningGenerations(executor, pendingLogs);
+            drainLogs(pendingLogs);
+        }
+    }
+
+    /**
+     * Cancelled generations might still be finishing up, so wait for them so nothing is still writing outputs after the task completes.
+     */
+    private void awaitRunningGenerations(ExecutorService executor, BlockingQueue<Runnable> pendingLogs)
+    {
+        try
+        {
+            while (!executor.awaitTermination(LOG_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                drainLogs(pendingLogs);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drainLogs(BlockingQueue<Runnable> pendingLogs)
+    {
+        Runnable log;
+        while ((log = pendingLogs.poll()) != null)
+        {
+            log.run();
+        }
+    }
+
+    /**
+     * Logger for a single generation that prefixes the tool name with the generation's label and queues log lines for the calling thread to write.
+     */
+    private class QueuedAdlToolLogger implements AdlToolLogger
+    {
+        private final String label;
+        private final boolean infoEnabled;
+        private final BlockingQueue<Runnable> pendingLogs;
+
+        public QueuedAdlToolLogger(String label, boolean infoEnabled, BlockingQueue<Runnable> pendingLogs)
+        {
+            this.label = label;
+            this.infoEnabled = infoEnabled;
+            this.pendingLogs = pendingLogs;
+        }
+
+        @Override
+        public void info(String toolName, String message)
+        {
+            pendingLogs.add(() -> toolLogger.info(toolName + ":" + label, message));
+        }
+
+        @Override
+        public void error(String toolName, String message)
+        {
+            pendingLogs.add(() -> toolLogger.error(toolName + ":" + label, message));
+        }
+
+        @Override
+        public boolean isInfoEnabled()
+        {
+            return infoEnabled;
+        }
+    }
+
+    /**
+     * A generation to run.
+     */
+    public static class Generation
+    {
+        private final String label;
+        private final GenerationAction action;
+
+        /**
+         * Creates a generation.
+         *
+         * @param label label used to prefix log lines from this generation, such as the generation type.
+         * @param action runs the generation.
+         */
+        public Generation(String label, GenerationAction action)
+        {
+            this.label = Objects.requireNonNull(label);
+            this.action = Objects.requireNonNull(action);
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+
+        public GenerationAction getAction()
+        {
+            return action;
+        }
+    }
+
+    /**
+     * Runs a single generation.
+     */
+    @FunctionalInterface
+    public static interface GenerationAction
+    {
+        /**
+         * Runs the generation.
+         *
+         * @param toolLogger the logger to use for tool output of this generation.
+         */
+        public void run(AdlToolLogger toolLogger)
+        throws IOException, ContainerExecutionException, DistributionNotFoundException;
+    }
+}
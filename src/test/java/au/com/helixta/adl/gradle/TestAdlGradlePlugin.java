@@ -0,0 +1,234 @@
+package au.com.helixta.adl.gradle;
+
+import au.com.helixta.adl.gradle.config.JavaGenerationConfiguration;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.plugins.JavaBasePlugin;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestAdlGradlePlugin
+{
+    private static Project createProject(File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).withName("adltest").build();
+        project.getPluginManager().apply(JavaPlugin.class);
+        project.getPluginManager().apply(AdlGradlePlugin.class);
+        return project;
+    }
+
+    private static SourceSet mainSourceSet(Project project)
+    {
+        return project.getConvention().getPlugin(JavaPluginConvention.class).getSourceSets().getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+    }
+
+    @Test
+    void generationTaskPerType(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.getExtensions().getByType(AdlExtension.class).generations(g ->
+        {
+            g.java(java -> java.setJavaPackage("adl.test"));
+            g.typescript(ts -> {});
+        });
+
+        AdlGenerateTask javaTask = project.getTasks().named("generateAdlJava", AdlGenerateTask.class).get();
+        AdlGenerateTask typescriptTask = project.getTasks().named("generateAdlTypescript", AdlGenerateTask.class).get();
+        AdlGenerateTask javascriptTask = project.getTasks().named("generateAdlJavascript", AdlGenerateTask.class).get();
+        assertThat(javaTask.getGenerations().allGenerations()).hasSize(1).allMatch(g -> g.generationType().equals("java"));
+        assertThat(typescriptTask.getGenerations().allGenerations()).hasSize(1).allMatch(g -> g.generationType().equals("typescript"));
+        assertThat(javascriptTask.getGenerations().allGenerations()).isEmpty();
+
+        Task aggregateTask = project.getTasks().getByName("generateAdl");
+        assertThat(aggregateTask.getDependsOn()).contains("generateAdlJava", "generateAdlTypescript", "generateAdlJavascript");
+
+        //Java compilation waits for Java generation only
+        Task compileJava = project.getTasks().getByName(JavaPlugin.COMPILE_JAVA_TASK_NAME);
+        assertThat(compileJava.getDependsOn()).contains("generateAdlJava").doesNotContain("generateAdlTypescript", "generateAdl");
+    }
+
+    @Test
+    void separatelyCompiledJavaGoesIntoJar(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.setGroup("com.example");
+        project.getExtensions().getByType(AdlExtension.class).generations(g -> g.java(java ->
+        {
+            java.setJavaPackage("adl.test");
+            java.setSeparateCompilation(true);
+        }));
+
+        AdlGenerateTask javaTask = project.getTasks().named("generateAdlJava", AdlGenerateTask.class).get();
+        File generatedDirectory = javaTask.getGenerations().getJava().get(0).getOutputDirectory().get().getAsFile();
+
+        //Generated code is not compiled with hand-written code, but its classes are on the classpath
+        File classesDirectory = new File(project.getBuildDir(), "classes/adl/java/main");
+        assertThat(mainSourceSet(project).getJava().getSrcDirs()).doesNotContain(generatedDirectory);
+        assertThat(project.getConfigurations().getByName(JavaPlugin.COMPILE_CLASSPATH_CONFIGURATION_NAME).getFiles()).contains(classesDirectory);
+
+        //Classes are part of the source set's output, not a file dependency, and are published in the generated Java variants which the
+        //project's own variants depend on
+        assertThat(mainSourceSet(project).getOutput().getDirs().getFiles()).contains(classesDirectory);
+        assertThat(project.getConfigurations().getByName(JavaPlugin.API_ELEMENTS_CONFIGURATION_NAME).getAllDependencies())
+                .singleElement()
+                .satisfies(d -> assertThat(((ModuleDependency)d).getRequestedCapabilities()).singleElement()
+                                                                                             .satisfies(c -> assertThat(c.getName()).isEqualTo("adltest-adl-java")));
+        assertThat(project.getConfigurations().getByName(JavaPlugin.IMPLEMENTATION_CONFIGURATION_NAME).getDependencies()).isEmpty();
+        assertThat(project.getTasks().getByName(JavaPlugin.COMPILE_JAVA_TASK_NAME).getDependsOn()).doesNotContain("generateAdlJava");
+        assertThat(project.getTasks().getByName("compileAdlJava").getDependsOn()).contains("generateAdlJava");
+    }
+
+    @Test
+    void javaCompiledWithSourceSetByDefault(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.getExtensions().getByType(AdlExtension.class).generations(g -> g.java(java -> java.setJavaPackage("adl.test")));
+
+        AdlGenerateTask javaTask = project.getTasks().named("generateAdlJava", AdlGenerateTask.class).get();
+        File generatedDirectory = javaTask.getGenerations().getJava().get(0).getOutputDirectory().get().getAsFile();
+
+        assertThat(mainSourceSet(project).getJava().getSrcDirs()).contains(generatedDirectory);
+        assertThat(project.getConfigurations().getByName(JavaPlugin.COMPILE_CLASSPATH_CONFIGURATION_NAME).getFiles()).isEmpty();
+    }
+
+    @Test
+    void generatedCodePublishedAsVariants(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.setGroup("com.example");
+        project.getExtensions().getByType(AdlExtension.class).generations(g -> g.typescript(ts -> {}));
+
+        Configuration javaApiElements = project.getConfigurations().getByName("adlJavaApiElements");
+        assertThat(javaApiElements.isCanBeConsumed()).isTrue();
+        assertThat(javaApiElements.getAttributes().getAttribute(Usage.USAGE_ATTRIBUTE).getName()).isEqualTo(Usage.JAVA_API);
+        assertThat(javaApiElements.getOutgoing().getCapabilities()).singleElement()
+                                                                 .satisfies(c -> assertThat(c.getGroup() + ":" + c.getName()).isEqualTo("com.example:adltest-adl-java"));
+        assertThat(javaApiElements.getOutgoing().getArtifacts().getFiles()).containsExactly(new File(project.getBuildDir(), "adl-libs/adltest-adl.jar"));
+
+        //Project's own variants only depend on generated Java when there is any
+        assertThat(project.getConfigurations().getByName(JavaPlugin.API_ELEMENTS_CONFIGURATION_NAME).getAllDependencies()).isEmpty();
+
+        Configuration typescriptElements = project.getConfigurations().getByName("adlTypescriptElements");
+        assertThat(typescriptElements.getAttributes().getAttribute(Usage.USAGE_ATTRIBUTE).getName()).isEqualTo(AdlGradlePlugin.ADL_TYPESCRIPT_USAGE);
+        assertThat(typescriptElements.getOutgoing().getArtifacts().getFiles())
+                .containsExactly(new File(project.getBuildDir(), "generated/sources/adl/typescript/main"));
+
+        Configuration importElements = project.getConfigurations().getByName("adlImportElements");
+        assertThat(importElements.getAttributes().getAttribute(Usage.USAGE_ATTRIBUTE).getName()).isEqualTo(AdlGradlePlugin.ADL_SOURCES_USAGE);
+    }
+
+    @Test
+    void importedProjectGeneratedCodeUsed(@TempDir File rootDir)
+    {
+        Project root = ProjectBuilder.builder().withProjectDir(rootDir).withName("root").build();
+        Project model = ProjectBuilder.builder().withProjectDir(new File(rootDir, "model")).withName("model").withParent(root).build();
+        Project app = ProjectBuilder.builder().withProjectDir(new File(rootDir, "app")).withName("app").withParent(root).build();
+        for (Project project : Arrays.asList(model, app))
+        {
+            project.getPluginManager().apply(JavaPlugin.class);
+            project.getPluginManager().apply(AdlGradlePlugin.class);
+        }
+        model.setGroup("com.example");
+        app.getDependencies().add("adlImports", app.getDependencies().create(model));
+
+        //Imported project's generated Java is used instead of generating it again
+        assertThat(app.getConfigurations().getByName(JavaPlugin.IMPLEMENTATION_CONFIGURATION_NAME).getAllDependencies())
+                .singleElement()
+                .satisfies(d -> assertThat(((ModuleDependency)d).getRequestedCapabilities()).singleElement()
+                                                                                             .satisfies(c -> assertThat(c.getGroup() + ":" + c.getName()).isEqualTo("com.example:model-adl-java")));
+
+        //Imported project's ADL is still available for imports
+        Configuration importSources = app.getConfigurations().getByName("adlImportSources");
+        assertThat(importSources.getAttributes().getAttribute(Usage.USAGE_ATTRIBUTE).getName()).isEqualTo(AdlGradlePlugin.ADL_SOURCES_USAGE);
+        assertThat(app.getTasks().named("generateAdlJava", AdlGenerateTask.class).get().getSearchDirectories().getFrom()).contains(importSources);
+    }
+
+    @Test
+    void sharedRuntimeGeneratedOnce(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.getExtensions().getByType(AdlExtension.class).generations(g ->
+        {
+            g.java(java ->
+            {
+                java.setJavaPackage("adl.test");
+                java.setAdlRuntimePackage("adl.test.runtime");
+                java.setGenerateAdlRuntime(true);
+                java.setSharedAdlRuntime(true);
+            });
+            g.typescript(ts ->
+            {
+                ts.setGenerateAdlRuntime(true);
+                ts.setSharedAdlRuntime(true);
+            });
+        });
+
+        File javaRuntimeDirectory = new File(project.getBuildDir(), "generated/sources/adl-runtime/java");
+        AdlRuntimeGenerateTask javaRuntimeTask = project.getTasks().named("generateAdlJavaRuntime", AdlRuntimeGenerateTask.class).get();
+        assertThat(javaRuntimeTask.getGenerations().allGenerations()).singleElement().satisfies(generation ->
+        {
+            assertThat(generation.getOutputDirectory().get().getAsFile()).isEqualTo(javaRuntimeDirectory);
+            assertThat(((JavaGenerationConfiguration)generation).getAdlRuntimePackage()).isEqualTo("adl.test.runtime");
+        });
+        assertThat(mainSourceSet(project).getJava().getSrcDirs()).contains(javaRuntimeDirectory);
+
+        //Typescript generation copies the shared runtime in rather than generating it
+        AdlGenerateTask typescriptTask = project.getTasks().named("generateAdlTypescript", AdlGenerateTask.class).get();
+        assertThat(typescriptTask.getGenerations().getTypescript().get(0).getSharedAdlRuntimeDirectory().get().getAsFile())
+                .isEqualTo(new File(project.getBuildDir(), "generated/sources/adl-runtime/typescript"));
+        assertThat(typescriptTask.getTaskDependencies().getDependencies(typescriptTask)).extracting(Task::getName).contains("generateAdlTypescriptRuntime");
+    }
+
+    @Test
+    void watchTaskGeneratesIntoSameOutputs(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.getExtensions().getByType(AdlExtension.class).generations(g ->
+        {
+            g.java(java -> java.setJavaPackage("adl.test"));
+            g.typescript(ts -> {});
+        });
+
+        AdlWatchTask watchTask = project.getTasks().named("adlWatch", AdlWatchTask.class).get();
+        AdlGenerateTask javaTask = project.getTasks().named("generateAdlJava", AdlGenerateTask.class).get();
+        assertThat(watchTask.getGenerations().allGenerations()).hasSize(2);
+        assertThat(watchTask.getGenerations().getJava().get(0).getOutputDirectory().get())
+                .isEqualTo(javaTask.getGenerations().getJava().get(0).getOutputDirectory().get());
+        assertThat(watchTask.getWatchDirectories().getFiles()).containsExactly(new File(projectDir, "src/main/adl"));
+        assertThat(project.getTasks().findByName("testAdlWatch")).isInstanceOf(AdlWatchTask.class);
+
+        //Shares outputs with the generation tasks, so must not run before or in between them
+        assertThat(watchTask.getMustRunAfter().getDependencies(watchTask)).extracting(Task::getName)
+                                                                         .contains("generateAdlJava", "generateAdlTypescript");
+    }
+
+    @Test
+    void checkTaskPerSourceSet(@TempDir File projectDir)
+    {
+        Project project = createProject(projectDir);
+        project.getExtensions().getByType(AdlExtension.class).generations(g -> g.java(java -> java.setJavaPackage("adl.test")));
+
+        AdlCheckTask checkTask = project.getTasks().named("checkAdl", AdlCheckTask.class).get();
+        assertThat(checkTask.hasWork()).isTrue();
+        assertThat(checkTask.getResultFile().get().getAsFile()).isEqualTo(new File(project.getBuildDir(), "adl-check/main.txt"));
+
+        //Checking writes no generated code, so it never shares outputs with generation
+        AdlGenerateTask javaTask = project.getTasks().named("generateAdlJava", AdlGenerateTask.class).get();
+        assertThat(checkTask.getOutputs().getFiles().getFiles()).doesNotContainAnyElementsOf(javaTask.getOutputs().getFiles().getFiles());
+
+        Task check = project.getTasks().getByName(JavaBasePlugin.CHECK_TASK_NAME);
+        assertThat(check.getTaskDependencies().getDependencies(check)).extracting(Task::getName).contains("checkAdl", "checkTestAdl");
+    }
+}
@@ -0,0 +1,125 @@
+package au.com.helixta.adl.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.SourceDirectorySet;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestAdlResourceExclusionSpec
+{
+    private static Path createFile(Path file)
+    throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        return Files.createFile(file);
+    }
+
+    private static SourceSet mainSourceSet(Path projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir.toFile()).build();
+        project.getPluginManager().apply(AdlGradlePlugin.class);
+        return project.getConvention().getPlugin(JavaPluginConvention.class).getSourceSets().create("main");
+    }
+
+    @Test
+    void adlFilesExcludedFromSharedResourceDirectory(@TempDir Path projectDir)
+    throws IOException
+    {
+        Path shared = projectDir.resolve("src/main/shared");
+        Path adlFile = createFile(shared.resolve("sub/cat.adl"));
+        Path propertiesFile = createFile(shared.resolve("sub/cat.properties"));
+
+        SourceSet main = mainSourceSet(projectDir);
+        main.getResources().srcDir(shared);
+        main.getExtensions().getByType(SourceDirectorySet.class).srcDir(shared);
+
+        assertThat(main.getResources().getFiles()).contains(propertiesFile.toFile())
+                                                  .doesNotContain(adlFile.toFile());
+    }
+
+    @Test
+    void resourcesOutsideAdlDirectoriesKept(@TempDir Path projectDir)
+    throws IOException
+    {
+        Path adlFile = createFile(projectDir.resolve("src/main/adl/sub/cat.adl"));
+        Path resourceAdlFile = createFile(projectDir.resolve("src/main/resources/sub/dog.adl"));
+        Path resourceFile = createFile(projectDir.resolve("src/main/resources/sub/dog.txt"));
+
+        SourceSet main = mainSourceSet(projectDir);
+
+        //ADL file in resources is not part of the ADL source set so is kept as a resource
+        assertThat(main.getResources().getFiles()).containsExactlyInAnyOrder(resourceAdlFile.toFile(), resourceFile.toFile());
+        assertThat(main.getExtensions().getByType(SourceDirectorySet.class).getFiles()).containsExactly(adlFile.toFile());
+    }
+
+    @Test
+    void nonAdlFilesInAdlDirectoryKept(@TempDir Path projectDir)
+    throws IOException
+    {
+        Path adlDir = projectDir.resolve("src/main/adl");
+        createFile(adlDir.resolve("sub/cat.adl"));
+        File readme = createFile(adlDir.resolve("sub/README.md")).toFile();
+
+        SourceSet main = mainSourceSet(projectDir);
+        main.getResources().srcDir(adlDir);
+
+        assertThat(main.getResources().getFiles()).containsExactly(readme);
+    }
+
+    /**
+     * Resources may be resolved before the source set is fully configured, so directories added afterwards must still be seen.
+     */
+    @Test
+    void adlDirectoryAddedAfterResourcesResolved(@TempDir Path projectDir)
+    throws IOException
+    {
+        Path shared = projectDir.resolve("src/main/shared");
+        Path adlFile = createFile(shared.resolve("sub/cat.adl"));
+        Path propertiesFile = createFile(shared.resolve("sub/cat.properties"));
+
+        SourceSet main = mainSourceSet(projectDir);
+        main.getResources().srcDir(shared);
+
+        assertThat(main.getResources().getFiles()).containsExactlyInAnyOrder(adlFile.toFile(), propertiesFile.toFile());
+
+        main.getExtensions().getByType(SourceDirectorySet.class).srcDir(shared);
+
+        assertThat(main.getResources().getFiles()).containsExactly(propertiesFile.toFile());
+    }
+
+    @Test
+    void sourceDirectoriesResolvedOnceConfigured(@TempDir Path projectDir)
+    throws IOException
+    {
+        Path shared = projectDir.resolve("src/main/shared");
+        createFile(shared.resolve("sub/cat.adl"));
+        File propertiesFile = createFile(shared.resolve("sub/cat.properties")).toFile();
+        File otherFile = createFile(shared.resolve("sub/other.properties")).toFile();
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir.toFile()).build();
+        AtomicInteger resolveCount = new AtomicInteger();
+        FileCollection sourceDirectories = project.files((Callable<Object>)() ->
+        {
+            resolveCount.incrementAndGet();
+            return shared;
+        });
+        AdlResourceExclusionSpec spec = new AdlResourceExclusionSpec(sourceDirectories, project.fileTree(shared).matching(p -> p.include("**/*.adl")));
+        spec.configurationComplete();
+
+        assertThat(project.fileTree(shared).matching(p -> p.exclude(spec)).getFiles()).containsExactlyInAnyOrder(propertiesFile, otherFile);
+        assertThat(resolveCount).hasValue(1);
+    }
+}
@@ -0,0 +1,1315 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-JVM stand-in for a Docker daemon, implementing the subset of the Docker Engine API the plugin uses over plain HTTP on the loopback interface.
+ * Lets Docker code paths be tested and benchmarked reproducibly on machines without Docker.
+ * <p>
+ *
+ * Images and containers are backed by temporary directories.  Container paths in command arguments and argument files are rewritten to the
+ * container's directory, or the image's for files the image provides, and commands are run as native processes.  This means images must contain
+ * tools that run natively on the host and that find their own files relative to themselves rather than by absolute container path, which is the case
+ * for ADL distributions on Linux and Mac.
+ * <p>
+ *
+ * Latency is added to every request and request and response bodies can be throttled to a bandwidth to simulate a remote daemon.
+ * <p>
+ *
+ * Supported: ping, version, info, image inspect/list/pull/build/remove, container create/list/attach/start/wait/kill/remove, archive put/get, exec
+ * create/start/inspect.  Pulls only succeed for images registered with {@link #addRemoteImage(String)}.
+ */
+public class FakeDockerDaemon implements AutoCloseable
+{
+    private static final String API_VERSION = "1.41";
+
+    private static final byte STDOUT_STREAM = 1;
+    private static final byte STDERR_STREAM = 2;
+
+    /**
+     * Matches absolute paths in command arguments, capturing what comes before the path and its top-level directory.
+     */
+    private static final Pattern CONTAINER_PATH_PATTERN = Pattern.compile("(^|[=\\s\"'@])(/[^/\\s\"']+)");
+
+    private static final Pattern API_VERSION_PREFIX = Pattern.compile("^/v[0-9.]+(/.*)$");
+    private static final Pattern IMAGE_INSPECT = Pattern.compile("^/images/(.+)/json$");
+    private static final Pattern IMAGE = Pattern.compile("^/images/(.+)$");
+    private static final Pattern CONTAINER = Pattern.compile("^/containers/([^/]+)$");
+    private static final Pattern CONTAINER_ACTION = Pattern.compile("^/containers/([^/]+)/([a-z]+)$");
+    private static final Pattern EXEC_ACTION = Pattern.compile("^/exec/([^/]+)/([a-z]+)$");
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final Path baseDirectory;
+    private final Duration latency;
+    private final long bytesPerSecond;
+
+    private final Map<String, Image> images = new ConcurrentHashMap<>();
+    private final Map<String, Container> containers = new ConcurrentHashMap<>();
+    private final Map<String, Exec> execs = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> remoteImages = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * Creates and starts a fake daemon.
+     *
+     * @param latency delay added before handling each request.
+     * @param bytesPerSecond maximum transfer rate of request and response bodies, or zero for no limit.
+     *
+     * @throws IOException if an error occurs starting the server.
+     */
+    public FakeDockerDaemon(Duration latency, long bytesPerSecond)
+    throws IOException
+    {
+        this.latency = Objects.requireNonNull(latency);
+        this.bytesPerSecond = bytesPerSecond;
+        this.baseDirectory = Files.createTempDirectory("fake-docker");
+        this.requestExecutor = Executors.newCachedThreadPool(r ->
+        {
+            Thread thread = new Thread(r, "Fake Docker daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(requestExecutor);
+        server.start();
+    }
+
+    /**
+     * Creates and starts a fake daemon without any added latency or bandwidth limit.
+     */
+    public FakeDockerDaemon()
+    throws IOException
+    {
+        this(Duration.ZERO, 0L);
+    }
+
+    /**
+     * @return the Docker host URI to connect to the daemon with, e.g. for <code>DOCKER_HOST</code> or the plugin's Docker configuration.
+     */
+    public URI getDockerHost()
+    {
+        return URI.create("tcp://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * @return a new Docker client connected to this daemon.
+     */
+    public DockerClient createDockerClient()
+    {
+        DefaultDockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+                                                                    .withDockerHost(getDockerHost().toString())
+                                                                    .withDockerTlsVerify(false)
+                                                                    .build();
+        return DockerClientImpl.getInstance(config, new ApacheDockerHttpClient.Builder().dockerHost(config.getDockerHost()).build());
+    }
+
+    /**
+     * Adds a local image directly, without building it.
+     *
+     * @param imageName the name of the image, with or without a tag.
+     * @param labels the image's labels.
+     * @param command the image's default command.
+     *
+     * @return the image's root directory, where files of the image can be written.
+     */
+    public Path addImage(String imageName, Map<String, String> labels, String... command)
+    throws IOException
+    {
+        Image image = new Image(Files.createTempDirectory(baseDirectory, "image"), labels, Arrays.asList(command));
+        image.tags.add(normalizeImageName(imageName));
+        images.put(image.id, image);
+        return image.root;
+    }
+
+    /**
+     * Makes an image available for pulling.  Pulled images are empty.
+     *
+     * @param imageName the name of the image, with or without a tag.
+     */
+    public void addRemoteImage(String imageName)
+    {
+        remoteImages.put(normalizeImageName(imageName), Boolean.TRUE);
+    }
+
+    /**
+     * @return the number of containers that exist, running or not.
+     */
+    public int getContainerCount()
+    {
+        return containers.size();
+    }
+
+    /**
+     * @return the number of request body bytes received.
+     */
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the number of response body bytes sent.
+     */
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the number of API requests handled.
+     */
+    public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close()
+    throws IOException
+    {
+        server.stop(0);
+        for (Container container : containers.values())
+        {
+            container.kill();
+        }
+        containers.clear();
+        requestExecutor.shutdownNow();
+        FileUtils.deleteDirectory(baseDirectory.toFile());
+    }
+
+    private void handle(HttpExchange exchange)
+    throws IOException
+    {
+        try
+        {
+            requestCount.incrementAndGet();
+            if (!latency.isZero())
+                Thread.sleep(latency.toMillis());
+
+            route(exchange);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            //Response might already be underway, in which case this fails as well and the client just sees a broken response
+            try
+            {
+                sendError(exchange, 500, e.toString());
+            }
+            catch (IOException | RuntimeException suppressed)
+            {
+                e.addSuppressed(suppressed);
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange)
+    throws IOException, InterruptedException
+    {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Matcher versionMatcher = API_VERSION_PREFIX.matcher(path);
+        if (versionMatcher.matches())
+            path = versionMatcher.group(1);
+
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        Matcher m;
+        if (path.equals("/_ping"))
+            sendText(exchange, 200, "OK");
+        else if (path.equals("/version"))
+            sendJson(exchange, 200, map("ApiVersion", API_VERSION, "Version", "fake", "Os", "linux"));
+        else if (path.equals("/info"))
+            sendJson(exchange, 200, map("ID", "fake", "NCPU", Runtime.getRuntime().availableProcessors(), "OperatingSystem", "fake"));
+        else if (method.equals("GET") && path.equals("/images/json"))
+            listImages(exchange, query);
+        else if (method.equals("POST") && path.equals("/images/create"))
+            pullImage(exchange, query);
+        else if (method.equals("POST") && path.equals("/build"))
+            buildImage(exchange, query);
+        else if (method.equals("GET") && (m = IMAGE_INSPECT.matcher(path)).matches())
+            inspectImage(exchange, m.group(1));
+        else if (method.equals("DELETE") && (m = IMAGE.matcher(path)).matches())
+            removeImage(exchange, m.group(1));
+        else if (method.equals("GET") && path.equals("/containers/json"))
+            listContainers(exchange, query);
+        else if (method.equals("POST") && path.equals("/containers/create"))
+            createContainer(exchange, query);
+        else if (method.equals("DELETE") && (m = CONTAINER.matcher(path)).matches())
+            removeContainer(exchange, m.group(1));
+        else if ((m = CONTAINER_ACTION.matcher(path)).matches())
+            containerAction(exchange, method, container(m.group(1)), m.group(2), query);
+        else if ((m = EXEC_ACTION.matcher(path)).matches())
+            execAction(exchange, method, m.group(1), m.group(2));
+        else
+            sendError(exchange, 404, "Not supported by fake Docker daemon: " + method + " " + path);
+    }
+
+    private void containerAction(HttpExchange exchange, String method, Container container, String action, Map<String, String> query)
+    throws IOException, InterruptedException
+    {
+        if (container == null)
+            sendError(exchange, 404, "No such container");
+        else if (method.equals("POST") && action.equals("attach"))
+            attach(exchange, container);
+        else if (method.equals("POST") && action.equals("start"))
+        {
+            container.start();
+            sendEmpty(exchange, 204);
+        }
+        else if (method.equals("POST") && action.equals("wait"))
+            sendJson(exchange, 200, map("StatusCode", container.output.awaitExitCode()));
+        else if (method.equals("POST") && action.equals("kill"))
+        {
+            container.kill();
+            sendEmpty(exchange, 204);
+        }
+        else if (method.equals("PUT") && action.equals("archive"))
+            putArchive(exchange, container, query.get("path"));
+        else if (method.equals("GET") && action.equals("archive"))
+            getArchive(exchange, container, query.get("path"));
+        else if (method.equals("POST") && action.equals("exec"))
+        {
+            JsonNode body = readJson(exchange);
+            Exec exec = new Exec(container, strings(body.get("Cmd")));
+            execs.put(exec.id, exec);
+            sendJson(exchange, 201, map("Id", exec.id));
+        }
+        else
+            sendError(exchange, 404, "Not supported by fake Docker daemon: " + method + " container " + action);
+    }
+
+    private void execAction(HttpExchange exchange, String method, String execId, String action)
+    throws IOException, InterruptedException
+    {
+        Exec exec = execs.get(execId);
+        if (exec == null)
+            sendError(exchange, 404, "No such exec instance");
+        else if (method.equals("POST") && action.equals("start"))
+        {
+            readBody(exchange);
+            exec.output.start(exec.container.startProcess(exec.command));
+            streamFrames(exchange, exec.output);
+        }
+        else if (method.equals("GET") && action.equals("json"))
+        {
+            Integer exitCode = exec.output.getExitCode();
+            sendJson(exchange, 200, map("ID", exec.id, "Running", exitCode == null, "ExitCode", exitCode));
+        }
+        else
+            sendError(exchange, 404, "Not supported by fake Docker daemon: " + method + " exec " + action);
+    }
+
+    private void listImages(HttpExchange exchange, Map<String, String> query)
+    throws IOException
+    {
+        String labelFilter = labelFilter(query);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Image image : images.values())
+        {
+            if (labelFilter == null || image.labels.containsKey(labelFilter))
+                result.add(map("Id", image.id, "RepoTags", image.tags, "Labels", image.labels, "Created", image.created.getEpochSecond()));
+        }
+        sendJson(exchange, 200, result);
+    }
+
+    private void inspectImage(HttpExchange exchange, String imageName)
+    throws IOException
+    {
+        Image image = image(imageName);
+        if (image == null)
+            sendError(exchange, 404, "No such image: " + imageName);
+        else
+        {
+            sendJson(exchange, 200, map("Id", image.id, "RepoTags", image.tags, "Created", image.created.toString(),
+                                        "Config", map("Labels", image.labels, "Cmd", image.command)));
+        }
+    }
+
+    private void pullImage(HttpExchange exchange, Map<String, String> query)
+    throws IOException
+    {
+        String imageName = query.get("fromImage");
+        if (query.get("tag") != null && !query.get("tag").isEmpty())
+            imageName = imageName + ":" + query.get("tag");
+
+        imageName = normalizeImageName(imageName);
+        if (!remoteImages.containsKey(imageName))
+        {
+            sendError(exchange, 404, "pull access denied for " + imageName + ", repository does not exist");
+            return;
+        }
+
+        if (image(imageName) == null)
+            addImage(imageName, Collections.emptyMap());
+
+        sendJsonLines(exchange, Arrays.asList(map("status", "Pulling from " + imageName),
+                                              map("status", "Status: Downloaded newer image for " + imageName)));
+    }
+
+    private void buildImage(HttpExchange exchange, Map<String, String> query)
+    throws IOException
+    {
+        Path context = Files.createTempDirectory(baseDirectory, "build");
+        try
+        {
+            extractTar(readBodyStream(exchange), context);
+
+            Image image = new Image(Files.createTempDirectory(baseDirectory, "image"), new LinkedHashMap<>(), new ArrayList<>());
+            List<Map<String, Object>> progress = new ArrayList<>();
+            List<String> dockerfileLines = Files.readAllLines(context.resolve("Dockerfile"), StandardCharsets.UTF_8);
+            int step = 1;
+            for (String line : dockerfileLines)
+            {
+                if (line.trim().isEmpty())
+                    continue;
+
+                progress.add(map("stream", "Step " + step++ + "/" + dockerfileLines.size() + " : " + line + "\n"));
+                applyDockerfileInstruction(line.trim(), context, image);
+            }
+
+            for (String tag : query.getOrDefault("t", "").split(","))
+            {
+                if (!tag.isEmpty())
+                    image.tags.add(normalizeImageName(tag));
+            }
+
+            //Tags move from any existing image to the new one
+            for (Image existing : images.values())
+            {
+                existing.tags.removeAll(image.tags);
+            }
+            images.put(image.id, image);
+
+            progress.add(map("aux", map("ID", image.id)));
+            progress.add(map("stream", "Successfully built " + image.id.substring("sha256:".length(), "sha256:".length() + 12) + "\n"));
+            sendJsonLines(exchange, progress);
+        }
+        finally
+        {
+            FileUtils.deleteDirectory(context.toFile());
+        }
+    }
+
+    /**
+     * Applies the Dockerfile instructions the plugin uses.  Anything else, including base images, is ignored.
+     */
+    private void applyDockerfileInstruction(String line, Path context, Image image)
+    throws IOException
+    {
+        String[] instruction = line.split("\\s+", 2);
+        String argument = instruction.length > 1 ? instruction[1] : "";
+        switch (instruction[0].toUpperCase())
+        {
+            case "LABEL":
+                String[] label = argument.split("=", 2);
+                image.labels.put(label[0], label.length > 1 ? label[1].replaceAll("^\"|\"$", "") : "");
+                break;
+            case "COPY":
+                String[] paths = argument.split("\\s+");
+                File source = context.resolve(paths[0].replaceFirst("^/", "")).toFile();
+                File target = resolve(image.root, paths[1]).toFile();
+                if (source.isDirectory())
+                    FileUtils.copyDirectory(source, target);
+                else
+                    FileUtils.copyFile(source, paths[1].endsWith("/") ? new File(target, source.getName()) : target);
+                break;
+            case "CMD":
+            case "ENTRYPOINT":
+                image.command.clear();
+                image.command.addAll(strings(json.readTree(argument)));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void removeImage(HttpExchange exchange, String imageName)
+    throws IOException
+    {
+        Image image = image(imageName);
+        if (image == null)
+        {
+            sendError(exchange, 404, "No such image: " + imageName);
+            return;
+        }
+
+        //Removing by tag only removes the tag unless it is the last one
+        String normalizedName = normalizeImageName(imageName);
+        if (image.tags.remove(normalizedName) && !image.tags.isEmpty())
+        {
+            sendJson(exchange, 200, Collections.singletonList(map("Untagged", normalizedName)));
+            return;
+        }
+
+        images.remove(image.id);
+        FileUtils.deleteDirectory(image.root.toFile());
+        sendJson(exchange, 200, Arrays.asList(map("Untagged", normalizedName), map("Deleted", image.id)));
+    }
+
+    private void listContainers(HttpExchange exchange, Map<String, String> query)
+    throws IOException
+    {
+        String labelFilter = labelFilter(query);
+        boolean all = "true".equals(query.get("all")) || "1".equals(query.get("all"));
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Container container : containers.values())
+        {
+            if ((all || container.getState().equals("running")) && (labelFilter == null || container.labels.containsKey(labelFilter)))
+            {
+                result.add(map("Id", container.id, "Names", Collections.singletonList("/" + container.name), "Image", container.imageName,
+                               "Labels", container.labels, "State", container.getState(), "Created", container.created.getEpochSecond()));
+            }
+        }
+        sendJson(exchange, 200, result);
+    }
+
+    private void createContainer(HttpExchange exchange, Map<String, String> query)
+    throws IOException
+    {
+        JsonNode body = readJson(exchange);
+        String imageName = body.path("Image").asText();
+        Image image = image(imageName);
+        if (image == null)
+        {
+            sendError(exchange, 404, "No such image: " + imageName);
+            return;
+        }
+
+        List<String> command = new ArrayList<>(strings(body.get("Entrypoint")));
+        List<String> cmd = strings(body.get("Cmd"));
+        command.addAll(cmd.isEmpty() && command.isEmpty() ? image.command : cmd);
+
+        Map<String, String> labels = new LinkedHashMap<>();
+        body.path("Labels").fields().forEachRemaining(e -> labels.put(e.getKey(), e.getValue().asText()));
+
+        String id = UUID.randomUUID().toString().replace("-", "");
+        String name = query.getOrDefault("name", id.substring(0, 12));
+        Container container = new Container(id, name, imageName, image, Files.createTempDirectory(baseDirectory, "container"), command, labels);
+        containers.put(id, container);
+        sendJson(exchange, 201, map("Id", id, "Warnings", Collections.emptyList()));
+    }
+
+    private void removeContainer(HttpExchange exchange, String containerIdOrName)
+    throws IOException
+    {
+        Container container = container(containerIdOrName);
+        if (container == null)
+        {
+            sendError(exchange, 404, "No such container: " + containerIdOrName);
+            return;
+        }
+
+        container.kill();
+        containers.remove(container.id);
+        execs.values().removeIf(exec -> exec.container == container);
+        FileUtils.deleteDirectory(container.root.toFile());
+        sendEmpty(exchange, 204);
+    }
+
+    private void attach(HttpExchange exchange, Container container)
+    throws IOException, InterruptedException
+    {
+        readBody(exchange);
+        streamFrames(exchange, container.output);
+    }
+
+    private void putArchive(HttpExchange exchange, Container container, String containerPath)
+    throws IOException
+    {
+        Path target = resolve(container.root, containerPath);
+        Files.createDirectories(target);
+        extractTar(readBodyStream(exchange), target);
+        sendEmpty(exchange, 200);
+    }
+
+    private void getArchive(HttpExchange exchange, Container container, String containerPath)
+    throws IOException
+    {
+        Path source = container.resolve(containerPath);
+        if (source == null || !Files.exists(source))
+        {
+            sendError(exchange, 404, "Could not find the file " + containerPath + " in container " + container.id);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-tar");
+        exchange.sendResponseHeaders(200, 0);
+        try (TarArchiveOutputStream tarOut = new TarArchiveOutputStream(responseBody(exchange)))
+        {
+            tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOut.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            addToTar(tarOut, source.toFile(), source.getFileName().toString());
+        }
+    }
+
+    private static void addToTar(TarArchiveOutputStream tarOut, File file, String entryName)
+    throws IOException
+    {
+        TarArchiveEntry entry = new TarArchiveEntry(file, entryName);
+        tarOut.putArchiveEntry(entry);
+        if (file.isFile())
+        {
+            try (InputStream is = Files.newInputStream(file.toPath()))
+            {
+                IOUtils.copy(is, tarOut);
+            }
+        }
+        tarOut.closeArchiveEntry();
+
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            Arrays.sort(children);
+            for (File child : children)
+            {
+                addToTar(tarOut, child, entryName + "/" + child.getName());
+            }
+        }
+    }
+
+    /**
+     * Extracts a TAR, optionally gzip-compressed like Docker accepts, into a directory.
+     */
+    private static void extractTar(InputStream in, Path directory)
+    throws IOException
+    {
+        InputStream bufferedIn = new BufferedInputStream(in);
+        bufferedIn.mark(2);
+        boolean gzipped = bufferedIn.read() == 0x1f && bufferedIn.read() == 0x8b;
+        bufferedIn.reset();
+
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(gzipped ? new GZIPInputStream(bufferedIn) : bufferedIn))
+        {
+            TarArchiveEntry entry;
+            while ((entry = tarIn.getNextTarEntry()) != null)
+            {
+                Path target = directory.resolve(entry.getName()).normalize();
+                if (!target.startsWith(directory))
+                    throw new IOException("TAR entry outside of target directory: " + entry.getName());
+
+                if (entry.isDirectory())
+                    Files.createDirectories(target);
+                else
+                {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(tarIn, target, StandardCopyOption.REPLACE_EXISTING);
+                    if ((entry.getMode() & 0100) != 0)
+                        target.toFile().setExecutable(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends frames of process output in Docker's multiplexed stream format until the process exits.
+     */
+    private void streamFrames(HttpExchange exchange, ProcessOutput output)
+    throws IOException, InterruptedException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "application/vnd.docker.raw-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = responseBody(exchange))
+        {
+            int frameIndex = 0;
+            byte[] frame;
+            while ((frame = output.awaitFrame(frameIndex++)) != null)
+            {
+                out.write(frame);
+                out.flush();
+            }
+        }
+    }
+
+    private Image image(String imageNameOrId)
+    {
+        Image image = images.get(imageNameOrId);
+        if (image != null)
+            return image;
+
+        String normalizedName = normalizeImageName(imageNameOrId);
+        for (Image candidate : images.values())
+        {
+            if (candidate.tags.contains(normalizedName))
+                return candidate;
+        }
+        return null;
+    }
+
+    private Container container(String containerIdOrName)
+    {
+        Container container = containers.get(containerIdOrName);
+        if (container != null)
+            return container;
+
+        for (Container candidate : containers.values())
+        {
+            if (candidate.name.equals(containerIdOrName))
+                return candidate;
+        }
+        return null;
+    }
+
+    private static String normalizeImageName(String imageName)
+    {
+        //A colon after the last slash is a tag, otherwise it is part of a registry host
+        int lastSlash = imageName.lastIndexOf('/');
+        if (imageName.indexOf(':', lastSlash + 1) < 0)
+            return imageName + ":latest";
+        else
+            return imageName;
+    }
+
+    private String labelFilter(Map<String, String> query)
+    throws IOException
+    {
+        String filters = query.get("filters");
+        if (filters == null)
+            return null;
+
+        JsonNode labels = json.readTree(filters).path("label");
+        if (labels.size() == 0)
+            return null;
+
+        //Only key filters are used by the plugin, but allow key=value by matching on the key
+        return labels.get(0).asText().split("=", 2)[0];
+    }
+
+    /**
+     * Resolves a container path against a root directory.
+     */
+    private static Path resolve(Path root, String containerPath)
+    {
+        Path resolved = root.resolve(containerPath.replaceFirst("^/+", "")).normalize();
+        if (!resolved.startsWith(root))
+            throw new IllegalArgumentException("Path outside of container: " + containerPath);
+
+        return resolved;
+    }
+
+    private static List<String> strings(JsonNode node)
+    {
+        List<String> result = new ArrayList<>();
+        if (node != null && node.isArray())
+            node.forEach(element -> result.add(element.asText()));
+        else if (node != null && node.isTextual())
+            result.add(node.asText());
+
+        return result;
+    }
+
+    private static Map<String, Object> map(Object... keysAndValues)
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2)
+        {
+            result.put((String)keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery)
+    throws UnsupportedEncodingException
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (rawQuery == null)
+            return result;
+
+        for (String parameter : rawQuery.split("&"))
+        {
+            String[] keyValue = parameter.split("=", 2);
+            result.put(URLDecoder.decode(keyValue[0], "UTF-8"), keyValue.length > 1 ? URLDecoder.decode(keyValue[1], "UTF-8") : "");
+        }
+        return result;
+    }
+
+    private InputStream readBodyStream(HttpExchange exchange)
+    {
+        return new CountingInputStream(throttle(exchange.getRequestBody()), bytesReceived);
+    }
+
+    private byte[] readBody(HttpExchange exchange)
+    throws IOException
+    {
+        try (InputStream in = readBodyStream(exchange))
+        {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private JsonNode readJson(HttpExchange exchange)
+    throws IOException
+    {
+        byte[] body = readBody(exchange);
+        if (body.length == 0)
+            return json.createObjectNode();
+
+        return json.readTree(body);
+    }
+
+    private OutputStream responseBody(HttpExchange exchange)
+    {
+        return new CountingOutputStream(throttle(exchange.getResponseBody()), bytesSent);
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body)
+    throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        sendBytes(exchange, status, json.writeValueAsBytes(body));
+    }
+
+    private void sendJsonLines(HttpExchange exchange, List<?> lines)
+    throws IOException
+    {
+        StringBuilder buf = new StringBuilder();
+        for (Object line : lines)
+        {
+            buf.append(json.writeValueAsString(line)).append("\r\n");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        sendBytes(exchange, 200, buf.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendText(HttpExchange exchange, int status, String body)
+    throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        sendBytes(exchange, status, exchange.getRequestMethod().equals("HEAD") ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message)
+    throws IOException
+    {
+        sendJson(exchange, status, map("message", message));
+    }
+
+    private void sendEmpty(HttpExchange exchange, int status)
+    throws IOException
+    {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private void sendBytes(HttpExchange exchange, int status, byte[] body)
+    throws IOException
+    {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0)
+        {
+            try (OutputStream out = responseBody(exchange))
+            {
+                out.write(body);
+            }
+        }
+    }
+
+    private InputStream throttle(InputStream in)
+    {
+        if (bytesPerSecond <= 0)
+            return in;
+
+        return new FilterInputStream(in)
+        {
+            private final Throttle throttle = new Throttle(bytesPerSecond);
+
+            @Override
+            public int read()
+            throws IOException
+            {
+                int b = super.read();
+                if (b >= 0)
+                    throttle.transferred(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            throws IOException
+            {
+                int n = super.read(b, off, len);
+                if (n > 0)
+                    throttle.transferred(n);
+                return n;
+            }
+        };
+    }
+
+    private OutputStream throttle(OutputStream out)
+    {
+        if (bytesPerSecond <= 0)
+            return out;
+
+        return new FilterOutputStream(out)
+        {
+            private final Throttle throttle = new Throttle(bytesPerSecond);
+
+            @Override
+            public void write(int b)
+            throws IOException
+            {
+                out.write(b);
+                throttle.transferred(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+            throws IOException
+            {
+                out.write(b, off, len);
+                throttle.transferred(len);
+            }
+        };
+    }
+
+    /**
+     * Runs the fake daemon until the process is stopped, for pointing builds at with <code>DOCKER_HOST</code> when benchmarking.
+     * <p>
+     *
+     * Arguments: [latency in milliseconds] [bandwidth in bytes per second, 0 for unlimited]
+     */
+    public static void main(String... args)
+    throws IOException, InterruptedException
+    {
+        Duration latency = Duration.ofMillis(args.length > 0 ? Long.parseLong(args[0]) : 0L);
+        long bytesPerSecond = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+        try (FakeDockerDaemon daemon = new FakeDockerDaemon(latency, bytesPerSecond))
+        {
+            System.out.println("DOCKER_HOST=" + daemon.getDockerHost());
+            Thread.currentThread().join();
+        }
+    }
+
+    /**
+     * Limits the rate of a transfer by sleeping once it gets ahead of the allowed rate.
+     */
+    private static class Throttle
+    {
+        private final long bytesPerSecond;
+        private final long startTime = System.nanoTime();
+        private long totalBytes;
+
+        public Throttle(long bytesPerSecond)
+        {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public void transferred(long byteCount)
+        throws InterruptedIOException
+        {
+            totalBytes += byteCount;
+            long expectedNanos = totalBytes * 1_000_000_000L / bytesPerSecond;
+            long aheadNanos = expectedNanos - (System.nanoTime() - startTime);
+            if (aheadNanos > 0)
+            {
+                try
+                {
+                    Thread.sleep(aheadNanos / 1_000_000L, (int)(aheadNanos % 1_000_000L));
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttling");
+                }
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private final AtomicLong counter;
+
+        public CountingInputStream(InputStream in, AtomicLong counter)
+        {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read()
+        throws IOException
+        {
+            int b = super.read();
+            if (b >= 0)
+                counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                counter.addAndGet(n);
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        private final AtomicLong counter;
+
+        public CountingOutputStream(OutputStream out, AtomicLong counter)
+        {
+            super(out);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b)
+        throws IOException
+        {
+            out.write(b);
+            counter.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        throws IOException
+        {
+            out.write(b, off, len);
+            counter.addAndGet(len);
+        }
+    }
+
+    private static class Image
+    {
+        private final String id = "sha256:" + UUID.randomUUID().toString().replace("-", "") + UUID.randomUUID().toString().replace("-", "");
+        private final Instant created = Instant.now();
+        private final Path root;
+        private final Map<String, String> labels;
+        private final List<String> command;
+        private final List<String> tags = Collections.synchronizedList(new ArrayList<>());
+
+        public Image(Path root, Map<String, String> labels, List<String> command)
+        {
+            this.root = Objects.requireNonNull(root);
+            this.labels = new LinkedHashMap<>(labels);
+            this.command = new ArrayList<>(command);
+        }
+    }
+
+    /**
+     * Output of a process, recorded as frames so that it can be streamed to clients that attach at any time.
+     */
+    private static class ProcessOutput
+    {
+        private final List<byte[]> frames = new ArrayList<>();
+        private Integer exitCode;
+
+        /**
+         * Starts recording the output of a process.  If the process could not be started, records the error and an exit code.
+         */
+        public void start(ProcessStart processStart)
+        {
+            if (processStart.error != null)
+            {
+                addFrame(STDERR_STREAM, (processStart.error + "\n").getBytes(StandardCharsets.UTF_8));
+                exited(127);
+                return;
+            }
+
+            Process process = processStart.process;
+            Thread stdout = pump(process.getInputStream(), STDOUT_STREAM);
+            Thread stderr = pump(process.getErrorStream(), STDERR_STREAM);
+            Thread waiter = new Thread(() ->
+            {
+                try
+                {
+                    int result = process.waitFor();
+                    stdout.join();
+                    stderr.join();
+                    exited(result);
+                }
+                catch (InterruptedException e)
+                {
+                    exited(137);
+                }
+            }, "Fake Docker process waiter");
+            waiter.setDaemon(true);
+            waiter.start();
+        }
+
+        private Thread pump(InputStream in, byte streamType)
+        {
+            Thread thread = new Thread(() ->
+            {
+                byte[] buf = new byte[8192];
+                try
+                {
+                    int n;
+                    while ((n = in.read(buf)) >= 0)
+                    {
+                        addFrame(streamType, Arrays.copyOf(buf, n));
+                    }
+                }
+                catch (IOException e)
+                {
+                    //Process was killed
+                }
+            }, "Fake Docker process output");
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+
+        private synchronized void addFrame(byte streamType, byte[] payload)
+        {
+            byte[] frame = new byte[8 + payload.length];
+            frame[0] = streamType;
+            frame[4] = (byte)(payload.length >>> 24);
+            frame[5] = (byte)(payload.length >>> 16);
+            frame[6] = (byte)(payload.length >>> 8);
+            frame[7] = (byte)payload.length;
+            System.arraycopy(payload, 0, frame, 8, payload.length);
+            frames.add(frame);
+            notifyAll();
+        }
+
+        public synchronized void exited(int exitCode)
+        {
+            if (this.exitCode == null)
+                this.exitCode = exitCode;
+            notifyAll();
+        }
+
+        public synchronized Integer getExitCode()
+        {
+            return exitCode;
+        }
+
+        /**
+         * @return the frame with an index, waiting for it if needed, or null if the process exited before producing it.
+         */
+        public synchronized byte[] awaitFrame(int index)
+        throws InterruptedException
+        {
+            while (index >= frames.size() && exitCode == null)
+            {
+                wait();
+            }
+            return index < frames.size() ? frames.get(index) : null;
+        }
+
+        public synchronized int awaitExitCode()
+        throws InterruptedException
+        {
+            while (exitCode == null)
+            {
+                wait();
+            }
+            return exitCode;
+        }
+    }
+
+    private static class ProcessStart
+    {
+        private final Process process;
+        private final String error;
+
+        public ProcessStart(Process process, String error)
+        {
+            this.process = process;
+            this.error = error;
+        }
+    }
+
+    private class Container
+    {
+        private final String id;
+        private final String name;
+        private final String imageName;
+        private final Image image;
+        private final Path root;
+        private final List<String> command;
+        private final Map<String, String> labels;
+        private final Instant created = Instant.now();
+        private final ProcessOutput output = new ProcessOutput();
+        private final List<Process> processes = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean started;
+
+        public Container(String id, String name, String imageName, Image image, Path root, List<String> command, Map<String, String> labels)
+        {
+            this.id = id;
+            this.name = name;
+            this.imageName = imageName;
+            this.image = image;
+            this.root = root;
+            this.command = command;
+            this.labels = labels;
+        }
+
+        public synchronized void start()
+        {
+            if (started)
+                return;
+
+            started = true;
+            output.start(startProcess(command));
+        }
+
+        public String getState()
+        {
+            if (!started)
+                return "created";
+            else if (output.getExitCode() == null)
+                return "running";
+            else
+                return "exited";
+        }
+
+        /**
+         * Starts a process for a command with container paths rewritten to host paths.
+         */
+        public ProcessStart startProcess(List<String> command)
+        {
+            if (command.isEmpty())
+                return new ProcessStart(null, "No command specified");
+
+            try
+            {
+                List<String> hostCommand = new ArrayList<>(command.size());
+                for (String argument : command)
+                {
+                    hostCommand.add(mapPaths(argument));
+                }
+
+                Process process = new ProcessBuilder(hostCommand).directory(root.toFile()).start();
+                processes.add(process);
+                return new ProcessStart(process, null);
+            }
+            catch (IOException e)
+            {
+                return new ProcessStart(null, e.getMessage());
+            }
+        }
+
+        /**
+         * Rewrites container paths in an argument to host paths.
+         */
+        private String mapPaths(String text)
+        {
+            Matcher matcher = CONTAINER_PATH_PATTERN.matcher(text);
+            StringBuffer buf = new StringBuffer();
+            while (matcher.find())
+            {
+                Path hostRoot = rootFor(matcher.group(2));
+                String replacement = matcher.group(1) + (hostRoot == null ? "" : hostRoot.toString()) + matcher.group(2);
+                matcher.appendReplacement(buf, Matcher.quoteReplacement(replacement));
+            }
+            matcher.appendTail(buf);
+            return buf.toString();
+        }
+
+        /**
+         * @return the host directory that holds a top-level container directory, or null if neither the container nor its image has it, in which
+         *         case the path is left alone, e.g. for <code>/dev/null</code>.
+         */
+        private Path rootFor(String topLevelDirectory)
+        {
+            if (Files.exists(FakeDockerDaemon.resolve(root, topLevelDirectory)))
+                return root;
+            else if (Files.exists(FakeDockerDaemon.resolve(image.root, topLevelDirectory)))
+                return image.root;
+            else
+                return null;
+        }
+
+        /**
+         * @return the host path of a container path, looking in the container's files before the image's, or null if the image has been removed.
+         */
+        public Path resolve(String containerPath)
+        {
+            Path containerFile = FakeDockerDaemon.resolve(root, containerPath);
+            if (Files.exists(containerFile))
+                return containerFile;
+
+            return FakeDockerDaemon.resolve(image.root, containerPath);
+        }
+
+        public void kill()
+        {
+            synchronized (processes)
+            {
+                processes.forEach(Process::destroyForcibly);
+            }
+            if (started)
+                output.exited(137);
+        }
+    }
+
+    private class Exec
+    {
+        private final String id = UUID.randomUUID().toString().replace("-", "");
+        private final Container container;
+        private final List<String> command;
+        private final ProcessOutput output = new ProcessOutput();
+
+        public Exec(Container container, List<String> command)
+        {
+            this.container = container;
+            this.command = command;
+        }
+    }
+}
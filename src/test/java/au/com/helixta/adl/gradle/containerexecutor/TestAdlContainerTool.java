@@ -4,7 +4,9 @@ import au.com.helixta.adl.gradle.config.AdlConfiguration;
 import au.com.helixta.adl.gradle.config.DockerConfiguration;
 import au.com.helixta.adl.gradle.config.GenerationConfiguration;
 import au.com.helixta.adl.gradle.config.JavaGenerationConfiguration;
+import au.com.helixta.adl.gradle.config.TypescriptGenerationConfiguration;
 import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
+import au.com.helixta.adl.gradle.distribution.DistributionResolutionService;
 import au.com.helixta.adl.gradle.generator.AdlToolLogger;
 import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
 import au.com.helixta.adl.gradle.generator.SimpleAdlToolLogger;
@@ -30,6 +32,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -45,6 +48,11 @@ class TestAdlContainerTool
     private static GradleUserHomeDirProvider gradleUserHomeDirProvider;
     private static FileSystemOperations fileSystemOperations;
     private static Project project;
+    private static DistributionResolutionService distributionResolutionService;
+    private static DockerConcurrencyService dockerConcurrencyService;
+    private static DockerSessionService dockerSessionService;
+    private static DockerImageService dockerImageService;
+    private static ExecutionCancellationService executionCancellationService;
 
     @BeforeAll
     private static void setUpDocker()
@@ -67,6 +75,11 @@ class TestAdlContainerTool
         gradleUserHomeDirProvider = injectReceiver.gradleUserHomeDirProvider;
         fileSystemOperations = injectReceiver.fileSystemOperations;
         project = p;
+        distributionResolutionService = DistributionResolutionService.register(p.getGradle()).get();
+        dockerConcurrencyService = DockerConcurrencyService.register(p.getGradle()).get();
+        dockerSessionService = DockerSessionService.register(p.getGradle()).get();
+        dockerImageService = DockerImageService.register(p.getGradle()).get();
+        executionCancellationService = ExecutionCancellationService.register(p.getGradle()).get();
     }
 
     /**
@@ -113,7 +126,7 @@ class TestAdlContainerTool
 
         //Tool setup
         AdlToolLogger toolLog = new SimpleAdlToolLogger(gradleLogger);
-        ContainerTool.Environment env = new ContainerTool.Environment(execOperations, toolLog, dockerFactory, targetMachineFactory, objectFactory, archiveOperations, archiveProcessor, gradleUserHomeDirProvider, fileSystemOperations, project, gradleLogger);
+        ContainerTool.Environment env = new ContainerTool.Environment(execOperations, toolLog, dockerFactory, targetMachineFactory, objectFactory, archiveOperations, archiveProcessor, gradleUserHomeDirProvider, fileSystemOperations, distributionResolutionService, dockerConcurrencyService, dockerSessionService, dockerImageService, executionCancellationService, new ExecutionMetrics(), gradleLogger);
         AdlContainerTool tool = new AdlContainerTool(env);
 
         AdlConfiguration adl = new AdlConfiguration()
@@ -143,6 +156,12 @@ class TestAdlContainerTool
             {
                 return "0.14";
             }
+
+            @Override
+            public Duration getExecutionTimeout()
+            {
+                return null;
+            }
         };
         DockerConfiguration dockerConfig = objectFactory.newInstance(DockerConfiguration.class);
         GenerationConfiguration generation = objectFactory.newInstance(JavaGenerationConfiguration.class);
@@ -158,4 +177,86 @@ class TestAdlContainerTool
         assertThat(catJavaFile).isRegularFile();
         assertThat(new String(Files.readAllBytes(catJavaFile), StandardCharsets.UTF_8)).contains("public class Cat");
     }
+
+    private static AdlConfiguration sourcesOnlyConfiguration(Path sources)
+    {
+        return new AdlConfiguration()
+        {
+            @Override
+            public FileTree getSource()
+            {
+                return objectFactory.fileTree().setDir(sources);
+            }
+
+            @Override
+            public FileCollection getSearchDirectories()
+            {
+                return objectFactory.fileCollection();
+            }
+
+            @Override
+            public boolean isVerbose()
+            {
+                return false;
+            }
+
+            @Override
+            public String getVersion()
+            {
+                return "0.14";
+            }
+
+            @Override
+            public Duration getExecutionTimeout()
+            {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Verify that sources can be checked without generating anything, and that errors in them fail the check.
+     */
+    @Test
+    void verify() throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        Path sources = Files.createTempDirectory(project.getProjectDir().toPath(), "adlverify");
+        Path adlFile = sources.resolve("cat.adl");
+        Files.write(adlFile, "module cat {\nstruct Cat {\n    String name;\n};\n};\n".getBytes(StandardCharsets.UTF_8));
+
+        AdlToolLogger toolLog = new SimpleAdlToolLogger(gradleLogger);
+        ContainerTool.Environment env = new ContainerTool.Environment(execOperations, toolLog, dockerFactory, targetMachineFactory, objectFactory, archiveOperations, archiveProcessor, gradleUserHomeDirProvider, fileSystemOperations, distributionResolutionService, dockerConcurrencyService, dockerSessionService, dockerImageService, executionCancellationService, new ExecutionMetrics(), gradleLogger);
+        AdlContainerTool tool = new AdlContainerTool(env);
+        DockerConfiguration dockerConfig = objectFactory.newInstance(DockerConfiguration.class);
+
+        tool.execute(AdlContainerTool.AdlFullConfiguration.verify(sourcesOnlyConfiguration(sources), dockerConfig), ExecutionPlatform.DOCKER);
+
+        //Unknown type is an error
+        Files.write(adlFile, "module cat {\nstruct Cat {\n    Missing name;\n};\n};\n".getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(() -> tool.execute(AdlContainerTool.AdlFullConfiguration.verify(sourcesOnlyConfiguration(sources), dockerConfig), ExecutionPlatform.DOCKER))
+                .isInstanceOf(ContainerExecutionException.class);
+    }
+
+    /**
+     * Generations whose output covers all sources at once must never be split across multiple adlc runs.
+     */
+    @Test
+    void generationsWithManifestsOrResolversNotBatchable()
+    {
+        JavaGenerationConfiguration java = objectFactory.newInstance(JavaGenerationConfiguration.class);
+        assertThat(AdlContainerTool.isBatchable(java)).isTrue();
+        java.setManifest(new File(project.getBuildDir(), "manifest"));
+        assertThat(AdlContainerTool.isBatchable(java)).isFalse();
+
+        JavaGenerationConfiguration javaWithRuntime = objectFactory.newInstance(JavaGenerationConfiguration.class);
+        javaWithRuntime.setGenerateAdlRuntime(true);
+        assertThat(AdlContainerTool.isBatchable(javaWithRuntime)).isFalse();
+
+        TypescriptGenerationConfiguration typescript = objectFactory.newInstance(TypescriptGenerationConfiguration.class);
+        typescript.setGenerateResolver(true);
+        assertThat(AdlContainerTool.isBatchable(typescript)).isFalse();
+
+        //Verification has no output at all
+        assertThat(AdlContainerTool.isBatchable(null)).isTrue();
+    }
 }
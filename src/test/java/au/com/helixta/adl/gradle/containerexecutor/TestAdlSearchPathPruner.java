@@ -0,0 +1,203 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
+import org.gradle.api.Project;
+import org.gradle.api.file.ArchiveOperations;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestAdlSearchPathPruner
+{
+    private static ObjectFactory objectFactory;
+    private static ArchiveProcessor archiveProcessor;
+
+    @BeforeAll
+    private static void setUpGradleEnvironment(@TempDir File tempDir)
+    {
+        Project p = ProjectBuilder.builder().withProjectDir(tempDir).build();
+        objectFactory = p.getObjects();
+        InjectReceiver injectReceiver = objectFactory.newInstance(InjectReceiver.class);
+        archiveProcessor = new ArchiveProcessor(injectReceiver.archiveOperations);
+    }
+
+    /**
+     * Purely for exercising Gradle's injection system to get objects.
+     */
+    public static class InjectReceiver
+    {
+        public final ArchiveOperations archiveOperations;
+
+        @Inject
+        public InjectReceiver(ArchiveOperations archiveOperations)
+        {
+            this.archiveOperations = archiveOperations;
+        }
+    }
+
+    private static Path writeFile(Path root, String relativePath, String content)
+    throws IOException
+    {
+        Path file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static AdlSearchPathPruner pruner(Path tempDir)
+    {
+        ArchiveExtractionCache archiveExtractionCache = new ArchiveExtractionCache(tempDir.resolve("archive-cache").toFile(), archiveProcessor);
+        return new AdlSearchPathPruner(tempDir.resolve("pruned-cache").toFile(), AdlSearchPathPruner.DEFAULT_MAX_CACHED_SEARCH_DIRECTORIES,
+                                       archiveExtractionCache);
+    }
+
+    private static FileTree sources(Path sourceDir)
+    {
+        return objectFactory.fileTree().setDir(sourceDir);
+    }
+
+    @Test
+    void onlyTransitivelyImportedModulesAreKept(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path sourceDir = tempDir.resolve("sources");
+        Path searchDir = tempDir.resolve("search");
+        writeFile(sourceDir, "app/api.adl", "module app.api {\nimport lib.middle.*;\n};\n");
+        writeFile(searchDir, "lib/middle.adl", "module lib.middle {\nstruct M { lib.base.Thing thing; };\n};\n");
+        writeFile(searchDir, "lib/base.adl", "module lib.base {\nstruct Thing {};\n};\n");
+        writeFile(searchDir, "lib/base.adl-java", "module lib.base {\nannotation Thing JavaClass \"x\";\n};\n");
+        writeFile(searchDir, "lib/unused.adl", "module lib.unused {\nimport lib.base.Thing;\n};\n");
+
+        AdlSearchPathPruner.Result result = pruner(tempDir).prune(sources(sourceDir), Collections.singletonList(searchDir.toFile()));
+
+        assertThat(result.getTotalModuleCount()).isEqualTo(3);
+        assertThat(result.getShippedModuleCount()).isEqualTo(2);
+        assertThat(result.getPrunedModuleCount()).isEqualTo(1);
+        assertThat(result.getPrunedByteCount()).isEqualTo(Files.size(searchDir.resolve("lib/unused.adl")));
+
+        Path pruned = result.getSearchDirectory().toPath();
+        assertThat(pruned.resolve("lib/middle.adl")).hasSameTextualContentAs(searchDir.resolve("lib/middle.adl"));
+        assertThat(pruned.resolve("lib/base.adl")).exists();
+        assertThat(pruned.resolve("lib/base.adl-java")).exists();
+        assertThat(pruned.resolve("lib/unused.adl")).doesNotExist();
+    }
+
+    @Test
+    void firstSearchDirectoryWins(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path sourceDir = tempDir.resolve("sources");
+        Path firstDir = tempDir.resolve("first");
+        Path secondDir = tempDir.resolve("second");
+        writeFile(sourceDir, "app.adl", "module app {\nimport lib.Thing;\n};\n");
+        writeFile(firstDir, "lib.adl", "module lib {\nstruct Thing {};\n};\n");
+        writeFile(secondDir, "lib.adl", "module lib {\nimport other.Other;\nstruct Thing {};\n};\n");
+        writeFile(secondDir, "other.adl", "module other {\nstruct Other {};\n};\n");
+
+        AdlSearchPathPruner.Result result = pruner(tempDir).prune(sources(sourceDir), Arrays.asList(firstDir.toFile(), secondDir.toFile()));
+
+        Path pruned = result.getSearchDirectory().toPath();
+        assertThat(pruned.resolve("lib.adl")).hasSameTextualContentAs(firstDir.resolve("lib.adl"));
+        assertThat(pruned.resolve("other.adl")).doesNotExist();
+    }
+
+    @Test
+    void archiveSearchDirectory(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path sourceDir = tempDir.resolve("sources");
+        writeFile(sourceDir, "app.adl", "module app {\nimport lib.Thing;\n};\n");
+        Path jar = tempDir.resolve("lib.jar");
+        try (OutputStream os = Files.newOutputStream(jar);
+             ZipOutputStream zos = new ZipOutputStream(os))
+        {
+            zos.putNextEntry(new ZipEntry("lib.adl"));
+            zos.write("module lib {\nstruct Thing {};\n};\n".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("unused.adl"));
+            zos.write("module unused {\n};\n".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        AdlSearchPathPruner.Result result = pruner(tempDir).prune(sources(sourceDir), Collections.singletonList(jar.toFile()));
+
+        assertThat(result.getSearchDirectory().toPath().resolve("lib.adl")).exists();
+        assertThat(result.getPrunedModuleCount()).isEqualTo(1);
+    }
+
+    @Test
+    void sameModulesShareSearchDirectory(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path sourceDir = tempDir.resolve("sources");
+        Path searchDir = tempDir.resolve("search");
+        writeFile(sourceDir, "app.adl", "module app {\nimport lib.Thing;\n};\n");
+        writeFile(searchDir, "lib.adl", "module lib {\nstruct Thing {};\n};\n");
+
+        AdlSearchPathPruner pruner = pruner(tempDir);
+        File first = pruner.prune(sources(sourceDir), Collections.singletonList(searchDir.toFile())).getSearchDirectory();
+        File second = pruner.prune(sources(sourceDir), Collections.singletonList(searchDir.toFile())).getSearchDirectory();
+        assertThat(second).isEqualTo(first);
+
+        //Changing a shipped module gives a new search directory
+        writeFile(searchDir, "lib.adl", "module lib {\nstruct Thing { Int32 x; };\n};\n");
+        File changed = pruner.prune(sources(sourceDir), Collections.singletonList(searchDir.toFile())).getSearchDirectory();
+        assertThat(changed).isNotEqualTo(first);
+    }
+
+    @Test
+    void leastRecentlyUsedSearchDirectoriesEvicted(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path sourceDir = tempDir.resolve("sources");
+        Path searchDir = tempDir.resolve("search");
+        writeFile(sourceDir, "app.adl", "module app {\nimport lib.Thing;\n};\n");
+        writeFile(searchDir, "lib.adl", "module lib {\nstruct Thing {};\n};\n");
+
+        ArchiveExtractionCache archiveExtractionCache = new ArchiveExtractionCache(tempDir.resolve("archive-cache").toFile(), archiveProcessor);
+        AdlSearchPathPruner pruner = new AdlSearchPathPruner(tempDir.resolve("pruned-cache").toFile(), 1, archiveExtractionCache);
+        File first = pruner.prune(sources(sourceDir), Collections.singletonList(searchDir.toFile())).getSearchDirectory();
+
+        //Make sure the first one is older regardless of file time resolution
+        assertThat(new File(first.getParentFile(), "pruned.marker").setLastModified(System.currentTimeMillis() - 60_000L)).isTrue();
+
+        writeFile(searchDir, "lib.adl", "module lib {\nstruct Thing { Int32 x; };\n};\n");
+        File second = pruner.prune(sources(sourceDir), Collections.singletonList(searchDir.toFile())).getSearchDirectory();
+
+        assertThat(first).doesNotExist();
+        assertThat(second.toPath().resolve("lib.adl")).exists();
+    }
+
+    @Test
+    void noSearchModulesNeeded(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path sourceDir = tempDir.resolve("sources");
+        Path searchDir = tempDir.resolve("search");
+        writeFile(sourceDir, "app.adl", "module app {\nimport sys.types.Maybe;\n};\n");
+        writeFile(searchDir, "lib.adl", "module lib {\n};\n");
+
+        AdlSearchPathPruner.Result result = pruner(tempDir).prune(sources(sourceDir), Collections.singletonList(searchDir.toFile()));
+
+        assertThat(result.getSearchDirectory()).isNull();
+        assertThat(result.getSearchDirectories()).isEmpty();
+        assertThat(result.getPrunedModuleCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,187 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
+import org.gradle.api.Project;
+import org.gradle.api.file.ArchiveOperations;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestArchiveExtractionCache
+{
+    private static ArchiveProcessor archiveProcessor;
+
+    @BeforeAll
+    private static void setUpGradleEnvironment(@TempDir File tempDir)
+    {
+        Project p = ProjectBuilder.builder().withProjectDir(tempDir).build();
+        InjectReceiver injectReceiver = p.getObjects().newInstance(InjectReceiver.class);
+        archiveProcessor = new ArchiveProcessor(injectReceiver.archiveOperations);
+    }
+
+    /**
+     * Purely for exercising Gradle's injection system to get objects.
+     */
+    public static class InjectReceiver
+    {
+        public final ArchiveOperations archiveOperations;
+
+        @Inject
+        public InjectReceiver(ArchiveOperations archiveOperations)
+        {
+            this.archiveOperations = archiveOperations;
+        }
+    }
+
+    private static Path createZip(Path zipFile, String entryName, String content)
+    throws IOException
+    {
+        try (OutputStream os = Files.newOutputStream(zipFile);
+             ZipOutputStream zos = new ZipOutputStream(os))
+        {
+            zos.putNextEntry(new ZipEntry(entryName));
+            zos.write(content.getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        return zipFile;
+    }
+
+    @Test
+    void archiveIsExtracted(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path zip = createZip(tempDir.resolve("lib.zip"), "sub/animal.adl", "module sub {};");
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(tempDir.resolve("cache").toFile(), archiveProcessor);
+
+        File extracted = cache.extractedDirectory(zip.toFile());
+
+        assertThat(extracted.toPath().resolve("sub").resolve("animal.adl")).hasContent("module sub {};");
+    }
+
+    @Test
+    void sameContentSharesExtraction(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path zip1 = createZip(tempDir.resolve("lib1.zip"), "sub/animal.adl", "module sub {};");
+        Path zip2 = createZip(tempDir.resolve("lib2.jar"), "sub/animal.adl", "module sub {};");
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(tempDir.resolve("cache").toFile(), archiveProcessor);
+
+        File extracted1 = cache.extractedDirectory(zip1.toFile());
+        File extracted2 = cache.extractedDirectory(zip2.toFile());
+
+        assertThat(extracted2).isEqualTo(extracted1);
+    }
+
+    @Test
+    void differentContentExtractedSeparately(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path zip1 = createZip(tempDir.resolve("lib1.zip"), "sub/animal.adl", "module sub {};");
+        Path zip2 = createZip(tempDir.resolve("lib2.zip"), "sub/animal.adl", "module sub { struct Cat {}; };");
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(tempDir.resolve("cache").toFile(), archiveProcessor);
+
+        File extracted1 = cache.extractedDirectory(zip1.toFile());
+        File extracted2 = cache.extractedDirectory(zip2.toFile());
+
+        assertThat(extracted2).isNotEqualTo(extracted1);
+        assertThat(extracted2.toPath().resolve("sub").resolve("animal.adl")).hasContent("module sub { struct Cat {}; };");
+    }
+
+    @Test
+    void leastRecentlyUsedExtractionsEvicted(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path zip1 = createZip(tempDir.resolve("lib1.zip"), "sub/animal.adl", "module sub {};");
+        Path zip2 = createZip(tempDir.resolve("lib2.zip"), "sub/animal.adl", "module sub { struct Cat {}; };");
+        Path zip3 = createZip(tempDir.resolve("lib3.zip"), "sub/animal.adl", "module sub { struct Dog {}; };");
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(tempDir.resolve("cache").toFile(), 2, archiveProcessor);
+
+        File extracted1 = cache.extractedDirectory(zip1.toFile());
+        File extracted2 = cache.extractedDirectory(zip2.toFile());
+
+        //Make the first one older regardless of file time resolution, then use it again so the second one is least recently used
+        assertThat(new File(extracted1.getParentFile(), "extracted.marker").setLastModified(System.currentTimeMillis() - 120_000L)).isTrue();
+        assertThat(new File(extracted2.getParentFile(), "extracted.marker").setLastModified(System.currentTimeMillis() - 60_000L)).isTrue();
+        cache.extractedDirectory(zip1.toFile());
+
+        File extracted3 = cache.extractedDirectory(zip3.toFile());
+
+        assertThat(extracted1).isDirectory();
+        assertThat(extracted2).doesNotExist();
+        assertThat(extracted3).isDirectory();
+    }
+
+    @Test
+    void nonArchiveIsNotExtracted(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path notAnArchive = Files.write(tempDir.resolve("notes.txt"), "galah".getBytes(StandardCharsets.UTF_8));
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(tempDir.resolve("cache").toFile(), archiveProcessor);
+
+        assertThat(cache.extractedDirectory(notAnArchive.toFile())).isNull();
+    }
+
+    /**
+     * Creates the cache entry directory for an archive without a completion marker, as if another process had not finished with it yet.
+     */
+    private static Path createIncompleteEntry(Path cacheDir, Path archive)
+    throws IOException, NoSuchAlgorithmException
+    {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(archive)))
+        {
+            hash.append(String.format("%02x", b));
+        }
+        Path entry = Files.createDirectories(cacheDir.resolve(hash.toString()));
+        Files.write(entry.resolve("partial.txt"), "partial".getBytes(StandardCharsets.UTF_8));
+        return entry;
+    }
+
+    @Test
+    void incompleteEntryNotDeletedWhileItMightBeCompleted(@TempDir Path tempDir)
+    throws IOException, NoSuchAlgorithmException
+    {
+        Path zip = createZip(tempDir.resolve("lib.zip"), "sub/animal.adl", "module sub {};");
+        Path cacheDir = tempDir.resolve("cache");
+        Path incompleteEntry = createIncompleteEntry(cacheDir, zip);
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(cacheDir.toFile(), archiveProcessor);
+
+        File extracted = cache.extractedDirectory(zip.toFile());
+
+        //Our own extraction is used and the other one is left alone
+        assertThat(extracted.toPath().resolve("sub").resolve("animal.adl")).hasContent("module sub {};");
+        assertThat(incompleteEntry.resolve("partial.txt")).exists();
+    }
+
+    @Test
+    void abandonedIncompleteEntryReplaced(@TempDir Path tempDir)
+    throws IOException, NoSuchAlgorithmException
+    {
+        Path zip = createZip(tempDir.resolve("lib.zip"), "sub/animal.adl", "module sub {};");
+        Path cacheDir = tempDir.resolve("cache");
+        Path incompleteEntry = createIncompleteEntry(cacheDir, zip);
+        assertThat(incompleteEntry.toFile().setLastModified(System.currentTimeMillis() - 3_600_000L)).isTrue();
+        ArchiveExtractionCache cache = new ArchiveExtractionCache(cacheDir.toFile(), archiveProcessor);
+
+        File extracted = cache.extractedDirectory(zip.toFile());
+
+        assertThat(extracted.toPath()).isEqualTo(incompleteEntry.resolve("content"));
+        assertThat(extracted.toPath().resolve("sub").resolve("animal.adl")).hasContent("module sub {};");
+        assertThat(incompleteEntry.resolve("partial.txt")).doesNotExist();
+    }
+}
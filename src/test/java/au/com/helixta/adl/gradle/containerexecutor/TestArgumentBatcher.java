@@ -0,0 +1,51 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestArgumentBatcher
+{
+    private static List<ArgumentBatcher.MappedArgument> arguments()
+    {
+        return ImmutableList.of(
+                new ArgumentBatcher.MappedArgument(ImmutableList.of("java", "--outputdir=/out"), false),
+                new ArgumentBatcher.MappedArgument(ImmutableList.of("/src/a.adl", "/src/b.adl", "/src/c.adl"), true),
+                new ArgumentBatcher.MappedArgument(ImmutableList.of("--verbose"), false)
+        );
+    }
+
+    @Test
+    void belowThresholdPassedDirectly()
+    {
+        ArgumentBatcher batcher = new ArgumentBatcher(new PreparedCommandLine().batchable(), arguments());
+
+        assertThat(batcher.isBatched()).isFalse();
+        assertThat(batcher.commandLines()).containsExactly(
+                ImmutableList.of("java", "--outputdir=/out", "/src/a.adl", "/src/b.adl", "/src/c.adl", "--verbose"));
+    }
+
+    @Test
+    void aboveThresholdBatched()
+    {
+        ArgumentBatcher batcher = new ArgumentBatcher(new PreparedCommandLine().batchThreshold(2).batchable(), arguments());
+
+        assertThat(batcher.isBatched()).isTrue();
+        assertThat(batcher.commandLines()).containsExactly(
+                ImmutableList.of("java", "--outputdir=/out", "/src/a.adl", "/src/b.adl", "--verbose"),
+                ImmutableList.of("java", "--outputdir=/out", "/src/c.adl", "--verbose"));
+    }
+
+    @Test
+    void aboveThresholdNotBatchedUnlessBatchable()
+    {
+        ArgumentBatcher batcher = new ArgumentBatcher(new PreparedCommandLine().batchThreshold(2), arguments());
+
+        assertThat(batcher.isBatched()).isFalse();
+        assertThat(batcher.commandLines()).containsExactly(
+                ImmutableList.of("java", "--outputdir=/out", "/src/a.adl", "/src/b.adl", "/src/c.adl", "--verbose"));
+    }
+}
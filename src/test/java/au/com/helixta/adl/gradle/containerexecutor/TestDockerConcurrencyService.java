@@ -0,0 +1,98 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InfoCmd;
+import com.github.dockerjava.api.model.Info;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TestDockerConcurrencyService
+{
+    private static DockerConcurrencyService createService(File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        return DockerConcurrencyService.register(project.getGradle()).get();
+    }
+
+    private static DockerClient dockerWithCpuCount(Integer cpuCount)
+    {
+        DockerClient docker = mock(DockerClient.class);
+        InfoCmd infoCmd = mock(InfoCmd.class);
+        Info info = mock(Info.class);
+        when(docker.infoCmd()).thenReturn(infoCmd);
+        when(infoCmd.exec()).thenReturn(info);
+        when(info.getNCPU()).thenReturn(cpuCount);
+        return docker;
+    }
+
+    @Test
+    void configuredLimitUsed(@TempDir File projectDir)
+    throws InterruptedException
+    {
+        DockerConcurrencyService service = createService(projectDir);
+        DockerClient docker = dockerWithCpuCount(8);
+
+        try (DockerConcurrencyService.Slot slot = service.acquire(docker, 2))
+        {
+            assertThat(service.getMaxConcurrentContainers()).isEqualTo(2);
+        }
+        verify(docker, never()).infoCmd();
+    }
+
+    @Test
+    void defaultLimitFromDockerCpuCount(@TempDir File projectDir)
+    throws InterruptedException
+    {
+        DockerConcurrencyService service = createService(projectDir);
+
+        try (DockerConcurrencyService.Slot slot = service.acquire(dockerWithCpuCount(6), null))
+        {
+            assertThat(service.getMaxConcurrentContainers()).isEqualTo(6);
+        }
+    }
+
+    @Test
+    void waitsForSlotWhenLimitReached(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerConcurrencyService service = createService(projectDir);
+        DockerClient docker = dockerWithCpuCount(8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            DockerConcurrencyService.Slot firstSlot = service.acquire(docker, 1);
+            CountDownLatch waiting = new CountDownLatch(1);
+            Future<DockerConcurrencyService.Slot> secondSlot = executor.submit(() ->
+            {
+                waiting.countDown();
+                return service.acquire(docker, 1);
+            });
+
+            waiting.await();
+            Thread.sleep(100L);
+            assertThat(secondSlot).isNotDone();
+
+            firstSlot.close();
+            try (DockerConcurrencyService.Slot slot = secondSlot.get(10L, TimeUnit.SECONDS))
+            {
+                assertThat(slot.getWaitTime().toNanos()).isPositive();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
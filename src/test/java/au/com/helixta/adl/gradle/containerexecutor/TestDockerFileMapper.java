@@ -135,6 +135,70 @@ class TestDockerFileMapper
         assertThat(mappedCommandLine).containsExactly("-l", "/data/mydir");
     }
 
+    /**
+     * Batched command lines run one after the other in a single container so inputs are only uploaded once.
+     */
+    @Test
+    void batchedCommandLinesRunInOneContainer(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path inputDir = Files.createDirectories(tempDir.resolve("input"));
+        Files.createFile(inputDir.resolve("a.txt"));
+        Files.createFile(inputDir.resolve("b.txt"));
+
+        PreparedCommandLine commandLine = new PreparedCommandLine()
+                                                .argument("-l")
+                                                .argument(objectFactory.fileTree().from(inputDir), "mytree")
+                                                .batchThreshold(1)
+                                                .batchable();
+        DockerFileMapper mapper = new DockerFileMapper(commandLine, "/data", docker, objectFactory, archiveProcessor);
+
+        List<List<String>> mappedCommandLines = mapper.getMappedCommandLinesWithProgram("ls");
+        assertThat(mappedCommandLines).hasSize(2);
+
+        List<String> containerCommand = mapper.containerCommand(mappedCommandLines);
+        assertThat(containerCommand).hasSize(3).startsWith("sh", "-c");
+        assertThat(containerCommand.get(2)).contains("'ls' '-l' '/data/mytree/a.txt' || exit $?")
+                                           .contains("'ls' '-l' '/data/mytree/b.txt' || exit $?");
+    }
+
+    /**
+     * Check that input directories are mapped by content into the shared area when shared inputs are used, while other files stay in the execution's own
+     * directory.
+     */
+    @Test
+    void mappedCommandLineWithSharedInputs(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path searchDir = createDockerBaseDirectory(tempDir);
+        Files.write(searchDir.resolve("galah.adl"), ImmutableList.of("module galah {};"));
+        Path outputDir = createDockerBaseDirectory(tempDir);
+
+        DockerFileMapper.SharedInputs sharedInputs = new DockerFileMapper.SharedInputs()
+        {
+            @Override
+            public String getBaseDirectory()
+            {
+                return "/shared";
+            }
+
+            @Override
+            public void upload(String containerPath, DockerFileMapper.Upload upload)
+            {
+            }
+        };
+
+        PreparedCommandLine commandLine = new PreparedCommandLine()
+                .argument(searchDir.toFile(), "search", PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY)
+                .argument(outputDir.toFile(), "out", PreparedCommandLine.FileTransferMode.OUTPUT, PreparedCommandLine.FileType.DIRECTORY);
+        List<String> mappedCommandLine1 = new DockerFileMapper(commandLine, "/executions/1", docker, objectFactory, archiveProcessor, sharedInputs).getMappedCommandLine();
+        List<String> mappedCommandLine2 = new DockerFileMapper(commandLine, "/executions/2", docker, objectFactory, archiveProcessor, sharedInputs).getMappedCommandLine();
+
+        assertThat(mappedCommandLine1.get(0)).startsWith("/shared/").isEqualTo(mappedCommandLine2.get(0));
+        assertThat(mappedCommandLine1.get(1)).isEqualTo("/executions/1/out");
+        assertThat(mappedCommandLine2.get(1)).isEqualTo("/executions/2/out");
+    }
+
     /**
      * Check that copying files from host works by doing an ls -l on a mapped directory and checking the output.  Checks file names but not content.
      */
@@ -270,6 +334,51 @@ class TestDockerFileMapper
         assertThat(shellsFileLines).contains("/bin/bash", "/bin/sh"); //File will have more than these, but bash and sh should always be there
     }
 
+    /**
+     * Check that files are copied to and from the container when compressed transfer is used, by copying an input directory to an output directory.
+     */
+    @Test
+    void copyFilesWithCompressedTransfer(@TempDir Path tempDir)
+    throws IOException
+    {
+        //Don't use tempDir directly because it is also being used for Gradle fake project dir
+        Path inputDir = createDockerBaseDirectory(tempDir);
+        Files.createDirectories(inputDir.resolve("sub"));
+        Files.write(inputDir.resolve("sub").resolve("galah.txt"), ImmutableList.of("This is file content"));
+        Path outputDir = createDockerBaseDirectory(tempDir);
+
+        //Generate a command line for cp -r <inputdir>/. <outputdir>
+        PreparedCommandLine commandLine = new PreparedCommandLine()
+                .argument("-r")
+                .argument(inputDir.toFile(), "in", PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY, dir -> dir + "/.")
+                .argument(outputDir.toFile(), "out", PreparedCommandLine.FileTransferMode.OUTPUT, PreparedCommandLine.FileType.DIRECTORY);
+        DockerFileMapper mapper = new DockerFileMapper(commandLine, "/data", docker, objectFactory, archiveProcessor, null, 6);
+
+        List<String> fullCommandLine = mapper.withOutputCompression(mapper.getMappedCommandLineWithProgram("cp"));
+        assertThat(fullCommandLine).startsWith("sh", "-c");
+
+        //Create a basic Linux container
+        CreateContainerResponse response = docker.createContainerCmd("ubuntu:20.04")
+                                                 .withHostConfig(HostConfig.newHostConfig().withAutoRemove(false))
+                                                 .withName(testDockerContainerName)
+                                                 .withCmd(fullCommandLine)
+                                                 .exec();
+        String containerId = response.getId();
+        createdContainerIds.add(containerId);
+
+        mapper.copyFilesFromHostToContainer(containerId);
+
+        docker.startContainerCmd(containerId).exec();
+
+        WaitContainerResultCallback resultCallback = docker.waitContainerCmd(containerId).start();
+        Integer result = resultCallback.awaitStatusCode();
+        assertThat(result).describedAs("Docker process exit code").isZero();
+
+        mapper.copyFilesFromContainerToHost(containerId);
+
+        assertThat(outputDir.resolve("sub").resolve("galah.txt")).hasContent("This is file content");
+    }
+
     /**
      * Check registering and copying a single file works.
      */
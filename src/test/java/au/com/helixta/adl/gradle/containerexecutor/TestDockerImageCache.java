@@ -0,0 +1,105 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.LoadImageCmd;
+import com.github.dockerjava.api.command.SaveImageCmd;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TestDockerImageCache
+{
+    private static DockerClient dockerSavingImages()
+    {
+        DockerClient docker = mock(DockerClient.class);
+        when(docker.saveImageCmd(anyString())).thenAnswer(invocation ->
+        {
+            String imageName = invocation.getArgument(0);
+            SaveImageCmd saveImageCmd = mock(SaveImageCmd.class);
+            when(saveImageCmd.exec()).thenReturn(new ByteArrayInputStream(("image " + imageName).getBytes(StandardCharsets.UTF_8)));
+            return saveImageCmd;
+        });
+        LoadImageCmd loadImageCmd = mock(LoadImageCmd.class);
+        when(docker.loadImageCmd(any(InputStream.class))).thenReturn(loadImageCmd);
+        return docker;
+    }
+
+    @Test
+    void tarballNameIsFileSafe()
+    {
+        assertThat(DockerImageCache.tarballName("adl/adlc:1.1.3")).isEqualTo("adl_adlc_1.1.3.tar");
+    }
+
+    @Test
+    void savedImageIsLoaded(@TempDir File cacheDir)
+    throws IOException
+    {
+        DockerClient docker = dockerSavingImages();
+        DockerImageCache cache = new DockerImageCache(cacheDir, 3, null);
+
+        assertThat(cache.load(docker, "adl/adlc:1.1.3")).isFalse();
+
+        cache.save(docker, "adl/adlc:1.1.3");
+        assertThat(new File(cacheDir, "adl_adlc_1.1.3.tar")).hasContent("image adl/adlc:1.1.3");
+
+        assertThat(cache.load(docker, "adl/adlc:1.1.3")).isTrue();
+        verify(docker).loadImageCmd(any(InputStream.class));
+    }
+
+    @Test
+    void leastRecentlyUsedEvicted(@TempDir File cacheDir)
+    throws IOException
+    {
+        DockerClient docker = dockerSavingImages();
+        DockerImageCache cache = new DockerImageCache(cacheDir, 2, null);
+
+        cache.save(docker, "adl/adlc:1.0");
+        cache.save(docker, "adl/adlc:2.0");
+        new File(cacheDir, "adl_adlc_1.0.tar").setLastModified(System.currentTimeMillis() - 60_000L);
+        new File(cacheDir, "adl_adlc_2.0.tar").setLastModified(System.currentTimeMillis() - 30_000L);
+
+        //Using 1.0 makes 2.0 the least recently used
+        assertThat(cache.load(docker, "adl/adlc:1.0")).isTrue();
+        cache.save(docker, "adl/adlc:3.0");
+
+        assertThat(cacheDir.list()).containsExactlyInAnyOrder("adl_adlc_1.0.tar", "adl_adlc_3.0.tar");
+    }
+
+    @Test
+    void disabledCacheDoesNotSave(@TempDir File cacheDir)
+    throws IOException
+    {
+        DockerClient docker = dockerSavingImages();
+        DockerImageCache cache = new DockerImageCache(cacheDir, 0, null);
+
+        cache.save(docker, "adl/adlc:1.1.3");
+
+        assertThat(cacheDir.list()).isEmpty();
+        verify(docker, never()).saveImageCmd(anyString());
+    }
+
+    @Test
+    void seedDirectoryCopiedIntoCache(@TempDir File tempDir)
+    throws IOException
+    {
+        File cacheDir = new File(tempDir, "cache");
+        File seedDir = new File(tempDir, "seed");
+        Files.createDirectories(seedDir.toPath());
+        Files.write(new File(seedDir, "adl_adlc_1.1.3.tar").toPath(), "seeded".getBytes(StandardCharsets.UTF_8));
+
+        DockerClient docker = dockerSavingImages();
+        DockerImageCache cache = new DockerImageCache(cacheDir, 3, seedDir);
+
+        assertThat(cache.load(docker, "adl/adlc:1.1.3")).isTrue();
+        assertThat(new File(cacheDir, "adl_adlc_1.1.3.tar")).hasContent("seeded");
+    }
+}
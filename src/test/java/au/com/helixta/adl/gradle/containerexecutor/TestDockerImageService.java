@@ -0,0 +1,126 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestDockerImageService
+{
+    private static DockerImageService createService(File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        return DockerImageService.register(project.getGradle()).get();
+    }
+
+    @Test
+    void imagePreparedOnlyOnce(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerImageService service = createService(projectDir);
+        AtomicInteger preparationCount = new AtomicInteger();
+
+        service.prepare("myimage:1.0", preparationCount::incrementAndGet);
+        service.prepare("myimage:1.0", preparationCount::incrementAndGet);
+        assertThat(preparationCount).hasValue(1);
+
+        service.prepare("otherimage:1.0", preparationCount::incrementAndGet);
+        assertThat(preparationCount).hasValue(2);
+    }
+
+    @Test
+    void waitsForConcurrentPreparation(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerImageService service = createService(projectDir);
+        AtomicInteger preparationCount = new AtomicInteger();
+        CountDownLatch otherStarted = new CountDownLatch(1);
+        CountDownLatch releaseOther = new CountDownLatch(1);
+
+        Thread other = new Thread(() ->
+        {
+            try
+            {
+                service.prepare("myimage:1.0", () ->
+                {
+                    otherStarted.countDown();
+                    try
+                    {
+                        releaseOther.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    preparationCount.incrementAndGet();
+                });
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+        other.start();
+        assertThat(otherStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        releaseOther.countDown();
+
+        //Waits for the other preparation rather than running its own
+        service.prepare("myimage:1.0", () -> fail("Should not prepare again"));
+        assertThat(preparationCount).hasValue(1);
+        other.join();
+    }
+
+    @Test
+    void failedPreparationRetried(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerImageService service = createService(projectDir);
+
+        assertThatExceptionOfType(IOException.class).isThrownBy(() -> service.prepare("myimage:1.0", () ->
+        {
+            throw new IOException("Pull failed");
+        }));
+
+        AtomicInteger preparationCount = new AtomicInteger();
+        service.prepare("myimage:1.0", preparationCount::incrementAndGet);
+        assertThat(preparationCount).hasValue(1);
+    }
+
+    /**
+     * Cleanup that has already started must not be interrupted by the end of the build.
+     */
+    @Test
+    void closeWaitsForCleanup(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerImageService service = createService(projectDir);
+        CountDownLatch cleanupStarted = new CountDownLatch(1);
+        AtomicInteger completedCount = new AtomicInteger();
+
+        service.cleanUpInBackground(() ->
+        {
+            cleanupStarted.countDown();
+            try
+            {
+                Thread.sleep(500L);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            completedCount.incrementAndGet();
+        });
+        assertThat(cleanupStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        service.close();
+        assertThat(completedCount).hasValue(1);
+    }
+}
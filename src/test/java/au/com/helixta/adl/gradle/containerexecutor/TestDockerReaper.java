@@ -0,0 +1,108 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.dockerjava.api.command.ListImagesCmd;
+import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.command.RemoveImageCmd;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Image;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TestDockerReaper
+{
+    private static final long NOW_SECONDS = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+    private static DockerClient docker(Container[] containers, Image[] images)
+    {
+        DockerClient docker = mock(DockerClient.class);
+        ListContainersCmd listContainersCmd = mock(ListContainersCmd.class, RETURNS_SELF);
+        when(docker.listContainersCmd()).thenReturn(listContainersCmd);
+        when(listContainersCmd.exec()).thenReturn(Arrays.asList(containers));
+        ListImagesCmd listImagesCmd = mock(ListImagesCmd.class, RETURNS_SELF);
+        when(docker.listImagesCmd()).thenReturn(listImagesCmd);
+        when(listImagesCmd.exec()).thenReturn(Arrays.asList(images));
+        when(docker.removeContainerCmd(anyString())).thenAnswer(invocation -> mock(RemoveContainerCmd.class, RETURNS_SELF));
+        when(docker.removeImageCmd(anyString())).thenAnswer(invocation -> mock(RemoveImageCmd.class, RETURNS_SELF));
+        return docker;
+    }
+
+    private static Container container(String id, String state, long ageSeconds)
+    {
+        Container container = mock(Container.class);
+        when(container.getId()).thenReturn(id);
+        when(container.getState()).thenReturn(state);
+        when(container.getCreated()).thenReturn(NOW_SECONDS - ageSeconds);
+        return container;
+    }
+
+    private static Image image(String repoTag, long created)
+    {
+        Image image = mock(Image.class);
+        when(image.getRepoTags()).thenReturn(new String[] {repoTag});
+        when(image.getCreated()).thenReturn(created);
+        return image;
+    }
+
+    @Test
+    void onlyOldStoppedContainersRemoved()
+    {
+        DockerClient docker = docker(new Container[] {
+                                        container("old-exited", "exited", TimeUnit.HOURS.toSeconds(2L)),
+                                        container("old-running", "running", TimeUnit.HOURS.toSeconds(2L)),
+                                        container("new-exited", "exited", 10L)
+                                     },
+                                     new Image[0]);
+
+        DockerReaper.Result result = new DockerReaper(Duration.ofHours(1L), 3).reap(docker, Collections.emptySet());
+
+        assertThat(result.getRemovedContainers()).isEqualTo(1);
+        verify(docker).removeContainerCmd("old-exited");
+        verify(docker, never()).removeContainerCmd("old-running");
+        verify(docker, never()).removeContainerCmd("new-exited");
+    }
+
+    @Test
+    void oldestImagesBeyondRetentionRemoved()
+    {
+        DockerClient docker = docker(new Container[0],
+                                     new Image[] {
+                                        image("adl/adlc:0.1", 100L),
+                                        image("adl/adlc:0.2", 200L),
+                                        image("adl/adlc:0.3", 300L),
+                                        image("adl/adlc:0.4", 400L),
+                                        image("adl/hxadl:1.0", 50L)
+                                     });
+
+        DockerReaper.Result result = new DockerReaper(Duration.ofHours(1L), 2).reap(docker, Collections.singleton("adl/adlc:0.1"));
+
+        //0.1 is protected, 0.3 and 0.4 are the newest, hxadl is a separate repository
+        assertThat(result.getRemovedImages()).isEqualTo(1);
+        verify(docker).removeImageCmd("adl/adlc:0.2");
+        verify(docker, times(1)).removeImageCmd(anyString());
+    }
+
+    @Test
+    void runClaimedOncePerInterval(@TempDir File tempDir)
+    throws Exception
+    {
+        File markerFile = new File(tempDir, "cleanup/marker.timestamp");
+
+        assertThat(DockerReaper.claimRun(markerFile, Duration.ofHours(1L))).isTrue();
+        assertThat(DockerReaper.claimRun(markerFile, Duration.ofHours(1L))).isFalse();
+
+        //Interval has elapsed
+        assertThat(markerFile.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2L))).isTrue();
+        assertThat(DockerReaper.claimRun(markerFile, Duration.ofHours(1L))).isTrue();
+    }
+}
@@ -0,0 +1,101 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientConfig;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestDockerTransportService
+{
+    private static DockerTransportService createService(File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        return DockerTransportService.register(project.getGradle()).get();
+    }
+
+    private static DockerClientConfig dockerClientConfig(FakeDockerDaemon daemon)
+    {
+        return DefaultDockerClientConfig.createDefaultConfigBuilder()
+                                        .withDockerHost(daemon.getDockerHost().toString())
+                                        .withDockerTlsVerify(false)
+                                        .build();
+    }
+
+    @Test
+    void transportSharedForSameSettings(@TempDir File projectDir)
+    {
+        DockerTransportService service = createService(projectDir);
+        DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+                                                             .withDockerHost("tcp://localhost:2375")
+                                                             .withDockerTlsVerify(false)
+                                                             .build();
+
+        service.transport(config, DockerTransportOptions.defaults());
+        service.transport(config, DockerTransportOptions.defaults());
+        assertThat(service.getTransportCount()).isEqualTo(1);
+
+        service.transport(config, new DockerTransportOptions(4, Duration.ofSeconds(5L), null, true));
+        assertThat(service.getTransportCount()).isEqualTo(2);
+
+        service.close();
+        assertThat(service.getTransportCount()).isZero();
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void closingClientKeepsSharedTransportOpen(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerTransportService service = createService(projectDir);
+        try (FakeDockerDaemon daemon = new FakeDockerDaemon())
+        {
+            DockerClientFactory factory = new DockerClientFactory(dockerClientConfig(daemon), DockerTransportOptions.defaults(), service);
+
+            DockerClient firstClient = factory.createDockerClient();
+            firstClient.close();
+
+            //Second client still works on the shared transport after the first was closed
+            try (DockerClient secondClient = factory.createDockerClient())
+            {
+                assertThatCode(() -> secondClient.pingCmd().exec()).doesNotThrowAnyException();
+            }
+            assertThat(service.getTransportCount()).isEqualTo(1);
+
+            //Once the service is closed at the end of the build, clients get their own transport
+            service.close();
+            try (DockerClient lateClient = factory.createDockerClient())
+            {
+                assertThatCode(() -> lateClient.pingCmd().exec()).doesNotThrowAnyException();
+            }
+            assertThat(service.getTransportCount()).isZero();
+        }
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void connectionReuseCanBeDisabled(@TempDir File projectDir)
+    throws Exception
+    {
+        DockerTransportService service = createService(projectDir);
+        try (FakeDockerDaemon daemon = new FakeDockerDaemon())
+        {
+            DockerClientFactory factory = new DockerClientFactory(dockerClientConfig(daemon),
+                                                                  new DockerTransportOptions(4, Duration.ofSeconds(5L), null, false), service);
+            try (DockerClient docker = factory.createDockerClient())
+            {
+                assertThatCode(() -> docker.pingCmd().exec()).doesNotThrowAnyException();
+            }
+            assertThat(service.getTransportCount()).isZero();
+        }
+    }
+}
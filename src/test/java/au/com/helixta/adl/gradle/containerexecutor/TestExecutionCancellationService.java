@@ -0,0 +1,101 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.initialization.BuildCancellationToken;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestExecutionCancellationService
+{
+    private static ExecutionCancellationService createService(File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        return ExecutionCancellationService.register(project.getGradle()).get();
+    }
+
+    @Test
+    void executionStoppedAfterTimeout(@TempDir File projectDir)
+    throws Exception
+    {
+        ExecutionCancellationService service = createService(projectDir);
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        try (ExecutionCancellationService.Execution execution = service.start("slow tool", Duration.ofMillis(50L), stopped::countDown))
+        {
+            assertThat(stopped.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(execution.getStopReason()).isEqualTo(ExecutionCancellationService.StopReason.TIMED_OUT);
+        }
+    }
+
+    @Test
+    void completedExecutionNotStopped(@TempDir File projectDir)
+    throws Exception
+    {
+        ExecutionCancellationService service = createService(projectDir);
+        AtomicInteger stopCount = new AtomicInteger();
+
+        ExecutionCancellationService.Execution execution = service.start("fast tool", Duration.ofMillis(50L), stopCount::incrementAndGet);
+        execution.close();
+
+        Thread.sleep(200L);
+        service.close();
+
+        assertThat(stopCount).hasValue(0);
+        assertThat(execution.getStopReason()).isNull();
+    }
+
+    @Test
+    void runningExecutionCancelledWhenServiceClosed(@TempDir File projectDir)
+    {
+        ExecutionCancellationService service = createService(projectDir);
+        AtomicInteger stopCount = new AtomicInteger();
+
+        ExecutionCancellationService.Execution execution = service.start("abandoned tool", null, stopCount::incrementAndGet);
+        service.close();
+
+        assertThat(stopCount).hasValue(1);
+        assertThat(execution.getStopReason()).isEqualTo(ExecutionCancellationService.StopReason.CANCELLED);
+    }
+
+    @Test
+    void runningExecutionCancelledWhenBuildCancelled(@TempDir File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        ExecutionCancellationService service = ExecutionCancellationService.register(project.getGradle()).get();
+        AtomicInteger stopCount = new AtomicInteger();
+
+        try (ExecutionCancellationService.Execution execution = service.start("running tool", null, stopCount::incrementAndGet))
+        {
+            ((ProjectInternal)project).getServices().get(BuildCancellationToken.class).cancel();
+
+            assertThat(stopCount).hasValue(1);
+            assertThat(execution.getStopReason()).isEqualTo(ExecutionCancellationService.StopReason.CANCELLED);
+        }
+    }
+
+    @Test
+    void executionStartedAfterBuildCancelledIsStopped(@TempDir File projectDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+        ExecutionCancellationService service = ExecutionCancellationService.register(project.getGradle()).get();
+        AtomicInteger stopCount = new AtomicInteger();
+
+        ((ProjectInternal)project).getServices().get(BuildCancellationToken.class).cancel();
+
+        try (ExecutionCancellationService.Execution execution = service.start("late tool", null, stopCount::incrementAndGet))
+        {
+            assertThat(stopCount).hasValue(1);
+            assertThat(execution.getStopReason()).isEqualTo(ExecutionCancellationService.StopReason.CANCELLED);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.BuildImageResultCallback;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Checks the fake Docker daemon behaves like a real one for the docker-java calls the plugin makes.
+ */
+@EnabledOnOs({OS.LINUX, OS.MAC})
+class TestFakeDockerDaemon
+{
+    private FakeDockerDaemon daemon;
+
+    @AfterEach
+    void closeDaemon()
+    throws IOException
+    {
+        if (daemon != null)
+            daemon.close();
+    }
+
+    private static byte[] tar(Map<String, String> files)
+    throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOut = new TarArchiveOutputStream(buf))
+        {
+            for (Map.Entry<String, String> file : files.entrySet())
+            {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(content.length);
+                entry.setMode(0755);
+                tarOut.putArchiveEntry(entry);
+                tarOut.write(content);
+                tarOut.closeArchiveEntry();
+            }
+        }
+        return buf.toByteArray();
+    }
+
+    private static Map<String, String> untar(InputStream in)
+    throws IOException
+    {
+        Map<String, String> files = new LinkedHashMap<>();
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(in))
+        {
+            TarArchiveEntry entry;
+            while ((entry = tarIn.getNextTarEntry()) != null)
+            {
+                if (entry.isFile())
+                    files.put(entry.getName(), IOUtils.toString(tarIn, StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Runs a created container to completion, collecting its output.
+     */
+    private static int runContainer(DockerClient docker, String containerId, List<String> stdout, List<String> stderr)
+    throws InterruptedException
+    {
+        ResultCallback.Adapter<Frame> attachCallback = docker.attachContainerCmd(containerId)
+                                                             .withStdOut(true).withStdErr(true)
+                                                             .withFollowStream(true)
+                                                             .exec(new ResultCallback.Adapter<Frame>()
+                                                             {
+                                                                 @Override
+                                                                 public void onNext(Frame frame)
+                                                                 {
+                                                                     String text = new String(frame.getPayload(), StandardCharsets.UTF_8).trim();
+                                                                     if (frame.getStreamType() == StreamType.STDERR)
+                                                                         stderr.add(text);
+                                                                     else
+                                                                         stdout.add(text);
+                                                                 }
+                                                             });
+        attachCallback.awaitStarted(10, TimeUnit.SECONDS);
+        docker.startContainerCmd(containerId).exec();
+        int statusCode = docker.waitContainerCmd(containerId).start().awaitStatusCode(10, TimeUnit.SECONDS);
+        attachCallback.awaitCompletion(10, TimeUnit.SECONDS);
+        return statusCode;
+    }
+
+    @Test
+    void ping()
+    throws IOException
+    {
+        daemon = new FakeDockerDaemon();
+        DockerClient docker = daemon.createDockerClient();
+
+        docker.pingCmd().exec();
+        assertThat(docker.infoCmd().exec().getNCPU()).isPositive();
+    }
+
+    @Test
+    void buildImageFromDockerfile()
+    throws IOException
+    {
+        daemon = new FakeDockerDaemon();
+        DockerClient docker = daemon.createDockerClient();
+
+        Map<String, String> context = new LinkedHashMap<>();
+        context.put("Dockerfile", "FROM ubuntu:20.04\nLABEL my.label=\"1.0\"\nCOPY /tool/ /opt/tool/\nCMD [\"/opt/tool/run.sh\"]\n");
+        context.put("tool/run.sh", "#!/bin/sh\necho hello\n");
+        String imageId = docker.buildImageCmd(new ByteArrayInputStream(tar(context)))
+                               .withTags(Collections.singleton("myimage:1.0"))
+                               .exec(new BuildImageResultCallback())
+                               .awaitImageId();
+
+        assertThat(docker.inspectImageCmd("myimage:1.0").exec().getId()).isEqualTo(imageId);
+        assertThat(docker.inspectImageCmd("myimage:1.0").exec().getConfig().getLabels()).containsEntry("my.label", "1.0");
+        assertThat(docker.listImagesCmd().withLabelFilter("my.label").exec()).hasSize(1);
+
+        docker.removeImageCmd("myimage:1.0").exec();
+        assertThatExceptionOfType(NotFoundException.class).isThrownBy(() -> docker.inspectImageCmd("myimage:1.0").exec());
+    }
+
+    @Test
+    void pullOnlyKnownImages()
+    throws IOException
+    {
+        daemon = new FakeDockerDaemon();
+        daemon.addRemoteImage("remote/image:1.0");
+        DockerClient docker = daemon.createDockerClient();
+
+        assertThatExceptionOfType(NotFoundException.class).isThrownBy(() -> docker.inspectImageCmd("remote/image:1.0").exec());
+        assertThatCode(() -> docker.pullImageCmd("remote/image:1.0").start().awaitCompletion(10, TimeUnit.SECONDS)).doesNotThrowAnyException();
+        assertThat(docker.inspectImageCmd("remote/image:1.0").exec().getId()).isNotEmpty();
+
+        assertThatExceptionOfType(NotFoundException.class)
+                .isThrownBy(() -> docker.pullImageCmd("unknown/image:1.0").start().awaitCompletion(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void runContainerWithUploadedFiles()
+    throws IOException, InterruptedException
+    {
+        daemon = new FakeDockerDaemon();
+        Path imageRoot = daemon.addImage("myimage:1.0", Collections.emptyMap());
+        Files.createDirectories(imageRoot.resolve("opt/tool"));
+        Path script = Files.write(imageRoot.resolve("opt/tool/run.sh"),
+                                  "#!/bin/sh\nmkdir -p \"$2\"\ncat \"$1/input.txt\" > \"$2/output.txt\"\necho done\necho warning >&2\nexit 3\n"
+                                          .getBytes(StandardCharsets.UTF_8));
+        script.toFile().setExecutable(true);
+        DockerClient docker = daemon.createDockerClient();
+
+        String containerId = docker.createContainerCmd("myimage:1.0")
+                                   .withName("adltest")
+                                   .withCmd("/opt/tool/run.sh", "/work/in", "/work/out")
+                                   .exec().getId();
+        docker.copyArchiveToContainerCmd(containerId)
+              .withRemotePath("/work")
+              .withTarInputStream(new ByteArrayInputStream(tar(Collections.singletonMap("in/input.txt", "galah"))))
+              .exec();
+
+        List<String> stdout = new ArrayList<>();
+        List<String> stderr = new ArrayList<>();
+        assertThat(runContainer(docker, containerId, stdout, stderr)).isEqualTo(3);
+        assertThat(stdout).containsExactly("done");
+        assertThat(stderr).containsExactly("warning");
+
+        //Entries are under the name of the requested directory, like Docker does
+        try (InputStream archive = docker.copyArchiveFromContainerCmd(containerId, "/work/out").exec())
+        {
+            assertThat(untar(archive)).containsOnly(entry("out/output.txt", "galah\n"));
+        }
+
+        docker.removeContainerCmd(containerId).withForce(true).exec();
+        assertThat(daemon.getContainerCount()).isZero();
+    }
+
+    @Test
+    void execInRunningContainer()
+    throws IOException, InterruptedException
+    {
+        daemon = new FakeDockerDaemon();
+        daemon.addImage("myimage:1.0", Collections.emptyMap());
+        DockerClient docker = daemon.createDockerClient();
+
+        String containerId = docker.createContainerCmd("myimage:1.0").withCmd("tail", "-f", "/dev/null").exec().getId();
+        docker.startContainerCmd(containerId).exec();
+        docker.copyArchiveToContainerCmd(containerId)
+              .withRemotePath("/session")
+              .withTarInputStream(new ByteArrayInputStream(tar(Collections.singletonMap("a.txt", "cockatoo"))))
+              .exec();
+
+        String execId = docker.execCreateCmd(containerId).withAttachStdout(true).withAttachStderr(true)
+                              .withCmd("sh", "-c", "cat /session/a.txt; exit 5")
+                              .exec().getId();
+        List<String> stdout = new ArrayList<>();
+        docker.execStartCmd(execId).exec(new ResultCallback.Adapter<Frame>()
+        {
+            @Override
+            public void onNext(Frame frame)
+            {
+                stdout.add(new String(frame.getPayload(), StandardCharsets.UTF_8).trim());
+            }
+        }).awaitCompletion(10, TimeUnit.SECONDS);
+
+        assertThat(stdout).containsExactly("cockatoo");
+        assertThat(docker.inspectExecCmd(execId).exec().getExitCodeLong()).isEqualTo(5L);
+
+        //Long-running container is killed on removal
+        assertThat(docker.listContainersCmd().exec()).hasSize(1);
+        docker.removeContainerCmd(containerId).withForce(true).exec();
+        assertThat(docker.listContainersCmd().withShowAll(true).exec()).isEmpty();
+    }
+
+    @Test
+    void latencyAddedToRequests()
+    throws IOException
+    {
+        daemon = new FakeDockerDaemon(Duration.ofMillis(100), 0L);
+        DockerClient docker = daemon.createDockerClient();
+
+        long startTime = System.nanoTime();
+        docker.pingCmd().exec();
+        docker.pingCmd().exec();
+        assertThat(Duration.ofNanos(System.nanoTime() - startTime)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+        assertThat(daemon.getRequestCount()).isEqualTo(2L);
+    }
+}
@@ -0,0 +1,76 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestFileTreeSnapshot
+{
+    private static ObjectFactory objectFactory;
+
+    @BeforeAll
+    private static void setUpGradleEnvironment(@TempDir File tempDir)
+    {
+        Project p = ProjectBuilder.builder().withProjectDir(tempDir).build();
+        objectFactory = p.getObjects();
+    }
+
+    @Test
+    void directoryTreeElementsAndRoot(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path argDir = Files.createTempDirectory(tempDir, "arg");
+        Files.createDirectories(argDir.resolve("sub"));
+        Files.write(argDir.resolve("sub").resolve("cat.adl"), "module sub {};".getBytes(StandardCharsets.UTF_8));
+
+        FileTreeSnapshot snapshot = FileTreeSnapshot.of(objectFactory.fileTree().from(argDir));
+
+        assertThat(snapshot.getRoots()).containsExactly(argDir.toFile());
+        assertThat(snapshot.getElements().stream().map(FileTreeSnapshot.Element::getPath).collect(Collectors.toList()))
+                .containsExactlyInAnyOrder("sub", "sub/cat.adl");
+
+        FileTreeSnapshot.Element catElement = snapshot.getElements().stream().filter(e -> !e.isDirectory()).findFirst().get();
+        assertThat(catElement.getName()).isEqualTo("cat.adl");
+        assertThat(catElement.getSize()).isEqualTo("module sub {};".length());
+        assertThat(catElement.getFile()).isEqualTo(argDir.resolve("sub").resolve("cat.adl").toFile());
+    }
+
+    @Test
+    void multipleRootsDetected(@TempDir Path tempDir)
+    throws IOException
+    {
+        Path argDir1 = Files.createTempDirectory(tempDir, "arg");
+        Files.createFile(argDir1.resolve("file1.txt"));
+        Path argDir2 = Files.createTempDirectory(tempDir, "arg2");
+        Files.createDirectories(argDir2.resolve("sub"));
+        Files.createFile(argDir2.resolve("sub").resolve("file2.txt"));
+
+        FileTree tree = objectFactory.fileTree().from(argDir1).plus(objectFactory.fileTree().from(argDir2));
+        FileTreeSnapshot snapshot = FileTreeSnapshot.of(tree);
+
+        assertThat(snapshot.getRoots()).containsExactlyInAnyOrder(argDir1.toFile(), argDir2.toFile());
+        assertThat(snapshot.getElements()).hasSize(3);
+    }
+
+    @Test
+    void emptyTreeHasNoRoots()
+    {
+        FileTreeSnapshot snapshot = FileTreeSnapshot.of(objectFactory.fileCollection().getAsFileTree());
+
+        assertThat(snapshot.getRoots()).isEmpty();
+        assertThat(snapshot.getElements()).isEmpty();
+    }
+}
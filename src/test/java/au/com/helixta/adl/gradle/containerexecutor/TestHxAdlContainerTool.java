@@ -5,6 +5,7 @@ import au.com.helixta.adl.gradle.config.AdlConfiguration;
 import au.com.helixta.adl.gradle.config.DockerConfiguration;
 import au.com.helixta.adl.gradle.config.SqlSchemaGenerationConfiguration;
 import au.com.helixta.adl.gradle.distribution.DistributionNotFoundException;
+import au.com.helixta.adl.gradle.distribution.DistributionResolutionService;
 import au.com.helixta.adl.gradle.generator.AdlToolLogger;
 import au.com.helixta.adl.gradle.generator.ArchiveProcessor;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
@@ -39,6 +40,7 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -58,6 +60,11 @@ class TestHxAdlContainerTool
     private static GradleUserHomeDirProvider gradleUserHomeDirProvider;
     private static FileSystemOperations fileSystemOperations;
     private static Project project;
+    private static DistributionResolutionService distributionResolutionService;
+    private static DockerConcurrencyService dockerConcurrencyService;
+    private static DockerSessionService dockerSessionService;
+    private static DockerImageService dockerImageService;
+    private static ExecutionCancellationService executionCancellationService;
 
     @BeforeAll
     private static void setUpDocker()
@@ -80,6 +87,11 @@ class TestHxAdlContainerTool
         gradleUserHomeDirProvider = injectReceiver.gradleUserHomeDirProvider;
         fileSystemOperations = injectReceiver.fileSystemOperations;
         project = p;
+        distributionResolutionService = DistributionResolutionService.register(p.getGradle()).get();
+        dockerConcurrencyService = DockerConcurrencyService.register(p.getGradle()).get();
+        dockerSessionService = DockerSessionService.register(p.getGradle()).get();
+        dockerImageService = DockerImageService.register(p.getGradle()).get();
+        executionCancellationService = ExecutionCancellationService.register(p.getGradle()).get();
     }
 
     /**
@@ -185,7 +197,7 @@ class TestHxAdlContainerTool
 
         //Tool setup
         AdlToolLogger toolLog = new ConsoleAdlToolLogger();
-        ContainerTool.Environment env = new ContainerTool.Environment(execOperations, toolLog, dockerFactory, targetMachineFactory, objectFactory, archiveOperations, archiveProcessor, gradleUserHomeDirProvider, fileSystemOperations, project, gradleLogger);
+        ContainerTool.Environment env = new ContainerTool.Environment(execOperations, toolLog, dockerFactory, targetMachineFactory, objectFactory, archiveOperations, archiveProcessor, gradleUserHomeDirProvider, fileSystemOperations, distributionResolutionService, dockerConcurrencyService, dockerSessionService, dockerImageService, executionCancellationService, new ExecutionMetrics(), gradleLogger);
         HxAdlContainerTool tool = new HxAdlContainerTool(env);
 
         AdlConfiguration adl = new AdlConfiguration()
@@ -215,6 +227,12 @@ class TestHxAdlContainerTool
             {
                 return "1.0.5";
             }
+
+            @Override
+            public Duration getExecutionTimeout()
+            {
+                return null;
+            }
         };
         DockerConfiguration dockerConfig = objectFactory.newInstance(DockerConfiguration.class);
         SqlSchemaGenerationConfiguration generation = objectFactory.newInstance(SqlSchemaGenerationConfiguration.class);
@@ -21,6 +21,8 @@ import org.gradle.testfixtures.ProjectBuilder;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
@@ -28,9 +30,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -54,12 +60,13 @@ class TestNativeExecutor
     @Mock
     private ArchiveOperations archiveOperations;
 
-    private ArchiveProcessor archiveProcessor;
+    private ArchiveExtractionCache archiveExtractionCache;
 
     @TempDir
     Path tempDir;
 
     private static ObjectFactory objectFactory;
+    private static ExecutionCancellationService executionCancellationService;
 
     private static final DistributionSpecifier distributionSpecifier = new DistributionSpecifier("1.0", Architectures.of(Architectures.X86_64), new DefaultOperatingSystem("linux"));
 
@@ -70,18 +77,20 @@ class TestNativeExecutor
     {
         Project p = ProjectBuilder.builder().withProjectDir(tempDir).build();
         objectFactory = p.getObjects();
+        executionCancellationService = ExecutionCancellationService.register(p.getGradle()).get();
     }
 
     @BeforeEach
     private void setUp()
     throws IOException, DistributionNotFoundException
     {
-        archiveProcessor = new ArchiveProcessor(archiveOperations);
+        archiveExtractionCache = new ArchiveExtractionCache(tempDir.resolve("archivecache").toFile(), new ArchiveProcessor(archiveOperations));
 
         invokedSpecs.clear();
 
         when(distributionService.resolveDistribution(any())).thenReturn(tempDir.toFile());
-        when(execOperations.exec(any())).then(invocation ->
+        //Lenient since executors with a cancellation service start processes themselves
+        lenient().when(execOperations.exec(any())).then(invocation ->
         {
             @SuppressWarnings("unchecked") Action<ExecSpec> action = invocation.getArgument(0, Action.class);
             ExecSpec spec = new DefaultExecSpec(new IdentityFileResolver());
@@ -104,7 +113,7 @@ class TestNativeExecutor
     void singleStringArgument()
     throws ContainerExecutionException, IOException, DistributionNotFoundException
     {
-        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveProcessor, adlLog, "LOG");
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
 
         PreparedCommandLine c = new PreparedCommandLine().argument("-test");
         executor.execute(c);
@@ -117,7 +126,7 @@ class TestNativeExecutor
     void directoryArgument()
     throws ContainerExecutionException, IOException, DistributionNotFoundException
     {
-        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveProcessor, adlLog, "LOG");
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
 
         PreparedCommandLine c = new PreparedCommandLine().argument(tempDir.toFile(), "unusedLabel", PreparedCommandLine.FileTransferMode.INPUT, PreparedCommandLine.FileType.DIRECTORY);
         executor.execute(c);
@@ -134,7 +143,7 @@ class TestNativeExecutor
         Path argFile1 = Files.createFile(argDir.resolve("file1.txt"));
         Path argFile2 = Files.createFile(argDir.resolve("file2.txt"));
 
-        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveProcessor, adlLog, "LOG");
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
 
         FileTree tree = objectFactory.fileTree().from(argDir);
         PreparedCommandLine c = new PreparedCommandLine().argument(tree, "unusedLabel");
@@ -152,7 +161,7 @@ class TestNativeExecutor
         Files.createFile(argDir.resolve("file1.txt"));
         Files.createFile(argDir.resolve("file2.txt"));
 
-        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveProcessor, adlLog, "LOG");
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
 
         FileTree tree = objectFactory.fileTree().from(argDir);
         PreparedCommandLine c = new PreparedCommandLine().argument(tree, "unusedLabel", new PreparedCommandLine.SingleBaseDirectoryCommandLineGenerator());
@@ -174,7 +183,7 @@ class TestNativeExecutor
         Files.createDirectories(argDir2Sub);
         Path argFile3 = Files.createFile(argDir2Sub.resolve("file3.txt"));
 
-        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveProcessor, adlLog, "LOG");
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
 
         FileTree tree = objectFactory.fileTree().from(argDir1).plus(objectFactory.fileTree().from(argDir2));
         PreparedCommandLine c = new PreparedCommandLine().argument(tree, "unusedLabel");
@@ -184,5 +193,123 @@ class TestNativeExecutor
         assertThat(invokedExecSpec().getArgs()).containsExactlyInAnyOrder(argFile1.toAbsolutePath().toString(), argFile2.toAbsolutePath().toString(), argFile3.toAbsolutePath().toString());
     }
 
-    //TODO archive processing
+    @Test
+    void fileTreeArgumentsBatched()
+    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        Path argDir = Files.createTempDirectory(tempDir, "arg");
+        Path argFile1 = Files.createFile(argDir.resolve("file1.txt"));
+        Path argFile2 = Files.createFile(argDir.resolve("file2.txt"));
+
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
+
+        FileTree tree = objectFactory.fileTree().from(argDir);
+        PreparedCommandLine c = new PreparedCommandLine().argument("-test")
+                                                         .argument(tree, "unusedLabel")
+                                                         .batchThreshold(1)
+                                                         .batchable();
+        executor.execute(c);
+
+        assertThat(invokedSpecs).hasSize(2);
+        assertThat(invokedSpecs.get(0).getArgs()).hasSize(2).startsWith("-test");
+        assertThat(invokedSpecs.get(1).getArgs()).hasSize(2).startsWith("-test");
+        assertThat(Arrays.asList(invokedSpecs.get(0).getArgs().get(1), invokedSpecs.get(1).getArgs().get(1)))
+                .containsExactlyInAnyOrder(argFile1.toAbsolutePath().toString(), argFile2.toAbsolutePath().toString());
+    }
+
+    /**
+     * Command lines are only split into multiple runs when the tool says they may be, even when there are too many files.
+     */
+    @Test
+    void fileTreeArgumentsNotBatchedUnlessBatchable()
+    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        Path argDir = Files.createTempDirectory(tempDir, "arg");
+        Path argFile1 = Files.createFile(argDir.resolve("file1.txt"));
+        Path argFile2 = Files.createFile(argDir.resolve("file2.txt"));
+        Path manifest = tempDir.resolve("manifest");
+
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG");
+
+        FileTree tree = objectFactory.fileTree().from(argDir);
+        PreparedCommandLine c = new PreparedCommandLine().argument("-test")
+                                                         .argument(manifest.toFile(), "manifest", PreparedCommandLine.FileTransferMode.OUTPUT, PreparedCommandLine.FileType.SINGLE_FILE, path -> "--manifest=" + path)
+                                                         .argument(tree, "unusedLabel")
+                                                         .batchThreshold(1);
+        executor.execute(c);
+
+        assertThat(invokedSpecs).hasSize(1);
+        assertThat(invokedSpecs.get(0).getArgs()).containsExactlyInAnyOrder("-test", "--manifest=" + manifest.toAbsolutePath(),
+                                                                              argFile1.toAbsolutePath().toString(), argFile2.toAbsolutePath().toString());
+    }
+
+    /**
+     * Creates an executable shell script in the distribution directory.
+     */
+    private void createScript(String name, String... lines)
+    throws IOException
+    {
+        Path script = tempDir.resolve(name);
+        List<String> scriptLines = new ArrayList<>();
+        scriptLines.add("#!/bin/sh");
+        scriptLines.addAll(Arrays.asList(lines));
+        Files.write(script, scriptLines, StandardCharsets.UTF_8);
+        assertThat(script.toFile().setExecutable(true)).isTrue();
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void cancellableProcessOutputLogged()
+    throws ContainerExecutionException, IOException, DistributionNotFoundException
+    {
+        createScript("myprogram", "echo \"hello $1\"", "echo \"oops\" 1>&2");
+
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG",
+                                                     Duration.ofMinutes(1L), executionCancellationService);
+
+        executor.execute(new PreparedCommandLine().argument("world"));
+
+        verify(adlLog).info("LOG", "hello world");
+        verify(adlLog).error("LOG", "oops");
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void cancellableProcessFailure()
+    throws IOException
+    {
+        createScript("myprogram", "exit 3");
+
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("myprogram"), execOperations, archiveExtractionCache, adlLog, "LOG",
+                                                     Duration.ofMinutes(1L), executionCancellationService);
+
+        assertThatThrownBy(() -> executor.execute(new PreparedCommandLine()))
+                .isInstanceOf(ContainerExecutionException.class)
+                .hasMessageContaining("non-zero exit value 3");
+    }
+
+    /**
+     * A process that runs for longer than the timeout is actually killed rather than just abandoned.
+     */
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void timedOutProcessKilled()
+    throws IOException, InterruptedException
+    {
+        Path pidFile = tempDir.resolve("pid");
+        createScript("slowprogram", "echo $$ > '" + pidFile.toAbsolutePath() + "'", "exec sleep 60");
+
+        NativeExecutor executor = new NativeExecutor(distributionService, distributionSpecifier, new SimpleExecutableResolver("slowprogram"), execOperations, archiveExtractionCache, adlLog, "LOG",
+                                                     Duration.ofMillis(500L), executionCancellationService);
+
+        long startTime = System.nanoTime();
+        assertThatThrownBy(() -> executor.execute(new PreparedCommandLine()))
+                .isInstanceOf(ContainerExecutionException.class)
+                .hasMessageContaining("timed out");
+        assertThat(Duration.ofNanos(System.nanoTime() - startTime)).isLessThan(Duration.ofSeconds(30L));
+
+        //Process was waited for after being killed, so it should be completely gone by now
+        String pid = new String(Files.readAllBytes(pidFile), StandardCharsets.UTF_8).trim();
+        assertThat(Paths.get("/proc", pid)).doesNotExist();
+    }
 }
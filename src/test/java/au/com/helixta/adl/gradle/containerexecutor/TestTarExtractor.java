@@ -0,0 +1,103 @@
+package au.com.helixta.adl.gradle.containerexecutor;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestTarExtractor
+{
+    private static TarArchiveInputStream tar(Map<String, String> files)
+    throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tos = new TarArchiveOutputStream(bos))
+        {
+            tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Map.Entry<String, String> file : files.entrySet())
+            {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(content.length);
+                tos.putArchiveEntry(entry);
+                tos.write(content);
+                tos.closeArchiveEntry();
+            }
+        }
+        return new TarArchiveInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    @Test
+    void filesExtractedWithPrefixStripped(@TempDir File outputDir)
+    throws IOException
+    {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("output/", "");
+        files.put("output/a/One.java", "one");
+        files.put("output/a/Two.java", "two");
+        files.put("output/b/c/Three.java", "three");
+
+        ExecutorService writerExecutor = Executors.newFixedThreadPool(4);
+        try
+        {
+            TarExtractor extractor = new TarExtractor(writerExecutor);
+            TarExtractor.Result result = extractor.extract(tar(files), outputDir, "output/", (dir, name) -> true);
+
+            assertThat(result.getFileCount()).isEqualTo(3L);
+            assertThat(result.getByteCount()).isEqualTo(11L);
+            assertThat(new File(outputDir, "a/One.java")).hasContent("one");
+            assertThat(new File(outputDir, "a/Two.java")).hasContent("two");
+            assertThat(new File(outputDir, "b/c/Three.java")).hasContent("three");
+        }
+        finally
+        {
+            writerExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void filesLargerThanBufferStreamed(@TempDir File outputDir)
+    throws IOException
+    {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("small.txt", "tiny");
+        files.put("large.txt", "this is more than sixteen bytes");
+
+        //Only one small buffer, so every buffered file must be written before the next is read
+        TarExtractor extractor = new TarExtractor(Runnable::run, 16, 1);
+        TarExtractor.Result result = extractor.extract(tar(files), outputDir, "", (dir, name) -> true);
+
+        assertThat(result.getFileCount()).isEqualTo(2L);
+        assertThat(new File(outputDir, "small.txt")).hasContent("tiny");
+        assertThat(new File(outputDir, "large.txt")).hasContent("this is more than sixteen bytes");
+    }
+
+    @Test
+    void filteredFilesNotExtracted(@TempDir File outputDir)
+    throws IOException
+    {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("keep.java", "keep");
+        files.put("skip.txt", "skip");
+        files.put("other.java", "other");
+
+        TarExtractor extractor = new TarExtractor(Runnable::run);
+        TarExtractor.Result result = extractor.extract(tar(files), outputDir, "", (dir, name) -> name.endsWith(".java"));
+
+        assertThat(result.getFileCount()).isEqualTo(2L);
+        assertThat(outputDir.list()).containsExactlyInAnyOrder("keep.java", "other.java");
+    }
+}
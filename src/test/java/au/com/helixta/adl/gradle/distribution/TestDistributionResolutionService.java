@@ -0,0 +1,155 @@
+package au.com.helixta.adl.gradle.distribution;
+
+import com.sun.net.httpserver.HttpServer;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestDistributionResolutionService
+{
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @BeforeEach
+    void startServer()
+    throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange ->
+        {
+            requestCount.incrementAndGet();
+            if (exchange.getRequestURI().getPath().endsWith("/found.zip"))
+            {
+                byte[] content = "archive".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream os = exchange.getResponseBody())
+                {
+                    os.write(content);
+                }
+            }
+            else if (exchange.getRequestURI().getPath().endsWith("/truncated.zip"))
+            {
+                //Connection drops part way through
+                byte[] content = "arch".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, 100L);
+                exchange.getResponseBody().write(content);
+                exchange.close();
+            }
+            else
+            {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private URI uri(String path)
+    {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+
+    @Test
+    void archiveDownloadedOnce(@TempDir File tempDir)
+    throws DistributionNotFoundException
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(tempDir).withGradleUserHomeDir(new File(tempDir, "gradleUserHome")).build();
+        DistributionResolutionService service = DistributionResolutionService.register(project.getGradle()).get();
+
+        File first = service.resolveArchive(uri("/found.zip"), "found.zip");
+        File second = service.resolveArchive(uri("/found.zip"), "found.zip");
+
+        assertThat(first).hasContent("archive");
+        assertThat(second).isEqualTo(first);
+        assertThat(requestCount).hasValue(1);
+    }
+
+    @Test
+    void truncatedDownloadNotKept(@TempDir File tempDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(tempDir).withGradleUserHomeDir(new File(tempDir, "gradleUserHome")).build();
+        DistributionResolutionService service = DistributionResolutionService.register(project.getGradle()).get();
+
+        assertThatThrownBy(() -> service.resolveArchive(uri("/truncated.zip"), "truncated.zip")).isInstanceOf(DistributionNotFoundException.class);
+
+        assertThat(new File(tempDir, "gradleUserHome/adl-distribution-downloads/truncated.zip")).doesNotExist();
+    }
+
+    /**
+     * Missing distributions are looked up often, e.g. by every execution that checks for a native distribution, so the server is only asked once.
+     */
+    @Test
+    void notFoundRememberedForBuild(@TempDir File tempDir)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(tempDir).withGradleUserHomeDir(new File(tempDir, "gradleUserHome")).build();
+        DistributionResolutionService service = DistributionResolutionService.register(project.getGradle()).get();
+
+        assertThatThrownBy(() -> service.resolveArchive(uri("/missing.zip"), "missing.zip")).isInstanceOf(DistributionNotFoundException.class);
+        assertThatThrownBy(() -> service.resolveArchive(uri("/missing.zip"), "missing.zip")).isInstanceOf(DistributionNotFoundException.class);
+
+        assertThat(requestCount).hasValue(1);
+    }
+
+    /**
+     * Parallel native generations all need the same distribution, so only the first one installs it and the rest use that installation.
+     */
+    @Test
+    void concurrentInstallationsInstallOnce(@TempDir File tempDir)
+    throws Exception
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(tempDir).withGradleUserHomeDir(new File(tempDir, "gradleUserHome")).build();
+        DistributionResolutionService service = DistributionResolutionService.register(project.getGradle()).get();
+        File installationDirectory = new File(tempDir, "installation");
+        AtomicInteger installCount = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<File>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+            {
+                results.add(executor.submit(() -> service.resolveInstallation(installationDirectory, () ->
+                {
+                    installCount.incrementAndGet();
+                    Files.createDirectories(installationDirectory.toPath());
+                })));
+            }
+            for (Future<File> result : results)
+            {
+                assertThat(result.get()).isEqualTo(installationDirectory);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat(installCount).hasValue(1);
+    }
+}
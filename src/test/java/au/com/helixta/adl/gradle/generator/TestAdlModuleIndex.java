@@ -0,0 +1,123 @@
+package au.com.helixta.adl.gradle.generator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestAdlModuleIndex
+{
+    private static File writeAdl(Path root, String relativePath, String content)
+    throws IOException
+    {
+        Path file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    @Test
+    void parseImports()
+    {
+        String adl = "module app.api\n" +
+                     "{\n" +
+                     "import sys.types.Pair;\n" +
+                     "  import sys.types.Maybe;\n" +
+                     "import app.common.*;\n" +
+                     "// import commented.Out;\n" +
+                     "struct Thing { Pair<String, Int32> value; };\n" +
+                     "};\n";
+
+        assertThat(AdlModuleIndex.parseImports(adl)).containsExactly("sys.types", "app.common");
+    }
+
+    @Test
+    void parseReferencedModules()
+    {
+        String adl = "module app.api\n" +
+                     "{\n" +
+                     "import sys.types.Pair;\n" +
+                     "/// Uses common.money.Amount without an import\n" +
+                     "struct Thing { common.money.Amount price; Vector<sys.types.Maybe<Int32>> counts; };\n" +
+                     "};\n";
+
+        assertThat(AdlModuleIndex.parseReferencedModules(adl)).containsExactlyInAnyOrder("sys.types", "common.money");
+    }
+
+    @Test
+    void moduleNameFromPath()
+    {
+        assertThat(AdlModuleIndex.moduleName("sys/types.adl")).isEqualTo("sys.types");
+        assertThat(AdlModuleIndex.moduleName("top.adl")).isEqualTo("top");
+    }
+
+    @Test
+    void transitiveImporters(@TempDir Path root)
+    throws IOException
+    {
+        writeAdl(root, "base.adl", "module base {\n};\n");
+        writeAdl(root, "middle.adl", "module middle {\nimport base.Thing;\n};\n");
+        writeAdl(root, "top.adl", "module top {\nimport middle.*;\n};\n");
+        writeAdl(root, "other/unrelated.adl", "module other.unrelated {\n};\n");
+
+        AdlModuleIndex index = new AdlModuleIndex();
+        index.addDirectory(root.toFile());
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.importers(Collections.singleton("base"))).containsExactlyInAnyOrder("base", "middle", "top");
+        assertThat(index.importers(Collections.singleton("top"))).containsExactly("top");
+    }
+
+    @Test
+    void transitiveImportedModules(@TempDir Path root)
+    throws IOException
+    {
+        writeAdl(root, "base.adl", "module base {\n};\n");
+        writeAdl(root, "middle.adl", "module middle {\nstruct M { base.Thing thing; };\n};\n");
+        writeAdl(root, "top.adl", "module top {\nimport middle.*;\n};\n");
+        writeAdl(root, "other/unrelated.adl", "module other.unrelated {\nimport base.Thing;\n};\n");
+
+        AdlModuleIndex index = new AdlModuleIndex();
+        index.addDirectory(root.toFile());
+
+        assertThat(index.importedModules(Collections.singleton("top"))).containsExactlyInAnyOrder("top", "middle", "base");
+        assertThat(index.importedModules(Collections.singleton("missing"))).containsExactly("missing");
+    }
+
+    @Test
+    void firstModuleWins(@TempDir Path sourceDir, @TempDir Path searchDir)
+    throws IOException
+    {
+        File source = writeAdl(sourceDir, "a/b.adl", "module a.b {\n};\n");
+        writeAdl(searchDir, "a/b.adl", "module a.b {\n};\n");
+
+        AdlModuleIndex index = new AdlModuleIndex();
+        index.addDirectory(sourceDir.toFile());
+        index.addDirectory(searchDir.toFile());
+
+        assertThat(index.fileForModule("a.b")).isEqualTo(source);
+    }
+
+    @Test
+    void removeDirectory(@TempDir Path root)
+    throws IOException
+    {
+        File kept = writeAdl(root, "kept.adl", "module kept {\n};\n");
+        writeAdl(root, "gone/one.adl", "module gone.one {\n};\n");
+        writeAdl(root, "gone/two.adl", "module gone.two {\n};\n");
+
+        AdlModuleIndex index = new AdlModuleIndex();
+        index.addDirectory(root.toFile());
+
+        assertThat(index.removeFilesUnder(root.resolve("gone").toFile())).containsExactlyInAnyOrder("gone.one", "gone.two");
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.moduleForFile(kept)).isEqualTo("kept");
+    }
+}
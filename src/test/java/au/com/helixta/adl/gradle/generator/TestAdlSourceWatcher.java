@@ -0,0 +1,45 @@
+package au.com.helixta.adl.gradle.generator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestAdlSourceWatcher
+{
+    @Test
+    void burstOfChangesIsOneBatch(@TempDir Path root)
+    throws Exception
+    {
+        try (AdlSourceWatcher watcher = new AdlSourceWatcher(Collections.singletonList(root.toFile())))
+        {
+            Files.write(root.resolve("one.adl"), "module one {\n};\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(root.resolve("two.adl"), "module two {\n};\n".getBytes(StandardCharsets.UTF_8));
+
+            AdlSourceWatcher.Changes changes = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> watcher.awaitChanges(Duration.ofMillis(500)));
+            assertThat(changes.getChangedPaths()).contains(root.resolve("one.adl"), root.resolve("two.adl"));
+        }
+    }
+
+    @Test
+    void filesInNewDirectoriesAreSeen(@TempDir Path root)
+    throws Exception
+    {
+        try (AdlSourceWatcher watcher = new AdlSourceWatcher(Collections.singletonList(root.toFile())))
+        {
+            Path newDirectory = Files.createDirectories(root.resolve("newmodule"));
+            Files.write(newDirectory.resolve("inner.adl"), "module newmodule.inner {\n};\n".getBytes(StandardCharsets.UTF_8));
+
+            AdlSourceWatcher.Changes changes = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> watcher.awaitChanges(Duration.ofMillis(500)));
+            assertThat(changes.getChangedPaths()).contains(newDirectory.resolve("inner.adl"));
+            assertThat(watcher.getWatchedDirectoryCount()).isEqualTo(2);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package au.com.helixta.adl.gradle.generator;
+
+import au.com.helixta.adl.gradle.containerexecutor.ContainerExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestParallelGenerationExecutor
+{
+    private static class RecordingLogger implements AdlToolLogger
+    {
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        private final List<Thread> loggingThreads = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void info(String toolName, String message)
+        {
+            lines.add(toolName + "> " + message);
+            loggingThreads.add(Thread.currentThread());
+        }
+
+        @Override
+        public void error(String toolName, String message)
+        {
+            lines.add(toolName + "! " + message);
+            loggingThreads.add(Thread.currentThread());
+        }
+
+        @Override
+        public boolean isInfoEnabled()
+        {
+            return true;
+        }
+    }
+
+    @Test
+    void generationsRunConcurrentlyWithPrefixedLogging()
+    throws AdlGenerationException
+    {
+        RecordingLogger logger = new RecordingLogger();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        ParallelGenerationExecutor.GenerationAction action = toolLogger ->
+        {
+            bothStarted.countDown();
+            try
+            {
+                //Only completes if the other generation is running at the same time
+                if (!bothStarted.await(10, TimeUnit.SECONDS))
+                    throw new ContainerExecutionException("Generations did not run concurrently");
+            }
+            catch (InterruptedException e)
+            {
+                throw new ContainerExecutionException("Interrupted", e);
+            }
+            toolLogger.info("adlc", "done");
+        };
+
+        new ParallelGenerationExecutor(2, logger).execute(Arrays.asList(new ParallelGenerationExecutor.Generation("java", action),
+                                                                        new ParallelGenerationExecutor.Generation("typescript", action)));
+
+        assertThat(logger.lines).containsExactlyInAnyOrder("adlc:java> done", "adlc:typescript> done");
+
+        //Logging happens on the calling thread so Gradle groups it with the task
+        assertThat(logger.loggingThreads).containsOnly(Thread.currentThread());
+    }
+
+    @Test
+    void failureCancelsOtherGenerations()
+    {
+        RecordingLogger logger = new RecordingLogger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch slowStarted = new CountDownLatch(1);
+
+        ParallelGenerationExecutor.GenerationAction slowAction = toolLogger ->
+        {
+            slowStarted.countDown();
+            try
+            {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            }
+            catch (InterruptedException e)
+            {
+                interrupted.set(true);
+            }
+        };
+        ParallelGenerationExecutor.GenerationAction failingAction = toolLogger ->
+        {
+            //Fail only once the other generation is running so it gets interrupted rather than never starting
+            try
+            {
+                slowStarted.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                throw new ContainerExecutionException("Interrupted", e);
+            }
+            toolLogger.error("adlc", "bad input");
+            throw new ContainerExecutionException("adlc error (1)");
+        };
+
+        long startTime = System.nanoTime();
+        assertThatExceptionOfType(AdlGenerationException.class).isThrownBy(() ->
+            new ParallelGenerationExecutor(2, logger).execute(Arrays.asList(new ParallelGenerationExecutor.Generation("java", slowAction),
+                                                                            new ParallelGenerationExecutor.Generation("typescript", failingAction))))
+                .withCauseInstanceOf(ContainerExecutionException.class);
+
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime)).isLessThan(10L);
+        assertThat(interrupted).isTrue();
+        assertThat(logger.lines).containsExactly("adlc:typescript! bad input");
+    }
+}